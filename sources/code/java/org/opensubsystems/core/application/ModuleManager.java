@@ -19,11 +19,11 @@
 
 package org.opensubsystems.core.application;
 
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.logging.Logger;
 import java.util.logging.Level;
 
-import org.apache.commons.collections.map.LinkedMap;
 import org.opensubsystems.core.error.OSSException;
 import org.opensubsystems.core.util.ClassFactory;
 import org.opensubsystems.core.util.GlobalConstants;
@@ -46,7 +46,7 @@ public class ModuleManager extends OSSObject
    /**
     * Lock used in synchronized sections.
     */
-   private static final String IMPL_LOCK = "IMPL_LOCK";
+   private static final Object IMPL_LOCK = new Object();
    
    // Cached values ////////////////////////////////////////////////////////////
 
@@ -58,7 +58,7 @@ public class ModuleManager extends OSSObject
    /**
     * Reference to the instance actually in use.
     */
-   private static ModuleManager s_defaultInstance;
+   private static volatile ModuleManager s_defaultInstance;
 
    // Attributes ///////////////////////////////////////////////////////////////
    
@@ -69,9 +69,10 @@ public class ModuleManager extends OSSObject
    
    /**
     * Cache where already instantiated modules will be cached. We can cache them 
-    * since modules should be reentrant.
+    * since modules should be reentrant. The map is concurrent so that the 
+    * modules, which were already created, can be found without any locking.
     */
-   private final Map<String, Module> m_mpModuleCache; 
+   private final ConcurrentMap<String, Module> m_mpModuleCache; 
    
    // Constructors /////////////////////////////////////////////////////////////
    
@@ -81,10 +82,9 @@ public class ModuleManager extends OSSObject
    public ModuleManager() 
    {
       m_moduleClassFactory = new ClassFactory<>(Module.class);
-      // This has to be sequenced hashmap to create the modules in the correct 
-      // order
-      // TODO: Modify it to template class once available
-      m_mpModuleCache = new LinkedMap();
+      // The modules are created in the order in which they are requested, the 
+      // cache itself is never iterated so it doesn't have to be sequenced
+      m_mpModuleCache = new ConcurrentHashMap<>();
    }
    
    // Logic ////////////////////////////////////////////////////////////////////
@@ -186,19 +186,7 @@ public class ModuleManager extends OSSObject
       Class<Module> clsModule
    ) throws OSSException
    {
-      Module module;
-      
-      module = m_mpModuleCache.get(clsModule.getName());
-      if (module == null)
-      {
-         synchronized (m_mpModuleCache)
-         {
-            module = m_moduleClassFactory.createInstance(clsModule);
-            m_mpModuleCache.put(clsModule.getName(), module);
-         }
-      }
-      
-      return module; 
+      return getCachedModule(clsModule.getName(), m_moduleClassFactory);
    }
    
    /**
@@ -219,19 +207,7 @@ public class ModuleManager extends OSSObject
       ClassFactory<Module> factory
    ) throws OSSException
    {
-      Module module;
-      
-      module = m_mpModuleCache.get(clsModule.getName());
-      if (module == null)
-      {
-         synchronized (m_mpModuleCache)
-         {
-            module = factory.createInstance(clsModule);
-            m_mpModuleCache.put(clsModule.getName(), module);
-         }
-      }
-      
-      return module; 
+      return getCachedModule(clsModule.getName(), factory);
    }
    
    /**
@@ -249,19 +225,7 @@ public class ModuleManager extends OSSObject
       String strModuleClassname
    ) throws OSSException
    {
-      Module module;
-      
-      module = m_mpModuleCache.get(strModuleClassname);
-      if (module == null)
-      {
-         synchronized (m_mpModuleCache)
-         {
-            module = m_moduleClassFactory.createInstance(strModuleClassname);
-            m_mpModuleCache.put(strModuleClassname, module);
-         }
-      }
-      
-      return module; 
+      return getCachedModule(strModuleClassname, m_moduleClassFactory);
    }
    
    /**
@@ -281,6 +245,25 @@ public class ModuleManager extends OSSObject
       String               strModuleClassname,
       ClassFactory<Module> factory
    ) throws OSSException
+   {
+      return getCachedModule(strModuleClassname, factory);
+   }
+   
+   // Helper methods ///////////////////////////////////////////////////////////
+   
+   /**
+    * Get module from the cache and create it if it wasn't created yet. 
+    * 
+    * @param strModuleClassname - the module class name for which we want 
+    *                             applicable module  
+    * @param factory - class factory to use to create the module   
+    * @return Module - the module to use for given class
+    * @throws OSSException - an error has occurred
+    */
+   private Module getCachedModule(
+      String               strModuleClassname,
+      ClassFactory<Module> factory
+   ) throws OSSException
    {
       Module module;
       
@@ -289,8 +272,15 @@ public class ModuleManager extends OSSObject
       {
          synchronized (m_mpModuleCache)
          {
-            module = factory.createInstance(strModuleClassname);
-            m_mpModuleCache.put(strModuleClassname, module);
+            // Check again since other thread might have created the module
+            // while we were waiting for the lock and only one instance should 
+            // be ever created
+            module = m_mpModuleCache.get(strModuleClassname);
+            if (module == null)
+            {
+               module = factory.createInstance(strModuleClassname);
+               m_mpModuleCache.put(strModuleClassname, module);
+            }
          }
       }
       
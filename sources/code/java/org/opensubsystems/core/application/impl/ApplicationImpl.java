@@ -72,7 +72,7 @@ public class ApplicationImpl extends OSSObject
    /**
     * Lock used in synchronized sections.
     */
-   private static final String IMPL_LOCK = "IMPL_LOCK";
+   private static final Object IMPL_LOCK = new Object();
 
    // Configuration parameters /////////////////////////////////////////////////
    
@@ -134,7 +134,7 @@ public class ApplicationImpl extends OSSObject
    /**
     * Reference to the instance actually in use.
     */
-   private static Application s_defaultInstance;
+   private static volatile Application s_defaultInstance;
    
    // Constructors /////////////////////////////////////////////////////////////
 
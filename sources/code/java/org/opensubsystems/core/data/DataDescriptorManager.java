@@ -19,10 +19,11 @@
  
 package org.opensubsystems.core.data;
 
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.logging.Logger;
 import java.util.logging.Level;
 
@@ -50,7 +51,15 @@ public class DataDescriptorManager extends OSSObject
    /**
     * Lock used in synchronized sections.
     */
-   private static final String IMPL_LOCK = "IMPL_LOCK";
+   private static final Object IMPL_LOCK = new Object();
+   
+   /**
+    * Data types smaller than this value are indexed in array so that their 
+    * descriptors can be found without boxing and hashing of the data type. 
+    * Data types are expected to be small positive numbers so this should cover
+    * all of them and larger ones are found only in the map.
+    */
+   public static final int MAX_INDEXED_DATA_TYPE = 1024;
 
    // Attributes ///////////////////////////////////////////////////////////////
    
@@ -62,9 +71,11 @@ public class DataDescriptorManager extends OSSObject
    /**
     * Cache where already instantiated data descriptors will be cached. We can 
     * cache them since data descriptors should be reentrant. Key is the class 
-    * name of the descriptor and value is the descriptor itself.
+    * name of the descriptor and value is the descriptor itself. The map is 
+    * concurrent so that the descriptors, which were already created, can be 
+    * found without any locking.
     */
-   private final Map<String, DataDescriptor> m_mpDescriptorCache; 
+   private final ConcurrentMap<String, DataDescriptor> m_mpDescriptorCache; 
    
    /**
     * Map that is used to transform the desired data types to real data types.
@@ -89,13 +100,25 @@ public class DataDescriptorManager extends OSSObject
     * Map of all data descriptors organized by the data type of the descriptor. 
     * Key is data type, value is list of data descriptors for this data type. 
     * The first one in the list is the default one, the rest of them if any are 
-    * representing different views of the same data type.
+    * representing different views of the same data type. The map and the
+    * lists are concurrent since they are read without any locking.
     */
    protected Map<Integer, List<DataDescriptor>> m_mpDataTypeToDescriptors;
    
+   /**
+    * The same lists of data descriptors as in m_mpDataTypeToDescriptors 
+    * indexed by the data type if it is smaller than MAX_INDEXED_DATA_TYPE. The
+    * array is never modified once it is published, new array is created 
+    * whenever descriptor for new data type is registered, which happens only
+    * when the application starts.
+    */
+   @SuppressWarnings("rawtypes") // Same lists as in m_mpDataTypeToDescriptors
+   protected volatile List<DataDescriptor>[] m_arrDataTypeToDescriptors;
+   
    /**
     * Map of logical names of all views. Key is the logical name of the view and 
-    * value is the data type Integer code.
+    * value is the data type Integer code. The map is concurrent since it is 
+    * read without any locking.
     */
    protected Map<String, Integer> m_mpDataTypeViews;
 
@@ -120,9 +143,10 @@ public class DataDescriptorManager extends OSSObject
    )
    {
       m_descriptorClassFactory = new ClassFactory<>(DataDescriptor.class);
-      m_mpDescriptorCache = new HashMap<>();
-      m_mpDataTypeToDescriptors = new HashMap<>();
-      m_mpDataTypeViews = new HashMap<>();
+      m_mpDescriptorCache = new ConcurrentHashMap<>();
+      m_mpDataTypeToDescriptors = new ConcurrentHashMap<>();
+      m_arrDataTypeToDescriptors = createDescriptorsArray(0);
+      m_mpDataTypeViews = new ConcurrentHashMap<>();
       m_mpDesiredDataTypeMap = null;
    }
    
@@ -256,24 +280,30 @@ public class DataDescriptorManager extends OSSObject
     * @return DataDescriptor - data descriptor to use for given class
     * @throws OSSException - an error has occurred
     */
-   // Supressing since this has been fixed using volatile pattern for Java 1.5+
+   // Supressing since this has been fixed using concurrent map for the cache
    @SuppressWarnings("DoubleCheckedLocking")
    public DataDescriptor getDataDescriptorInstance(
       Class<? extends DataDescriptor> clsDescriptor
    ) throws OSSException
    {
-      DataDescriptor result = m_mpDescriptorCache.get(clsDescriptor.getName());;
+      DataDescriptor result = m_mpDescriptorCache.get(clsDescriptor.getName());
       if (result == null) 
       {
          synchronized(IMPL_LOCK) 
          {
-            result = m_mpDescriptorCache.get(clsDescriptor.getName());;
+            result = m_mpDescriptorCache.get(clsDescriptor.getName());
             if (result == null) 
             {
                DataDescriptor descriptor;
                
                descriptor = m_descriptorClassFactory.createInstance(clsDescriptor);
                initialize(descriptor);
+               // The descriptor is cached using its own class name by the 
+               // initialize method but the configured class can be different 
+               // from the requested one so remember it also for the requested
+               // class so that next time it is found without any locking
+               m_mpDescriptorCache.putIfAbsent(clsDescriptor.getName(), 
+                                               descriptor);
 
                result = descriptor;
             }
@@ -332,11 +362,25 @@ public class DataDescriptorManager extends OSSObject
     *                while the other ones are descriptors for different views 
     *                for the same data type.
     */
+   @SuppressWarnings("rawtypes") // Same lists as in m_mpDataTypeToDescriptors
    public List<DataDescriptor> getDataDescriptors(
       int iDataType
    )
    {
-      return getDataDescriptors(new Integer(iDataType));
+      List<DataDescriptor>[] arrDataTypeToDescriptors = m_arrDataTypeToDescriptors;
+      List<DataDescriptor>   lstDataDescriptors = null;
+      
+      if ((iDataType >= 0) && (iDataType < arrDataTypeToDescriptors.length))
+      {
+         lstDataDescriptors = arrDataTypeToDescriptors[iDataType];
+      }
+      else if ((iDataType < 0) || (iDataType >= MAX_INDEXED_DATA_TYPE))
+      {
+         // Only data types which are not indexed have to be found in the map
+         lstDataDescriptors = m_mpDataTypeToDescriptors.get(iDataType);
+      }
+      
+      return lstDataDescriptors;
    }
    
    /**
@@ -469,11 +513,13 @@ public class DataDescriptorManager extends OSSObject
          }
          else
          {
-            // Most of these will have only 1 descriptor per data type
-            lstDescriptors = new ArrayList<>(1);
+            // Most of these will have only 1 descriptor per data type and 
+            // they are added only when the application starts
+            lstDescriptors = new CopyOnWriteArrayList<>();
             lstDescriptors.add(descriptor);
             m_mpDataTypeToDescriptors.put(descriptor.getDataTypeAsObject(), 
                                           lstDescriptors);
+            indexDataDescriptors(descriptor.getDataType(), lstDescriptors);
          }
          
          s_logger.log(Level.FINE, "Registered data descriptor {0} - {1} - {2}"
@@ -483,8 +529,55 @@ public class DataDescriptorManager extends OSSObject
                                    descriptor.getDisplayableViewName(), 
                                    descriptor.getClass().getName()});
       }
+      if (GlobalConstants.ERROR_CHECKING)
+      {
+         assert descriptor.getViewName() != null 
+                : "Data descriptor has to define data type view.";
+      }
       m_mpDataTypeViews.put(descriptor.getViewName(), 
                             descriptor.getDataTypeAsObject());
       m_mpDescriptorCache.put(descriptor.getClass().getName(), descriptor);
    }
+   
+   /**
+    * Add list of data descriptors for the specified data type to the array 
+    * indexed by the data type. The array is replaced rather than modified so 
+    * that it can be read without any locking.
+    * 
+    * @param iDataType - data type of the data descriptors
+    * @param lstDescriptors - list of data descriptors for the data type
+    */
+   @SuppressWarnings("rawtypes") // Same lists as in m_mpDataTypeToDescriptors
+   protected void indexDataDescriptors(
+      int                  iDataType,
+      List<DataDescriptor> lstDescriptors
+   )
+   {
+      if ((iDataType >= 0) && (iDataType < MAX_INDEXED_DATA_TYPE))
+      {
+         List<DataDescriptor>[] arrOldDescriptors = m_arrDataTypeToDescriptors;
+         List<DataDescriptor>[] arrNewDescriptors;
+         
+         arrNewDescriptors = createDescriptorsArray(
+                                Math.max(arrOldDescriptors.length, iDataType + 1));
+         System.arraycopy(arrOldDescriptors, 0, arrNewDescriptors, 0, 
+                          arrOldDescriptors.length);
+         arrNewDescriptors[iDataType] = lstDescriptors;
+         m_arrDataTypeToDescriptors = arrNewDescriptors;
+      }
+   }
+   
+   /**
+    * Create new array of lists of data descriptors.
+    * 
+    * @param iLength - length of the array
+    * @return List<DataDescriptor>[] - new array
+    */
+   @SuppressWarnings({"unchecked", "rawtypes"})
+   private static List<DataDescriptor>[] createDescriptorsArray(
+      int iLength
+   )
+   {
+      return (List<DataDescriptor>[])new List<?>[iLength];
+   }
 }
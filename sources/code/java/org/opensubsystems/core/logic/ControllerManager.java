@@ -22,6 +22,8 @@ package org.opensubsystems.core.logic;
 import java.rmi.RemoteException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.logging.Logger;
 import java.util.logging.Level;
 
@@ -49,7 +51,7 @@ public class ControllerManager extends OSSObject
    /**
     * Lock used in synchronized sections.
     */
-   private static final String IMPL_LOCK = "IMPL_LOCK";
+   private static final Object IMPL_LOCK = new Object();
 
    // Attributes ///////////////////////////////////////////////////////////////
    
@@ -60,9 +62,19 @@ public class ControllerManager extends OSSObject
    
    /**
     * Cache where already instantiated controllers will be cached. We can 
-    * cache them since the controllers should be reentrant.
+    * cache them since the controllers should be reentrant. Only controllers,
+    * which were fully initialized, are in this cache so that they can be found 
+    * without any locking.
     */
-   private final Map<String, StatelessController> m_mpControllerCache; 
+   private final ConcurrentMap<String, StatelessController> m_mpControllerCache; 
+   
+   /**
+    * Controllers, which were created but are still being initialized. Their 
+    * initialization may request controller of the same type and therefore the
+    * controller has to be available to the thread, which initializes it. This
+    * map can be accessed only while holding lock on m_mpControllerCache.
+    */
+   private final Map<String, StatelessController> m_mpInitializingControllers; 
    
    // Cached values ////////////////////////////////////////////////////////////
 
@@ -74,7 +86,7 @@ public class ControllerManager extends OSSObject
    /**
     * Reference to the instance actually in use.
     */
-   private static ControllerManager s_defaultInstance;
+   private static volatile ControllerManager s_defaultInstance;
 
    // Constructors /////////////////////////////////////////////////////////////
 
@@ -85,7 +97,8 @@ public class ControllerManager extends OSSObject
    )
    {
       m_controllerClassFactory = new ControllerClassFactory();
-      m_mpControllerCache = new HashMap<>();
+      m_mpControllerCache = new ConcurrentHashMap<>();
+      m_mpInitializingControllers = new HashMap<>();
    }
    
    // Logic ////////////////////////////////////////////////////////////////////
@@ -191,25 +204,42 @@ public class ControllerManager extends OSSObject
       {
          synchronized (m_mpControllerCache)
          {
-            // TODO: Improve: This is suppose to be
-            // control = m_controllerClassFactory.createInstance(clsController);
-            // but I am getting compiler error.
-            control = m_controllerClassFactory.createInstance(clsController.getName());
-            // First cache the created instance and only then call the 
-            // constructor() in case there is some circular reference
-            // which would resolve to the controller of the same type
-            m_mpControllerCache.put(clsController.getName(), control);
-            // Initialize the object
-            try
+            // Check again since other thread might have created the controller
+            // while we were waiting for the lock and only one instance should 
+            // be ever created
+            control = m_mpControllerCache.get(clsController.getName());
+            if (control == null)
             {
-               control.constructor();
+               control = m_mpInitializingControllers.get(clsController.getName());
             }
-            catch (RemoteException rExc)
+            if (control == null)
             {
-               // We cannot propagate this exception otherwise XDoclet would generate 
-               // the local interface incorrectly since it would include the declared
-               // RemoteException in it (to propagate we would have to declare it)
-               throw new OSSInternalErrorException("Remote error occurred", rExc);
+               // TODO: Improve: This is suppose to be
+               // control = m_controllerClassFactory.createInstance(clsController);
+               // but I am getting compiler error.
+               control = m_controllerClassFactory.createInstance(clsController.getName());
+               // First remember the created instance and only then call the 
+               // constructor() in case there is some circular reference
+               // which would resolve to the controller of the same type
+               m_mpInitializingControllers.put(clsController.getName(), control);
+               // Initialize the object
+               try
+               {
+                  control.constructor();
+               }
+               catch (RemoteException rExc)
+               {
+                  // We cannot propagate this exception otherwise XDoclet would generate 
+                  // the local interface incorrectly since it would include the declared
+                  // RemoteException in it (to propagate we would have to declare it)
+                  throw new OSSInternalErrorException("Remote error occurred", rExc);
+               }
+               finally
+               {
+                  m_mpInitializingControllers.remove(clsController.getName());
+               }
+               // Only now the controller can be used by other threads
+               m_mpControllerCache.put(clsController.getName(), control);
             }
          }
       }
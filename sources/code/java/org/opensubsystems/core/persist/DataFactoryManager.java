@@ -19,8 +19,8 @@
 
 package org.opensubsystems.core.persist;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.logging.Logger;
 import java.util.logging.Level;
 
@@ -50,7 +50,7 @@ public class DataFactoryManager extends OSSObject
    /**
     * Lock used in synchronized sections.
     */
-   private static final String IMPL_LOCK = "IMPL_LOCK";
+   private static final Object IMPL_LOCK = new Object();
 
    // Attributes ///////////////////////////////////////////////////////////////
    
@@ -62,9 +62,11 @@ public class DataFactoryManager extends OSSObject
    /**
     * Cache where already instantiated data factories will be cached. We can 
     * cache them since data factories should be reentrant. Key is the data 
-    * factory interface class, value is the data factory instance.
+    * factory interface class, value is the data factory instance. The map is 
+    * concurrent so that the factories, which were already created, can be 
+    * found without any locking.
     */
-   private final Map<String, DataFactory> m_mpClassFactoryCache; 
+   private final ConcurrentMap<String, DataFactory> m_mpClassFactoryCache; 
    
    /**
     * Cache where already instantiated data factories will be cached. We can 
@@ -77,7 +79,7 @@ public class DataFactoryManager extends OSSObject
     * are constructed ahead of the time, we can create mapping between the data
     * type view and the factory instances.
     */
-   private final Map<String, DataFactory> m_mpViewFactoryCache; 
+   private final ConcurrentMap<String, DataFactory> m_mpViewFactoryCache; 
    
    // Cached values ////////////////////////////////////////////////////////////
 
@@ -89,7 +91,7 @@ public class DataFactoryManager extends OSSObject
    /**
     * Reference to the instance actually in use.
     */
-   private static DataFactoryManager s_defaultInstance;
+   private static volatile DataFactoryManager s_defaultInstance;
 
    // Constructors /////////////////////////////////////////////////////////////
 
@@ -100,8 +102,8 @@ public class DataFactoryManager extends OSSObject
    )
    {
       m_factoryClassFactory = new DatabaseFactoryClassFactory();
-      m_mpClassFactoryCache = new HashMap<>();
-      m_mpViewFactoryCache  = new HashMap<>();
+      m_mpClassFactoryCache = new ConcurrentHashMap<>();
+      m_mpViewFactoryCache  = new ConcurrentHashMap<>();
    }
    
    /**
@@ -157,11 +159,14 @@ public class DataFactoryManager extends OSSObject
          // Synchronize just for the creation
          synchronized (IMPL_LOCK)
          {
-            ClassFactory<DataFactoryManager> cf;
-            
-            cf = new ClassFactory<>(DataFactoryManager.class);
-            setManagerInstance(cf.createInstance(DataFactoryManager.class, 
-                                                 DataFactoryManager.class));
+            if (s_defaultInstance == null)
+            {
+               ClassFactory<DataFactoryManager> cf;
+               
+               cf = new ClassFactory<>(DataFactoryManager.class);
+               setManagerInstance(cf.createInstance(DataFactoryManager.class, 
+                                                    DataFactoryManager.class));
+            }
          }   
       }
       
@@ -216,39 +221,46 @@ public class DataFactoryManager extends OSSObject
       {
          synchronized (m_mpClassFactoryCache)
          {
-            // TODO: Improve: This is suppose to be
-            // factory = m_factoryClassFactory.createInstance(clsDataFactory);
-            // but I am getting compiler error.
-            factory = m_factoryClassFactory.createInstance(clsDataFactory.getName());
-            // Use name and not the instance as a key since if the class is loaded
-            // through different class loader, it wouldn't match
-            m_mpClassFactoryCache.put(clsDataFactory.getName(), factory);
-         }
-         synchronized (m_mpViewFactoryCache)
-         {
-            DataFactory existingFactory;
-            String      strViewName;
-            
-            strViewName = factory.getDataDescriptor().getViewName();
-            existingFactory = m_mpViewFactoryCache.get(strViewName); 
-            if ((existingFactory != null)
-               && (!existingFactory.getClass().getName().equals(
-                     factory.getClass().getName())))
-            {
-               throw new OSSInternalErrorException(
-                  "There is already an existing data factory cached for the"
-                  + " data type view " + strViewName
-                  + ". The existing data factory class is "
-                  + existingFactory.getClass().getName()
-                  + ". The new data factory class is "
-                  + factory.getClass().getName());
-            }
-            else
+            // Check again since other thread might have created the factory 
+            // while we were waiting for the lock and only one instance should 
+            // be ever created
+            factory = m_mpClassFactoryCache.get(clsDataFactory.getName());
+            if (factory == null)
             {
-               // Once cached we can retrieve it using getFactoryInstance
+               DataFactory existingFactory;
+               String      strViewName;
+               
+               // TODO: Improve: This is suppose to be
+               // factory = m_factoryClassFactory.createInstance(clsDataFactory);
+               // but I am getting compiler error.
+               factory = m_factoryClassFactory.createInstance(clsDataFactory.getName());
+               // Use name and not the instance as a key since if the class is 
+               // loaded through different class loader, it wouldn't match
+               m_mpClassFactoryCache.put(clsDataFactory.getName(), factory);
+               
+               strViewName = factory.getDataDescriptor().getViewName();
+               if (GlobalConstants.ERROR_CHECKING)
+               {
+                  assert strViewName != null 
+                         : "Data descriptor has to define data type view.";
+               }
+               // Once cached we can retrieve it using getFactoryInstanceForView
                // It should be cached as soon as the BackendModule instance is
                // created when it is being added to the application
-               m_mpViewFactoryCache.put(strViewName, factory);
+               existingFactory = m_mpViewFactoryCache.putIfAbsent(strViewName, 
+                                                                  factory); 
+               if ((existingFactory != null)
+                  && (!existingFactory.getClass().getName().equals(
+                        factory.getClass().getName())))
+               {
+                  throw new OSSInternalErrorException(
+                     "There is already an existing data factory cached for the"
+                     + " data type view " + strViewName
+                     + ". The existing data factory class is "
+                     + existingFactory.getClass().getName()
+                     + ". The new data factory class is "
+                     + factory.getClass().getName());
+               }
             }
          }
       }
@@ -19,6 +19,8 @@
 
 package org.opensubsystems.core.persist;
 
+import java.util.Collection;
+
 import org.opensubsystems.core.data.ModifiableDataObject;
 import org.opensubsystems.core.error.OSSException;
 
@@ -40,4 +42,18 @@ public interface ModifiableDataFactory extends BasicDataFactory
    ModifiableDataObject save(
       ModifiableDataObject data
    ) throws OSSException;
+
+   /**
+    * Save collection of data objects. This method is explicitly defined to 
+    * allow optimized handling of bulk updates. The saved data objects are 
+    * updated with their new modification time.
+    *
+    * @param colDataObject - collection of data objects that will be saved
+    * @return int - number of saved data items
+    * @throws OSSException - an error while saving data, e.g. when some of the
+    *                        data were meanwhile modified by somebody else
+    */
+   int save(
+      Collection<ModifiableDataObject> colDataObject
+   ) throws OSSException;
 }
@@ -163,6 +163,16 @@ public interface Database
     */
    int getBatchSize();
 
+   /**
+    * Get the default value specifying how many rows should be fetched from the
+    * database at once when the results of a query are streamed rather than 
+    * loaded all at once.
+    * 
+    * @return int - fetch size to set on statements, which stream results of 
+    *               a query, see Statement.setFetchSize
+    */
+   int getFetchSize();
+
    /**
     * Find out if database (driver) allows to call methods such as absolute() 
     * or last() for the retrieved result sets.
@@ -232,6 +242,19 @@ public interface Database
    boolean hasRangeSupport(
    );
 
+   /**
+    * Check if the database can return keys generated for data inserted using 
+    * JDBC batch. If it can, multiple data objects can be inserted using single
+    * batch and the values generated for them can be fetched using method 
+    * fetchGeneratedValues. The statement used to insert the data has to be 
+    * prepared with Statement.RETURN_GENERATED_KEYS flag in such case.
+    * 
+    * @return boolean - true if the keys generated by batched inserts can be 
+    *                   retrieved
+    */
+   boolean hasBatchGeneratedKeysSupport(
+   );
+
    /**
     * Test if the specified query invokes stored procedure or if it is just 
     * a regular prepared statement.
@@ -274,6 +297,34 @@ public interface Database
    ) throws SQLException,
             OSSException;
    
+   /**
+    * Fetch from the database the generated ids and generated creation and 
+    * optionally modification timestamps for data objects inserted using single
+    * batch. This method can be used only if hasBatchGeneratedKeysSupport 
+    * returns true.
+    * 
+    * Note: Since the caller created the prepared statement, the caller is
+    * responsible for its closing.
+    *  
+    * @param dbConnection - connection to use to access the database
+    * @param insertStatement - statement which was used to insert the data and
+    *                          which was prepared to return generated keys. The
+    *                          batch has to be already executed.
+    * @param strTableName - name of the table where the data were inserted
+    * @param lstData - data objects inserted by the batch in the same order in 
+    *                  which they were added to the batch
+    * @throws SQLException - an error has occurred
+    * @throws OSSException - an error has occurred
+    * @see #hasBatchGeneratedKeysSupport
+    */
+   void fetchGeneratedValues(
+      Connection                      dbConnection,
+      PreparedStatement               insertStatement,
+      String                          strTableName,
+      List<? extends BasicDataObject> lstData
+   ) throws SQLException,
+            OSSException;
+   
    /**
     * Update the data, check for  errors and fetch from the database the 
     * generated modification timestamps for the updated data object.
@@ -305,6 +356,36 @@ public interface Database
    ) throws SQLException,
             OSSException;
 
+   /**
+    * Check the update counts returned by batch, which updated multiple data 
+    * objects, for errors and fetch from the database the generated 
+    * modification timestamps for all data objects updated by the batch at 
+    * once. This method cannot be used if the data were updated using stored 
+    * procedure, which returns the generated values as its result. 
+    * 
+    * Note: If the driver doesn't know how many records were updated by the 
+    * statement (it returns Statement.SUCCESS_NO_INFO) the update is assumed
+    * to be successful since it is not possible to detect if the data were 
+    * meanwhile modified by somebody else.
+    * 
+    * @param strDataName - name of the data object
+    * @param dbConnection - connection to use to access the database
+    * @param arrUpdateCounts - update counts returned by the executed batch
+    * @param strTableName - name of the table
+    * @param lstData - data objects updated by the batch in the same order in 
+    *                  which they were added to the batch
+    * @throws SQLException - an error has occurred
+    * @throws OSSException - an error has occurred
+    */
+   void checkAndFetchUpdatedValues(
+      String                               strDataName,
+      Connection                           dbConnection,
+      int[]                                arrUpdateCounts,
+      String                               strTableName,
+      List<? extends ModifiableDataObject> lstData
+   ) throws SQLException,
+            OSSException;
+
    /**
     * Because there is limitation for sql statement length and in() expression 
     * can contain lot of members, this function will construct list of strings 
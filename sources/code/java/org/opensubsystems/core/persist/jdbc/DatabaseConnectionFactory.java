@@ -146,6 +146,24 @@ public interface DatabaseConnectionFactory
       String  strPassword
    ) throws OSSException;
 
+   /**
+    * Get connection to a database which will be used only to read data. If the
+    * default data source has any replicas and no transaction is in progress, 
+    * the connection is requested from the replica with the least connections 
+    * currently in use unless the current session modified data only recently 
+    * and the replicas may not contain these modifications yet. Otherwise the 
+    * connection is requested from the default data source. The connection has 
+    * to be explicitly returned using returnConnection most likely in the 
+    * finally clause. 
+    *
+    * @return Connection - connection to a database with autocommit set to 
+    *                      true unless transaction is in progress, never null
+    * @see #returnConnection
+    * @throws OSSException - an error has occurred
+    */
+   Connection requestReadConnection(
+   ) throws OSSException;
+
    /**
     * Get connection to a database as configured by the default data source but 
     * using administrative credentials. The connection has to be explicitly 
@@ -47,7 +47,7 @@ public class DatabaseSchemaManager extends OSSObject
    /**
     * Lock used in synchronized sections.
     */
-   private static final String IMPL_LOCK = "IMPL_LOCK";
+   private static final Object IMPL_LOCK = new Object();
 
    // Attributes ///////////////////////////////////////////////////////////////
    
@@ -72,7 +72,7 @@ public class DatabaseSchemaManager extends OSSObject
    /**
     * Reference to the instance actually in use.
     */
-   private static DatabaseSchemaManager s_defaultInstance;
+   private static volatile DatabaseSchemaManager s_defaultInstance;
 
    // Constructors /////////////////////////////////////////////////////////////
 
@@ -20,8 +20,21 @@
 package org.opensubsystems.core.persist.jdbc.connectionpool.dbcp;
 
 import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import org.apache.commons.dbcp.ConnectionFactory;
+import org.apache.commons.dbcp.DelegatingConnection;
 import org.apache.commons.dbcp.DriverManagerConnectionFactory;
 import org.apache.commons.dbcp.PoolableConnectionFactory;
 import org.apache.commons.pool.KeyedObjectPoolFactory;
@@ -31,11 +44,15 @@ import org.apache.commons.pool.impl.GenericObjectPool;
 import org.opensubsystems.core.error.OSSDatabaseAccessException;
 import org.opensubsystems.core.error.OSSException;
 import org.opensubsystems.core.persist.jdbc.Database;
+import org.opensubsystems.core.persist.jdbc.connectionpool.impl.ConnectionPoolWarmer;
 import org.opensubsystems.core.persist.jdbc.connectionpool.impl.PooledDatabaseConnectionFactoryImpl;
 import org.opensubsystems.core.persist.jdbc.connectionpool.impl.PooledDatabaseConnectionFactorySetupReader;
+import org.opensubsystems.core.persist.jdbc.impl.DatabaseConnectionStatistics;
 import org.opensubsystems.core.persist.jdbc.impl.DatabaseImpl;
 import org.opensubsystems.core.persist.jdbc.impl.DatabaseTransactionFactoryImpl;
+import org.opensubsystems.core.util.CallContext;
 import org.opensubsystems.core.util.GlobalConstants;
+import org.opensubsystems.core.util.Log;
 
 /**
  * Implementation of connection pool using Apache Commons DBCP package available
@@ -45,6 +62,30 @@ import org.opensubsystems.core.util.GlobalConstants;
  */
 public class DBCPDatabaseConnectionFactoryImpl extends PooledDatabaseConnectionFactoryImpl
 {
+   // Constants ////////////////////////////////////////////////////////////////
+   
+   /**
+    * How long at most in seconds can the validation of connection by the 
+    * JDBC driver take before it is considered invalid.
+    */
+   public static final int VALIDATION_TIMEOUT = 5;
+
+   // Attributes ///////////////////////////////////////////////////////////////
+   
+   /**
+    * Pools, which created the pooled connections, so that the connections 
+    * can be invalidated in the pool they belong to. Key is the pooled 
+    * connection and value is ObjectPool.
+    */
+   protected Map<Object, ObjectPool<Object>> m_mpConnectionPools;
+   
+   // Cached values ////////////////////////////////////////////////////////////
+
+   /**
+    * Logger for this class
+    */
+   private static Logger s_logger = Log.getInstance(DBCPDatabaseConnectionFactoryImpl.class);
+
    // Constructors /////////////////////////////////////////////////////////////
    
    /**
@@ -67,8 +108,26 @@ public class DBCPDatabaseConnectionFactoryImpl extends PooledDatabaseConnectionF
    ) 
    {
       super(transactionFactory);
+      
+      m_mpConnectionPools = new ConcurrentHashMap<>();
    }
    
+   // Configuration methods ////////////////////////////////////////////////////
+   
+   /**
+    * The pool caches the prepared statements for the whole life of the real 
+    * connection as configured by pool.pstmtcachesize so there is no need to 
+    * cache them again while the connection is issued.
+    * 
+    * @return int - always NO_STATEMENT_CACHE
+    */
+   @Override
+   public int getStatementCacheSize(
+   )
+   {
+      return NO_STATEMENT_CACHE;
+   }
+
    // Helper methods ///////////////////////////////////////////////////////////
 
    /**
@@ -79,12 +138,32 @@ public class DBCPDatabaseConnectionFactoryImpl extends PooledDatabaseConnectionF
       ConnectionPoolDefinition connectionpool
    ) throws OSSException
    {
-      Connection conReturn;
+      Connection    conReturn;
+      ObjectPool<?> connectionPool;
       
+      connectionPool = (ObjectPool<?>)connectionpool.getConnectionPool();
+      if ((connectionPool.getNumIdle() == 0) 
+         && (connectionPool instanceof GenericObjectPool)
+         && (connectionPool.getNumActive() 
+               >= ((GenericObjectPool<?>)connectionPool).getMaxActive()))
+      {
+         connectionpool.getStatistics().poolExhausted();
+      }
       try
       {
-         conReturn = (Connection)((ObjectPool)connectionpool.getConnectionPool())
-                                                                .borrowObject();
+         conReturn = (Connection)connectionPool.borrowObject();
+      }
+      catch (OSSException ossExc)
+      {
+         // The pool has rejected the request
+         throw ossExc;
+      }
+      catch (NoSuchElementException nseExc)
+      {
+         // This is how GenericObjectPool signals that it has timed out
+         connectionpool.getStatistics().requestTimedOut();
+         throw new OSSDatabaseAccessException(
+                      "Cannot get database connection from pool.", nseExc);
       }
       catch (Exception eExc)
       {
@@ -108,8 +187,64 @@ public class DBCPDatabaseConnectionFactoryImpl extends PooledDatabaseConnectionF
    ) throws OSSException
    {
       // DBCP doesn't provide any way how to get a connection for a specific 
-      // user so just get a nonpooled connection
-      return getNonPooledConnection(connectionpool, strUser, strPassword);
+      // user so maintain separate pool for each user
+      return getUserPooledConnection(connectionpool, strUser, strPassword);
+   }
+
+   /**
+    * The pool can destroy connection, which is still in use.
+    * 
+    * @return boolean - always true
+    */
+   @Override
+   protected boolean canInvalidateConnection(
+   )
+   {
+      return true;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   protected void invalidateConnection(
+      Connection                   cntDBConnection,
+      DatabaseConnectionDefinition dataSource
+   )
+   {
+      ObjectPool<Object> connectionPool;
+      
+      connectionPool = m_mpConnectionPools.get(cntDBConnection);
+      if (connectionPool != null)
+      {
+         // Closing the connection would return it to the pool as if it was
+         // healthy while the code which holds it could still use it so let
+         // the pool destroy it instead
+         try
+         {
+            connectionPool.invalidateObject(cntDBConnection);
+         }
+         catch (Exception eExc)
+         {
+            s_logger.log(Level.WARNING, "Invalidation of connection has"
+                         + " failed.", eExc);
+         }
+      }
+      else
+      {
+         super.invalidateConnection(cntDBConnection, dataSource);
+      }
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   protected int getIdleConnectionCount(
+      ConnectionPoolDefinition connectionpool
+   )
+   {
+      return ((ObjectPool)connectionpool.getConnectionPool()).getNumIdle();
    }
 
    /**
@@ -131,10 +266,21 @@ public class DBCPDatabaseConnectionFactoryImpl extends PooledDatabaseConnectionF
       // the pool and PoolingDataSource doesn't.
       // This code was inspired by method setupDriver from 
       // ManualPoolingDriverExample.java in commons-dbcp package v 1.6
-      ObjectPool                connectionPool;
+      ObjectPool<Object>        connectionPool;
       ConnectionFactory         connectionFactory;
       PoolableConnectionFactory poolableConnectionFactory;
       
+      final DatabaseConnectionStatistics statistics 
+         = initializeStatistics(strConnectionPoolName);
+      // Key is the pooled connection and value is time when it was created
+      final Map<Object, Long> mpCreationTimestamps = new ConcurrentHashMap<>();
+      // Key is the pooled connection and value is time when it was last 
+      // returned to the pool
+      final Map<Object, Long> mpReturnTimestamps = new ConcurrentHashMap<>();
+      // Connections created in parallel during warm up, which the pool should
+      // take instead of creating new ones
+      final Queue<Object> preloadedConnections = new ConcurrentLinkedQueue<>();
+      
       PooledDatabaseConnectionFactorySetupReader setupReader 
           = new PooledDatabaseConnectionFactorySetupReader(
                    strConnectionPoolName, database.getDatabaseTypeIdentifier());
@@ -149,6 +295,8 @@ public class DBCPDatabaseConnectionFactoryImpl extends PooledDatabaseConnectionF
                PooledDatabaseConnectionFactorySetupReader.DBPOOL_CAN_GROW).booleanValue();
       long lMaxWaitTimeForConnection = setupReader.getLongParameterValue(
                PooledDatabaseConnectionFactorySetupReader.DBPOOL_WAIT_PERIOD).longValue();
+      final int iMaxWaitingCount = setupReader.getIntegerParameterValue(
+               PooledDatabaseConnectionFactorySetupReader.DBPOOL_MAX_WAITING).intValue();
       boolean bValidateOnBorrow = setupReader.getBooleanParameterValue(
                PooledDatabaseConnectionFactorySetupReader.DBPOOL_VALIDATE_BORROW).booleanValue();
       boolean bValidateOnReturn = setupReader.getBooleanParameterValue(
@@ -164,11 +312,14 @@ public class DBCPDatabaseConnectionFactoryImpl extends PooledDatabaseConnectionF
       int iPreparedStatementCacheSize = setupReader.getIntegerParameterValue(
                PooledDatabaseConnectionFactorySetupReader.DBPOOL_PREPSTATEMENT_CACHE_SIZE
                   ).intValue();
+      final int iCheckLevel = setupReader.getCheckLevel();
+      final long lValidateIdleTime = setupReader.getLongParameterValue(
+               PooledDatabaseConnectionFactorySetupReader.DBPOOL_VALIDATE_IDLE_TIME).longValue();
       
       // First, we'll need a ObjectPool that serves as the actual pool of 
       // connections. We'll use a GenericObjectPool instance, although
       // any ObjectPool implementation will suffice.
-      connectionPool = new GenericObjectPool(
+      connectionPool = new GenericObjectPool<Object>(
                               null, // factory will be specified below
                               iMaximalPoolSize,
                               bCanGrow ? GenericObjectPool.WHEN_EXHAUSTED_GROW
@@ -184,8 +335,60 @@ public class DBCPDatabaseConnectionFactoryImpl extends PooledDatabaseConnectionF
                               lTimeBetweenEvictionRunsMillis,
                               iNumTestsPerEvictionRun,
                               lMinEvictableIdleTimeMillis,
-                              bValidateOnIdle);
-
+                              bValidateOnIdle)
+      {
+         /**
+          * Number of threads currently waiting for connection.
+          */
+         private AtomicInteger m_iWaitingCount = new AtomicInteger(0);
+         
+         @Override
+         public Object borrowObject(
+         ) throws Exception
+         {
+            Object connection;
+            
+            // GenericObjectPool cannot limit the number of waiting threads and
+            // it can wait only for the same time for all of them so fail 
+            // before the thread starts to wait if it shouldn't wait at all
+            if ((getNumIdle() == 0) && (getNumActive() >= getMaxActive())
+               && (getWhenExhaustedAction() == WHEN_EXHAUSTED_BLOCK))
+            {
+               long lDeadline = CallContext.getInstance().getDeadline();
+               
+               try
+               {
+                  if (((iMaxWaitingCount > 0) 
+                        && (m_iWaitingCount.incrementAndGet() > iMaxWaitingCount))
+                     || ((lDeadline != CallContext.NO_DEADLINE)
+                        && (lDeadline <= System.currentTimeMillis())))
+                  {
+                     statistics.requestRejected();
+                     throw new OSSDatabaseAccessException(
+                                  "Cannot get database connection from pool" 
+                                  + " since all connections are in use and too"
+                                  + " many requests are already waiting or the"
+                                  + " deadline of the request has passed.");
+                  }
+                  connection = super.borrowObject();
+               }
+               finally
+               {
+                  if (iMaxWaitingCount > 0)
+                  {
+                     m_iWaitingCount.decrementAndGet();
+                  }
+               }
+            }
+            else
+            {
+               connection = super.borrowObject();
+            }
+            
+            return connection;
+         }
+      };
+      final ObjectPool<Object> ownerPool = connectionPool;
       
       // Next, we'll create a ConnectionFactory that the pool will use to 
       // create Connections. I am using DriverManagerConnectionFactory instead 
@@ -209,6 +412,8 @@ public class DBCPDatabaseConnectionFactoryImpl extends PooledDatabaseConnectionF
       // Now we'll create the PoolableConnectionFactory, which wraps
       // the "real" Connections created by the ConnectionFactory with
       // the classes that implement the pooling functionality.
+      // The factory is extended so that we can record in the statistics what
+      // the pool does with the connections
       poolableConnectionFactory = new PoolableConnectionFactory(
                                          connectionFactory,
                                          connectionPool,
@@ -216,19 +421,225 @@ public class DBCPDatabaseConnectionFactoryImpl extends PooledDatabaseConnectionF
                                          DatabaseImpl.getInstance().getConnectionTestStatement(),
                                          false, // not read-only connection
                                          false, // Default auto commit is false
-                                         iTransactionIsolation);
+                                         iTransactionIsolation)
+      {
+         /**
+          * How thoroughly to validate the connections. It is changed when the
+          * JDBC driver cannot validate the connections itself.
+          */
+         private volatile int m_iCheckLevel = iCheckLevel;
+         
+         @Override
+         public Object makeObject(
+         ) throws Exception
+         {
+            long   lStartTime = System.nanoTime();
+            Object connection;
+            Long   lCreationTimestamp;
+            
+            connection = preloadedConnections.poll();
+            if (connection == null)
+            {
+               connection = super.makeObject();
+               lCreationTimestamp = System.currentTimeMillis();
+               mpCreationTimestamps.put(connection, lCreationTimestamp);
+               statistics.connectionCreated(System.nanoTime() - lStartTime, 
+                                            lCreationTimestamp);
+            }
+            m_mpConnectionPools.put(connection, ownerPool);
+            
+            return connection;
+         }
+
+         @Override
+         public void destroyObject(
+            Object obj
+         ) throws Exception
+         {
+            Long lCreationTimestamp;
+            
+            try
+            {
+               super.destroyObject(obj);
+            }
+            finally
+            {
+               m_mpConnectionPools.remove(obj);
+               mpReturnTimestamps.remove(obj);
+               lCreationTimestamp = mpCreationTimestamps.remove(obj);
+               if (lCreationTimestamp != null)
+               {
+                  statistics.connectionDestroyed(lCreationTimestamp);
+               }
+            }
+         }
+
+         @Override
+         public void passivateObject(
+            Object obj
+         ) throws Exception
+         {
+            super.passivateObject(obj);
+            mpReturnTimestamps.put(obj, System.currentTimeMillis());
+         }
+         
+         @Override
+         public boolean validateObject(
+            Object obj
+         )
+         {
+            long    lStartTime = System.nanoTime();
+            boolean bValid;
+            Long    lReturnTimestamp;
+            
+            lReturnTimestamp = mpReturnTimestamps.get(obj);
+            if ((lValidateIdleTime > 0) && (lReturnTimestamp != null)
+               && (System.currentTimeMillis() - lReturnTimestamp 
+                  <= lValidateIdleTime))
+            {
+               // The connection was used recently so it should be still valid
+               bValid = true;
+            }
+            else
+            {
+               bValid = validateConnection((DelegatingConnection)obj);
+               statistics.connectionValidated(System.nanoTime() - lStartTime, 
+                                              bValid);
+            }
+            
+            return bValid;
+         }
+         
+         /**
+          * Validate connection using the configured check level.
+          * 
+          * @param connection - connection to validate
+          * @return boolean - true if the connection is valid
+          */
+         private boolean validateConnection(
+            DelegatingConnection connection
+         )
+         {
+            boolean bValid;
+            
+            if (m_iCheckLevel == PooledDatabaseConnectionFactorySetupReader.DBPOOL_CHECK_LEVEL_STATEMENT)
+            {
+               bValid = super.validateObject(connection);
+            }
+            else
+            {
+               try
+               {
+                  bValid = !connection.isClosed();
+                  if ((bValid) 
+                     && (m_iCheckLevel == PooledDatabaseConnectionFactorySetupReader.DBPOOL_CHECK_LEVEL_DRIVER))
+                  {
+                     bValid = connection.getInnermostDelegate().isValid(
+                                                         VALIDATION_TIMEOUT);
+                  }
+               }
+               catch (SQLException sqleExc)
+               {
+                  s_logger.log(Level.FINE, "Connection is not valid.", 
+                               sqleExc);
+                  bValid = false;
+               }
+               catch (AbstractMethodError ameExc)
+               {
+                  // The driver was written before JDBC 4 so use the test 
+                  // statement from now on 
+                  s_logger.log(Level.WARNING, "JDBC driver doesn't support"
+                               + " Connection.isValid, the test statement will"
+                               + " be used instead.");
+                  m_iCheckLevel = PooledDatabaseConnectionFactorySetupReader.DBPOOL_CHECK_LEVEL_STATEMENT;
+                  bValid = super.validateObject(connection);
+               }
+            }
+            
+            return bValid;
+         }
+      };
 
       // PoolableConnectionFactory doesn't support the initialSize attribute of
-      // DBCP so I have replicated the code from BasicDataSource v1.37 here
+      // DBCP so I have replicated the code from BasicDataSource v1.37 here.
+      // The pool creates connections while it holds its lock so create and
+      // validate them in parallel first and then just let the pool take them
+      final PoolableConnectionFactory factory = poolableConnectionFactory;
+      final ConnectionPoolWarmer      warmer = new ConnectionPoolWarmer(
+                                                  strConnectionPoolName, 
+                                                  setupReader);
+      List<Object>                    lstConnections = new ArrayList<>(
+                                                          iInitialPoolSize);
+      
       try 
       {
-         for (int iIndex = 0; iIndex < iInitialPoolSize; iIndex++) 
+         warmer.warmUp(iInitialPoolSize, new Callable<Object>()
+         {
+            @Override
+            public Object call(
+            ) throws Exception
+            {
+               Object connection = factory.makeObject();
+               
+               try
+               {
+                  if (factory.validateObject(connection))
+                  {
+                     warmer.prepareStatements((Connection)connection);
+                  }
+                  else
+                  {
+                     // The database may not be initialized yet so do not 
+                     // fail, the pool will create the connection later
+                     s_logger.log(Level.FINE, "Discarding initial connection"
+                                  + " which is not valid.");
+                     factory.destroyObject(connection);
+                     connection = null;
+                  }
+               }
+               catch (Exception | Error exc)
+               {
+                  factory.destroyObject(connection);
+                  throw exc;
+               }
+               
+               return connection;
+            }
+         }, lstConnections);
+         
+         preloadedConnections.addAll(lstConnections);
+         // The pool is now responsible for closing the connections it takes
+         lstConnections.clear();
+         while (!preloadedConnections.isEmpty()) 
          {
             connectionPool.addObject();
          }
       } 
       catch (Exception e) 
       {
+         // Close connections which the pool didn't take, the pool closes the 
+         // ones it took
+         lstConnections.addAll(preloadedConnections);
+         preloadedConnections.clear();
+         try
+         {
+            connectionPool.close();
+         }
+         catch (Exception exc)
+         {
+            s_logger.log(Level.FINEST, "Cannot close connection pool.", exc);
+         }
+         for (Object connection : lstConnections)
+         {
+            try
+            {
+               factory.destroyObject(connection);
+            }
+            catch (Exception exc)
+            {
+               s_logger.log(Level.FINEST, "Cannot close connection.", exc);
+            }
+         }
          throw new OSSDatabaseAccessException("Error preloading the connection pool", e);
       }
       
@@ -262,4 +673,60 @@ public class DBCPDatabaseConnectionFactoryImpl extends PooledDatabaseConnectionF
                                               eExc);
       }      
    }
+
+   /**
+    * {@inheritDoc}
+    * 
+    * The sizes of the pool, how long to wait for connections and when to 
+    * validate and evict connections are applied. The limit of waiting threads,
+    * the validation level and how long the connection has to be idle to be 
+    * validated take effect only when the pool is created again.
+    */
+   @Override
+   protected void reconfigureConnectionPool(
+      ConnectionPoolDefinition connectionpool
+   ) throws OSSException
+   {
+      GenericObjectPool<?> connectionPool;
+      
+      PooledDatabaseConnectionFactorySetupReader setupReader 
+          = new PooledDatabaseConnectionFactorySetupReader(
+                   connectionpool.getName(), 
+                   connectionpool.getDatabase().getDatabaseTypeIdentifier());
+
+      int iMinimalPoolSize = setupReader.getIntegerParameterValue(
+               PooledDatabaseConnectionFactorySetupReader.DBPOOL_MIN_SIZE).intValue();
+      int iMaximalPoolSize = setupReader.getIntegerParameterValue(
+               PooledDatabaseConnectionFactorySetupReader.DBPOOL_MAX_SIZE).intValue();
+      boolean bCanGrow = setupReader.getBooleanParameterValue(
+               PooledDatabaseConnectionFactorySetupReader.DBPOOL_CAN_GROW).booleanValue();
+      long lMaxWaitTimeForConnection = setupReader.getLongParameterValue(
+               PooledDatabaseConnectionFactorySetupReader.DBPOOL_WAIT_PERIOD).longValue();
+      boolean bValidateOnBorrow = setupReader.getBooleanParameterValue(
+               PooledDatabaseConnectionFactorySetupReader.DBPOOL_VALIDATE_BORROW).booleanValue();
+      boolean bValidateOnReturn = setupReader.getBooleanParameterValue(
+               PooledDatabaseConnectionFactorySetupReader.DBPOOL_VALIDATE_RETURN).booleanValue();
+      boolean bValidateOnIdle = setupReader.getBooleanParameterValue(
+               PooledDatabaseConnectionFactorySetupReader.DBPOOL_VALIDATE_IDLE).booleanValue();
+      int iNumTestsPerEvictionRun = setupReader.getIntegerParameterValue(
+               PooledDatabaseConnectionFactorySetupReader.DBPOOL_IDLE_CHECK_SIZE).intValue();
+      long lMinEvictableIdleTimeMillis = setupReader.getLongParameterValue(
+               PooledDatabaseConnectionFactorySetupReader.DBPOOL_IDLE_PERIOD).longValue();
+
+      connectionPool = (GenericObjectPool<?>)connectionpool.getConnectionPool();
+      connectionPool.setMaxActive(iMaximalPoolSize);
+      connectionPool.setMaxIdle(iMaximalPoolSize);
+      connectionPool.setMinIdle(iMinimalPoolSize);
+      connectionPool.setWhenExhaustedAction(
+                        bCanGrow ? GenericObjectPool.WHEN_EXHAUSTED_GROW
+                                 : GenericObjectPool.WHEN_EXHAUSTED_BLOCK);
+      connectionPool.setMaxWait(lMaxWaitTimeForConnection);
+      connectionPool.setTestOnBorrow(bValidateOnBorrow);
+      connectionPool.setTestOnReturn(bValidateOnReturn);
+      connectionPool.setTestWhileIdle(bValidateOnIdle);
+      connectionPool.setNumTestsPerEvictionRun(iNumTestsPerEvictionRun);
+      connectionPool.setMinEvictableIdleTimeMillis(lMinEvictableIdleTimeMillis);
+      s_logger.log(Level.CONFIG, "Connection pool {0} reconfigured.", 
+                   connectionpool.getName());
+   }
 }
@@ -0,0 +1,353 @@
+/*
+ * Copyright (C) 2003 - 2016 OpenSubsystems.com/net/org and its owners. All rights reserved.
+ * 
+ * This file is part of OpenSubsystems.
+ *
+ * OpenSubsystems is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+
+package org.opensubsystems.core.persist.jdbc.connectionpool.impl;
+
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.opensubsystems.core.persist.jdbc.impl.DatabaseConnectionStatistics;
+import org.opensubsystems.core.util.GlobalConstants;
+import org.opensubsystems.core.util.LatencyHistogram;
+import org.opensubsystems.core.util.Log;
+import org.opensubsystems.core.util.OSSObject;
+
+/**
+ * Class deciding how many connections should connection pool maintain based
+ * on the observed demand. The pool periodically reports how many connections
+ * are in use and once in a while the sizer evaluates the collected samples
+ * together with the time it took to get connections from the pool during the 
+ * same period. 
+ * 
+ * The size grows when the callers wait for connections longer than the target
+ * wait time while most of the connections are used. The size shrinks when the
+ * callers do not wait and most of the connections are not used for several 
+ * consecutive periods. Requiring several quiet periods before shrinking and
+ * having a gap between the thresholds used to grow and to shrink prevents the
+ * pool from oscillating when the demand fluctuates.
+ * 
+ * The size never goes below the minimal size or above the maximal size of the 
+ * pool. This class is not thread safe with exception of getSize method since 
+ * it is expected that only the housekeeping thread of the pool reports the 
+ * samples.
+ * 
+ * @author bastafidli
+ */
+public class AdaptivePoolSizer extends OSSObject
+{
+   // Constants ////////////////////////////////////////////////////////////////
+   
+   /**
+    * How many samples are collected before the size is evaluated.
+    */
+   public static final int SAMPLES_PER_PERIOD = 10;
+   
+   /**
+    * Percentile of the wait times and utilization samples used to evaluate 
+    * the size.
+    */
+   public static final double EVALUATED_PERCENTILE = 95;
+   
+   /**
+    * Utilization of the pool above which the pool can grow if the callers wait
+    * too long.
+    */
+   public static final double GROW_UTILIZATION = 0.9;
+   
+   /**
+    * How much the pool grows at once.
+    */
+   public static final double GROW_FACTOR = 1.5;
+   
+   /**
+    * Utilization of the pool below which the pool can shrink. 
+    */
+   public static final double SHRINK_UTILIZATION = 0.5;
+   
+   /**
+    * Fraction of the target wait time, which cannot be exceeded for the pool 
+    * to shrink.
+    */
+   public static final double SHRINK_WAIT_RATIO = 0.5;
+   
+   /**
+    * How many consecutive periods the pool has to be underutilized before it 
+    * shrinks.
+    */
+   public static final int SHRINK_PERIOD_COUNT = 3;
+   
+   /**
+    * Utilization the pool should have after it shrinks.
+    */
+   public static final double TARGET_UTILIZATION = 0.75;
+   
+   // Attributes ///////////////////////////////////////////////////////////////
+   
+   /**
+    * Name of the pool used to report changes of the size.
+    */
+   protected String m_strName;
+   
+   /**
+    * The size will never go below this limit.
+    */
+   protected int m_iMinimalSize;
+   
+   /**
+    * The size will never go above this limit.
+    */
+   protected int m_iMaximalSize;
+   
+   /**
+    * Target time in milliseconds the callers should wait for connection.
+    */
+   protected double m_dTargetWait;
+   
+   /**
+    * Statistics of the pool providing the wait times.
+    */
+   protected DatabaseConnectionStatistics m_statistics;
+   
+   /**
+    * Current size of the pool.
+    */
+   protected volatile int m_iSize;
+   
+   /**
+    * Utilization samples collected during the current period.
+    */
+   protected double[] m_arrUtilization;
+   
+   /**
+    * Number of utilization samples collected during the current period.
+    */
+   protected int m_iSampleCount;
+   
+   /**
+    * Counts of wait times at the time of the last evaluation so that only the 
+    * wait times from the last period are evaluated.
+    */
+   protected long[] m_arrLastWaitTimes;
+   
+   /**
+    * How many consecutive periods the pool was underutilized. 
+    */
+   protected int m_iQuietPeriodCount;
+   
+   // Cached values ////////////////////////////////////////////////////////////
+
+   /**
+    * Logger for this class
+    */
+   private static Logger s_logger = Log.getInstance(AdaptivePoolSizer.class);
+   
+   // Constructors /////////////////////////////////////////////////////////////
+   
+   /**
+    * Constructor.
+    * 
+    * @param strName - name of the pool used to report changes of the size
+    * @param iMinimalSize - minimal size of the pool
+    * @param iMaximalSize - maximal size of the pool or 0 if it is not limited
+    * @param iInitialSize - initial size of the pool
+    * @param lTargetWait - target time in milliseconds the callers should wait 
+    *                      for connection
+    * @param statistics - statistics of the pool providing the wait times
+    */
+   public AdaptivePoolSizer(
+      String                       strName,
+      int                          iMinimalSize,
+      int                          iMaximalSize,
+      int                          iInitialSize,
+      long                         lTargetWait,
+      DatabaseConnectionStatistics statistics
+   )
+   {
+      super();
+      
+      if (GlobalConstants.ERROR_CHECKING)
+      {
+         assert statistics != null : "Statistics cannot be null";
+      }
+      
+      m_strName = strName;
+      m_dTargetWait = lTargetWait;
+      m_statistics = statistics;
+      m_iSize = iInitialSize;
+      setLimits(iMinimalSize, iMaximalSize);
+      m_arrUtilization = new double[SAMPLES_PER_PERIOD];
+      m_iSampleCount = 0;
+      m_arrLastWaitTimes = statistics.getWaitTime().getBucketCounts();
+      m_iQuietPeriodCount = 0;
+   }
+   
+   // Logic ////////////////////////////////////////////////////////////////////
+   
+   /**
+    * @return int - how many connections should the pool maintain
+    */
+   public int getSize(
+   )
+   {
+      return m_iSize;
+   }
+   
+   /**
+    * Record how many connections are currently in use and if enough samples
+    * were collected evaluate if the size should change.
+    * 
+    * @param iInUse - number of connections currently in use
+    * @return int - how many connections should the pool maintain
+    */
+   public synchronized int sample(
+      int iInUse
+   )
+   {
+      m_arrUtilization[m_iSampleCount++] = (double)iInUse / m_iSize;
+      if (m_iSampleCount == SAMPLES_PER_PERIOD)
+      {
+         m_iSampleCount = 0;
+         evaluate();
+      }
+      
+      return m_iSize;
+   }
+   
+   /**
+    * Change the limits of the size, for example when the pool was reconfigured.
+    * The current size is adjusted immediately if it is outside of the new 
+    * limits.
+    * 
+    * @param iMinimalSize - minimal size of the pool
+    * @param iMaximalSize - maximal size of the pool or 0 if it is not limited
+    */
+   public final synchronized void setLimits(
+      int iMinimalSize,
+      int iMaximalSize
+   )
+   {
+      // The size is used as a limit for the pool so it cannot be 0
+      m_iMinimalSize = Math.max(1, iMinimalSize);
+      m_iMaximalSize = (iMaximalSize > 0) ? Math.max(iMaximalSize, m_iMinimalSize) 
+                                          : Integer.MAX_VALUE;
+      m_iSize = Math.min(m_iMaximalSize, Math.max(m_iMinimalSize, m_iSize));
+   }
+   
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void toString(
+      StringBuilder sb,
+      int           ind
+   )
+   {
+      append(sb, ind + 0, "AdaptivePoolSizer[");
+      append(sb, ind + 1, "m_strName = ", m_strName);
+      append(sb, ind + 1, "m_iMinimalSize = ", m_iMinimalSize);
+      append(sb, ind + 1, "m_iMaximalSize = ", m_iMaximalSize);
+      append(sb, ind + 1, "m_dTargetWait = ", m_dTargetWait);
+      append(sb, ind + 1, "m_iSize = ", m_iSize);
+      append(sb, ind + 1, "m_iQuietPeriodCount = ", m_iQuietPeriodCount);
+      append(sb, ind + 0, "]");
+   }
+   
+   // Helper methods ///////////////////////////////////////////////////////////
+   
+   /**
+    * Evaluate the samples collected during the last period and adjust the 
+    * size if needed.
+    */
+   protected void evaluate(
+   )
+   {
+      LatencyHistogram waitTimes = m_statistics.getWaitTime();
+      long[]           arrWaitTimes = waitTimes.getBucketCounts();
+      long[]           arrPeriodWaitTimes = new long[arrWaitTimes.length];
+      double[]         arrUtilization;
+      double           dWait;
+      double           dUtilization;
+      int              iNewSize = m_iSize;
+      boolean          bReset = false;
+      
+      for (int iIndex = 0; iIndex < arrWaitTimes.length; iIndex++)
+      {
+         arrPeriodWaitTimes[iIndex] = arrWaitTimes[iIndex] 
+                                      - m_arrLastWaitTimes[iIndex];
+         if (arrPeriodWaitTimes[iIndex] < 0)
+         {
+            bReset = true;
+         }
+      }
+      if (bReset)
+      {
+         // The counts can decrease only if the statistics were reset during 
+         // this period, in which case the current counts are all the wait 
+         // times recorded since the reset
+         s_logger.log(Level.FINEST, "Wait times of pool {0} were reset.", m_strName);
+         System.arraycopy(arrWaitTimes, 0, arrPeriodWaitTimes, 0, 
+                          arrWaitTimes.length);
+      }
+      m_arrLastWaitTimes = arrWaitTimes;
+      dWait = waitTimes.getPercentile(arrPeriodWaitTimes, EVALUATED_PERCENTILE);
+      
+      arrUtilization = Arrays.copyOf(m_arrUtilization, m_arrUtilization.length);
+      Arrays.sort(arrUtilization);
+      dUtilization = arrUtilization[(int)Math.ceil(
+                        arrUtilization.length * EVALUATED_PERCENTILE / 100) - 1];
+      
+      if ((dWait > m_dTargetWait) && (dUtilization >= GROW_UTILIZATION))
+      {
+         m_iQuietPeriodCount = 0;
+         iNewSize = (int)Math.min(m_iMaximalSize, 
+                                  Math.max(m_iSize + 1L, 
+                                           (long)Math.ceil(m_iSize * GROW_FACTOR)));
+      }
+      else if ((dWait <= m_dTargetWait * SHRINK_WAIT_RATIO) 
+              && (dUtilization < SHRINK_UTILIZATION))
+      {
+         m_iQuietPeriodCount++;
+         if (m_iQuietPeriodCount >= SHRINK_PERIOD_COUNT)
+         {
+            m_iQuietPeriodCount = 0;
+            // Shrink so that the pool is reasonably utilized but do not shrink
+            // more than to a half at once
+            iNewSize = Math.max(m_iMinimalSize, 
+                                Math.max(m_iSize / 2,  
+                                         (int)Math.ceil(dUtilization * m_iSize 
+                                                        / TARGET_UTILIZATION)));
+            iNewSize = Math.min(iNewSize, m_iSize);
+         }
+      }
+      else
+      {
+         m_iQuietPeriodCount = 0;
+      }
+      
+      if (iNewSize != m_iSize)
+      {
+         s_logger.log(Level.FINE, "Size of pool {0} changed from {1} to {2}"
+                      + " (wait time {3} ms, utilization {4})", 
+                      new Object[] {m_strName, m_iSize, iNewSize, dWait, 
+                                    dUtilization, });
+         m_iSize = iNewSize;
+      }
+   }
+}
@@ -0,0 +1,376 @@
+/*
+ * Copyright (C) 2003 - 2016 OpenSubsystems.com/net/org and its owners. All rights reserved.
+ * 
+ * This file is part of OpenSubsystems.
+ *
+ * OpenSubsystems is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+
+package org.opensubsystems.core.persist.jdbc.connectionpool.impl;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.opensubsystems.core.error.OSSDatabaseAccessException;
+import org.opensubsystems.core.error.OSSException;
+import org.opensubsystems.core.util.Log;
+import org.opensubsystems.core.util.OSSObject;
+import org.opensubsystems.core.util.jdbc.DatabaseUtils;
+
+/**
+ * Class creating the initial connections of a connection pool. Opening of a 
+ * connection to a remote database may take a while so the connections are 
+ * opened in parallel by a limited number of threads. Each connection can be 
+ * also used to prepare statements, which are used frequently, so that they 
+ * are already cached when they are needed for the first time. The statements
+ * are prepared only if the pool caches prepared statements since otherwise 
+ * preparing them would have no lasting effect.
+ * 
+ * The warmer doesn't know how to create the connection for a particular pool,
+ * the pool provides code which creates and validates a single connection and 
+ * the warmer executes it as many times as needed.
+ * 
+ * @author bastafidli
+ */
+public class ConnectionPoolWarmer extends OSSObject
+{
+   // Constants ////////////////////////////////////////////////////////////////
+   
+   /**
+    * Separator of the statements to prepare on each connection.
+    */
+   public static final String STATEMENT_SEPARATOR = ";";
+   
+   // Attributes ///////////////////////////////////////////////////////////////
+   
+   /**
+    * Name of the pool which is warmed up.
+    */
+   protected String m_strPoolName;
+   
+   /**
+    * How many connections can be opened in parallel.
+    */
+   protected int m_iThreadCount;
+   
+   /**
+    * Statements to prepare on each connection, empty if the pool doesn't cache
+    * prepared statements.
+    */
+   protected List<String> m_lstStatements;
+   
+   // Cached values ////////////////////////////////////////////////////////////
+
+   /**
+    * Logger for this class
+    */
+   private static Logger s_logger = Log.getInstance(ConnectionPoolWarmer.class);
+   
+   // Constructors /////////////////////////////////////////////////////////////
+   
+   /**
+    * Constructor.
+    * 
+    * @param strPoolName - name of the pool which is warmed up
+    * @param setupReader - reader used to read the settings of the pool
+    */
+   public ConnectionPoolWarmer(
+      String                                     strPoolName,
+      PooledDatabaseConnectionFactorySetupReader setupReader
+   )
+   {
+      super();
+      
+      String strStatements;
+      
+      m_strPoolName = strPoolName;
+      m_iThreadCount = setupReader.getIntegerParameterValue(
+         PooledDatabaseConnectionFactorySetupReader.DBPOOL_WARMUP_THREADS).intValue();
+      strStatements = setupReader.getStringParameterValue(
+         PooledDatabaseConnectionFactorySetupReader.DBPOOL_WARMUP_STATEMENTS);
+      m_lstStatements = new ArrayList<>();
+      if (strStatements != null)
+      {
+         for (String strStatement : strStatements.split(STATEMENT_SEPARATOR))
+         {
+            strStatement = strStatement.trim();
+            if (strStatement.length() > 0)
+            {
+               m_lstStatements.add(strStatement);
+            }
+         }
+      }
+      if ((!m_lstStatements.isEmpty())
+         && (setupReader.getIntegerParameterValue(
+                PooledDatabaseConnectionFactorySetupReader.DBPOOL_PREPSTATEMENT_CACHE_SIZE
+                ).intValue() < 0))
+      {
+         // The statements would be closed right after they are prepared
+         s_logger.log(Level.CONFIG, "Statements for pool {0} will not be"
+                      + " prepared during warm up since the pool doesn't cache"
+                      + " prepared statements. Set {1} to enable the cache.",
+                      new Object[] {strPoolName, 
+                         PooledDatabaseConnectionFactorySetupReader.DBPOOL_PREPSTATEMENT_CACHE_SIZE});
+         m_lstStatements.clear();
+      }
+   }
+   
+   // Logic ////////////////////////////////////////////////////////////////////
+   
+   /**
+    * Create the specified number of connections. The connections are created
+    * in parallel if the pool allows it. This method returns only once all
+    * attempts to create the connections have finished. 
+    * 
+    * @param iCount - how many connections to create
+    * @param creator - code which creates and validates single connection, it
+    *                  can return null if the connection couldn't be created
+    *                  but the pool can still work without it
+    * @param lstCreated - list where the connections, which were successfully
+    *                     created, are added even if some other connections 
+    *                     couldn't be created so that the caller can close them
+    * @throws OSSException - some of the connections couldn't be created
+    */
+   public <T> void warmUp(
+      int         iCount,
+      Callable<T> creator,
+      List<T>     lstCreated
+   ) throws OSSException
+   {
+      Throwable failure = null;
+      T         created;
+      
+      if ((m_iThreadCount <= 1) || (iCount <= 1))
+      {
+         for (int iIndex = 0; (iIndex < iCount) && (failure == null); iIndex++)
+         {
+            try
+            {
+               created = creator.call();
+               if (created != null)
+               {
+                  lstCreated.add(created);
+               }
+            }
+            catch (Exception exc)
+            {
+               failure = exc;
+            }
+         }
+      }
+      else
+      {
+         ExecutorService executor;
+         List<Future<T>> lstResults = new ArrayList<>(iCount);
+         
+         executor = Executors.newFixedThreadPool(Math.min(m_iThreadCount, iCount), 
+            new ThreadFactory()
+            {
+               @Override
+               public Thread newThread(
+                  Runnable runnable
+               )
+               {
+                  Thread thread;
+
+                  thread = new Thread(runnable, "ConnectionPoolWarmer - " 
+                                                + m_strPoolName);
+                  // Mark this thread as daemon so that it doesn't prevent the 
+                  // JVM from shutting down
+                  thread.setDaemon(true);
+
+                  return thread;
+               }
+            });
+         try
+         {
+            for (int iIndex = 0; iIndex < iCount; iIndex++)
+            {
+               lstResults.add(executor.submit(creator));
+            }
+         }
+         finally
+         {
+            executor.shutdown();
+         }
+         // Wait for all the attempts even if some of them fail so that the 
+         // caller knows about all connections which were created 
+         for (Future<T> result : lstResults)
+         {
+            try
+            {
+               created = getUninterruptibly(result);
+               if (created != null)
+               {
+                  lstCreated.add(created);
+               }
+            }
+            catch (ExecutionException eeExc)
+            {
+               if (failure == null)
+               {
+                  failure = eeExc.getCause();
+               }
+            }
+         }
+      }
+      
+      if (failure != null)
+      {
+         if (failure instanceof OSSException)
+         {
+            throw (OSSException)failure;
+         }
+         throw new OSSDatabaseAccessException("Cannot create initial connections"
+                                              + " for pool " + m_strPoolName, 
+                                              failure);
+      }
+      if (lstCreated.size() < iCount)
+      {
+         s_logger.log(Level.WARNING, "Only {0} of {1} initial connections were"
+                      + " created for pool {2}.", 
+                      new Object[] {lstCreated.size(), iCount, m_strPoolName});
+      }
+      else
+      {
+         s_logger.log(Level.FINE, "Created {0} initial connections for pool {1}.", 
+                      new Object[] {lstCreated.size(), m_strPoolName});
+      }
+   }
+   
+   /**
+    * Prepare the configured statements using the specified connection. The 
+    * statements are closed right away so that the connection caches the 
+    * prepared statements and they will be reused when they are prepared again. 
+    * Nothing is prepared if the pool doesn't cache prepared statements. 
+    * Statements which cannot be prepared are just reported.
+    * 
+    * @param connection - connection to prepare the statements with
+    */
+   public void prepareStatements(
+      Connection connection
+   )
+   {
+      PreparedStatement statement;
+      
+      for (String strStatement : m_lstStatements)
+      {
+         statement = null;
+         try
+         {
+            statement = connection.prepareStatement(strStatement);
+         }
+         catch (SQLException sqleExc)
+         {
+            s_logger.log(Level.WARNING, "Cannot prepare statement " + strStatement
+                         + " for pool " + m_strPoolName, sqleExc);
+         }
+         finally
+         {
+            DatabaseUtils.close(statement);
+         }
+      }
+   }
+   
+   /**
+    * @return int - how many connections can be opened in parallel
+    */
+   public int getThreadCount(
+   )
+   {
+      return m_iThreadCount;
+   }
+   
+   /**
+    * @return List<String> - statements to prepare on each connection, empty 
+    *                        if the pool doesn't cache prepared statements
+    */
+   public List<String> getStatements(
+   )
+   {
+      return Collections.unmodifiableList(m_lstStatements);
+   }
+   
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void toString(
+      StringBuilder sb,
+      int           ind
+   )
+   {
+      append(sb, ind + 0, "ConnectionPoolWarmer[");
+      append(sb, ind + 1, "m_strPoolName = ", m_strPoolName);
+      append(sb, ind + 1, "m_iThreadCount = ", m_iThreadCount);
+      append(sb, ind + 1, "m_lstStatements = ", m_lstStatements);
+      append(sb, ind + 0, "]");
+   }
+   
+   // Helper methods ///////////////////////////////////////////////////////////
+   
+   /**
+    * Wait for the result of the task even if the current thread is 
+    * interrupted, in which case the interrupt is restored once the result is 
+    * available. 
+    * 
+    * @param result - result of the task to wait for
+    * @return T - result of the task
+    * @throws ExecutionException - the task has failed
+    */
+   protected <T> T getUninterruptibly(
+      Future<T> result
+   ) throws ExecutionException
+   {
+      boolean bInterrupted = false;
+      T       value;
+      
+      try
+      {
+         while (true)
+         {
+            try
+            {
+               value = result.get();
+               break;
+            }
+            catch (InterruptedException ieExc)
+            {
+               bInterrupted = true;
+            }
+         }
+      }
+      finally
+      {
+         if (bInterrupted)
+         {
+            Thread.currentThread().interrupt();
+         }
+      }
+      
+      return value;
+   }
+}
@@ -20,11 +20,24 @@
 package org.opensubsystems.core.persist.jdbc.connectionpool.impl;
 
 import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
+import org.opensubsystems.core.error.OSSDatabaseAccessException;
 import org.opensubsystems.core.error.OSSException;
 import org.opensubsystems.core.persist.jdbc.Database;
 import org.opensubsystems.core.persist.jdbc.impl.DatabaseConnectionFactoryImpl;
 import org.opensubsystems.core.persist.jdbc.impl.DatabaseTransactionFactoryImpl;
+import org.opensubsystems.core.util.Config;
+import org.opensubsystems.core.util.ConfigurationListener;
+import org.opensubsystems.core.util.Log;
 
 /**
  * Base class for implementation of factories for retrieving and returning of 
@@ -34,6 +47,7 @@ import org.opensubsystems.core.persist.jdbc.impl.DatabaseTransactionFactoryImpl;
  * @author bastafidli
  */
 public abstract class PooledDatabaseConnectionFactoryImpl extends DatabaseConnectionFactoryImpl
+                                                          implements ConfigurationListener
 {
    /**
     * Simple structure collecting all information about the connection pool that 
@@ -48,6 +62,19 @@ public abstract class PooledDatabaseConnectionFactoryImpl extends DatabaseConnec
        */
       protected Object m_connectionPool;
 
+      /**
+       * Connection pools created for users other than the user of this pool.
+       * Key is String, the user name and value is ConnectionPoolDefinition 
+       * with the same settings as this pool except of the user and password.
+       */
+      protected ConcurrentMap<String, ConnectionPoolDefinition> m_mpUserConnectionPools;
+
+      /**
+       * Lock used while the connection pools for other users are created or
+       * destroyed.
+       */
+      protected final ReentrantLock m_userPoolLock;
+
       /**
        * @param strDataSourceName - name of the data source
        * @param database - database for this this data source is being created 
@@ -74,6 +101,8 @@ public abstract class PooledDatabaseConnectionFactoryImpl extends DatabaseConnec
                strPassword, iTransactionIsolation);
          
          m_connectionPool = connectionPool;
+         m_mpUserConnectionPools = new ConcurrentHashMap<>();
+         m_userPoolLock = new ReentrantLock();
       }
       
       /**
@@ -95,6 +124,8 @@ public abstract class PooledDatabaseConnectionFactoryImpl extends DatabaseConnec
       {
          append(sb, ind + 0, "ConnectionPoolDefinition[");
          append(sb, ind + 1, "m_connectionPool = ", m_connectionPool);
+         append(sb, ind + 1, "m_mpUserConnectionPools = ", 
+                m_mpUserConnectionPools.keySet());
          super.toString(sb, ind + 1);
          append(sb, ind + 0, "]");
       }      
@@ -102,10 +133,23 @@ public abstract class PooledDatabaseConnectionFactoryImpl extends DatabaseConnec
 
    // Constants ////////////////////////////////////////////////////////////////
    
+   /**
+    * Separator between the data source name and the user name used to name
+    * connection pools created for users other than the user of the data 
+    * source. The settings of such pool can be specified using properties such
+    * as oss.datasource.[datasource identifier].[user name].pool.maxsize.
+    */
+   public static final String USER_POOL_SEPARATOR = ".";
+   
    // Attributes ///////////////////////////////////////////////////////////////
    
    // Cached values ////////////////////////////////////////////////////////////
 
+   /**
+    * Logger for this class
+    */
+   private static Logger s_logger = Log.getInstance(PooledDatabaseConnectionFactoryImpl.class);
+
    // Constructors /////////////////////////////////////////////////////////////
    
    /**
@@ -132,6 +176,63 @@ public abstract class PooledDatabaseConnectionFactoryImpl extends DatabaseConnec
 
    // Logic ////////////////////////////////////////////////////////////////////
 
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public int getIdleConnectionCount(
+      String strDataSourceName
+   )
+   {
+      DatabaseConnectionDefinition definition;
+      int                          iIdleCount = 0;
+      
+      definition = m_mpDataSources.get(strDataSourceName);
+      if ((definition != null) 
+         && (((ConnectionPoolDefinition)definition).getConnectionPool() != null))
+      {
+         iIdleCount = getIdleConnectionCount((ConnectionPoolDefinition)definition);
+      }
+      
+      return iIdleCount;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void stop(
+   ) throws OSSException
+   {
+      Config.removeConfigurationListener(this);
+      super.stop();
+   }
+
+   /**
+    * Apply the changed configuration settings to all existing connection pools
+    * so that they can be tuned without restarting the application.
+    * 
+    * @param config - {@inheritDoc}
+    */
+   @Override
+   public void configurationChanged(
+      Config config
+   )
+   {
+      ConnectionPoolDefinition connectionPool;
+      
+      for (DatabaseConnectionDefinition dataSource : m_mpDataSources.values())
+      {
+         connectionPool = (ConnectionPoolDefinition)dataSource;
+         reconfigureConnectionPoolSafely(connectionPool);
+         for (ConnectionPoolDefinition userPool 
+              : connectionPool.m_mpUserConnectionPools.values())
+         {
+            reconfigureConnectionPoolSafely(userPool);
+         }
+      }
+   }
+
    // Helper methods ///////////////////////////////////////////////////////////
    
    /**
@@ -154,6 +255,8 @@ public abstract class PooledDatabaseConnectionFactoryImpl extends DatabaseConnec
       connectionPool = createConnectionPool(strDataSourceName, database,
                                             strDriverName, strUrl, strUser, 
                                             strPassword, iTransactionIsolation);
+      // Since now there is a pool which can be tuned, listen for changes
+      Config.addConfigurationListener(this);
       
       return new ConnectionPoolDefinition(strDataSourceName, database,
                                           strDriverName, strUrl, strUser, 
@@ -172,8 +275,25 @@ public abstract class PooledDatabaseConnectionFactoryImpl extends DatabaseConnec
       ConnectionPoolDefinition connectionPool;
          
       connectionPool = (ConnectionPoolDefinition)dataSource;
-      destroyConnectionPool(connectionPool);
-      connectionPool.m_connectionPool = null;
+      connectionPool.m_userPoolLock.lock();
+      try
+      {
+         List<ConnectionPoolDefinition> lstUserPools;
+         
+         lstUserPools = new ArrayList<>(
+                               connectionPool.m_mpUserConnectionPools.values());
+         connectionPool.m_mpUserConnectionPools.clear();
+         for (ConnectionPoolDefinition userPool : lstUserPools)
+         {
+            destroyUserConnectionPool(userPool);
+         }
+         destroyConnectionPool(connectionPool);
+         connectionPool.m_connectionPool = null;
+      }
+      finally
+      {
+         connectionPool.m_userPoolLock.unlock();
+      }
 
       // Now let the base class to the cleanup
       super.destroyDataSource(dataSource);
@@ -266,6 +386,219 @@ public abstract class PooledDatabaseConnectionFactoryImpl extends DatabaseConnec
       String                   strPassword
    ) throws OSSException;
 
+   /**
+    * Get connection under different name and password than the one specified
+    * by given connection pool. The connection is taken from a separate pool 
+    * maintained for each user, which is created when the connection is 
+    * requested for the first time for that user. This is a convenience method, 
+    * which can be used by the derived classes to implement getPooledConnection
+    * for specific user if the connection pool they use doesn't support it.
+    * 
+    * @param connectionpool - connection pool defining settings to get 
+    *                         connection for
+    * @param strUser - user name to get the connection for
+    * @param strPassword - password to get the connection for
+    * @return Connection - this can be null if connection is not available
+    * @throws OSSException - an error has occurred
+    */
+   protected Connection getUserPooledConnection(
+      ConnectionPoolDefinition connectionpool,
+      String                   strUser,
+      String                   strPassword
+   ) throws OSSException
+   {
+      ConnectionPoolDefinition userPool;
+      
+      // The pool is created only for verified credentials so do not destroy 
+      // it if it cannot provide connection, e.g. since it is exhausted
+      userPool = getUserConnectionPool(connectionpool, strUser, strPassword);
+      
+      return getPooledConnection(userPool);
+   }
+   
+   /**
+    * Get connection pool maintained for the specified user and create it if 
+    * it doesn't exist yet. If the pool exists but it was created with 
+    * different password, it is replaced by a new pool since the pooled 
+    * connections were not authenticated using the specified password. The 
+    * credentials are always verified by the database using non pooled 
+    * connection before the pool is created so that the request with invalid 
+    * password fails without affecting the existing pool of the user.
+    * 
+    * @param connectionpool - connection pool defining settings to get 
+    *                         connection for
+    * @param strUser - user name to get the connection pool for
+    * @param strPassword - password to get the connection pool for
+    * @return ConnectionPoolDefinition - connection pool for the specified user
+    * @throws OSSException - an error has occurred
+    */
+   protected ConnectionPoolDefinition getUserConnectionPool(
+      ConnectionPoolDefinition connectionpool,
+      String                   strUser,
+      String                   strPassword
+   ) throws OSSException
+   {
+      ConnectionPoolDefinition userPool;
+      
+      if ((Objects.equals(strUser, connectionpool.getUser()))
+         && (Objects.equals(strPassword, connectionpool.getPassword())))
+      {
+         // The connections for this user are already pooled
+         userPool = connectionpool;
+      }
+      else
+      {
+         userPool = connectionpool.m_mpUserConnectionPools.get(strUser);
+         if ((userPool == null) 
+            || (!Objects.equals(strPassword, userPool.getPassword())))
+         {
+            // Lock so that the pool is created only once since it is 
+            // expensive to create. This happens only for the first request
+            // and when the password changes.
+            connectionpool.m_userPoolLock.lock();
+            try
+            {
+               userPool = connectionpool.m_mpUserConnectionPools.get(strUser);
+               if ((userPool == null) 
+                  || (!Objects.equals(strPassword, userPool.getPassword())))
+               {
+                  if (connectionpool.getConnectionPool() == null)
+                  {
+                     throw new OSSDatabaseAccessException("Connection pool " 
+                                  + connectionpool.getName() + " was already"
+                                  + " destroyed.");
+                  }
+                  verifyCredentials(connectionpool, strUser, strPassword);
+                  if (userPool != null)
+                  {
+                     // The pool has to be destroyed before the new one is
+                     // created since both of them use the same name
+                     connectionpool.m_mpUserConnectionPools.remove(strUser, 
+                                                                   userPool);
+                     destroyUserConnectionPool(userPool);
+                     s_logger.log(Level.FINE, "Connection pool {0} will be"
+                                  + " replaced since the password has changed.", 
+                                  userPool.getName());
+                  }
+                  userPool = createUserConnectionPool(connectionpool, strUser, 
+                                                      strPassword);
+                  connectionpool.m_mpUserConnectionPools.put(strUser, userPool);
+                  s_logger.log(Level.FINE, "Connection pool {0} created.", 
+                               userPool.getName());
+               }
+            }
+            finally
+            {
+               connectionpool.m_userPoolLock.unlock();
+            }
+         }
+      }
+      
+      return userPool;
+   }
+   
+   /**
+    * Verify that the database accepts the specified credentials by opening
+    * a connection, which is not pooled, and closing it right away.
+    * 
+    * @param connectionpool - connection pool defining settings to get 
+    *                         connection for
+    * @param strUser - user name to verify
+    * @param strPassword - password to verify
+    * @throws OSSException - the credentials are not valid or an error has 
+    *                        occurred
+    */
+   protected void verifyCredentials(
+      ConnectionPoolDefinition connectionpool,
+      String                   strUser,
+      String                   strPassword
+   ) throws OSSException
+   {
+      Connection cntDBConnection;
+      
+      cntDBConnection = getNonPooledConnection(connectionpool, strUser, 
+                                               strPassword);
+      try
+      {
+         cntDBConnection.close();
+      }
+      catch (SQLException sqleExc)
+      {
+         s_logger.log(Level.WARNING, "Closing of connection has failed.", 
+                      sqleExc);
+      }
+   }
+   
+   /**
+    * Create connection pool for the specified user using the same settings as
+    * the specified connection pool.
+    * 
+    * @param connectionpool - connection pool defining settings of the new pool
+    * @param strUser - user name to create the connection pool for
+    * @param strPassword - password to create the connection pool for
+    * @return ConnectionPoolDefinition - connection pool for the specified user
+    * @throws OSSException - an error has occurred
+    */
+   protected ConnectionPoolDefinition createUserConnectionPool(
+      ConnectionPoolDefinition connectionpool,
+      String                   strUser,
+      String                   strPassword
+   ) throws OSSException
+   {
+      String strName;
+      Object userPool;
+      
+      strName = connectionpool.getName() + USER_POOL_SEPARATOR + strUser;
+      try
+      {
+         userPool = createConnectionPool(strName, connectionpool.getDatabase(), 
+                                         connectionpool.getDriver(), 
+                                         connectionpool.getUrl(), strUser, 
+                                         strPassword, 
+                                         connectionpool.getTransactionIsolation());
+      }
+      catch (OSSException | RuntimeException exc)
+      {
+         // The connection pool may have already created the statistics
+         destroyStatistics(strName);
+         throw exc;
+      }
+      
+      return new ConnectionPoolDefinition(strName, connectionpool.getDatabase(), 
+                                          connectionpool.getDriver(), 
+                                          connectionpool.getUrl(), strUser, 
+                                          strPassword, 
+                                          connectionpool.getTransactionIsolation(), 
+                                          userPool);
+   }
+   
+   /**
+    * Destroy connection pool created for a specific user.
+    * 
+    * @param userPool - connection pool to destroy
+    */
+   protected void destroyUserConnectionPool(
+      ConnectionPoolDefinition userPool
+   )
+   {
+      try
+      {
+         destroyConnectionPool(userPool);
+         userPool.m_connectionPool = null;
+         s_logger.log(Level.FINE, "Connection pool {0} destroyed.", 
+                      userPool.getName());
+      }
+      catch (OSSException ossExc)
+      {
+         s_logger.log(Level.WARNING, "Cannot destroy connection pool " 
+                      + userPool.getName(), ossExc);
+      }
+      finally
+      {
+         destroyStatistics(userPool.getName());
+      }
+   }
+   
    /**
     * Get connection directly from a driver without requesting it from a 
     * connection pool. This is a convenience method, which delegates this call
@@ -328,6 +661,36 @@ public abstract class PooledDatabaseConnectionFactoryImpl extends DatabaseConnec
       super.returnConnection(cntDBConnection, connectionPool);
    }   
 
+   /**
+    * Closing the connection returns it to the pool as if it was healthy so by
+    * default the connections cannot be invalidated. Derived classes have to 
+    * override this method together with invalidateConnection if the pool 
+    * they use can discard connection, which is still in use.
+    * 
+    * @return boolean - false by default
+    */
+   @Override
+   protected boolean canInvalidateConnection(
+   )
+   {
+      return false;
+   }
+
+   /**
+    * Get number of connections currently available in the specified connection
+    * pool. Derived classes should override this method if the connection pool
+    * provides this information.
+    * 
+    * @param connectionpool - connection pool to examine
+    * @return int - number of idle connections in the pool
+    */
+   protected int getIdleConnectionCount(
+      ConnectionPoolDefinition connectionpool
+   )
+   {
+      return 0;
+   }
+   
    /**
     * Create new connection pool with specified parameters. 
     * 
@@ -366,4 +729,41 @@ public abstract class PooledDatabaseConnectionFactoryImpl extends DatabaseConnec
    protected abstract void destroyConnectionPool(
       ConnectionPoolDefinition connectionpool
    ) throws OSSException;   
+
+   /**
+    * Apply the current configuration settings to already existing connection
+    * pool. Only the settings which can be changed while the pool is in use 
+    * should be applied. By default the pool cannot be reconfigured and the 
+    * changes take effect only when the pool is created again.
+    * 
+    * @param connectionpool - connection pool to reconfigure
+    * @throws OSSException - an error has occurred 
+    */
+   protected void reconfigureConnectionPool(
+      ConnectionPoolDefinition connectionpool
+   ) throws OSSException
+   {
+      // Nothing to do by default
+   }
+
+   /**
+    * Apply the current configuration settings to already existing connection
+    * pool and log any error since there is nobody to report it to.
+    * 
+    * @param connectionpool - connection pool to reconfigure
+    */
+   protected void reconfigureConnectionPoolSafely(
+      ConnectionPoolDefinition connectionpool
+   )
+   {
+      try
+      {
+         reconfigureConnectionPool(connectionpool);
+      }
+      catch (OSSException | RuntimeException exc)
+      {
+         s_logger.log(Level.WARNING, "Cannot apply changed configuration to"
+                      + " connection pool " + connectionpool.getName(), exc);
+      }
+   }
 }
@@ -21,8 +21,11 @@ package org.opensubsystems.core.persist.jdbc.connectionpool.impl;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import org.opensubsystems.core.persist.jdbc.impl.DatabaseConnectionFactorySetupReader;
+import org.opensubsystems.core.util.Log;
 import org.opensubsystems.core.util.MultiSetupReader;
 import org.opensubsystems.core.util.SetupReader;
 import org.opensubsystems.core.util.ThreeElementStruct;
@@ -108,6 +111,20 @@ public class PooledDatabaseConnectionFactorySetupReader extends MultiSetupReader
     */
    public static final String DBPOOL_WAIT_PERIOD = "pool.waitperiod";
 
+   /**
+    * How many requests can at most wait for a connection when the pool reaches 
+    * maximal size. Requests over this limit fail immediately instead of 
+    * waiting so that the time to process requests stays bounded when the 
+    * database cannot keep up. If the pool can grow, requests over this limit 
+    * grow the pool instead of waiting. If less or equal to 0 then there is no 
+    * limit. Requests also do not wait longer than the deadline of the current 
+    * call set in CallContext.
+    * 
+    * Connection pool specific terminology:
+    * DBCP:    No support, the limit is checked before connection is borrowed
+    */
+   public static final String DBPOOL_MAX_WAITING = "pool.maxwaiting";
+
    /**
     * How long in milliseconds to wait until the pool tries to acquire another 
     * connection, if getting connection from the pool fails. 
@@ -159,19 +176,37 @@ public class PooledDatabaseConnectionFactorySetupReader extends MultiSetupReader
    public static final String DBPOOL_VALIDATE_IDLE = "pool.validate.idle";
 
    /**
-    * How thoroughly to validate the objects in the pool. 
+    * How thoroughly to validate the connections in the pool. 
     * 
-    * Connection pool specific terminology:
-    * DBCP:    No support
+    * 0 = execute the test statement of the database, see 
+    *     DBPOOL_CHECK_LEVEL_STATEMENT
+    * 1 = just check that the connection was not closed, see 
+    *     DBPOOL_CHECK_LEVEL_CLOSED
+    * 2 = let the JDBC driver test the connection using Connection.isValid, see
+    *     DBPOOL_CHECK_LEVEL_DRIVER
     * 
-    * 0 = no special checking 
-    * 1 = just a check on an object 
-    * 2 = test the object 
-    * 3 = just a check on an object (for all the objects) 
-    * 4 = test the object (for all the objects)
+    * Values 3 and 4 used by previous versions to perform the check of value 1 
+    * and 2 for all connections are still accepted and mapped to 1 and 2, see 
+    * getCheckLevel.
+    * 
+    * Connection pool specific terminology:
+    * DBCP:    validationQuery - used only for level 0
     */
    public static final String DBPOOL_CHECK_LEVEL = "pool.validate.level";         
    
+   /**
+    * How long in milliseconds has to connection sit in the pool unused before 
+    * it is validated when it is borrowed or checked while idle. Connections 
+    * which were returned to the pool more recently are expected to be valid 
+    * and are not validated, which saves a round trip to the database for most 
+    * of the requests. If less or equal to 0 then the connections are always 
+    * validated.
+    * 
+    * Connection pool specific terminology:
+    * DBCP:    No support, the factory tracks when the connection was returned
+    */
+   public static final String DBPOOL_VALIDATE_IDLE_TIME = "pool.validate.idletime";         
+   
    /**
     * How often in milliseconds to validate idle connections. Validating idles 
     * connections is the most efficient way of validating connections since it 
@@ -214,6 +249,55 @@ public class PooledDatabaseConnectionFactorySetupReader extends MultiSetupReader
     */
    public static final String DBPOOL_PREPSTATEMENT_CACHE_SIZE = "pool.pstmtcachesize";         
    
+   /**
+    * Should the connection pool adjust its size between the minimal and the 
+    * maximal size based on the observed demand. If false then the pool creates
+    * connections until it reaches the maximal size. 
+    * 
+    * Connection pool specific terminology:
+    * DBCP:    No support
+    */
+   public static final String DBPOOL_ADAPTIVE = "pool.adaptive";         
+   
+   /**
+    * Target time in milliseconds the callers should wait for a connection when
+    * the pool adjusts its size based on the observed demand. The pool grows if 
+    * the callers wait longer than this while most of the connections are used.
+    * 
+    * Connection pool specific terminology:
+    * DBCP:    No support
+    */
+   public static final String DBPOOL_ADAPTIVE_TARGET_WAIT = "pool.adaptive.targetwait";         
+   
+   /**
+    * How often in milliseconds does the pool evaluate if it should adjust its
+    * size based on the observed demand.
+    * 
+    * Connection pool specific terminology:
+    * DBCP:    No support
+    */
+   public static final String DBPOOL_ADAPTIVE_PERIOD = "pool.adaptive.period";         
+   
+   /**
+    * How many connections can the pool open in parallel when it creates its 
+    * initial connections.
+    * 
+    * Connection pool specific terminology:
+    * DBCP:    No support, implemented by the factory
+    */
+   public static final String DBPOOL_WARMUP_THREADS = "pool.warmup.threads";         
+   
+   /**
+    * Statements separated by semicolon, which should be prepared on each 
+    * initial connection so that they are already cached when they are used
+    * for the first time. The statements are not prepared if the prepared 
+    * statements are not cached, see DBPOOL_PREPSTATEMENT_CACHE_SIZE.
+    * 
+    * Connection pool specific terminology:
+    * DBCP:    No support, implemented by the factory
+    */
+   public static final String DBPOOL_WARMUP_STATEMENTS = "pool.warmup.statements";         
+   
    // Configuration default values
    
    /**
@@ -247,6 +331,12 @@ public class PooledDatabaseConnectionFactorySetupReader extends MultiSetupReader
     */
    public static final long DBPOOL_WAIT_PERIOD_DEFAULT = 10000L; // 10 seconds
 
+   /**
+    * How many requests can at most wait for a connection when the pool reaches 
+    * maximal size.
+    */
+   public static final int DBPOOL_MAX_WAITING_DEFAULT = 0; // no limit
+
    /**
     * How long to wait until the pool tries to acquire another connection, if 
     * getting connection from the pool fails. Time is in milliseconds.
@@ -279,15 +369,45 @@ public class PooledDatabaseConnectionFactorySetupReader extends MultiSetupReader
    public static final boolean DBPOOL_VALIDATE_IDLE_DEFAULT = false; // no validation
 
    /**
-    * How thoroughly to validate the objects in the pool. 
-    * 
-    * 0 = no special checking 
-    * 1 = just a check on an object 
-    * 2 = test the object 
-    * 3 = just a check on an object (for all the objects) 
-    * 4 = test the object (for all the objects)
+    * Connection is validated by executing the test statement of the database.
+    * This is the most thorough and the most expensive way of validation.
+    */
+   public static final int DBPOOL_CHECK_LEVEL_STATEMENT = 0;
+
+   /**
+    * Connection is considered valid if it was not closed. This is cheap but 
+    * doesn't detect connections broken by the database or the network.
+    */
+   public static final int DBPOOL_CHECK_LEVEL_CLOSED = 1;
+
+   /**
+    * Connection is validated by the JDBC driver using Connection.isValid. 
+    * Drivers usually do so without executing any query, e.g. by sending ping 
+    * to the database.
+    */
+   public static final int DBPOOL_CHECK_LEVEL_DRIVER = 2;
+
+   /**
+    * Value used by previous versions to just check all connections. It is 
+    * mapped to DBPOOL_CHECK_LEVEL_CLOSED.
+    */
+   public static final int DBPOOL_CHECK_LEVEL_LEGACY_CHECK_ALL = 3;
+
+   /**
+    * Value used by previous versions to test all connections. It is mapped to
+    * DBPOOL_CHECK_LEVEL_DRIVER.
+    */
+   public static final int DBPOOL_CHECK_LEVEL_LEGACY_TEST_ALL = 4;
+
+   /**
+    * How thoroughly to validate the connections in the pool. 
+    */
+   public static final int DBPOOL_CHECK_LEVEL_DEFAULT = DBPOOL_CHECK_LEVEL_STATEMENT;         
+   
+   /**
+    * How long has to connection sit in the pool unused before it is validated.
     */
-   public static final int DBPOOL_CHECK_LEVEL_DEFAULT = 0; // no validation         
+   public static final long DBPOOL_VALIDATE_IDLE_TIME_DEFAULT = 0; // always validate
    
    /**
     * How often to validate idle connections. Validating idles connections is 
@@ -315,6 +435,31 @@ public class PooledDatabaseConnectionFactorySetupReader extends MultiSetupReader
     */
    public static final int DBPOOL_PREPSTATEMENT_CACHE_SIZE_DEFAULT = -1; // do not cache         
 
+   /**
+    * Should the connection pool adjust its size based on the observed demand.
+    */
+   public static final boolean DBPOOL_ADAPTIVE_DEFAULT = false; // static size         
+
+   /**
+    * Target time in milliseconds the callers should wait for a connection.
+    */
+   public static final long DBPOOL_ADAPTIVE_TARGET_WAIT_DEFAULT = 10L; // 10 milliseconds
+
+   /**
+    * How often in milliseconds does the pool evaluate its size.
+    */
+   public static final long DBPOOL_ADAPTIVE_PERIOD_DEFAULT = 10000L; // 10 seconds
+
+   /**
+    * How many connections can the pool open in parallel during warm up.
+    */
+   public static final int DBPOOL_WARMUP_THREADS_DEFAULT = 4;
+
+   /**
+    * Statements to prepare on each initial connection.
+    */
+   public static final String DBPOOL_WARMUP_STATEMENTS_DEFAULT = ""; // none
+
    // Cached values ////////////////////////////////////////////////////////////
 
    /**
@@ -333,6 +478,12 @@ public class PooledDatabaseConnectionFactorySetupReader extends MultiSetupReader
    protected  static Map<String, ThreeElementStruct<Integer, Object, String>> s_mpRegisteredParameters 
       = new HashMap<>();
 
+   /**
+    * Logger for this class
+    */
+   private static Logger s_logger = Log.getInstance(
+                                       PooledDatabaseConnectionFactorySetupReader.class);
+
    // Constructor //////////////////////////////////////////////////////////////
    
    /**
@@ -363,6 +514,61 @@ public class PooledDatabaseConnectionFactorySetupReader extends MultiSetupReader
             s_mpRegisteredParameters);
    }
 
+   // Logic ////////////////////////////////////////////////////////////////////
+   
+   /**
+    * Get how thoroughly to validate the connections in the pool. Values used 
+    * by previous versions are mapped to the current ones and invalid values 
+    * are replaced by the default value.
+    * 
+    * @return int - one of the DBPOOL_CHECK_LEVEL_XXX constants
+    */
+   public int getCheckLevel(
+   )
+   {
+      int iCheckLevel;
+      
+      iCheckLevel = getIntegerParameterValue(DBPOOL_CHECK_LEVEL).intValue();
+      switch (iCheckLevel)
+      {
+         case (DBPOOL_CHECK_LEVEL_STATEMENT) :
+         case (DBPOOL_CHECK_LEVEL_CLOSED) :
+         case (DBPOOL_CHECK_LEVEL_DRIVER) :
+         {
+            break;
+         }
+         case (DBPOOL_CHECK_LEVEL_LEGACY_CHECK_ALL) :
+         {
+            s_logger.log(Level.WARNING, "Value {0} of property {1} is deprecated,"
+                         + " value {2} will be used instead.", 
+                         new Object[] {iCheckLevel, DBPOOL_CHECK_LEVEL, 
+                                       DBPOOL_CHECK_LEVEL_CLOSED, });
+            iCheckLevel = DBPOOL_CHECK_LEVEL_CLOSED;
+            break;
+         }
+         case (DBPOOL_CHECK_LEVEL_LEGACY_TEST_ALL) :
+         {
+            s_logger.log(Level.WARNING, "Value {0} of property {1} is deprecated,"
+                         + " value {2} will be used instead.", 
+                         new Object[] {iCheckLevel, DBPOOL_CHECK_LEVEL, 
+                                       DBPOOL_CHECK_LEVEL_DRIVER, });
+            iCheckLevel = DBPOOL_CHECK_LEVEL_DRIVER;
+            break;
+         }
+         default :
+         {
+            s_logger.log(Level.WARNING, "Value {0} of property {1} is not valid,"
+                         + " default value {2} will be used instead.", 
+                         new Object[] {iCheckLevel, DBPOOL_CHECK_LEVEL, 
+                                       DBPOOL_CHECK_LEVEL_DEFAULT, });
+            iCheckLevel = DBPOOL_CHECK_LEVEL_DEFAULT;
+            break;
+         }
+      }
+      
+      return iCheckLevel;
+   }
+
    // Helper methods //////////////////////////////////////////////////////////
    
    /**
@@ -398,6 +604,12 @@ public class PooledDatabaseConnectionFactorySetupReader extends MultiSetupReader
                         "How long in milliseconds to wait for a connection when"
                         + " the pool reaches maximal size");
 
+      registerParameter(DBPOOL_MAX_WAITING,
+                        SetupReader.PARAMETER_TYPE_INTEGER_OBJ,
+                        Integer.toString(DBPOOL_MAX_WAITING_DEFAULT),
+                        "How many requests can at most wait for a connection"
+                        + " when the pool reaches maximal size");
+
       registerParameter(DBPOOL_RETRY_PERIOD,
                         SetupReader.PARAMETER_TYPE_LONG_OBJ,
                         Long.toString(DBPOOL_RETRY_PERIOD_DEFAULT),
@@ -431,7 +643,14 @@ public class PooledDatabaseConnectionFactorySetupReader extends MultiSetupReader
       registerParameter(DBPOOL_CHECK_LEVEL,
                         SetupReader.PARAMETER_TYPE_INTEGER_OBJ,
                         Integer.toString(DBPOOL_CHECK_LEVEL_DEFAULT),
-                        "How thoroughly to validate the objects in the pool");
+                        "How thoroughly to validate the connections in the"
+                        + " pool");
+   
+      registerParameter(DBPOOL_VALIDATE_IDLE_TIME,
+                        SetupReader.PARAMETER_TYPE_LONG_OBJ,
+                        Long.toString(DBPOOL_VALIDATE_IDLE_TIME_DEFAULT),
+                        "How long in milliseconds has to connection sit in the"
+                        + " pool unused before it is validated");
    
       registerParameter(DBPOOL_IDLE_CHECK_PERIOD,
                         SetupReader.PARAMETER_TYPE_LONG_OBJ,
@@ -455,5 +674,34 @@ public class PooledDatabaseConnectionFactorySetupReader extends MultiSetupReader
                         Integer.toString(DBPOOL_PREPSTATEMENT_CACHE_SIZE_DEFAULT),
                         "Should the connection pool cache prepared statements"
                         + " and if so how many");
+
+      registerParameter(DBPOOL_ADAPTIVE,
+                        SetupReader.PARAMETER_TYPE_BOOLEAN_OBJ,
+                        Boolean.toString(DBPOOL_ADAPTIVE_DEFAULT),
+                        "Should the connection pool adjust its size based on"
+                        + " the observed demand");
+
+      registerParameter(DBPOOL_ADAPTIVE_TARGET_WAIT,
+                        SetupReader.PARAMETER_TYPE_LONG_OBJ,
+                        Long.toString(DBPOOL_ADAPTIVE_TARGET_WAIT_DEFAULT),
+                        "Target time in milliseconds the callers should wait"
+                        + " for a connection");
+
+      registerParameter(DBPOOL_ADAPTIVE_PERIOD,
+                        SetupReader.PARAMETER_TYPE_LONG_OBJ,
+                        Long.toString(DBPOOL_ADAPTIVE_PERIOD_DEFAULT),
+                        "How often in milliseconds does the pool evaluate if it"
+                        + " should adjust its size");
+
+      registerParameter(DBPOOL_WARMUP_THREADS,
+                        SetupReader.PARAMETER_TYPE_INTEGER_OBJ,
+                        Integer.toString(DBPOOL_WARMUP_THREADS_DEFAULT),
+                        "How many connections can the pool open in parallel"
+                        + " when it creates its initial connections");
+
+      registerParameter(DBPOOL_WARMUP_STATEMENTS,
+                        SetupReader.PARAMETER_TYPE_STRING_OBJ,
+                        DBPOOL_WARMUP_STATEMENTS_DEFAULT,
+                        "Statements to prepare on each initial connection");
    }
 }
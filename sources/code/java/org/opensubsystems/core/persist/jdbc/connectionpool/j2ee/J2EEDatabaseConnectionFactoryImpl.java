@@ -118,6 +118,43 @@ public class J2EEDatabaseConnectionFactoryImpl extends PooledDatabaseConnectionF
 
    // Helper bethods ///////////////////////////////////////////////////////////
    
+   /**
+    * {@inheritDoc}
+    * 
+    * The application server hands out different wrapper of the same physical 
+    * connection each time the connection is requested so the physical 
+    * connection is accessed using Connection.unwrap. If the server doesn't 
+    * allow to access the physical connection, the wrapper itself is used and
+    * the statements are cached only while the wrapper is issued.
+    */
+   @Override
+   protected Connection getPhysicalConnection(
+      Connection cntDBConnection
+   )
+   {
+      Connection physicalConnection = cntDBConnection;
+      
+      try
+      {
+         if (cntDBConnection.isWrapperFor(Connection.class))
+         {
+            physicalConnection = cntDBConnection.unwrap(Connection.class);
+            if (physicalConnection == null)
+            {
+               physicalConnection = cntDBConnection;
+            }
+         }
+      }
+      catch (SQLException sqleExc)
+      {
+         s_logger.log(Level.FINEST, "Cannot access physical connection" 
+                      + " underlying the connection issued by the application" 
+                      + " server.", sqleExc);
+      }
+      
+      return physicalConnection;
+   }
+   
    /**
     * {@inheritDoc}
     */
@@ -0,0 +1,785 @@
+/*
+ * Copyright (C) 2003 - 2016 OpenSubsystems.com/net/org and its owners. All rights reserved.
+ * 
+ * This file is part of OpenSubsystems.
+ *
+ * OpenSubsystems is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+
+package org.opensubsystems.core.persist.jdbc.connectionpool.oss;
+
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.CallableStatement;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.NClob;
+import java.sql.PreparedStatement;
+import java.sql.SQLClientInfoException;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.sql.SQLXML;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.sql.Struct;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Connection handed out by OSSConnectionPool to a single borrower. The same 
+ * pooled connection is borrowed over and over again by different callers so 
+ * each borrower gets its own handle, which can be closed only once. Once the 
+ * handle is closed, it cannot be used anymore and closing it again has no 
+ * effect even if the pooled connection was meanwhile borrowed by somebody 
+ * else.
+ * 
+ * @author bastafidli
+ */
+public class OSSConnectionHandle implements Connection
+{
+   // Attributes ///////////////////////////////////////////////////////////////
+   
+   /**
+    * Pooled connection borrowed by this handle to which all method calls are 
+    * delegated.
+    */
+   private final OSSPooledConnection m_connection;
+
+   /**
+    * Flag signaling that this handle was closed and the pooled connection was
+    * returned to the pool.
+    */
+   private final AtomicBoolean m_bClosed;
+   
+   // Constructors /////////////////////////////////////////////////////////////
+   
+   /**
+    * Protected constructor so that only classes from this package can create it.
+    * 
+    * @param connection - pooled connection borrowed from the pool
+    */
+   protected OSSConnectionHandle(
+      OSSPooledConnection connection
+   ) 
+   {
+      super();
+      
+      m_connection = connection;
+      m_bClosed = new AtomicBoolean(false);
+      if (connection.getStatementCache() != null)
+      {
+         // The statements should not allow the caller to get hold of the 
+         // pooled connection, which outlives this handle
+         connection.getStatementCache().setOwnerConnection(this);
+      }
+   }   
+   
+   // Logic ////////////////////////////////////////////////////////////////////
+   
+   /**
+    * Get the pooled connection borrowed by this handle. This method is not 
+    * public so that it can be used only in this package.
+    * 
+    * @return OSSPooledConnection - pooled connection borrowed by this handle
+    */
+   OSSPooledConnection getPooledConnection(
+   )
+   {
+      return m_connection;
+   }
+   
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void close(
+   ) throws SQLException
+   {
+      // Only the first close returns the connection so that the borrower 
+      // cannot return the connection, which was meanwhile borrowed by somebody 
+      // else
+      if (m_bClosed.compareAndSet(false, true))
+      {
+         m_connection.close();
+      }
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public boolean isClosed(
+   ) throws SQLException
+   {
+      return (m_bClosed.get()) || (m_connection.isClosed());
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public String toString()
+   {
+      return m_connection.toString();
+   }
+
+   // java.sql.Connection delegating methods ///////////////////////////////////
+   
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public PreparedStatement prepareStatement(
+      String sql
+   ) throws SQLException
+   {
+      checkOpen();
+      return m_connection.prepareStatement(sql);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public PreparedStatement prepareStatement(
+      String sql,
+      int    autoGeneratedKeys
+   ) throws SQLException
+   {
+      checkOpen();
+      return m_connection.prepareStatement(sql, autoGeneratedKeys);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public PreparedStatement prepareStatement(
+      String sql,
+      int    resultSetType,
+      int    resultSetConcurrency
+   ) throws SQLException
+   {
+      checkOpen();
+      return m_connection.prepareStatement(sql, resultSetType,
+                                           resultSetConcurrency);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public PreparedStatement prepareStatement(
+      String sql,
+      int    resultSetType,
+      int    resultSetConcurrency,
+      int    resultSetHoldability
+   ) throws SQLException
+   {
+      checkOpen();
+      return m_connection.prepareStatement(sql, resultSetType,
+                                           resultSetConcurrency,
+                                           resultSetHoldability);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void abort(
+      Executor executor
+   ) throws SQLException
+   {
+      checkOpen();
+      m_connection.abort(executor);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void clearWarnings(
+   ) throws SQLException
+   {
+      checkOpen();
+      m_connection.clearWarnings();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void commit(
+   ) throws SQLException
+   {
+      checkOpen();
+      m_connection.commit();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public Array createArrayOf(
+      String   typeName,
+      Object[] elements
+   ) throws SQLException
+   {
+      checkOpen();
+      return m_connection.createArrayOf(typeName, elements);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public Blob createBlob(
+   ) throws SQLException
+   {
+      checkOpen();
+      return m_connection.createBlob();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public Clob createClob(
+   ) throws SQLException
+   {
+      checkOpen();
+      return m_connection.createClob();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public NClob createNClob(
+   ) throws SQLException
+   {
+      checkOpen();
+      return m_connection.createNClob();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public SQLXML createSQLXML(
+   ) throws SQLException
+   {
+      checkOpen();
+      return m_connection.createSQLXML();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public Statement createStatement(
+   ) throws SQLException
+   {
+      checkOpen();
+      return m_connection.createStatement();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public Statement createStatement(
+      int resultSetType,
+      int resultSetConcurrency
+   ) throws SQLException
+   {
+      checkOpen();
+      return m_connection.createStatement(resultSetType, resultSetConcurrency);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public Statement createStatement(
+      int resultSetType,
+      int resultSetConcurrency,
+      int resultSetHoldability
+   ) throws SQLException
+   {
+      checkOpen();
+      return m_connection.createStatement(resultSetType, resultSetConcurrency,
+                                          resultSetHoldability);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public Struct createStruct(
+      String   typeName,
+      Object[] attributes
+   ) throws SQLException
+   {
+      checkOpen();
+      return m_connection.createStruct(typeName, attributes);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public boolean getAutoCommit(
+   ) throws SQLException
+   {
+      checkOpen();
+      return m_connection.getAutoCommit();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public String getCatalog(
+   ) throws SQLException
+   {
+      checkOpen();
+      return m_connection.getCatalog();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public String getClientInfo(
+      String name
+   ) throws SQLException
+   {
+      checkOpen();
+      return m_connection.getClientInfo(name);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public Properties getClientInfo(
+   ) throws SQLException
+   {
+      checkOpen();
+      return m_connection.getClientInfo();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public int getHoldability(
+   ) throws SQLException
+   {
+      checkOpen();
+      return m_connection.getHoldability();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public DatabaseMetaData getMetaData(
+   ) throws SQLException
+   {
+      checkOpen();
+      return m_connection.getMetaData();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public int getNetworkTimeout(
+   ) throws SQLException
+   {
+      checkOpen();
+      return m_connection.getNetworkTimeout();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public String getSchema(
+   ) throws SQLException
+   {
+      checkOpen();
+      return m_connection.getSchema();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public int getTransactionIsolation(
+   ) throws SQLException
+   {
+      checkOpen();
+      return m_connection.getTransactionIsolation();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public Map<String, Class<?>> getTypeMap(
+   ) throws SQLException
+   {
+      checkOpen();
+      return m_connection.getTypeMap();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public SQLWarning getWarnings(
+   ) throws SQLException
+   {
+      checkOpen();
+      return m_connection.getWarnings();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public boolean isReadOnly(
+   ) throws SQLException
+   {
+      checkOpen();
+      return m_connection.isReadOnly();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public boolean isValid(
+      int timeout
+   ) throws SQLException
+   {
+      checkOpen();
+      return m_connection.isValid(timeout);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public boolean isWrapperFor(
+      Class<?> iface
+   ) throws SQLException
+   {
+      checkOpen();
+      return m_connection.isWrapperFor(iface);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public String nativeSQL(
+      String sql
+   ) throws SQLException
+   {
+      checkOpen();
+      return m_connection.nativeSQL(sql);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public CallableStatement prepareCall(
+      String sql
+   ) throws SQLException
+   {
+      checkOpen();
+      return m_connection.prepareCall(sql);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public CallableStatement prepareCall(
+      String sql,
+      int    resultSetType,
+      int    resultSetConcurrency
+   ) throws SQLException
+   {
+      checkOpen();
+      return m_connection.prepareCall(sql, resultSetType, resultSetConcurrency);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public CallableStatement prepareCall(
+      String sql,
+      int    resultSetType,
+      int    resultSetConcurrency,
+      int    resultSetHoldability
+   ) throws SQLException
+   {
+      checkOpen();
+      return m_connection.prepareCall(sql, resultSetType, resultSetConcurrency,
+                                      resultSetHoldability);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public PreparedStatement prepareStatement(
+      String sql,
+      int[]  columnIndexes
+   ) throws SQLException
+   {
+      checkOpen();
+      return m_connection.prepareStatement(sql, columnIndexes);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public PreparedStatement prepareStatement(
+      String   sql,
+      String[] columnNames
+   ) throws SQLException
+   {
+      checkOpen();
+      return m_connection.prepareStatement(sql, columnNames);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void releaseSavepoint(
+      Savepoint savepoint
+   ) throws SQLException
+   {
+      checkOpen();
+      m_connection.releaseSavepoint(savepoint);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void rollback(
+   ) throws SQLException
+   {
+      checkOpen();
+      m_connection.rollback();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void rollback(
+      Savepoint savepoint
+   ) throws SQLException
+   {
+      checkOpen();
+      m_connection.rollback(savepoint);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setAutoCommit(
+      boolean autoCommit
+   ) throws SQLException
+   {
+      checkOpen();
+      m_connection.setAutoCommit(autoCommit);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setCatalog(
+      String catalog
+   ) throws SQLException
+   {
+      checkOpen();
+      m_connection.setCatalog(catalog);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setClientInfo(
+      String name,
+      String value
+   ) throws SQLClientInfoException
+   {
+      m_connection.setClientInfo(name, value);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setClientInfo(
+      Properties properties
+   ) throws SQLClientInfoException
+   {
+      m_connection.setClientInfo(properties);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setHoldability(
+      int holdability
+   ) throws SQLException
+   {
+      checkOpen();
+      m_connection.setHoldability(holdability);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setNetworkTimeout(
+      Executor executor,
+      int      milliseconds
+   ) throws SQLException
+   {
+      checkOpen();
+      m_connection.setNetworkTimeout(executor, milliseconds);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setReadOnly(
+      boolean readOnly
+   ) throws SQLException
+   {
+      checkOpen();
+      m_connection.setReadOnly(readOnly);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public Savepoint setSavepoint(
+   ) throws SQLException
+   {
+      checkOpen();
+      return m_connection.setSavepoint();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public Savepoint setSavepoint(
+      String name
+   ) throws SQLException
+   {
+      checkOpen();
+      return m_connection.setSavepoint(name);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setSchema(
+      String schema
+   ) throws SQLException
+   {
+      checkOpen();
+      m_connection.setSchema(schema);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setTransactionIsolation(
+      int level
+   ) throws SQLException
+   {
+      checkOpen();
+      m_connection.setTransactionIsolation(level);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setTypeMap(
+      Map<String, Class<?>> map
+   ) throws SQLException
+   {
+      checkOpen();
+      m_connection.setTypeMap(map);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public <T> T unwrap(
+      Class<T> iface
+   ) throws SQLException
+   {
+      checkOpen();
+      return m_connection.unwrap(iface);
+   }
+
+   // Helper methods ///////////////////////////////////////////////////////////
+
+   /**
+    * Make sure that this handle was not closed yet.
+    * 
+    * @throws SQLException - the handle was already closed
+    */
+   protected void checkOpen(
+   ) throws SQLException
+   {
+      if (m_bClosed.get())
+      {
+         throw new SQLException("This connection was already returned to the pool" 
+                                + " and shouldn't be used anymore."); 
+      }
+   }
+}
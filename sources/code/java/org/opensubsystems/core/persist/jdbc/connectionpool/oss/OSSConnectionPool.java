@@ -0,0 +1,1557 @@
+/*
+ * Copyright (C) 2003 - 2016 OpenSubsystems.com/net/org and its owners. All rights reserved.
+ * 
+ * This file is part of OpenSubsystems.
+ *
+ * OpenSubsystems is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+
+package org.opensubsystems.core.persist.jdbc.connectionpool.oss;
+
+import java.lang.ref.WeakReference;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.opensubsystems.core.error.OSSDatabaseAccessException;
+import org.opensubsystems.core.error.OSSException;
+import org.opensubsystems.core.persist.jdbc.connectionpool.impl.AdaptivePoolSizer;
+import org.opensubsystems.core.persist.jdbc.connectionpool.impl.ConnectionPoolWarmer;
+import org.opensubsystems.core.persist.jdbc.connectionpool.impl.PooledDatabaseConnectionFactorySetupReader;
+import org.opensubsystems.core.persist.jdbc.impl.DatabaseConnectionStatistics;
+import org.opensubsystems.core.util.CallContext;
+import org.opensubsystems.core.util.GlobalConstants;
+import org.opensubsystems.core.util.Log;
+import org.opensubsystems.core.util.OSSObject;
+import org.opensubsystems.core.util.jdbc.DatabaseUtils;
+
+/**
+ * Connection pool designed to allow borrowing and returning of connections
+ * from many threads at once without any locking.
+ *
+ * The pool keeps all its connections in a copy on write list, which can be
+ * iterated without any synchronization. Each connection carries its own state
+ * and a thread borrows the connection by atomically switching its state from
+ * not in use to in use. To make the common case even cheaper, each thread
+ * remembers the connections it has returned and tries to reuse them first
+ * since they are most likely not used by anybody else. If there is no
+ * connection available and the pool cannot grow, the thread registers itself 
+ * in a queue of waiting threads and the threads returning connections pass 
+ * them directly to the thread, which waits the longest. If the connection 
+ * cannot be passed to any waiting thread, it is simply made available in the
+ * pool.
+ *
+ * Idle connections are checked, validated and evicted in the background by
+ * a housekeeping thread so that the threads requesting connections do not pay
+ * for this work.
+ *
+ * The pool is configured using the settings read by
+ * PooledDatabaseConnectionFactorySetupReader.
+ *
+ * @author bastafidli
+ */
+public class OSSConnectionPool extends OSSObject
+{
+   // Inner classes ////////////////////////////////////////////////////////////
+   
+   /**
+    * Thread waiting for connection. The thread returning connection hands it 
+    * off to the waiting thread by atomically setting it to the slot of the 
+    * waiting thread. The waiting thread cancels the waiting by atomically 
+    * setting the slot to a marker value so that the connection cannot be 
+    * handed off to it anymore.
+    */
+   protected static class ConnectionWaiter
+   {
+      /**
+       * Marker value set to the slot when the thread stopped waiting.
+       */
+      private static final Object CANCELLED = new Object();
+      
+      /**
+       * Thread which is waiting.
+       */
+      private final Thread m_thread;
+      
+      /**
+       * Connection handed off to the waiting thread, CANCELLED if the thread
+       * stopped waiting or null if the thread is still waiting.
+       */
+      private final AtomicReference<Object> m_slot;
+      
+      /**
+       * Create waiter for the current thread.
+       */
+      protected ConnectionWaiter(
+      )
+      {
+         m_thread = Thread.currentThread();
+         m_slot = new AtomicReference<>();
+      }
+      
+      /**
+       * Hand off connection to the waiting thread and wake it up.
+       * 
+       * @param connection - connection claimed for the waiting thread
+       * @return boolean - true if the connection was handed off, false if the 
+       *                   thread doesn't wait anymore
+       */
+      protected boolean handOff(
+         OSSPooledConnection connection
+      )
+      {
+         boolean bHandedOff;
+         
+         bHandedOff = m_slot.compareAndSet(null, connection);
+         if (bHandedOff)
+         {
+            LockSupport.unpark(m_thread);
+         }
+         
+         return bHandedOff;
+      }
+      
+      /**
+       * @return boolean - true if connection was already handed off to the 
+       *                   waiting thread
+       */
+      protected boolean isHandedOff(
+      )
+      {
+         return m_slot.get() != null;
+      }
+      
+      /**
+       * Stop waiting so that no connection can be handed off to the thread 
+       * anymore.
+       * 
+       * @return OSSPooledConnection - connection which was handed off to the
+       *                               thread before it stopped waiting or null
+       *                               if there was none
+       */
+      protected OSSPooledConnection cancel(
+      )
+      {
+         OSSPooledConnection connection = null;
+         
+         if (!m_slot.compareAndSet(null, CANCELLED))
+         {
+            connection = (OSSPooledConnection)m_slot.get();
+         }
+         
+         return connection;
+      }
+   }
+   
+   // Constants ////////////////////////////////////////////////////////////////
+
+   /**
+    * Maximal number of connections each thread remembers for fast reuse.
+    */
+   public static final int THREAD_CONNECTION_LIMIT = 16;
+
+   /**
+    * How long at most in milliseconds can the validation of connection take
+    * before it is considered invalid.
+    */
+   public static final int VALIDATION_TIMEOUT = 5000;
+
+   /**
+    * Size limit meaning that the pool can create connection regardless of how
+    * many connections it already has.
+    */
+   public static final int UNLIMITED_SIZE = 0;
+
+   // Attributes ///////////////////////////////////////////////////////////////
+
+   /**
+    * Name of the pool.
+    */
+   protected String m_strName;
+
+   /**
+    * URL to connect to the database.
+    */
+   protected String m_strUrl;
+
+   /**
+    * User name to use to connect to the database.
+    */
+   protected String m_strUser;
+
+   /**
+    * Password to use to connect to the database.
+    */
+   protected String m_strPassword;
+
+   /**
+    * Transaction isolation that should be set for newly created connections.
+    */
+   protected int m_iTransactionIsolation;
+
+   /**
+    * Statement used to test if connection is valid. If it is null, then
+    * the connection is considered valid if it is not closed.
+    */
+   protected String m_strTestStatement;
+
+   /**
+    * How many connections should be created when the pool is started.
+    */
+   protected int m_iInitialSize;
+
+   /**
+    * How many connections should be at least maintained by the pool.
+    */
+   protected volatile int m_iMinimalSize;
+
+   /**
+    * How many connections can be at most maintained by the pool. Zero or
+    * negative number means no limit.
+    */
+   protected volatile int m_iMaximalSize;
+
+   /**
+    * If true then the pool creates new connection instead of waiting when all
+    * connections are in use and the maximal size was reached. The connections
+    * over the maximal size are closed as soon as they are returned.
+    */
+   protected volatile boolean m_bCanGrow;
+
+   /**
+    * How long in milliseconds to wait for a connection to become available
+    * before failing. Zero or negative number means wait indefinitely.
+    */
+   protected volatile long m_lWaitPeriod;
+
+   /**
+    * How many threads can at most wait for connection. Zero or negative number
+    * means no limit.
+    */
+   protected volatile int m_iMaximalWaitingCount;
+
+   /**
+    * How long in milliseconds to wait before retrying to create connection
+    * if it cannot be created.
+    */
+   protected volatile long m_lRetryPeriod;
+
+   /**
+    * How many times to retry to create connection if it cannot be created.
+    */
+   protected volatile int m_iRetryCount;
+
+   /**
+    * If true then the connection is validated before it is borrowed.
+    */
+   protected volatile boolean m_bValidateOnBorrow;
+
+   /**
+    * If true then the connection is validated when it is returned.
+    */
+   protected volatile boolean m_bValidateOnReturn;
+
+   /**
+    * If true then the idle connections are validated by the housekeeping
+    * thread.
+    */
+   protected volatile boolean m_bValidateOnIdle;
+
+   /**
+    * How thoroughly to validate the connections, one of the 
+    * PooledDatabaseConnectionFactorySetupReader.DBPOOL_CHECK_LEVEL_XXX 
+    * constants.
+    */
+   protected volatile int m_iCheckLevel;
+
+   /**
+    * How long in milliseconds has to connection sit in the pool unused before
+    * it is validated when it is borrowed or checked while idle. Zero or 
+    * negative number means always validate.
+    */
+   protected volatile long m_lValidateIdleTime;
+
+   /**
+    * How often in milliseconds the housekeeping thread checks the idle
+    * connections. Zero or negative number means no checking.
+    */
+   protected long m_lIdleCheckPeriod;
+
+   /**
+    * How many idle connections can be checked at most during one check. Zero
+    * or negative number means all idle connections.
+    */
+   protected volatile int m_iIdleCheckSize;
+
+   /**
+    * How long in milliseconds can connection stay idle before it is evicted
+    * from the pool. Zero or negative number means no eviction.
+    */
+   protected volatile long m_lIdlePeriod;
+
+   /**
+    * How many prepared statements to cache for each connection, 0 for
+    * no limit and negative number to not cache statements at all.
+    */
+   protected int m_iPreparedStatementCacheSize;
+
+   /**
+    * Sizer adjusting the size of the pool based on observed demand or null if
+    * the pool can always grow up to its maximal size.
+    */
+   protected AdaptivePoolSizer m_sizer;
+
+   /**
+    * Warmer creating the initial connections of the pool.
+    */
+   protected ConnectionPoolWarmer m_warmer;
+
+   /**
+    * How long in nanoseconds should the callers wait for a connection before 
+    * the pool grows over the size determined by the sizer. 
+    */
+   protected long m_lTargetWait;
+
+   /**
+    * How often in milliseconds should the sizer evaluate the size of the pool.
+    */
+   protected long m_lAdaptivePeriod;
+
+   /**
+    * All connections currently maintained by the pool regardless of their
+    * state. This list can be iterated without any synchronization.
+    */
+   protected List<OSSPooledConnection> m_lstConnections;
+
+   /**
+    * Connections recently returned by each thread, which the thread will try
+    * to reuse first. Weak references are used so that the thread doesn't keep
+    * connections removed from the pool.
+    */
+   protected ThreadLocal<List<WeakReference<OSSPooledConnection>>> m_threadConnections;
+
+   /**
+    * Threads waiting for connections in the order in which they started to 
+    * wait. The returned connections are handed off directly to them.
+    */
+   protected Queue<ConnectionWaiter> m_waiters;
+
+   /**
+    * Number of threads currently waiting for connection.
+    */
+   protected AtomicInteger m_iWaitingCount;
+
+   /**
+    * Number of connections maintained by the pool including the ones which
+    * are just being created.
+    */
+   protected AtomicInteger m_iConnectionCount;
+
+   /**
+    * Executor running the housekeeping tasks in the background.
+    */
+   protected ScheduledExecutorService m_housekeeper;
+
+   /**
+    * Flag signaling that the pool was closed.
+    */
+   protected volatile boolean m_bClosed;
+
+   /**
+    * Statistics where the pool records what it does.
+    */
+   protected DatabaseConnectionStatistics m_statistics;
+
+   // Cached values ////////////////////////////////////////////////////////////
+
+   /**
+    * Logger for this class
+    */
+   private static Logger s_logger = Log.getInstance(OSSConnectionPool.class);
+
+   // Constructors /////////////////////////////////////////////////////////////
+
+   /**
+    * Create new connection pool. The pool has to be started before it can be
+    * used.
+    *
+    * @param strName - name of the pool
+    * @param strUrl - URL to connect to the database
+    * @param strUser - user name to use to connect to the database
+    * @param strPassword - password to use to connect to the database
+    * @param iTransactionIsolation - transaction isolation that should be set
+    *                                for newly created connections
+    * @param strTestStatement - statement used to test if connection is valid,
+    *                           can be null
+    * @param setupReader - reader used to read the settings of the pool
+    * @param statistics - statistics where the pool records what it does
+    */
+   public OSSConnectionPool(
+      String                                     strName,
+      String                                     strUrl,
+      String                                     strUser,
+      String                                     strPassword,
+      int                                        iTransactionIsolation,
+      String                                     strTestStatement,
+      PooledDatabaseConnectionFactorySetupReader setupReader,
+      DatabaseConnectionStatistics               statistics
+   )
+   {
+      super();
+
+      if (GlobalConstants.ERROR_CHECKING)
+      {
+         assert statistics != null : "Statistics cannot be null";
+      }
+
+      m_strName = strName;
+      m_strUrl = strUrl;
+      m_strUser = strUser;
+      m_strPassword = strPassword;
+      m_iTransactionIsolation = iTransactionIsolation;
+      m_strTestStatement = strTestStatement;
+
+      m_iInitialSize = setupReader.getIntegerParameterValue(
+         PooledDatabaseConnectionFactorySetupReader.DBPOOL_INITIAL_SIZE).intValue();
+      readAdjustableSettings(setupReader);
+      m_lIdleCheckPeriod = setupReader.getLongParameterValue(
+         PooledDatabaseConnectionFactorySetupReader.DBPOOL_IDLE_CHECK_PERIOD).longValue();
+      m_iPreparedStatementCacheSize = setupReader.getIntegerParameterValue(
+         PooledDatabaseConnectionFactorySetupReader.DBPOOL_PREPSTATEMENT_CACHE_SIZE
+         ).intValue();
+      m_lTargetWait = TimeUnit.MILLISECONDS.toNanos(
+         setupReader.getLongParameterValue(
+            PooledDatabaseConnectionFactorySetupReader.DBPOOL_ADAPTIVE_TARGET_WAIT
+            ).longValue());
+      m_lAdaptivePeriod = setupReader.getLongParameterValue(
+         PooledDatabaseConnectionFactorySetupReader.DBPOOL_ADAPTIVE_PERIOD).longValue();
+      if ((setupReader.getBooleanParameterValue(
+              PooledDatabaseConnectionFactorySetupReader.DBPOOL_ADAPTIVE).booleanValue())
+         && (m_lAdaptivePeriod > 0))
+      {
+         m_sizer = new AdaptivePoolSizer(strName, m_iMinimalSize, m_iMaximalSize,
+                                         m_iInitialSize, 
+                                         TimeUnit.NANOSECONDS.toMillis(m_lTargetWait),
+                                         statistics);
+      }
+      else
+      {
+         m_sizer = null;
+      }
+      m_warmer = new ConnectionPoolWarmer(strName, setupReader);
+
+      m_lstConnections = new CopyOnWriteArrayList<>();
+      m_threadConnections = new ThreadLocal<List<WeakReference<OSSPooledConnection>>>()
+      {
+         @Override
+         protected List<WeakReference<OSSPooledConnection>> initialValue(
+         )
+         {
+            return new ArrayList<>(THREAD_CONNECTION_LIMIT);
+         }
+      };
+      m_waiters = new ConcurrentLinkedQueue<>();
+      m_iWaitingCount = new AtomicInteger(0);
+      m_iConnectionCount = new AtomicInteger(0);
+      m_housekeeper = null;
+      m_bClosed = false;
+      m_statistics = statistics;
+   }
+
+   // Logic ////////////////////////////////////////////////////////////////////
+
+   /**
+    * Start the pool, create the initial connections and start the housekeeping
+    * thread.
+    *
+    * @throws OSSException - an error has occurred
+    */
+   public void start(
+   ) throws OSSException
+   {
+      m_housekeeper = Executors.newSingleThreadScheduledExecutor(
+         new ThreadFactory()
+         {
+            @Override
+            public Thread newThread(
+               Runnable runnable
+            )
+            {
+               Thread thread;
+
+               thread = new Thread(runnable, "OSSConnectionPool housekeeper - "
+                                             + m_strName);
+               // Mark this thread as daemon so that it doesn't prevent the JVM
+               // from shutting down
+               thread.setDaemon(true);
+
+               return thread;
+            }
+         });
+
+      // Connections which were created stay in the pool even if some other 
+      // couldn't be created, the caller closes the pool in such case
+      m_warmer.warmUp(m_iInitialSize, 
+         new Callable<OSSPooledConnection>()
+         {
+            @Override
+            public OSSPooledConnection call(
+            ) throws OSSException
+            {
+               return createInitialConnection();
+            }
+         }, new ArrayList<OSSPooledConnection>(m_iInitialSize));
+
+      if (m_lIdleCheckPeriod > 0)
+      {
+         m_housekeeper.scheduleWithFixedDelay(
+            new Runnable()
+            {
+               @Override
+               public void run(
+               )
+               {
+                  checkIdleConnections();
+               }
+            }, m_lIdleCheckPeriod, m_lIdleCheckPeriod, TimeUnit.MILLISECONDS);
+      }
+
+      if (m_sizer != null)
+      {
+         long lSamplePeriod = Math.max(1, m_lAdaptivePeriod 
+                                          / AdaptivePoolSizer.SAMPLES_PER_PERIOD);
+         
+         m_housekeeper.scheduleWithFixedDelay(
+            new Runnable()
+            {
+               @Override
+               public void run(
+               )
+               {
+                  adjustSize();
+               }
+            }, lSamplePeriod, lSamplePeriod, TimeUnit.MILLISECONDS);
+      }
+   }
+
+   /**
+    * Close the pool and all connections, which are not in use. The connections,
+    * which are in use will be closed when they are returned.
+    */
+   public void close(
+   )
+   {
+      m_bClosed = true;
+      if (m_housekeeper != null)
+      {
+         m_housekeeper.shutdownNow();
+      }
+      // Wake up the waiting threads so that they do not wait for connections
+      // which will never be returned
+      for (ConnectionWaiter waiter : m_waiters)
+      {
+         LockSupport.unpark(waiter.m_thread);
+      }
+      for (OSSPooledConnection connection : m_lstConnections)
+      {
+         if (connection.compareAndSetState(OSSPooledConnection.STATE_NOT_IN_USE,
+                                           OSSPooledConnection.STATE_REMOVED))
+         {
+            removeConnection(connection);
+         }
+      }
+   }
+
+   /**
+    * Borrow connection from the pool. Each call returns new handle, which 
+    * returns the connection back to the pool when it is closed.
+    *
+    * @return Connection - connection borrowed from the pool, never null
+    * @throws OSSException - an error has occurred or no connection became
+    *                        available within the wait period
+    */
+   public Connection requestConnection(
+   ) throws OSSException
+   {
+      OSSPooledConnection connection;
+
+      checkClosed();
+
+      // First try the connections which this thread used recently since
+      // they are most likely not used by anybody else
+      connection = borrowThreadConnection();
+      if (connection == null)
+      {
+         // Then try any connection which is not in use
+         connection = borrowSharedConnection();
+         if (connection == null)
+         {
+            // Then try to create new connection if the pool can still grow
+            connection = createConnection(OSSPooledConnection.STATE_IN_USE,
+                                          getCurrentMaximalSize());
+            if (connection == null)
+            {
+               // And at the end wait for somebody to return a connection
+               connection = waitForConnection();
+            }
+         }
+      }
+
+      return new OSSConnectionHandle(connection);
+   }
+
+   /**
+    * Return connection back to the pool. This method is called when the
+    * connection is closed.
+    *
+    * @param connection - connection to return
+    */
+   public void returnConnection(
+      OSSPooledConnection connection
+   )
+   {
+      boolean bValid = true;
+
+      if (GlobalConstants.ERROR_CHECKING)
+      {
+         assert connection.getPool() == this
+                : "Connection doesn't belong to this pool.";
+      }
+
+      if (connection.isDiscarded())
+      {
+         bValid = false;
+      }
+      else
+      {
+         try
+         {
+            connection.reset();
+         }
+         catch (SQLException sqleExc)
+         {
+            s_logger.log(Level.FINE, "Cannot reset connection returned to pool "
+                         + m_strName, sqleExc);
+            bValid = false;
+         }
+      }
+
+      if ((bValid) && (m_bValidateOnReturn))
+      {
+         bValid = isValid(connection);
+      }
+
+      if ((!bValid) || (m_bClosed)
+         || ((m_iMaximalSize > 0) && (m_iConnectionCount.get() > m_iMaximalSize)))
+      {
+         // The connection is not usable, the pool was closed or the pool has
+         // grown over its maximal size so just get rid of the connection
+         connection.setState(OSSPooledConnection.STATE_REMOVED);
+         removeConnection(connection);
+         if ((!bValid) && (!m_bClosed))
+         {
+            fillPoolLater();
+         }
+      }
+      else
+      {
+         List<WeakReference<OSSPooledConnection>> lstThreadConnections;
+
+         connection.accessed();
+         releaseConnection(connection);
+
+         lstThreadConnections = m_threadConnections.get();
+         if (lstThreadConnections.size() < THREAD_CONNECTION_LIMIT)
+         {
+            lstThreadConnections.add(new WeakReference<>(connection));
+         }
+      }
+   }
+
+   /**
+    * @return int - transaction isolation set for connections of this pool
+    */
+   public int getTransactionIsolation(
+   )
+   {
+      return m_iTransactionIsolation;
+   }
+
+   /**
+    * @return String - name of the pool
+    */
+   public String getName(
+   )
+   {
+      return m_strName;
+   }
+
+   /**
+    * @return DatabaseConnectionStatistics - statistics where the pool records 
+    *                                        what it does
+    */
+   public DatabaseConnectionStatistics getStatistics(
+   )
+   {
+      return m_statistics;
+   }
+
+   /**
+    * @return int - number of connections maintained by the pool
+    */
+   public int getConnectionCount(
+   )
+   {
+      return m_iConnectionCount.get();
+   }
+
+   /**
+    * Apply changed settings of the pool while the pool is in use. The settings
+    * which determine how the pool is created, such as the initial size, how 
+    * often the idle connections are checked, the statement cache size or 
+    * whether the adaptive sizing is used, take effect only when the pool is 
+    * created again. When the maximal size decreases, the connections over the 
+    * new limit are closed as they are returned and when the minimal size 
+    * decreases, the idle connections over the limit are closed by the 
+    * housekeeping thread. The adaptive sizing keeps the size within the new
+    * limits.
+    * 
+    * @param setupReader - reader used to read the new settings of the pool
+    */
+   public void reconfigure(
+      PooledDatabaseConnectionFactorySetupReader setupReader
+   )
+   {
+      readAdjustableSettings(setupReader);
+      if (m_sizer != null)
+      {
+         m_sizer.setLimits(m_iMinimalSize, m_iMaximalSize);
+      }
+      s_logger.log(Level.CONFIG, "Connection pool {0} reconfigured.", m_strName);
+   }
+
+   /**
+    * @return int - how many connections can the pool currently maintain before
+    *               the callers start to wait for connections, 0 if there is no
+    *               limit
+    */
+   public int getCurrentMaximalSize(
+   )
+   {
+      return (m_sizer != null) ? m_sizer.getSize() : m_iMaximalSize;
+   }
+
+   /**
+    * @return int - number of connections which are currently not in use
+    */
+   public int getIdleConnectionCount(
+   )
+   {
+      int iCount = 0;
+
+      for (OSSPooledConnection connection : m_lstConnections)
+      {
+         if (connection.getState() == OSSPooledConnection.STATE_NOT_IN_USE)
+         {
+            iCount++;
+         }
+      }
+
+      return iCount;
+   }
+
+   /**
+    * @return int - number of threads currently waiting for connection
+    */
+   public int getWaitingCount(
+   )
+   {
+      return m_iWaitingCount.get();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void toString(
+      StringBuilder sb,
+      int           ind
+   )
+   {
+      append(sb, ind + 0, "OSSConnectionPool[");
+      append(sb, ind + 1, "m_strName = ", m_strName);
+      append(sb, ind + 1, "m_strUrl = ", m_strUrl);
+      append(sb, ind + 1, "m_strUser = ", m_strUser);
+      append(sb, ind + 1, "m_iInitialSize = ", m_iInitialSize);
+      append(sb, ind + 1, "m_iMinimalSize = ", m_iMinimalSize);
+      append(sb, ind + 1, "m_iMaximalSize = ", m_iMaximalSize);
+      append(sb, ind + 1, "m_sizer = ", m_sizer);
+      append(sb, ind + 1, "m_bCanGrow = ", m_bCanGrow);
+      append(sb, ind + 1, "m_lWaitPeriod = ", m_lWaitPeriod);
+      append(sb, ind + 1, "m_iConnectionCount = ", m_iConnectionCount.get());
+      append(sb, ind + 1, "m_iWaitingCount = ", m_iWaitingCount.get());
+      append(sb, ind + 1, "m_bClosed = ", m_bClosed);
+      append(sb, ind + 0, "]");
+   }
+
+   // Helper methods ///////////////////////////////////////////////////////////
+
+   /**
+    * Read the settings of the pool, which can be changed while the pool is in
+    * use. 
+    * 
+    * This method is private so that it cannot be overridden since it is called
+    * from constructor.
+    * 
+    * @param setupReader - reader used to read the settings of the pool
+    */
+   private void readAdjustableSettings(
+      PooledDatabaseConnectionFactorySetupReader setupReader
+   )
+   {
+      m_iMinimalSize = setupReader.getIntegerParameterValue(
+         PooledDatabaseConnectionFactorySetupReader.DBPOOL_MIN_SIZE).intValue();
+      m_iMaximalSize = setupReader.getIntegerParameterValue(
+         PooledDatabaseConnectionFactorySetupReader.DBPOOL_MAX_SIZE).intValue();
+      m_bCanGrow = setupReader.getBooleanParameterValue(
+         PooledDatabaseConnectionFactorySetupReader.DBPOOL_CAN_GROW).booleanValue();
+      m_lWaitPeriod = setupReader.getLongParameterValue(
+         PooledDatabaseConnectionFactorySetupReader.DBPOOL_WAIT_PERIOD).longValue();
+      m_iMaximalWaitingCount = setupReader.getIntegerParameterValue(
+         PooledDatabaseConnectionFactorySetupReader.DBPOOL_MAX_WAITING).intValue();
+      m_lRetryPeriod = setupReader.getLongParameterValue(
+         PooledDatabaseConnectionFactorySetupReader.DBPOOL_RETRY_PERIOD).longValue();
+      m_iRetryCount = setupReader.getIntegerParameterValue(
+         PooledDatabaseConnectionFactorySetupReader.DBPOOL_RETRY_COUNT).intValue();
+      m_bValidateOnBorrow = setupReader.getBooleanParameterValue(
+         PooledDatabaseConnectionFactorySetupReader.DBPOOL_VALIDATE_BORROW).booleanValue();
+      m_bValidateOnReturn = setupReader.getBooleanParameterValue(
+         PooledDatabaseConnectionFactorySetupReader.DBPOOL_VALIDATE_RETURN).booleanValue();
+      m_bValidateOnIdle = setupReader.getBooleanParameterValue(
+         PooledDatabaseConnectionFactorySetupReader.DBPOOL_VALIDATE_IDLE).booleanValue();
+      m_iCheckLevel = setupReader.getCheckLevel();
+      m_lValidateIdleTime = setupReader.getLongParameterValue(
+         PooledDatabaseConnectionFactorySetupReader.DBPOOL_VALIDATE_IDLE_TIME).longValue();
+      m_iIdleCheckSize = setupReader.getIntegerParameterValue(
+         PooledDatabaseConnectionFactorySetupReader.DBPOOL_IDLE_CHECK_SIZE).intValue();
+      m_lIdlePeriod = setupReader.getLongParameterValue(
+         PooledDatabaseConnectionFactorySetupReader.DBPOOL_IDLE_PERIOD).longValue();
+   }
+
+   /**
+    * Try to borrow one of the connections recently returned by the current
+    * thread.
+    *
+    * @return OSSPooledConnection - borrowed connection or null if none is
+    *                               available
+    */
+   protected OSSPooledConnection borrowThreadConnection(
+   )
+   {
+      List<WeakReference<OSSPooledConnection>> lstThreadConnections;
+      OSSPooledConnection                      connection;
+
+      lstThreadConnections = m_threadConnections.get();
+      for (int iIndex = lstThreadConnections.size() - 1; iIndex >= 0; iIndex--)
+      {
+         connection = lstThreadConnections.remove(iIndex).get();
+         if ((connection != null) && (claimConnection(connection)))
+         {
+            return connection;
+         }
+      }
+
+      return null;
+   }
+
+   /**
+    * Try to borrow any connection from the pool which is not in use.
+    *
+    * @return OSSPooledConnection - borrowed connection or null if none is
+    *                               available
+    */
+   protected OSSPooledConnection borrowSharedConnection(
+   )
+   {
+      for (OSSPooledConnection connection : m_lstConnections)
+      {
+         if (claimConnection(connection))
+         {
+            return connection;
+         }
+      }
+
+      return null;
+   }
+
+   /**
+    * Wait until some other thread returns connection or the pool is able to
+    * create new one. The waiting threads are handed the returned connections
+    * in the order in which they started to wait. The thread doesn't wait if
+    * too many threads are already waiting or longer than the deadline of the
+    * current call.
+    *
+    * @return OSSPooledConnection - borrowed connection, never null
+    * @throws OSSException - an error has occurred or no connection became
+    *                        available within the wait period
+    */
+   protected OSSPooledConnection waitForConnection(
+   ) throws OSSException
+   {
+      OSSPooledConnection connection = null;
+      OSSPooledConnection handedOff = null;
+      ConnectionWaiter    waiter;
+      boolean             bCompleted = false;
+      long                lRemaining;
+      long                lDeadline;
+      long                lCallDeadline;
+      long                lPoll;
+
+      if (m_lWaitPeriod > 0)
+      {
+         lRemaining = TimeUnit.MILLISECONDS.toNanos(m_lWaitPeriod);
+      }
+      else
+      {
+         lRemaining = Long.MAX_VALUE;
+      }
+      lCallDeadline = CallContext.getInstance().getDeadline();
+      if (lCallDeadline != CallContext.NO_DEADLINE)
+      {
+         lRemaining = Math.min(lRemaining, TimeUnit.MILLISECONDS.toNanos(
+                                  lCallDeadline - System.currentTimeMillis()));
+      }
+      lDeadline = System.nanoTime() + lRemaining;
+
+      m_statistics.poolExhausted();
+      m_iWaitingCount.incrementAndGet();
+      waiter = new ConnectionWaiter();
+      m_waiters.add(waiter);
+      try
+      {
+         if ((lRemaining <= 0) 
+            || ((m_iMaximalWaitingCount > 0) 
+               && (m_iWaitingCount.get() > m_iMaximalWaitingCount)))
+         {
+            // Do not wait at all and fail or grow the pool immediately
+            lRemaining = 0;
+            if (!m_bCanGrow)
+            {
+               m_statistics.requestRejected();
+               throw new OSSDatabaseAccessException(
+                            "Cannot get database connection from pool " 
+                            + m_strName + " since all connections are in use"
+                            + " and too many requests are already waiting or"
+                            + " the deadline of the request has passed.");
+            }
+         }
+         while ((connection == null) && (lRemaining > 0) && (!m_bClosed)
+               && (!waiter.isHandedOff()))
+         {
+            // Check the shared connections again since the connection could
+            // have been returned before we started to wait and the thread
+            // returning it doesn't know about us
+            connection = borrowSharedConnection();
+            if (connection == null)
+            {
+               if (m_sizer != null)
+               {
+                  // When the size of the pool is adjusted based on the demand
+                  // do not wait longer than the target wait time before the 
+                  // pool grows up to its maximal size
+                  lPoll = Math.min(lRemaining, 
+                                   Math.max(m_lTargetWait, 
+                                            TimeUnit.MILLISECONDS.toNanos(1)));
+               }
+               else
+               {
+                  lPoll = lRemaining;
+               }
+               LockSupport.parkNanos(this, lPoll);
+               if (Thread.interrupted())
+               {
+                  throw new InterruptedException();
+               }
+               if (!waiter.isHandedOff())
+               {
+                  // Some connections might have been removed in the meantime
+                  // so see if we can create new one
+                  connection = createConnection(OSSPooledConnection.STATE_IN_USE,
+                                                m_iMaximalSize);
+               }
+            }
+            lRemaining = lDeadline - System.nanoTime();
+         }
+         bCompleted = true;
+      }
+      catch (InterruptedException ieExc)
+      {
+         Thread.currentThread().interrupt();
+         throw new OSSDatabaseAccessException("Interrupted while waiting for"
+                                              + " connection from pool "
+                                              + m_strName, ieExc);
+      }
+      finally
+      {
+         m_waiters.remove(waiter);
+         // The connection could have been handed off to us even after we got
+         // connection some other way or after we gave up
+         handedOff = waiter.cancel();
+         m_iWaitingCount.decrementAndGet();
+         if ((handedOff != null) && ((!bCompleted) || (connection != null)))
+         {
+            releaseConnection(handedOff);
+            handedOff = null;
+         }
+      }
+      
+      if (connection == null)
+      {
+         connection = handedOff;
+      }
+
+      if (connection == null)
+      {
+         // The waiting thread was woken up since the pool was closed
+         checkClosed();
+         if (m_bCanGrow)
+         {
+            // The pool was exhausted but it is allowed to grow beyond its
+            // maximal size
+            connection = createConnection(OSSPooledConnection.STATE_IN_USE, 
+                                          UNLIMITED_SIZE);
+         }
+         else
+         {
+            m_statistics.requestTimedOut();
+            throw new OSSDatabaseAccessException(
+                         "Cannot get database connection from pool " + m_strName
+                         + " since no connection became available within "
+                         + m_lWaitPeriod + " ms or before the deadline of the"
+                         + " request.");
+         }
+      }
+
+      return connection;
+   }
+
+   /**
+    * Try to claim the connection for use.
+    *
+    * @param connection - connection to claim
+    * @return boolean - true if the connection was claimed and can be used,
+    *                   false if it is used by somebody else or it is not valid
+    */
+   protected boolean claimConnection(
+      OSSPooledConnection connection
+   )
+   {
+      boolean bClaimed;
+
+      bClaimed = connection.compareAndSetState(
+                    OSSPooledConnection.STATE_NOT_IN_USE,
+                    OSSPooledConnection.STATE_IN_USE);
+      if ((bClaimed) && (m_bValidateOnBorrow) && (isValidationDue(connection))
+         && (!isValid(connection)))
+      {
+         connection.setState(OSSPooledConnection.STATE_REMOVED);
+         removeConnection(connection);
+         fillPoolLater();
+         bClaimed = false;
+      }
+
+      return bClaimed;
+   }
+
+   /**
+    * Make connection available to other threads. If some threads are waiting
+    * for connection the connection will be handed off directly to the one, 
+    * which waits the longest. If the connection cannot be handed off, it 
+    * stays available in the pool.
+    *
+    * @param connection - connection to release, it has to be claimed or
+    *                     reserved by the current thread
+    */
+   protected void releaseConnection(
+      OSSPooledConnection connection
+   )
+   {
+      ConnectionWaiter waiter;
+      
+      connection.setState(OSSPooledConnection.STATE_NOT_IN_USE);
+      while ((!m_waiters.isEmpty()) 
+            // Somebody else may have already taken the connection 
+            && (connection.compareAndSetState(OSSPooledConnection.STATE_NOT_IN_USE,
+                                              OSSPooledConnection.STATE_IN_USE)))
+      {
+         waiter = m_waiters.poll();
+         if ((waiter != null) && (waiter.handOff(connection)))
+         {
+            break;
+         }
+         // The thread stopped waiting in the meantime so try the next one 
+         connection.setState(OSSPooledConnection.STATE_NOT_IN_USE);
+      }
+   }
+
+   /**
+    * Create new connection and add it to the pool.
+    *
+    * @param iInitialState - state of the connection, use STATE_IN_USE if the
+    *                        connection should be borrowed by the current thread
+    *                        or STATE_NOT_IN_USE if it should be available to
+    *                        everybody
+    * @param iMaximalSize - the connection will not be created if the pool 
+    *                       already has this many connections, UNLIMITED_SIZE
+    *                       if the connection should be always created
+    * @return OSSPooledConnection - new connection or null if the pool reached
+    *                               the specified size
+    * @throws OSSException - an error has occurred
+    */
+   protected OSSPooledConnection createConnection(
+      int iInitialState,
+      int iMaximalSize
+   ) throws OSSException
+   {
+      OSSPooledConnection connection = null;
+      Connection          realConnection;
+      int                 iCount;
+      long                lStartTime;
+
+      checkClosed();
+      // Reserve space for the connection first so that the maximal size is not
+      // exceeded by threads creating connections at the same time
+      do
+      {
+         iCount = m_iConnectionCount.get();
+         if ((iMaximalSize > UNLIMITED_SIZE) && (iCount >= iMaximalSize))
+         {
+            return null;
+         }
+      }
+      while (!m_iConnectionCount.compareAndSet(iCount, iCount + 1));
+
+      try
+      {
+         lStartTime = System.nanoTime();
+         realConnection = openConnection();
+         connection = new OSSPooledConnection(realConnection, this,
+                                              OSSPooledConnection.STATE_IN_USE,
+                                              m_iPreparedStatementCacheSize);
+         m_statistics.connectionCreated(System.nanoTime() - lStartTime,
+                                        connection.getCreationTimestamp());
+         m_lstConnections.add(connection);
+      }
+      finally
+      {
+         if (connection == null)
+         {
+            m_iConnectionCount.decrementAndGet();
+         }
+      }
+      if (m_bClosed)
+      {
+         // The pool was closed while the connection was opened and it might
+         // have missed the new connection so close it here
+         connection.setState(OSSPooledConnection.STATE_REMOVED);
+         removeConnection(connection);
+         checkClosed();
+      }
+
+      if (iInitialState == OSSPooledConnection.STATE_NOT_IN_USE)
+      {
+         releaseConnection(connection);
+      }
+
+      return connection;
+   }
+
+   /**
+    * Create one of the initial connections of the pool, validate it and use 
+    * it to prepare statements which should be cached before the connection 
+    * is used for the first time. 
+    *
+    * @return OSSPooledConnection - new connection or null if the pool already
+    *                               reached its maximal size or if the new 
+    *                               connection was not valid
+    * @throws OSSException - an error has occurred
+    */
+   protected OSSPooledConnection createInitialConnection(
+   ) throws OSSException
+   {
+      OSSPooledConnection connection;
+      
+      connection = createConnection(OSSPooledConnection.STATE_IN_USE,
+                                    getCurrentMaximalSize());
+      if (connection != null)
+      {
+         if (isValid(connection))
+         {
+            m_warmer.prepareStatements(connection);
+            releaseConnection(connection);
+         }
+         else
+         {
+            // The database may not be initialized yet so do not fail, the 
+            // pool will create the connection later when it is needed
+            s_logger.log(Level.FINE, "Discarding initial connection for pool"
+                         + " {0} which is not valid.", m_strName);
+            connection.setState(OSSPooledConnection.STATE_REMOVED);
+            removeConnection(connection);
+            connection = null;
+         }
+      }
+      
+      return connection;
+   }
+
+   /**
+    * Open new real connection to the database. If the connection cannot be
+    * opened, the attempt is retried the configured number of times.
+    *
+    * @return Connection - new connection to the database, never null
+    * @throws OSSException - an error has occurred
+    */
+   protected Connection openConnection(
+   ) throws OSSException
+   {
+      Connection   realConnection = null;
+      SQLException lastException = null;
+
+      for (int iAttempt = 0; (realConnection == null)
+                             && (iAttempt <= m_iRetryCount); iAttempt++)
+      {
+         if ((iAttempt > 0) && (m_lRetryPeriod > 0))
+         {
+            try
+            {
+               Thread.sleep(m_lRetryPeriod);
+            }
+            catch (InterruptedException ieExc)
+            {
+               Thread.currentThread().interrupt();
+               break;
+            }
+         }
+         try
+         {
+            realConnection = DriverManager.getConnection(m_strUrl, m_strUser,
+                                                         m_strPassword);
+            if (realConnection.getTransactionIsolation()
+                != m_iTransactionIsolation)
+            {
+               realConnection.setTransactionIsolation(m_iTransactionIsolation);
+            }
+         }
+         catch (SQLException sqleExc)
+         {
+            DatabaseUtils.close("", realConnection);
+            realConnection = null;
+            lastException = sqleExc;
+            s_logger.log(Level.FINE, "Cannot create database connection for pool "
+                         + m_strName, sqleExc);
+         }
+      }
+
+      if (realConnection == null)
+      {
+         throw new OSSDatabaseAccessException("Cannot create database connection"
+                                              + " for pool " + m_strName,
+                                              lastException);
+      }
+
+      return realConnection;
+   }
+
+   /**
+    * Remove connection from the pool and close it. The connection has to be
+    * already in the removed state.
+    *
+    * @param connection - connection to remove
+    */
+   protected void removeConnection(
+      OSSPooledConnection connection
+   )
+   {
+      if (m_lstConnections.remove(connection))
+      {
+         m_iConnectionCount.decrementAndGet();
+         connection.closeDelegate();
+         m_statistics.connectionDestroyed(connection.getCreationTimestamp());
+         // The pool can now create new connection so wake up the waiting 
+         // threads rather than letting them wait until some connection is 
+         // returned. All of them are woken up since the first one may be just
+         // leaving with other connection. Connections are removed rarely so 
+         // it doesn't matter that the rest of them just wait again.
+         for (ConnectionWaiter waiter : m_waiters)
+         {
+            if (!waiter.isHandedOff())
+            {
+               LockSupport.unpark(waiter.m_thread);
+            }
+         }
+      }
+   }
+   
+   /**
+    * Check if the pool was closed.
+    * 
+    * @throws OSSException - the pool was already closed
+    */
+   protected void checkClosed(
+   ) throws OSSException
+   {
+      if (m_bClosed)
+      {
+         throw new OSSDatabaseAccessException("Connection pool " + m_strName
+                                              + " was already closed.");
+      }
+   }
+
+   /**
+    * Test if the connection is valid and can be used.
+    *
+    * @param connection - connection to test
+    * @return boolean - true if the connection is valid
+    */
+   protected boolean isValid(
+      OSSPooledConnection connection
+   )
+   {
+      boolean    bValid = false;
+      boolean    bChecked = false;
+      Connection realConnection = connection.getDelegate();
+      long       lStartTime = System.nanoTime();
+
+      try
+      {
+         if (m_iCheckLevel == PooledDatabaseConnectionFactorySetupReader.DBPOOL_CHECK_LEVEL_DRIVER)
+         {
+            try
+            {
+               bValid = realConnection.isValid(VALIDATION_TIMEOUT / 1000);
+               bChecked = true;
+            }
+            catch (AbstractMethodError ameExc)
+            {
+               // The driver was written before JDBC 4 so use the test 
+               // statement from now on, including this validation
+               s_logger.log(Level.WARNING, "JDBC driver used by pool " 
+                            + m_strName + " doesn't support Connection.isValid," 
+                            + " the test statement will be used instead.");
+               m_iCheckLevel = PooledDatabaseConnectionFactorySetupReader.DBPOOL_CHECK_LEVEL_STATEMENT;
+            }
+         }
+         if (!bChecked)
+         {
+            if ((m_iCheckLevel == PooledDatabaseConnectionFactorySetupReader.DBPOOL_CHECK_LEVEL_STATEMENT)
+               && (m_strTestStatement != null) && (m_strTestStatement.length() > 0))
+            {
+               Statement statement = null;
+
+               try
+               {
+                  statement = realConnection.createStatement();
+                  statement.setQueryTimeout(VALIDATION_TIMEOUT / 1000);
+                  statement.execute(m_strTestStatement);
+                  bValid = true;
+               }
+               finally
+               {
+                  DatabaseUtils.close(statement);
+               }
+            }
+            else
+            {
+               bValid = !realConnection.isClosed();
+            }
+         }
+      }
+      catch (SQLException sqleExc)
+      {
+         s_logger.log(Level.FINE, "Connection from pool " + m_strName
+                      + " is not valid.", sqleExc);
+      }
+      m_statistics.connectionValidated(System.nanoTime() - lStartTime, bValid);
+
+      return bValid;
+   }
+
+   /**
+    * Test if the connection sat in the pool unused long enough so that it 
+    * should be validated. Connections returned to the pool recently are 
+    * expected to be still valid.
+    *
+    * @param connection - connection which is not in use
+    * @return boolean - true if the connection should be validated
+    */
+   protected boolean isValidationDue(
+      OSSPooledConnection connection
+   )
+   {
+      return (m_lValidateIdleTime <= 0)
+             || (System.currentTimeMillis() - connection.getLastAccessTimestamp() 
+                > m_lValidateIdleTime);
+   }
+
+   /**
+    * Check the idle connections, evict the ones which were idle for too long
+    * or which are not valid anymore and make sure that the pool has at least
+    * the minimal number of connections. This method is invoked periodically
+    * by the housekeeping thread.
+    */
+   protected void checkIdleConnections(
+   )
+   {
+      long    lNow = System.currentTimeMillis();
+      int     iChecked = 0;
+      boolean bRemove;
+
+      for (OSSPooledConnection connection : m_lstConnections)
+      {
+         if ((m_bClosed)
+            || ((m_iIdleCheckSize > 0) && (iChecked >= m_iIdleCheckSize)))
+         {
+            break;
+         }
+         // Reserve the connection so that nobody can borrow it while it is
+         // being checked
+         if (connection.compareAndSetState(OSSPooledConnection.STATE_NOT_IN_USE,
+                                           OSSPooledConnection.STATE_RESERVED))
+         {
+            iChecked++;
+            bRemove = ((m_lIdlePeriod > 0)
+                      && (lNow - connection.getLastAccessTimestamp() > m_lIdlePeriod)
+                      && (m_iConnectionCount.get() > m_iMinimalSize))
+                      || ((m_bValidateOnIdle) && (isValidationDue(connection))
+                         && (!isValid(connection)));
+            if (bRemove)
+            {
+               connection.setState(OSSPooledConnection.STATE_REMOVED);
+               removeConnection(connection);
+            }
+            else
+            {
+               releaseConnection(connection);
+            }
+         }
+      }
+
+      fillPool();
+   }
+
+   /**
+    * Report to the sizer how many connections are in use and if it decides 
+    * that the pool should shrink, close the connections which are over the 
+    * new size and are not in use. This method is invoked periodically by the 
+    * housekeeping thread.
+    */
+   protected void adjustSize(
+   )
+   {
+      int iOldSize = m_sizer.getSize();
+      int iNewSize;
+      
+      iNewSize = m_sizer.sample(m_iConnectionCount.get() 
+                                - getIdleConnectionCount());
+      if (iNewSize < iOldSize)
+      {
+         for (OSSPooledConnection connection : m_lstConnections)
+         {
+            if ((m_bClosed) || (m_iConnectionCount.get() <= iNewSize))
+            {
+               break;
+            }
+            if (connection.compareAndSetState(
+                  OSSPooledConnection.STATE_NOT_IN_USE,
+                  OSSPooledConnection.STATE_REMOVED))
+            {
+               removeConnection(connection);
+            }
+         }
+      }
+   }
+
+   /**
+    * Create new connections until the pool has at least the minimal number
+    * of connections.
+    */
+   protected void fillPool(
+   )
+   {
+      try
+      {
+         while ((!m_bClosed) && (m_iConnectionCount.get() < m_iMinimalSize))
+         {
+            if (createConnection(OSSPooledConnection.STATE_NOT_IN_USE, 
+                                 getCurrentMaximalSize()) == null)
+            {
+               break;
+            }
+         }
+      }
+      catch (OSSException ossExc)
+      {
+         s_logger.log(Level.WARNING, "Cannot create connections to maintain"
+                      + " minimal size of pool " + m_strName, ossExc);
+      }
+   }
+
+   /**
+    * Ask the housekeeping thread to make sure that the pool has at least the
+    * minimal number of connections.
+    */
+   protected void fillPoolLater(
+   )
+   {
+      if ((m_housekeeper != null) && (!m_bClosed)
+         && (m_iConnectionCount.get() < m_iMinimalSize))
+      {
+         try
+         {
+            m_housekeeper.execute(new Runnable()
+            {
+               @Override
+               public void run(
+               )
+               {
+                  fillPool();
+               }
+            });
+         }
+         catch (RejectedExecutionException reeExc)
+         {
+            // The pool is being closed
+            s_logger.log(Level.FINEST, "Pool " + m_strName + " is being closed.");
+         }
+      }
+   }
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2003 - 2016 OpenSubsystems.com/net/org and its owners. All rights reserved.
+ * 
+ * This file is part of OpenSubsystems.
+ *
+ * OpenSubsystems is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+
+package org.opensubsystems.core.persist.jdbc.connectionpool.oss;
+
+import java.sql.Connection;
+
+import org.opensubsystems.core.error.OSSException;
+import org.opensubsystems.core.persist.jdbc.Database;
+import org.opensubsystems.core.persist.jdbc.connectionpool.impl.PooledDatabaseConnectionFactoryImpl;
+import org.opensubsystems.core.persist.jdbc.connectionpool.impl.PooledDatabaseConnectionFactorySetupReader;
+import org.opensubsystems.core.persist.jdbc.impl.DatabaseTransactionFactoryImpl;
+
+/**
+ * Implementation of connection pool using OSSConnectionPool, which allows 
+ * many threads to borrow and return connections without contending for any 
+ * lock. 
+ * 
+ * This connection factory can be selected instead of the default one by 
+ * setting the property 
+ * org.opensubsystems.core.persist.jdbc.DatabaseConnectionFactory
+ * to the name of this class in the configuration file.
+ * 
+ * @author bastafidli
+ */
+public class OSSDatabaseConnectionFactoryImpl extends PooledDatabaseConnectionFactoryImpl
+{
+   // Constructors /////////////////////////////////////////////////////////////
+   
+   /**
+    * Constructor for new instance using default database properties.
+    */
+   public OSSDatabaseConnectionFactoryImpl(
+   )  
+   {
+      this(null);
+   }
+
+   /**
+    * Constructor for new instance using default database properties.
+    * 
+    * @param transactionFactory - transaction factory to use for this 
+    *                             connection factory, can be null
+    */
+   public OSSDatabaseConnectionFactoryImpl(
+      DatabaseTransactionFactoryImpl transactionFactory
+   ) 
+   {
+      super(transactionFactory);
+   }
+   
+   // Configuration methods ////////////////////////////////////////////////////
+   
+   /**
+    * The pool caches the prepared statements for the whole life of the real 
+    * connection as configured by pool.pstmtcachesize so there is no need to 
+    * cache them again while the connection is issued.
+    * 
+    * @return int - always NO_STATEMENT_CACHE
+    */
+   @Override
+   public int getStatementCacheSize(
+   )
+   {
+      return NO_STATEMENT_CACHE;
+   }
+
+   // Helper methods ///////////////////////////////////////////////////////////
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   protected Connection getPooledConnection(
+      ConnectionPoolDefinition connectionpool
+   ) throws OSSException
+   {
+      return ((OSSConnectionPool)connectionpool.getConnectionPool())
+                                                  .requestConnection();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   protected Connection getPooledConnection(
+      ConnectionPoolDefinition connectionpool,
+      String                   strUser,
+      String                   strPassword
+   ) throws OSSException
+   {
+      // The pool maintains connections only for the user of the data source
+      // so maintain separate pool for each user
+      return getUserPooledConnection(connectionpool, strUser, strPassword);
+   }
+
+   /**
+    * The pool discards connection invalidated while it is in use.
+    * 
+    * @return boolean - always true
+    */
+   @Override
+   protected boolean canInvalidateConnection(
+   )
+   {
+      return true;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   protected void invalidateConnection(
+      Connection                   cntDBConnection,
+      DatabaseConnectionDefinition dataSource
+   )
+   {
+      if (cntDBConnection instanceof OSSConnectionHandle)
+      {
+         // Closing the connection would make it available to other callers 
+         // while the statements created by the code which holds it would still
+         // use it so make sure the pool closes the real connection
+         ((OSSConnectionHandle)cntDBConnection).getPooledConnection().discard();
+      }
+      super.invalidateConnection(cntDBConnection, dataSource);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   protected int getIdleConnectionCount(
+      ConnectionPoolDefinition connectionpool
+   )
+   {
+      return ((OSSConnectionPool)connectionpool.getConnectionPool())
+                                                  .getIdleConnectionCount();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   protected Object createConnectionPool(
+      String   strConnectionPoolName,
+      Database database,
+      String   strDriverName,
+      String   strUrl,
+      String   strUser,
+      String   strPassword,
+      int      iTransactionIsolation
+   ) throws OSSException
+   {
+      OSSConnectionPool connectionPool;
+      
+      PooledDatabaseConnectionFactorySetupReader setupReader 
+          = new PooledDatabaseConnectionFactorySetupReader(
+                   strConnectionPoolName, database.getDatabaseTypeIdentifier());
+
+      connectionPool = new OSSConnectionPool(strConnectionPoolName, strUrl, 
+                                             strUser, strPassword, 
+                                             iTransactionIsolation,
+                                             database.getConnectionTestStatement(),
+                                             setupReader, 
+                                             initializeStatistics(
+                                                strConnectionPoolName));
+      try
+      {
+         connectionPool.start();
+      }
+      catch (OSSException ossExc)
+      {
+         // Do not leave behind any connections which were already created
+         connectionPool.close();
+         throw ossExc;
+      }
+      
+      return connectionPool;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   protected void destroyConnectionPool(
+      ConnectionPoolDefinition connectionpool
+   ) throws OSSException
+   {
+      ((OSSConnectionPool)connectionpool.getConnectionPool()).close();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   protected void reconfigureConnectionPool(
+      ConnectionPoolDefinition connectionpool
+   ) throws OSSException
+   {
+      PooledDatabaseConnectionFactorySetupReader setupReader 
+          = new PooledDatabaseConnectionFactorySetupReader(
+                   connectionpool.getName(), 
+                   connectionpool.getDatabase().getDatabaseTypeIdentifier());
+
+      ((OSSConnectionPool)connectionpool.getConnectionPool()).reconfigure(
+                                                                 setupReader);
+   }
+}
@@ -0,0 +1,1189 @@
+/*
+ * Copyright (C) 2003 - 2016 OpenSubsystems.com/net/org and its owners. All rights reserved.
+ * 
+ * This file is part of OpenSubsystems.
+ *
+ * OpenSubsystems is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+
+package org.opensubsystems.core.persist.jdbc.connectionpool.oss;
+
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.CallableStatement;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.NClob;
+import java.sql.PreparedStatement;
+import java.sql.SQLClientInfoException;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.sql.SQLXML;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.sql.Struct;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.opensubsystems.core.util.Log;
+import org.opensubsystems.core.util.jdbc.PreparedStatementCache;
+
+/**
+ * Connection maintained by OSSConnectionPool. This is a wrapper around the 
+ * real database connection, which keeps track of the state of the connection
+ * in the pool. Closing this connection doesn't close the real connection, 
+ * instead it returns the connection back to the pool. The pool doesn't hand
+ * out this connection directly, each borrower gets its own 
+ * OSSConnectionHandle so that it cannot return the connection once it was 
+ * borrowed by somebody else.
+ * 
+ * The state of the connection is changed using compare and set operation so 
+ * that the pool can find and claim connection, which is not in use, without
+ * any locking.
+ * 
+ * The connection remembers the autocommit, transaction isolation and read only
+ * state it has set on the real connection and it changes the state of the 
+ * real connection only when it really changes. Since most drivers send these
+ * changes to the database, this saves database round trips every time the 
+ * connection is borrowed and initialized. When the connection is returned, 
+ * the state is restored to the defaults of the pool so that the next borrower
+ * doesn't inherit the settings of the previous one. The state must not be 
+ * changed by executing SQL statements directly, otherwise it will not be 
+ * known to this connection.
+ * 
+ * @author bastafidli
+ */
+public class OSSPooledConnection implements Connection
+{
+   // Constants ////////////////////////////////////////////////////////////////
+   
+   /**
+    * Connection is in the pool and can be borrowed.
+    */
+   public static final int STATE_NOT_IN_USE = 0;
+
+   /**
+    * Connection was borrowed from the pool.
+    */
+   public static final int STATE_IN_USE = 1;
+
+   /**
+    * Connection was removed from the pool and the real connection was closed 
+    * or is being closed.
+    */
+   public static final int STATE_REMOVED = -1;
+
+   /**
+    * Connection was temporarily reserved by the pool itself, e.g. to validate
+    * it or while it is being returned, and cannot be borrowed.
+    */
+   public static final int STATE_RESERVED = -2;
+   
+   // Attributes ///////////////////////////////////////////////////////////////
+   
+   /**
+    * Underlying database connection to which all method calls are delegated.
+    */
+   private Connection m_connection;
+
+   /**
+    * Pool to which this connection belongs to.
+    */
+   private OSSConnectionPool m_pool;
+
+   /**
+    * Current state of the connection in the pool, one of the STATE_XXX 
+    * constants.
+    */
+   private final AtomicInteger m_iState;
+
+   /**
+    * Cache of prepared statements for this connection or null if prepared 
+    * statements should not be cached.
+    */
+   private PreparedStatementCache m_statementCache;
+   
+   /**
+    * Time in milliseconds when the real connection was created.
+    */
+   private final long m_lCreationTimestamp;
+
+   /**
+    * Time in milliseconds when the connection was last time returned to the 
+    * pool.
+    */
+   private volatile long m_lLastAccessTimestamp;
+
+   /**
+    * Autocommit state of the real connection or null if it is not known yet.
+    */
+   private Boolean m_bAutoCommit;
+   
+   /**
+    * Transaction isolation of the real connection or null if it is not known
+    * yet.
+    */
+   private Integer m_iTransactionIsolation;
+   
+   /**
+    * Read only state of the real connection or null if it is not known yet.
+    */
+   private Boolean m_bReadOnly;
+
+   /**
+    * Flag signaling that the connection must not be reused when it is returned
+    * to the pool, e.g. since it was leaked and the code which leaked it still 
+    * holds it.
+    */
+   private volatile boolean m_bDiscarded;
+
+   // Cached values ////////////////////////////////////////////////////////////
+
+   /**
+    * Logger for this class
+    */
+   private static Logger s_logger = Log.getInstance(OSSPooledConnection.class);
+   
+   // Constructors /////////////////////////////////////////////////////////////
+   
+   /**
+    * Protected constructor so that only classes from this package can create it.
+    * 
+    * @param connection - real connection to the database
+    * @param pool - pool to which this connection belongs to
+    * @param iInitialState - initial state of the connection, one of the 
+    *                        STATE_XXX constants
+    * @param iStatementCacheSize - how many prepared statements to cache for
+    *                              this connection, 
+    *                              PreparedStatementCache.UNLIMITED_SIZE for 
+    *                              no limit or negative value to not cache 
+    *                              the statements
+    */
+   protected OSSPooledConnection(
+      Connection        connection,
+      OSSConnectionPool pool,
+      int               iInitialState,
+      int               iStatementCacheSize
+   ) 
+   {
+      super();
+      
+      m_connection = connection;
+      m_pool = pool;
+      m_iState = new AtomicInteger(iInitialState);
+      if (iStatementCacheSize >= PreparedStatementCache.UNLIMITED_SIZE)
+      {
+         // Record the hits and misses of the cache in the statistics of 
+         // the pool
+         // The statements report as their connection the handle which 
+         // borrows this connection, see OSSConnectionHandle
+         m_statementCache = pool.getStatistics().createStatementCache(
+                                                    connection, null,
+                                                    iStatementCacheSize);
+      }
+      else
+      {
+         m_statementCache = null;
+      }
+      m_lCreationTimestamp = System.currentTimeMillis();
+      m_lLastAccessTimestamp = m_lCreationTimestamp;
+      m_bAutoCommit = null;
+      m_iTransactionIsolation = null;
+      m_bReadOnly = null;
+      m_bDiscarded = false;
+   }   
+   
+   // Logic ////////////////////////////////////////////////////////////////////
+   
+   /**
+    * @return int - current state of the connection, one of the STATE_XXX 
+    *               constants
+    */
+   public int getState(
+   )
+   {
+      return m_iState.get();
+   }
+   
+   /**
+    * @return long - time in milliseconds when the real connection was created
+    */
+   public long getCreationTimestamp(
+   )
+   {
+      return m_lCreationTimestamp;
+   }
+   
+   /**
+    * @return long - time in milliseconds when the connection was last time
+    *                returned to the pool
+    */
+   public long getLastAccessTimestamp(
+   )
+   {
+      return m_lLastAccessTimestamp;
+   }
+
+   /**
+    * Make sure that the connection is closed instead of being reused when it
+    * is returned to the pool.
+    */
+   public void discard(
+   )
+   {
+      m_bDiscarded = true;
+   }
+   
+   /**
+    * @return boolean - true if the connection must be closed instead of being
+    *                   reused when it is returned to the pool
+    */
+   public boolean isDiscarded(
+   )
+   {
+      return m_bDiscarded;
+   }
+
+   /**
+    * @return OSSConnectionPool - pool to which this connection belongs to
+    */
+   public OSSConnectionPool getPool(
+   )
+   {
+      return m_pool;
+   }
+   
+   /**
+    * @return PreparedStatementCache - cache of prepared statements for this 
+    *                                  connection or null if statements are not
+    *                                  cached
+    */
+   public PreparedStatementCache getStatementCache(
+   )
+   {
+      return m_statementCache;
+   }
+
+   /**
+    * Get the underlying database connection. This method is not public so 
+    * that it can be used only in this package.
+    * 
+    * @return Connection - real connection to the database
+    */
+   Connection getDelegate(
+   )
+   {
+      return m_connection;
+   }
+   
+   /**
+    * Atomically change state of the connection if it is in the expected state.
+    * This method is not public so that it can be used only in this package.
+    * 
+    * @param iExpectedState - state the connection is expected to be in
+    * @param iNewState - new state of the connection
+    * @return boolean - true if the state was changed, false if the connection
+    *                   was not in the expected state
+    */
+   boolean compareAndSetState(
+      int iExpectedState,
+      int iNewState
+   )
+   {
+      return m_iState.compareAndSet(iExpectedState, iNewState);
+   }
+   
+   /**
+    * Unconditionally change state of the connection. This method is not public 
+    * so that it can be used only in this package.
+    * 
+    * @param iNewState - new state of the connection
+    */
+   void setState(
+      int iNewState
+   )
+   {
+      m_iState.set(iNewState);
+   }
+
+   /**
+    * Remember that the connection was just used. This method is not public so 
+    * that it can be used only in this package.
+    */
+   void accessed(
+   )
+   {
+      m_lLastAccessTimestamp = System.currentTimeMillis();
+   }
+   
+   /**
+    * Reset state of the real connection before it is returned to the pool 
+    * so that the next user doesn't see any left over changes. The read only 
+    * and transaction isolation are restored to the defaults of the pool. The
+    * uncommitted changes are rolled back but the autocommit is kept as it is
+    * since the next borrower sets it as needed and the database doesn't have 
+    * to be called if it already has the expected value. This method is not 
+    * public so that it can be used only in this package.
+    * 
+    * @throws SQLException - an error has occurred and the connection should 
+    *                        not be used anymore
+    */
+   void reset(
+   ) throws SQLException
+   {
+      int iDefaultTransactionIsolation;
+      
+      if (!isAutoCommit())
+      {
+         // Do not leave any uncommitted changes behind since they would hold
+         // locks in the database
+         m_connection.rollback();
+      }
+      // If the state is not known it was not changed by the borrower since 
+      // the connection was created or reset last time 
+      if ((m_bReadOnly != null) && (m_bReadOnly.booleanValue()))
+      {
+         m_bReadOnly = null;
+         m_connection.setReadOnly(false);
+         m_bReadOnly = Boolean.FALSE;
+      }
+      iDefaultTransactionIsolation = m_pool.getTransactionIsolation();
+      if ((m_iTransactionIsolation != null) 
+         && (m_iTransactionIsolation.intValue() != iDefaultTransactionIsolation))
+      {
+         m_iTransactionIsolation = null;
+         m_connection.setTransactionIsolation(iDefaultTransactionIsolation);
+         m_iTransactionIsolation = iDefaultTransactionIsolation;
+      }
+      m_connection.clearWarnings();
+   }
+   
+   /**
+    * Close the real connection to the database. This method is not public so 
+    * that it can be used only in this package.
+    */
+   void closeDelegate(
+   )
+   {
+      if (m_statementCache != null)
+      {
+         m_statementCache.close();
+      }
+      try
+      {
+         m_connection.close();
+      }
+      catch (SQLException sqleExc)
+      {
+         s_logger.log(Level.FINE, "Closing of pooled connection has failed.", 
+                      sqleExc);
+      }
+   }
+   
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void close(
+   ) throws SQLException
+   {
+      // Do not close the real connection, just return it to the pool. Reserve
+      // the connection first so that it cannot be returned twice if close is 
+      // called concurrently
+      if (m_iState.compareAndSet(STATE_IN_USE, STATE_RESERVED))
+      {
+         m_pool.returnConnection(this);
+      }
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public boolean isClosed(
+   ) throws SQLException
+   {
+      return (m_iState.get() != STATE_IN_USE) || m_connection.isClosed();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public PreparedStatement prepareStatement(
+      String sql
+   ) throws SQLException
+   {
+      PreparedStatement statement;
+      
+      checkInUse();
+      if (m_statementCache != null)
+      {
+         statement = m_statementCache.prepareStatement(sql);
+      }
+      else
+      {
+         statement = m_connection.prepareStatement(sql);
+      }
+      
+      return statement;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public PreparedStatement prepareStatement(
+      String sql,
+      int    autoGeneratedKeys
+   ) throws SQLException
+   {
+      PreparedStatement statement;
+      
+      checkInUse();
+      if (m_statementCache != null)
+      {
+         statement = m_statementCache.prepareStatement(sql, autoGeneratedKeys);
+      }
+      else
+      {
+         statement = m_connection.prepareStatement(sql, autoGeneratedKeys);
+      }
+      
+      return statement;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public PreparedStatement prepareStatement(
+      String sql,
+      int    resultSetType,
+      int    resultSetConcurrency
+   ) throws SQLException
+   {
+      PreparedStatement statement;
+      
+      checkInUse();
+      if (m_statementCache != null)
+      {
+         statement = m_statementCache.prepareStatement(sql, resultSetType, 
+                                                       resultSetConcurrency);
+      }
+      else
+      {
+         statement = m_connection.prepareStatement(sql, resultSetType, 
+                                                   resultSetConcurrency);
+      }
+      
+      return statement;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public PreparedStatement prepareStatement(
+      String sql,
+      int    resultSetType,
+      int    resultSetConcurrency,
+      int    resultSetHoldability
+   ) throws SQLException
+   {
+      PreparedStatement statement;
+      
+      checkInUse();
+      if (m_statementCache != null)
+      {
+         statement = m_statementCache.prepareStatement(sql, resultSetType, 
+                                                       resultSetConcurrency,
+                                                       resultSetHoldability);
+      }
+      else
+      {
+         statement = m_connection.prepareStatement(sql, resultSetType, 
+                                                   resultSetConcurrency,
+                                                   resultSetHoldability);
+      }
+      
+      return statement;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public String toString()
+   {
+      return m_connection.toString();
+   }
+
+   // java.sql.Connection delegating methods ///////////////////////////////////
+   
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void abort(
+      Executor executor
+   ) throws SQLException
+   {
+      checkInUse();
+      m_connection.abort(executor);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void clearWarnings(
+   ) throws SQLException
+   {
+      checkInUse();
+      m_connection.clearWarnings();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void commit(
+   ) throws SQLException
+   {
+      checkInUse();
+      m_connection.commit();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public Array createArrayOf(
+      String   typeName,
+      Object[] elements
+   ) throws SQLException
+   {
+      checkInUse();
+      return m_connection.createArrayOf(typeName, elements);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public Blob createBlob(
+   ) throws SQLException
+   {
+      checkInUse();
+      return m_connection.createBlob();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public Clob createClob(
+   ) throws SQLException
+   {
+      checkInUse();
+      return m_connection.createClob();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public NClob createNClob(
+   ) throws SQLException
+   {
+      checkInUse();
+      return m_connection.createNClob();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public SQLXML createSQLXML(
+   ) throws SQLException
+   {
+      checkInUse();
+      return m_connection.createSQLXML();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public Statement createStatement(
+   ) throws SQLException
+   {
+      checkInUse();
+      return m_connection.createStatement();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public Statement createStatement(
+      int resultSetType,
+      int resultSetConcurrency
+   ) throws SQLException
+   {
+      checkInUse();
+      return m_connection.createStatement(resultSetType, resultSetConcurrency);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public Statement createStatement(
+      int resultSetType,
+      int resultSetConcurrency,
+      int resultSetHoldability
+   ) throws SQLException
+   {
+      checkInUse();
+      return m_connection.createStatement(resultSetType, resultSetConcurrency,
+                                          resultSetHoldability);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public Struct createStruct(
+      String   typeName,
+      Object[] attributes
+   ) throws SQLException
+   {
+      checkInUse();
+      return m_connection.createStruct(typeName, attributes);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public boolean getAutoCommit(
+   ) throws SQLException
+   {
+      checkInUse();
+      return isAutoCommit();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public String getCatalog(
+   ) throws SQLException
+   {
+      checkInUse();
+      return m_connection.getCatalog();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public String getClientInfo(
+      String name
+   ) throws SQLException
+   {
+      checkInUse();
+      return m_connection.getClientInfo(name);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public Properties getClientInfo(
+   ) throws SQLException
+   {
+      checkInUse();
+      return m_connection.getClientInfo();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public int getHoldability(
+   ) throws SQLException
+   {
+      checkInUse();
+      return m_connection.getHoldability();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public DatabaseMetaData getMetaData(
+   ) throws SQLException
+   {
+      checkInUse();
+      return m_connection.getMetaData();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public int getNetworkTimeout(
+   ) throws SQLException
+   {
+      checkInUse();
+      return m_connection.getNetworkTimeout();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public String getSchema(
+   ) throws SQLException
+   {
+      checkInUse();
+      return m_connection.getSchema();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public int getTransactionIsolation(
+   ) throws SQLException
+   {
+      checkInUse();
+      if (m_iTransactionIsolation == null)
+      {
+         m_iTransactionIsolation = m_connection.getTransactionIsolation();
+      }
+      return m_iTransactionIsolation;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public Map<String, Class<?>> getTypeMap(
+   ) throws SQLException
+   {
+      checkInUse();
+      return m_connection.getTypeMap();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public SQLWarning getWarnings(
+   ) throws SQLException
+   {
+      checkInUse();
+      return m_connection.getWarnings();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public boolean isReadOnly(
+   ) throws SQLException
+   {
+      checkInUse();
+      if (m_bReadOnly == null)
+      {
+         m_bReadOnly = m_connection.isReadOnly();
+      }
+      return m_bReadOnly;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public boolean isValid(
+      int timeout
+   ) throws SQLException
+   {
+      checkInUse();
+      return m_connection.isValid(timeout);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public boolean isWrapperFor(
+      Class<?> iface
+   ) throws SQLException
+   {
+      checkInUse();
+      return m_connection.isWrapperFor(iface);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public String nativeSQL(
+      String sql
+   ) throws SQLException
+   {
+      checkInUse();
+      return m_connection.nativeSQL(sql);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public CallableStatement prepareCall(
+      String sql
+   ) throws SQLException
+   {
+      checkInUse();
+      return m_connection.prepareCall(sql);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public CallableStatement prepareCall(
+      String sql,
+      int    resultSetType,
+      int    resultSetConcurrency
+   ) throws SQLException
+   {
+      checkInUse();
+      return m_connection.prepareCall(sql, resultSetType, resultSetConcurrency);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public CallableStatement prepareCall(
+      String sql,
+      int    resultSetType,
+      int    resultSetConcurrency,
+      int    resultSetHoldability
+   ) throws SQLException
+   {
+      checkInUse();
+      return m_connection.prepareCall(sql, resultSetType, resultSetConcurrency,
+                                      resultSetHoldability);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public PreparedStatement prepareStatement(
+      String sql,
+      int[]  columnIndexes
+   ) throws SQLException
+   {
+      checkInUse();
+      return m_connection.prepareStatement(sql, columnIndexes);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public PreparedStatement prepareStatement(
+      String   sql,
+      String[] columnNames
+   ) throws SQLException
+   {
+      checkInUse();
+      return m_connection.prepareStatement(sql, columnNames);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void releaseSavepoint(
+      Savepoint savepoint
+   ) throws SQLException
+   {
+      checkInUse();
+      m_connection.releaseSavepoint(savepoint);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void rollback(
+   ) throws SQLException
+   {
+      checkInUse();
+      m_connection.rollback();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void rollback(
+      Savepoint savepoint
+   ) throws SQLException
+   {
+      checkInUse();
+      m_connection.rollback(savepoint);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setAutoCommit(
+      boolean autoCommit
+   ) throws SQLException
+   {
+      checkInUse();
+      if ((m_bAutoCommit == null) || (m_bAutoCommit != autoCommit))
+      {
+         // Forget the state first in case the change fails
+         m_bAutoCommit = null;
+         m_connection.setAutoCommit(autoCommit);
+         m_bAutoCommit = autoCommit;
+      }
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setCatalog(
+      String catalog
+   ) throws SQLException
+   {
+      checkInUse();
+      m_connection.setCatalog(catalog);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setClientInfo(
+      String name,
+      String value
+   ) throws SQLClientInfoException
+   {
+      try
+      {
+         checkInUse();
+      }
+      catch (SQLException exc)
+      {
+         SQLClientInfoException exc2 = new SQLClientInfoException();
+         exc2.setNextException(exc);
+         throw exc2;
+      }
+      m_connection.setClientInfo(name, value);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setClientInfo(
+      Properties properties
+   ) throws SQLClientInfoException
+   {
+      try
+      {
+         checkInUse();
+      }
+      catch (SQLException exc)
+      {
+         SQLClientInfoException exc2 = new SQLClientInfoException();
+         exc2.setNextException(exc);
+         throw exc2;
+      }
+      m_connection.setClientInfo(properties);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setHoldability(
+      int holdability
+   ) throws SQLException
+   {
+      checkInUse();
+      m_connection.setHoldability(holdability);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setNetworkTimeout(
+      Executor executor,
+      int      milliseconds
+   ) throws SQLException
+   {
+      checkInUse();
+      m_connection.setNetworkTimeout(executor, milliseconds);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setReadOnly(
+      boolean readOnly
+   ) throws SQLException
+   {
+      checkInUse();
+      if ((m_bReadOnly == null) || (m_bReadOnly != readOnly))
+      {
+         // Forget the state first in case the change fails
+         m_bReadOnly = null;
+         m_connection.setReadOnly(readOnly);
+         m_bReadOnly = readOnly;
+      }
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public Savepoint setSavepoint(
+   ) throws SQLException
+   {
+      checkInUse();
+      return m_connection.setSavepoint();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public Savepoint setSavepoint(
+      String name
+   ) throws SQLException
+   {
+      checkInUse();
+      return m_connection.setSavepoint(name);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setSchema(
+      String schema
+   ) throws SQLException
+   {
+      checkInUse();
+      m_connection.setSchema(schema);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setTransactionIsolation(
+      int level
+   ) throws SQLException
+   {
+      checkInUse();
+      if ((m_iTransactionIsolation == null) || (m_iTransactionIsolation != level))
+      {
+         // Forget the state first in case the change fails
+         m_iTransactionIsolation = null;
+         m_connection.setTransactionIsolation(level);
+         m_iTransactionIsolation = level;
+      }
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setTypeMap(
+      Map<String, Class<?>> map
+   ) throws SQLException
+   {
+      checkInUse();
+      m_connection.setTypeMap(map);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public <T> T unwrap(
+      Class<T> iface
+   ) throws SQLException
+   {
+      checkInUse();
+      return m_connection.unwrap(iface);
+   }
+
+   // Helper methods ///////////////////////////////////////////////////////////
+
+   /**
+    * Get autocommit state of the real connection, which is read from the real
+    * connection only if it is not known yet.
+    * 
+    * @return boolean - autocommit state of the real connection
+    * @throws SQLException - an error has occurred
+    */
+   protected boolean isAutoCommit(
+   ) throws SQLException
+   {
+      if (m_bAutoCommit == null)
+      {
+         m_bAutoCommit = m_connection.getAutoCommit();
+      }
+      return m_bAutoCommit;
+   }
+   
+   /**
+    * Make sure that the connection is still borrowed from the pool.
+    * 
+    * @throws SQLException - the connection was already returned to the pool
+    */
+   protected void checkInUse(
+   ) throws SQLException
+   {
+      if (m_iState.get() != STATE_IN_USE)
+      {
+         throw new SQLException("This connection was already returned to the pool" 
+                                + " and shouldn't be used anymore."); 
+      }
+   }
+}
@@ -79,7 +79,8 @@ public class HsqlDBDatabaseImpl extends DatabaseImpl
       private boolean m_bIsInDomain;
       
       /**
-       * Cached call statement.
+       * Cached call statement to fetch the generated id or null if the select
+       * statement fetches the generated id itself.
        */
       private CallableStatement m_call; 
 
@@ -90,7 +91,8 @@ public class HsqlDBDatabaseImpl extends DatabaseImpl
 
       /**
        * @param bIsInDomain - are the statements generated for a domain
-       * @param call - new call statement to cache
+       * @param call - new call statement to cache or null if the select 
+       *               statement fetches the generated id itself
        * @param select - new select statement to cache
        */
       public CachedInsertStatements(
@@ -528,25 +530,42 @@ public class HsqlDBDatabaseImpl extends DatabaseImpl
    {
       StringBuilder          sbQuery = new StringBuilder();
       CachedInsertStatements cache;
+      boolean                bRemote;
       
-      sbQuery.append("select CREATION_DATE");
-      if (bModifiable)
-      {   
-         sbQuery.append(", MODIFICATION_DATE");
-      }
-      sbQuery.append(" from ");
-      sbQuery.append(strTableName);
-      sbQuery.append(" where ID = ?"); 
-      if (bIsInDomain)
-      {   
-         sbQuery.append(" and DOMAIN_ID = ?");
-      }
-
       try
       {
+         bRemote = isRemoteConnection(dbConnection);
+         sbQuery.append("select ID, CREATION_DATE");
+         if (bModifiable)
+         {   
+            sbQuery.append(", MODIFICATION_DATE");
+         }
+         sbQuery.append(" from ");
+         sbQuery.append(strTableName);
+         if (bRemote)
+         {
+            // Fetch the generated id together with the timestamps to save one
+            // round trip to the server. HSQLDB doesn't use index when the ID 
+            // is compared directly with result of function so the identity
+            // has to be selected using subquery
+            sbQuery.append(" where ID = (select top 1 IDENTITY() from ");
+            sbQuery.append(strTableName);
+            sbQuery.append(")");
+         }
+         else
+         {
+            // The in-process database doesn't have any round trips and two
+            // simple statements are faster than the single one with subquery
+            sbQuery.append(" where ID = ?"); 
+         }
+         if (bIsInDomain)
+         {   
+            sbQuery.append(" and DOMAIN_ID = ?");
+         }
+
          cache =  new CachedInsertStatements(
                          bIsInDomain,
-                         dbConnection.prepareCall("call identity()"),
+                         bRemote ? null : dbConnection.prepareCall("call identity()"),
                          dbConnection.prepareStatement(sbQuery.toString()));
       }
       catch (SQLException eExc)
@@ -559,6 +578,25 @@ public class HsqlDBDatabaseImpl extends DatabaseImpl
       return cache;
    }
 
+   /**
+    * Check if the connection accesses database running in a server process
+    * rather than in the same process as the application.
+    * 
+    * @param dbConnection - connection to check
+    * @return boolean - true if the database runs in a server process
+    * @throws SQLException - an error has occurred
+    */
+   protected boolean isRemoteConnection(
+      Connection dbConnection
+   ) throws SQLException
+   {
+      String strUrl = dbConnection.getMetaData().getURL();
+      
+      return ((strUrl != null) 
+             && ((strUrl.startsWith("jdbc:hsqldb:hsql"))
+                || (strUrl.startsWith("jdbc:hsqldb:http"))));
+   }
+
    /**
     * Release the statements cached by cacheStatementsForXXX.
     * 
@@ -602,62 +640,62 @@ public class HsqlDBDatabaseImpl extends DatabaseImpl
       
       try
       {
-         // I prefer to do it step by step so that we don't have to keep 2 statements
-         // and result sets opened
-         try
-         {
-            rsResults = cache.getCall().executeQuery();
-            if (rsResults.next())
-            {
-               lGeneratedKey = rsResults.getLong(1);
-            }
-            else
-            {
-               throw new OSSDataCreateException(
-                            "Cannot read the generated ID from the database.");
-            }
-         }
-         finally
-         {      
-            DatabaseUtils.close(rsResults);
-         }   
+         PreparedStatement selectStatement;
+         int               iParameter = 1;
          
-         if (lGeneratedKey != DataObject.NEW_ID)
-         {   
-            PreparedStatement selectStatement;
-   
+         selectStatement = cache.getSelect();
+         selectStatement.clearParameters();
+         if (cache.getCall() != null)
+         {
+            // I prefer to do it step by step so that we don't have to keep 2 
+            // statements and result sets opened
             try
             {
-               
-               selectStatement = cache.getSelect();
-               selectStatement.clearParameters();
-               selectStatement.setLong(1, lGeneratedKey);
-               if (cache.isInDomain())
-               {   
-                  selectStatement.setLong(2, data.getDomainId());
-               }
-               rsResults = selectStatement.executeQuery();
+               rsResults = cache.getCall().executeQuery();
                if (rsResults.next())
-               { 
-                  data.setId(lGeneratedKey);
-                  data.setCreationTimestamp(rsResults.getTimestamp(1));
-                  if (data instanceof ModifiableDataObject)
-                  {   
-                     ((ModifiableDataObject)data).setModificationTimestamp(
-                                                     rsResults.getTimestamp(2));
-                  }
+               {
+                  lGeneratedKey = rsResults.getLong(1);
                }
                else
                {
                   throw new OSSDataCreateException(
-                               "Cannot read the generated creation and modification " +
-                               "time from the database.");
+                               "Cannot read the generated ID from the database.");
                }
             }
             finally
             {      
                DatabaseUtils.close(rsResults);
             }
+            selectStatement.setLong(iParameter++, lGeneratedKey);
+         }
+         if (cache.isInDomain())
+         {   
+            selectStatement.setLong(iParameter, data.getDomainId());
+         }
+         
+         try
+         {
+            rsResults = selectStatement.executeQuery();
+            if (rsResults.next())
+            { 
+               data.setId(rsResults.getLong(1));
+               data.setCreationTimestamp(rsResults.getTimestamp(2));
+               if (data instanceof ModifiableDataObject)
+               {   
+                  ((ModifiableDataObject)data).setModificationTimestamp(
+                                                  rsResults.getTimestamp(3));
+               }
+            }
+            else
+            {
+               throw new OSSDataCreateException(
+                            "Cannot read the generated creation and modification " +
+                            "time from the database.");
+            }
+         }
+         finally
+         {      
+            DatabaseUtils.close(rsResults);
          }
       }
       catch (SQLException eExc)
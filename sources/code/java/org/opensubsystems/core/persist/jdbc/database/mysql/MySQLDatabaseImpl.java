@@ -30,7 +30,6 @@ import java.util.logging.Logger;
 import java.util.logging.Level;
 
 import org.opensubsystems.core.data.BasicDataObject;
-import org.opensubsystems.core.data.DataObject;
 import org.opensubsystems.core.data.ModifiableDataObject;
 import org.opensubsystems.core.error.OSSDataCreateException;
 import org.opensubsystems.core.error.OSSDataSaveException;
@@ -89,41 +88,26 @@ public class MySQLDatabaseImpl extends DatabaseImpl
       private boolean m_bIsInDomain;
       
       /**
-       * Cached select ID statement.
-       */
-      private PreparedStatement m_selectID; 
-
-      /**
-       * Cached select statement.
+       * Cached select statement, which fetches the generated ID together with
+       * the generated timestamps.
        */
       private PreparedStatement m_select; 
 
       /**
        * @param bIsInDomain - are the statements generated for a domain
-       * @param selectID - new select ID statement to cache
        * @param select - new select statement to cache
        */
       public CachedInsertStatements(
          boolean           bIsInDomain,
-         PreparedStatement selectID, 
          PreparedStatement select
       )
       {
          super();
          
          m_bIsInDomain = bIsInDomain;
-         m_selectID = selectID;
          m_select = select;
       }
 
-      /**
-       * @return PreparedStatement
-       */
-      private PreparedStatement getSelectID()
-      {
-         return m_selectID;
-      }
-
       /**
        * @return PreparedStatement
        */
@@ -286,6 +270,17 @@ public class MySQLDatabaseImpl extends DatabaseImpl
       return false; 
    }
 
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public boolean hasBatchGeneratedKeysSupport(
+   )
+   {
+      // MySQL driver returns the keys generated by all statements in the batch
+      return true; 
+   }
+
    /**
     * {@inheritDoc}
     */
@@ -540,70 +535,42 @@ public class MySQLDatabaseImpl extends DatabaseImpl
    ) throws OSSException, 
             SQLException
    {
-      ResultSet rsResults = null;
-      long       lGeneratedKey = DataObject.NEW_ID;
+      ResultSet         rsResults = null;
+      PreparedStatement selectStatement;
 
       insertStatement.executeUpdate();
 
       try
       {
-         
-         // I prefer to do it step by step so that we don't have to keep 2 statements
-         // and result sets opened
          try
          {
-            rsResults = cache.getSelectID().executeQuery();
+            selectStatement = cache.getSelect();
+            selectStatement.clearParameters();
+            if (cache.isInDomain())
+            {   
+               selectStatement.setLong(1, data.getDomainId());
+            }
+            rsResults = selectStatement.executeQuery();
             if (rsResults.next())
-            {
-               lGeneratedKey = rsResults.getInt(1);
+            { 
+               data.setId(rsResults.getLong(1));
+               data.setCreationTimestamp(rsResults.getTimestamp(2));
+               if (data instanceof ModifiableDataObject)
+               {   
+                  ((ModifiableDataObject)data).setModificationTimestamp(
+                                                  rsResults.getTimestamp(3));
+               }
             }
             else
             {
                throw new OSSDataCreateException(
-                            "Cannot read the generated ID from the database.");
+                            "Cannot read the generated ID, creation and " +
+                            "modification time from the database.");
             }
          }
          finally
          {      
             DatabaseUtils.close(rsResults);
-         }   
-         
-         if (lGeneratedKey != DataObject.NEW_ID)
-         {   
-            PreparedStatement selectStatement;
-   
-            try
-            {
-               
-               selectStatement = cache.getSelect();
-               selectStatement.clearParameters();
-               selectStatement.setLong(1, lGeneratedKey);
-               if (cache.isInDomain())
-               {   
-                  selectStatement.setLong(2, data.getDomainId());
-               }
-               rsResults = selectStatement.executeQuery();
-               if (rsResults.next())
-               { 
-                  data.setId(lGeneratedKey);
-                  data.setCreationTimestamp(rsResults.getTimestamp(1));
-                  if (data instanceof ModifiableDataObject)
-                  {   
-                     ((ModifiableDataObject)data).setModificationTimestamp(
-                                                     rsResults.getTimestamp(2));
-                  }
-               }
-               else
-               {
-                  throw new OSSDataCreateException(
-                               "Cannot read the generated creation and modification " +
-                               "time from the database.");
-               }
-            }
-            finally
-            {      
-               DatabaseUtils.close(rsResults);
-            }
          }
       }
       catch (SQLException eExc)
@@ -633,22 +600,20 @@ public class MySQLDatabaseImpl extends DatabaseImpl
       boolean    bModifiable
    ) throws OSSException
    {
-      StringBuilder          sbQueryID = new StringBuilder();
       StringBuilder          sbQuery = new StringBuilder();
       CachedInsertStatements cache;
       
-      // construct query to select last inserted ID (generated key)
-      sbQueryID.append("select LAST_INSERT_ID() from ");
-      sbQueryID.append(strTableName);
-
-      sbQuery.append("select CREATION_DATE");
+      // Fetch the last inserted ID (generated key) together with the 
+      // timestamps so that only one round trip is needed. LAST_INSERT_ID is
+      // constant within the statement so the primary key is still used
+      sbQuery.append("select ID, CREATION_DATE");
       if (bModifiable)
       {   
          sbQuery.append(", MODIFICATION_DATE");
       }
       sbQuery.append(" from ");
       sbQuery.append(strTableName);
-      sbQuery.append(" where ID = ?"); 
+      sbQuery.append(" where ID = LAST_INSERT_ID()"); 
       if (bIsInDomain)
       {   
          sbQuery.append(" and DOMAIN_ID = ?");
@@ -658,7 +623,6 @@ public class MySQLDatabaseImpl extends DatabaseImpl
       {
          cache =  new CachedInsertStatements(
                          bIsInDomain,
-                         dbConnection.prepareStatement(sbQueryID.toString()),
                          dbConnection.prepareStatement(sbQuery.toString()));
       }
       catch (SQLException eExc)
@@ -682,7 +646,6 @@ public class MySQLDatabaseImpl extends DatabaseImpl
    {
       if (cache != null)
       {   
-         DatabaseUtils.close(cache.getSelectID());
          DatabaseUtils.close(cache.getSelect());
       }
    }
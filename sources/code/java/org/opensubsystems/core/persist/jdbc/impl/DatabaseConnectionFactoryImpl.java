@@ -23,11 +23,20 @@ import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Logger;
 import java.util.logging.Level;
 
@@ -39,15 +48,19 @@ import org.opensubsystems.core.persist.jdbc.DatabaseSourceDefinition;
 import org.opensubsystems.core.persist.jdbc.DatabaseTransactionFactory;
 import org.opensubsystems.core.persist.jdbc.connectionpool.dbcp.DBCPDatabaseConnectionFactoryImpl;
 import org.opensubsystems.core.persist.jdbc.connectionpool.j2ee.J2EEDatabaseConnectionFactoryImpl;
+import org.opensubsystems.core.util.CallContext;
 import org.opensubsystems.core.util.ClassFactory;
+import org.opensubsystems.core.util.CachedSettings;
 import org.opensubsystems.core.util.Config;
 import org.opensubsystems.core.util.GlobalConstants;
+import org.opensubsystems.core.util.LatencyHistogram;
 import org.opensubsystems.core.util.Log;
 import org.opensubsystems.core.util.OSSObject;
 import org.opensubsystems.core.util.PropertyUtils;
 import org.opensubsystems.core.util.j2ee.J2EEUtils;
 import org.opensubsystems.core.util.j2ee.J2EEUtils.J2EEServers;
 import org.opensubsystems.core.util.jdbc.DatabaseUtils;
+import org.opensubsystems.core.util.jdbc.PreparedStatementCache;
 
 /**
  * Base class for implementation of factories for retrieving and returning of 
@@ -58,6 +71,13 @@ import org.opensubsystems.core.util.jdbc.DatabaseUtils;
  * default instance of connection factory even though it still allows multiple
  * instances of connection factory to exist since all attributes are non-static.
  * 
+ * Connections are requested and returned without acquiring any lock held by 
+ * other threads, and the lock protecting the configuration of data sources is 
+ * a java.util.concurrent lock rather than a monitor. No thread therefore blocks
+ * in a database call while holding a monitor. This allows requests to be 
+ * processed by a large number of threads, including lightweight threads which 
+ * would be pinned to their carrier thread while blocked inside of a monitor.
+ * 
  * @author bastafidli
  */
 public class DatabaseConnectionFactoryImpl extends OSSObject
@@ -70,9 +90,29 @@ public class DatabaseConnectionFactoryImpl extends OSSObject
    public class DatabaseConnectionDefinition extends DatabaseSourceDefinition
    {
       /**
-       * Number of requested connections for particular data source.
+       * Number of requested connections for particular data source. This is
+       * atomic counter so that connections can be requested and returned 
+       * concurrently without synchronizing on the data source.
+       */
+      protected AtomicInteger m_iRequestedConnectionCount;
+
+      /**
+       * Statistics of connections requested from this data source.
+       */
+      protected DatabaseConnectionStatistics m_statistics;
+
+      /**
+       * Data sources replicating data of this data source, which can be used 
+       * to read data outside of transactions. 
+       */
+      protected List<DatabaseConnectionDefinition> m_lstReplicas;
+
+      /**
+       * Information shared by all connections requested from this data source
+       * while the leak detection is disabled, so that no information has to be
+       * created for each requested connection.
        */
-      protected int m_iRequestedConnectionCount;
+      protected BorrowedConnection m_untrackedConnection;
 
       /**
        * @param strName - name of the data source
@@ -98,7 +138,10 @@ public class DatabaseConnectionFactoryImpl extends OSSObject
          super(strName, database, strDriver, strUrl, strUser, strPassword, 
                iTransactionIsolation);
          
-         m_iRequestedConnectionCount = 0;
+         m_iRequestedConnectionCount = new AtomicInteger(0);
+         m_statistics = initializeStatistics(strName);
+         m_lstReplicas = new CopyOnWriteArrayList<>();
+         m_untrackedConnection = new BorrowedConnection(this, null);
       }
       
       /**
@@ -106,7 +149,62 @@ public class DatabaseConnectionFactoryImpl extends OSSObject
        */
       public int getRequestedConnectionCount()
       {
-         return m_iRequestedConnectionCount;
+         return m_iRequestedConnectionCount.get();
+      }
+
+      /**
+       * @return DatabaseConnectionStatistics
+       */
+      public DatabaseConnectionStatistics getStatistics()
+      {
+         return m_statistics;
+      }
+
+      /**
+       * @return BorrowedConnection - information shared by all connections 
+       *                              requested while the leak detection is
+       *                              disabled
+       */
+      public BorrowedConnection getUntrackedConnection()
+      {
+         return m_untrackedConnection;
+      }
+
+      /**
+       * @return List<DatabaseConnectionDefinition> - data sources replicating
+       *                                              data of this data source,
+       *                                              never null
+       */
+      public List<DatabaseConnectionDefinition> getReplicas()
+      {
+         return m_lstReplicas;
+      }
+
+      /**
+       * Add data source replicating data of this data source.
+       * 
+       * @param replica - data source to add
+       */
+      public void addReplica(
+         DatabaseConnectionDefinition replica
+      )
+      {
+         if (!m_lstReplicas.contains(replica))
+         {
+            m_lstReplicas.add(replica);
+         }
+      }
+
+      /**
+       * Remove data source from the replicas of this data source.
+       * 
+       * @param replica - data source to remove
+       */
+      public void removeReplica(
+         DatabaseConnectionDefinition replica
+      )
+      {
+         m_lstReplicas.remove(replica);
       }
 
       /**
@@ -114,9 +212,9 @@ public class DatabaseConnectionFactoryImpl extends OSSObject
        * 
        * @return int
        */
-      public synchronized int connectionRequested()
+      public int connectionRequested()
       {
-         return m_iRequestedConnectionCount++;
+         return m_iRequestedConnectionCount.getAndIncrement();
       }
 
       /**
@@ -124,14 +222,16 @@ public class DatabaseConnectionFactoryImpl extends OSSObject
        * 
        * @return int
        */
-      public synchronized int connectionReturned()
+      public int connectionReturned()
       {
+         int iCount = m_iRequestedConnectionCount.getAndDecrement();
+         
          if (GlobalConstants.ERROR_CHECKING)
          {
-            assert m_iRequestedConnectionCount > 0 
+            assert iCount > 0 
                    : "Cannot return connection that wasn't requested.";
          }
-         return m_iRequestedConnectionCount--;
+         return iCount;
       }
       
       /**
@@ -144,12 +244,179 @@ public class DatabaseConnectionFactoryImpl extends OSSObject
       )
       {
          append(sb, ind + 0, "DatabaseConnectionDefinition[");
-         append(sb, ind + 1, "m_iRequestedConnectionCount = ", m_iRequestedConnectionCount);
+         append(sb, ind + 1, "m_iRequestedConnectionCount = ", 
+                m_iRequestedConnectionCount.get());
+         append(sb, ind + 1, "m_lstReplicas.size() = ", m_lstReplicas.size());
          super.toString(sb, ind + 1);
          append(sb, ind + 0, "]");
       }      
    }
 
+   /**
+    * Information about connection, which was requested and not returned yet.
+    */
+   protected static class BorrowedConnection extends OSSObject
+   {
+      /**
+       * Data source from which the connection was requested.
+       */
+      protected DatabaseConnectionDefinition m_dataSource;
+      
+      /**
+       * Time in nanoseconds as returned by System.nanoTime when the connection
+       * was requested.
+       */
+      protected long m_lBorrowTime;
+      
+      /**
+       * Time in milliseconds when the connection was requested.
+       */
+      protected long m_lBorrowTimestamp;
+      
+      /**
+       * Stack of the thread which requested the connection or null if the 
+       * leak detection is not enabled. The stack trace is resolved only when
+       * it is needed. 
+       */
+      protected Throwable m_borrowSite;
+      
+      /**
+       * Code which requested the connection, resolved from the borrow site 
+       * when it is needed for the first time.
+       */
+      protected String m_strCaller;
+      
+      /**
+       * Flag signaling that the connection was already reported as leaked.
+       */
+      protected volatile boolean m_bReported;
+      
+      /**
+       * @param dataSource - data source from which the connection was requested
+       * @param borrowSite - stack of the thread which requested the connection
+       *                     or null if it should not be tracked
+       */
+      public BorrowedConnection(
+         DatabaseConnectionDefinition dataSource,
+         Throwable                    borrowSite
+      )
+      {
+         super();
+         
+         m_dataSource = dataSource;
+         m_lBorrowTime = System.nanoTime();
+         m_lBorrowTimestamp = System.currentTimeMillis();
+         m_borrowSite = borrowSite;
+         m_strCaller = null;
+         m_bReported = false;
+      }
+      
+      /**
+       * @return DatabaseConnectionDefinition
+       */
+      public DatabaseConnectionDefinition getDataSource()
+      {
+         return m_dataSource;
+      }
+      
+      /**
+       * @return long - time in nanoseconds as returned by System.nanoTime when
+       *                the connection was requested
+       */
+      public long getBorrowTime()
+      {
+         return m_lBorrowTime;
+      }
+      
+      /**
+       * @return long - time in milliseconds when the connection was requested
+       */
+      public long getBorrowTimestamp()
+      {
+         return m_lBorrowTimestamp;
+      }
+      
+      /**
+       * @return Throwable - stack of the thread which requested the connection
+       *                     or null if it is not tracked
+       */
+      public Throwable getBorrowSite()
+      {
+         return m_borrowSite;
+      }
+      
+      /**
+       * @return long - how long in nanoseconds is the connection held
+       */
+      public long getHoldTime()
+      {
+         return System.nanoTime() - m_lBorrowTime;
+      }
+      
+      /**
+       * Get the code which requested the connection. This is the first method
+       * on the borrow site stack, which doesn't belong to the JDK or to the 
+       * connection and transaction factories.
+       * 
+       * @return String - code which requested the connection or null if the 
+       *                  borrow site is not tracked
+       */
+      public String getCaller()
+      {
+         if ((m_strCaller == null) && (m_borrowSite != null))
+         {
+            String strCaller = UNKNOWN_CALLER;
+            
+            for (StackTraceElement element : m_borrowSite.getStackTrace())
+            {
+               if (!isConnectionInfrastructure(element.getClassName()))
+               {
+                  strCaller = element.toString();
+                  break;
+               }
+            }
+            m_strCaller = strCaller;
+         }
+         
+         return m_strCaller;
+      }
+      
+      /**
+       * @return boolean - true if the connection was already reported as 
+       *                   leaked
+       */
+      public boolean isReported()
+      {
+         return m_bReported;
+      }
+      
+      /**
+       * Remember that the connection was reported as leaked.
+       */
+      public void setReported()
+      {
+         m_bReported = true;
+      }
+      
+      /**
+       * {@inheritDoc}
+       */
+      @Override
+      public void toString(
+         StringBuilder sb,
+         int           ind
+      )
+      {
+         append(sb, ind + 0, "BorrowedConnection[");
+         append(sb, ind + 1, "m_dataSource = ", 
+                m_dataSource != null ? m_dataSource.getName() : null);
+         append(sb, ind + 1, "m_lBorrowTimestamp = ", m_lBorrowTimestamp);
+         append(sb, ind + 1, "caller = ", getCaller());
+         append(sb, ind + 1, "m_bReported = ", m_bReported);
+         append(sb, ind + 0, "]");
+      }      
+   }
+
    // Configuration settings ///////////////////////////////////////////////////
    
    /** 
@@ -164,12 +431,51 @@ public class DatabaseConnectionFactoryImpl extends OSSObject
     */   
    public static final String DATABASE_USE_ADMIN_DATAROURCE = "oss.dbaccess.admindatasource";
    
+   /**
+    * Name of the property specifying how long in milliseconds can be connection
+    * held before it is considered to be leaked. If the value is larger than 0 
+    * then the place where each connection was requested is remembered, the 
+    * connections held longer than this threshold are reported and the time
+    * for which the connections were held is tracked for each such place. 
+    */
+   public static final String DATABASE_LEAK_THRESHOLD = "oss.dbaccess.leak.threshold";
+   
+   /**
+    * Name of the property specifying how often in milliseconds to check for 
+    * leaked connections.
+    */
+   public static final String DATABASE_LEAK_CHECK_PERIOD = "oss.dbaccess.leak.checkperiod";
+   
+   /**
+    * Name of the property specifying if leaked connections should be forcibly
+    * returned. This is safe only if the code holding the connections is not 
+    * going to use them anymore.
+    */
+   public static final String DATABASE_LEAK_RECLAIM = "oss.dbaccess.leak.reclaim";
+   
+   /**
+    * Name of the property specifying for how long in milliseconds after the 
+    * session modified data it reads the data only from the data source itself
+    * and not from its replicas, since the replicas may not contain the 
+    * modifications yet. 
+    */
+   public static final String DATABASE_READ_YOUR_WRITES = "oss.dbaccess.replica.readyourwrites";
+   
+   /**
+    * Name of the property specifying how many prepared statements should be 
+    * cached for each physical connection issued by this factory, so that the 
+    * same SQL is not parsed by the database again while the physical 
+    * connection is open. If 0 then the number of statements is not limited and
+    * if -1 then the statements are not cached. 
+    */
+   public static final String DATABASE_STATEMENT_CACHE_SIZE = "oss.dbaccess.statementcache.size";
+   
    // Constants ////////////////////////////////////////////////////////////////
 
    /**
     * Lock used in synchronized sections.
     */
-   private static final String IMPL_LOCK = "IMPL_LOCK";
+   private static final Object IMPL_LOCK = new Object();
 
    /**
     * Default value for flag specifying if to use separate datasource for admin 
@@ -184,6 +490,79 @@ public class DatabaseConnectionFactoryImpl extends OSSObject
     */
    public static final String ADMIN_DATASOURCE_SUFFIX = "ADMIN"; 
 
+   /**
+    * Default value for connection leak threshold, which disables the leak 
+    * detection.
+    */
+   public static final int DATABASE_LEAK_THRESHOLD_DEFAULT = 0;
+   
+   /**
+    * Default value for how often to check for leaked connections. 
+    */
+   public static final int DATABASE_LEAK_CHECK_PERIOD_DEFAULT = 30000;
+   
+   /**
+    * Default value for flag specifying if leaked connections should be 
+    * forcibly returned.
+    */
+   public static final Boolean DATABASE_LEAK_RECLAIM_DEFAULT = Boolean.FALSE; 
+   
+   /**
+    * Default value for how long after modifying data the session doesn't read
+    * data from replicas. 
+    */
+   public static final int DATABASE_READ_YOUR_WRITES_DEFAULT = 1000;
+   
+   /**
+    * Default value for how many prepared statements to cache for each issued 
+    * connection. 
+    */
+   public static final int DATABASE_STATEMENT_CACHE_SIZE_DEFAULT = 32;
+   
+   /**
+    * Size of statement cache meaning that the statements are not cached.
+    */
+   public static final int NO_STATEMENT_CACHE = -1;
+   
+   /**
+    * Maximal number of places requesting connections for which the hold times 
+    * are tracked separately. Hold times for any other places are tracked 
+    * together under OTHER_CALLERS. 
+    */
+   public static final int HOLD_TIME_CALLER_LIMIT = 256;
+   
+   /**
+    * Name under which are tracked hold times for places requesting connections
+    * over the HOLD_TIME_CALLER_LIMIT.
+    */
+   public static final String OTHER_CALLERS = "other";
+   
+   /**
+    * Caller used when the place requesting connection cannot be determined.
+    */
+   public static final String UNKNOWN_CALLER = "unknown";
+   
+   /**
+    * Name under which are tracked hold times of connections returned before 
+    * the leak threshold has elapsed. The place requesting the connection is 
+    * determined only for connections held longer than the leak threshold 
+    * since it is expensive to do so.
+    */
+   public static final String WITHIN_THRESHOLD_CALLERS = "within threshold";
+   
+   /**
+    * Number of sessions with recently modified data above which the sessions, 
+    * which didn't modify data within the read your writes window, are 
+    * forgotten.
+    */
+   public static final int RECENT_WRITES_LIMIT = 1024;
+   
+   /**
+    * Prefix used to identify thread, which modified data, when the session is
+    * not known.
+    */
+   public static final String THREAD_SESSION_PREFIX = "thread:";
+
    // Cached values ////////////////////////////////////////////////////////////
 
    /**
@@ -194,7 +573,26 @@ public class DatabaseConnectionFactoryImpl extends OSSObject
    /**
     * Reference to the default instance
     */
-   private static DatabaseConnectionFactory s_defaultInstance = null;
+   private static volatile DatabaseConnectionFactory s_defaultInstance = null;
+
+   /**
+    * Flag read from the configuration currently in effect telling if to use 
+    * separate data source for admin connections.
+    */
+   private static final CachedSettings<Boolean> s_useAdminDataSource 
+      = new CachedSettings<Boolean>()
+   {
+      @Override
+      protected Boolean readSettings(
+         Properties prpSettings
+      )
+      {
+         return PropertyUtils.getBooleanProperty(
+                   prpSettings, DATABASE_USE_ADMIN_DATAROURCE, 
+                   DATABASE_USE_ADMIN_DATAROURCE_DEFAULT, 
+                   "Use separate datasource for admin connections");
+      }
+   };
 
    /**
     * This is concrete implementation of database transaction factory, which
@@ -210,14 +608,16 @@ public class DatabaseConnectionFactoryImpl extends OSSObject
    /**
     * How many connections were requested and not returned from all data sources.
     * This is here for debugging purposes to check if somebody is not returning
-    * connection.
+    * connection. This is atomic counter so that the request and return paths
+    * do not need to synchronize on this factory.
     */
-   protected int m_iTotalRequestedConnectionCount;
+   protected AtomicInteger m_iTotalRequestedConnectionCount;
    
    /**
-    * Default data source used for all connections.
+    * Default data source used for all connections. This is volatile since it 
+    * is read without synchronization on the connection request path.
     */
-   protected DatabaseConnectionDefinition m_defaultDataSource;
+   protected volatile DatabaseConnectionDefinition m_defaultDataSource;
    
    /** 
     * Registered data sources. Key is String, data source name and value is 
@@ -227,9 +627,87 @@ public class DatabaseConnectionFactoryImpl extends OSSObject
 
    /**
     * Map used to cross reference connection to their data sources so that we 
-    * can correctly manage counts of requested connections per data source
+    * can correctly manage counts of requested connections per data source. The
+    * value also remembers when and where was the connection requested so that
+    * leaked connections can be detected.
+    */
+   protected ConcurrentMap<Connection, BorrowedConnection> m_mpConnectionDataSourceCrossRef;
+   
+   /**
+    * Statistics of connections requested from data sources. Key is String, 
+    * data source name and value is DatabaseConnectionStatistics. The 
+    * statistics are created before the data source itself so that the 
+    * connection pools can record statistics while they are being created.
+    */
+   protected ConcurrentMap<String, DatabaseConnectionStatistics> m_mpStatistics;
+   
+   /**
+    * How long in milliseconds can be connection held before it is considered 
+    * to be leaked or 0 if the leak detection is disabled. 
+    */
+   protected int m_iLeakThreshold;
+   
+   /**
+    * How often in milliseconds to check for leaked connections.
+    */
+   protected int m_iLeakCheckPeriod;
+   
+   /**
+    * Flag specifying if leaked connections should be forcibly returned.
+    */
+   protected boolean m_bReclaimLeakedConnections;
+   
+   /**
+    * Executor periodically checking for leaked connections. It is created when
+    * the first connection is requested with leak detection enabled. 
+    */
+   protected volatile ScheduledExecutorService m_leakDetector;
+   
+   /**
+    * How long were connections held. Key is String, the code which requested
+    * the connection held longer than the leak threshold or 
+    * WITHIN_THRESHOLD_CALLERS and value is LatencyHistogram. Hold times are 
+    * tracked only when the leak detection is enabled.
+    */
+   protected ConcurrentMap<String, LatencyHistogram> m_mpHoldTimes;
+   
+   /**
+    * How long in milliseconds after the session modified data it reads the 
+    * data only from the data source itself and not from its replicas.
+    */
+   protected int m_iReadYourWritesWindow;
+   
+   /**
+    * How many prepared statements should the wrappers of connections issued by
+    * this factory cache, 0 for no limit and NO_STATEMENT_CACHE to not cache 
+    * statements at all.
+    */
+   protected int m_iStatementCacheSize;
+   
+   /**
+    * Caches of prepared statements. Key is the physical connection used to
+    * prepare the statements and value is PreparedStatementCache. The cache 
+    * lives as long as the physical connection is open.
+    */
+   protected ConcurrentMap<Connection, PreparedStatementCache> m_mpStatementCaches;
+   
+   /**
+    * Flag signaling that at least one data source has replicas so that the 
+    * modifications of data have to be tracked.
+    */
+   protected volatile boolean m_bReplicasDefined;
+   
+   /**
+    * When did sessions modify data for the last time. Key is String, the 
+    * session identification and value is Long, time in milliseconds. 
     */
-   protected Map<Connection, DatabaseConnectionDefinition> m_mpConnectionDataSourceCrossRef;
+   protected ConcurrentMap<String, Long> m_mpRecentWrites;
+   
+   /**
+    * Lock protecting changes of the data sources and of the state of this 
+    * factory. Connections are requested and returned without this lock.
+    */
+   protected final ReentrantLock m_lock;
    
    // Constructors /////////////////////////////////////////////////////////////
    
@@ -257,12 +735,48 @@ public class DatabaseConnectionFactoryImpl extends OSSObject
       // Do not invoke loadDefaultDatabaseProperties here in case the derived 
       // class wants to use some different database properties. If it doesn't
       // it can call the method on it's own 
-      m_iTotalRequestedConnectionCount = 0;
+      m_iTotalRequestedConnectionCount = new AtomicInteger(0);
       m_transactionFactory = transactionFactory;
+      m_lock = new ReentrantLock();
       
       // Use ConcurrentHashMap so that it is synchronized
       m_mpDataSources = new ConcurrentHashMap<>();
       m_mpConnectionDataSourceCrossRef = new ConcurrentHashMap<>();
+      m_mpStatistics = new ConcurrentHashMap<>();
+      m_mpHoldTimes = new ConcurrentHashMap<>();
+      m_mpRecentWrites = new ConcurrentHashMap<>();
+      m_mpStatementCaches = new ConcurrentHashMap<>();
+      
+      Properties prpSettings;
+      
+      prpSettings = Config.getInstance().getProperties();
+      m_iLeakThreshold = PropertyUtils.getIntPropertyInRange(
+                            prpSettings, DATABASE_LEAK_THRESHOLD, 
+                            DATABASE_LEAK_THRESHOLD_DEFAULT, 
+                            "Connection leak threshold (ms)", 
+                            0, Integer.MAX_VALUE);
+      m_iLeakCheckPeriod = PropertyUtils.getIntPropertyInRange(
+                              prpSettings, DATABASE_LEAK_CHECK_PERIOD, 
+                              DATABASE_LEAK_CHECK_PERIOD_DEFAULT, 
+                              "Connection leak check period (ms)", 
+                              1, Integer.MAX_VALUE);
+      m_bReclaimLeakedConnections = PropertyUtils.getBooleanProperty(
+                                       prpSettings, DATABASE_LEAK_RECLAIM, 
+                                       DATABASE_LEAK_RECLAIM_DEFAULT, 
+                                       "Reclaim leaked connections"
+                                    ).booleanValue();
+      m_leakDetector = null;
+      m_iReadYourWritesWindow = PropertyUtils.getIntPropertyInRange(
+                                   prpSettings, DATABASE_READ_YOUR_WRITES, 
+                                   DATABASE_READ_YOUR_WRITES_DEFAULT, 
+                                   "Read your writes window (ms)", 
+                                   0, Integer.MAX_VALUE);
+      m_iStatementCacheSize = PropertyUtils.getIntPropertyInRange(
+                                 prpSettings, DATABASE_STATEMENT_CACHE_SIZE, 
+                                 DATABASE_STATEMENT_CACHE_SIZE_DEFAULT, 
+                                 "Statement cache size", 
+                                 NO_STATEMENT_CACHE, Integer.MAX_VALUE);
+      m_bReplicasDefined = false;
    }
 
    // Factory methods //////////////////////////////////////////////////////////
@@ -374,11 +888,16 @@ public class DatabaseConnectionFactoryImpl extends OSSObject
    {
       append(sb, ind + 0, "DatabaseConnectionFactoryImpl[");
       append(sb, ind + 1, "m_iTotalRequestedConnectionCount = ", 
-             m_iTotalRequestedConnectionCount);
+             m_iTotalRequestedConnectionCount.get());
       append(sb, ind + 1, "m_defaultDataSource = ", 
             m_defaultDataSource != null ? m_defaultDataSource.getName() : null);
       append(sb, ind + 1, "m_defaultDataSource = ", 
             m_defaultDataSource != null ? m_mpDataSources : null);
+      append(sb, ind + 1, "m_iLeakThreshold = ", m_iLeakThreshold);
+      append(sb, ind + 1, "m_bReclaimLeakedConnections = ", 
+             m_bReclaimLeakedConnections);
+      append(sb, ind + 1, "m_iReadYourWritesWindow = ", m_iReadYourWritesWindow);
+      append(sb, ind + 1, "m_iStatementCacheSize = ", m_iStatementCacheSize);
       super.toString(sb, ind + 1);
       append(sb, ind + 0, "]");
    }   
@@ -387,47 +906,67 @@ public class DatabaseConnectionFactoryImpl extends OSSObject
     * {@inheritDoc}
     */
    @Override
-   public synchronized void stop(
+   public void stop(
    ) throws OSSException
    {
-      // Now close all the data sources
-      // Create a copy since the map will be modified as we close them
-      List<String>     lstDataSources = new ArrayList<>(m_mpDataSources.keySet());
-      String           strDataSourceName;
-      Iterator<String> itrNames;
-      
-      for (itrNames = lstDataSources.iterator(); itrNames.hasNext();)
+      m_lock.lock();
+      try
       {
-         strDataSourceName = itrNames.next();
-         try
+         if (m_leakDetector != null)
          {
-            removeDataSource(strDataSourceName);
+            m_leakDetector.shutdownNow();
+            m_leakDetector = null;
          }
-         catch (Throwable thr)
+      
+
+         // Now close all the data sources
+         // Create a copy since the map will be modified as we close them
+         List<String>     lstDataSources = new ArrayList<>(m_mpDataSources.keySet());
+         String           strDataSourceName;
+         Iterator<String> itrNames;
+      
+         for (itrNames = lstDataSources.iterator(); itrNames.hasNext();)
          {
-            // Catch throwable so that we can try to close others even if one fail 
-            s_logger.log(Level.WARNING, "Cannot close data source " 
-                         + strDataSourceName, thr);
-         }      
-      }
+            strDataSourceName = itrNames.next();
+            try
+            {
+               removeDataSource(strDataSourceName);
+            }
+            catch (Throwable thr)
+            {
+               // Catch throwable so that we can try to close others even if one fail 
+               s_logger.log(Level.WARNING, "Cannot close data source " 
+                            + strDataSourceName, thr);
+            }      
+         }
       
-      if (GlobalConstants.ERROR_CHECKING)
+         if (GlobalConstants.ERROR_CHECKING)
+         {
+            assert m_mpConnectionDataSourceCrossRef.isEmpty()
+                   : "Not all connections from data sources were closed.";
+            assert m_mpDataSources.isEmpty() 
+                   : "Not all data sources were closed.";
+         }
+      
+         // Reset the default connection pool as well, if the pool is restarted next 
+         // time, the default connection pool will have to be recreated
+         m_iTotalRequestedConnectionCount.set(0);
+         m_defaultDataSource = null;
+         // Closing data sources should have closed all connections that were 
+         // retrieved from them, but just in case there is an issue and the asserts
+         // are disabled, clear the buffers 
+         m_mpConnectionDataSourceCrossRef.clear();
+         m_mpDataSources.clear();
+         for (PreparedStatementCache cache : m_mpStatementCaches.values())
+         {
+            cache.close();
+         }
+         m_mpStatementCaches.clear();
+      }
+      finally
       {
-         assert m_mpConnectionDataSourceCrossRef.isEmpty()
-                : "Not all connections from data sources were closed.";
-         assert m_mpDataSources.isEmpty() 
-                : "Not all data sources were closed.";
+         m_lock.unlock();
       }
-      
-      // Reset the default connection pool as well, if the pool is restarted next 
-      // time, the default connection pool will have to be recreated
-      m_iTotalRequestedConnectionCount = 0;
-      m_defaultDataSource = null;
-      // Closing data sources should have closed all connections that were 
-      // retrieved from them, but just in case there is an issue and the asserts
-      // are disabled, clear the buffers 
-      m_mpConnectionDataSourceCrossRef.clear();
-      m_mpDataSources.clear();
    }
 
    // Connection factory methods ///////////////////////////////////////////////
@@ -445,6 +984,11 @@ public class DatabaseConnectionFactoryImpl extends OSSObject
    {
       Connection con;
       
+      if (!bAutoCommit)
+      {
+         // The connection will be most likely used to modify data
+         recordWrite();
+      }
       if (m_transactionFactory == null)
       {
          // This is not the preferred situation, the connection which will be 
@@ -475,6 +1019,11 @@ public class DatabaseConnectionFactoryImpl extends OSSObject
    {
       Connection con;
       
+      if (!bAutoCommit)
+      {
+         // The connection will be most likely used to modify data
+         recordWrite();
+      }
       if (m_transactionFactory == null)
       {
          // This is not the preferred situation, the connection which will be 
@@ -504,6 +1053,11 @@ public class DatabaseConnectionFactoryImpl extends OSSObject
    {
       Connection con;
       
+      if (!bAutoCommit)
+      {
+         // The connection will be most likely used to modify data
+         recordWrite();
+      }
       if (m_transactionFactory == null)
       {
          // This is not the preferred situation, the connection which will be 
@@ -535,6 +1089,11 @@ public class DatabaseConnectionFactoryImpl extends OSSObject
    {
       Connection con;
       
+      if (!bAutoCommit)
+      {
+         // The connection will be most likely used to modify data
+         recordWrite();
+      }
       if (m_transactionFactory == null)
       {
          // This is not the preferred situation, the connection which will be 
@@ -555,6 +1114,45 @@ public class DatabaseConnectionFactoryImpl extends OSSObject
       return con;
    }
 
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public final Connection requestReadConnection(
+   ) throws OSSException
+   {
+      DatabaseConnectionDefinition replica;
+      Connection                   con = null;
+      
+      if (m_defaultDataSource == null)
+      {
+         start();
+      }
+      
+      replica = selectReplica(m_defaultDataSource);
+      if (replica != null)
+      {
+         try
+         {
+            con = requestConnection(true, replica.getName());
+         }
+         catch (OSSException ossExc)
+         {
+            // The replica is not available, the data can be still read from 
+            // the data source itself
+            s_logger.log(Level.WARNING, "Cannot get connection from replica " 
+                         + replica.getName() + ", reading from the data source"
+                         + " instead.", ossExc);
+         }
+      }
+      if (con == null)
+      {
+         con = requestConnection(true);
+      }
+      
+      return con;
+   }
+
    /**
     * {@inheritDoc}
     */
@@ -563,6 +1161,24 @@ public class DatabaseConnectionFactoryImpl extends OSSObject
       Connection cntDBConnection
    )
    {
+      if ((m_bReplicasDefined) && (cntDBConnection != null))
+      {
+         try
+         {
+            if (!cntDBConnection.getAutoCommit())
+            {
+               // The connection could have been used to modify data, which 
+               // are now visible to the session and so remember when it was 
+               // for the last time
+               recordWrite();
+            }
+         }
+         catch (SQLException sqleExc)
+         {
+            s_logger.log(Level.FINEST, "Cannot get autocommit state of"
+                         + " returned connection.", sqleExc);
+         }
+      }
       if (m_transactionFactory == null)
       {
          // This is not prefered situation, the connection which will be returned
@@ -620,7 +1236,10 @@ public class DatabaseConnectionFactoryImpl extends OSSObject
                             + " Requested autocommit{0} and transaction is in progress.", 
                             bAutoCommit);
             }
-            cntDBConnection.setAutoCommit(false);
+            if (cntDBConnection.getAutoCommit())
+            {
+               cntDBConnection.setAutoCommit(false);
+            }
          }
          else
          {
@@ -632,7 +1251,12 @@ public class DatabaseConnectionFactoryImpl extends OSSObject
                             + " autocommit {0} since no transaction is in progress.", 
                             bAutoCommit);
             }
-            cntDBConnection.setAutoCommit(bAutoCommit);
+            // Most drivers know the autocommit state without asking the 
+            // database while setting it may require database round trip
+            if (cntDBConnection.getAutoCommit() != bAutoCommit)
+            {
+               cntDBConnection.setAutoCommit(bAutoCommit);
+            }
          }
          
          if (definition != null)
@@ -663,6 +1287,83 @@ public class DatabaseConnectionFactoryImpl extends OSSObject
 
    // Configuration methods ////////////////////////////////////////////////////
    
+   /**
+    * Get how many prepared statements should be cached for each physical 
+    * connection issued by this factory.
+    * 
+    * @return int - number of statements to cache, 0 for no limit and 
+    *               NO_STATEMENT_CACHE if the statements should not be cached
+    */
+   public int getStatementCacheSize(
+   )
+   {
+      return m_iStatementCacheSize;
+   }
+   
+   /**
+    * Get cache of statements prepared using the physical connection underlying
+    * the specified connection issued by this factory. The cache lives as long 
+    * as the physical connection is open so that the statements prepared by 
+    * one caller are reused by the next callers to which the same physical 
+    * connection is issued. The hits and misses of the cache are recorded in 
+    * the statistics of the data source from which the connection was 
+    * requested.
+    * 
+    * @param cntDBConnection - connection issued by this factory
+    * @param ownerConnection - connection, which will be reported by the 
+    *                          statements as the one which created them, e.g.
+    *                          the wrapper handed out to the caller
+    * @return PreparedStatementCache - cache of statements or null if the 
+    *                                  statements should not be cached
+    */
+   public PreparedStatementCache getStatementCache(
+      Connection cntDBConnection,
+      Connection ownerConnection
+   )
+   {
+      PreparedStatementCache cache = null;
+      int                    iStatementCacheSize = getStatementCacheSize();
+      
+      if (iStatementCacheSize != NO_STATEMENT_CACHE)
+      {
+         Connection physicalConnection;
+         
+         physicalConnection = getPhysicalConnection(cntDBConnection);
+         // The physical connection is used only by one thread at a time so 
+         // nobody else can create the cache at the same time
+         cache = m_mpStatementCaches.get(physicalConnection);
+         if (cache == null)
+         {
+            BorrowedConnection borrowed;
+            
+            // Forget the caches of physical connections closed by somebody 
+            // else, e.g. by the connection pool of the application server
+            removeClosedStatementCaches();
+            borrowed = m_mpConnectionDataSourceCrossRef.get(cntDBConnection);
+            if (borrowed != null)
+            {
+               cache = borrowed.getDataSource().getStatistics()
+                          .createStatementCache(physicalConnection, 
+                                                ownerConnection,
+                                                iStatementCacheSize);
+            }
+            else
+            {
+               cache = new PreparedStatementCache(physicalConnection, 
+                                                  ownerConnection,
+                                                  iStatementCacheSize);
+            }
+            m_mpStatementCaches.put(physicalConnection, cache);
+         }
+         else
+         {
+            cache.setOwnerConnection(ownerConnection);
+         }
+      }
+      
+      return cache;
+   }
+   
    /**
     * {@inheritDoc}
     */
@@ -688,23 +1389,31 @@ public class DatabaseConnectionFactoryImpl extends OSSObject
     * {@inheritDoc}
     */
    @Override
-   public synchronized final void setDefaultDataSource(
+   public final void setDefaultDataSource(
       String strDataSourceName
    )
    {
-      DatabaseConnectionDefinition definition;
-      
-      // Don't assign it to the member variable so that we don't override
-      // existing data source if there is one
-      definition = m_mpDataSources.get(strDataSourceName);
-      if (definition == null)
+      m_lock.lock();
+      try
       {
-         throw new IllegalArgumentException("Data source with name " 
-                                            + strDataSourceName 
-                                            + " doesn't exist.");         
-      }      
+         DatabaseConnectionDefinition definition;
+      
+         // Don't assign it to the member variable so that we don't override
+         // existing data source if there is one
+         definition = m_mpDataSources.get(strDataSourceName);
+         if (definition == null)
+         {
+            throw new IllegalArgumentException("Data source with name " 
+                                               + strDataSourceName 
+                                               + " doesn't exist.");         
+         }      
 
-      m_defaultDataSource = definition;
+         m_defaultDataSource = definition;
+      }
+      finally
+      {
+         m_lock.unlock();
+      }
    }
 
    /**
@@ -762,7 +1471,11 @@ public class DatabaseConnectionFactoryImpl extends OSSObject
          start();
       }
       
-      return m_mpConnectionDataSourceCrossRef.get(cntDBConnection);
+      BorrowedConnection borrowed;
+      
+      borrowed = m_mpConnectionDataSourceCrossRef.get(cntDBConnection);
+      
+      return (borrowed != null) ? borrowed.getDataSource() : null;
    }
    
    /**
@@ -771,17 +1484,25 @@ public class DatabaseConnectionFactoryImpl extends OSSObject
     * 
     * @param transactionFactory - the transaction factory to set.
     */
-   public synchronized void setTransactionFactory(
+   public void setTransactionFactory(
       DatabaseTransactionFactoryImpl transactionFactory
    )
    {
-      if (GlobalConstants.ERROR_CHECKING)
+      m_lock.lock();
+      try
       {
-         assert m_transactionFactory == null
-                : "Transaction factory can be set only if it is not set.";
-      }
+         if (GlobalConstants.ERROR_CHECKING)
+         {
+            assert m_transactionFactory == null
+                   : "Transaction factory can be set only if it is not set.";
+         }
       
-      m_transactionFactory = transactionFactory;
+         m_transactionFactory = transactionFactory;
+      }
+      finally
+      {
+         m_lock.unlock();
+      }
    }   
    
    /**
@@ -795,7 +1516,7 @@ public class DatabaseConnectionFactoryImpl extends OSSObject
    public int getTotalRequestedConnectionCount(
    )
    {
-      return m_iTotalRequestedConnectionCount;
+      return m_iTotalRequestedConnectionCount.get();
    }
   
    /**
@@ -835,6 +1556,53 @@ public class DatabaseConnectionFactoryImpl extends OSSObject
       return iConnectionCountReturn;
    }
 
+   /**
+    * Get number of connections, which are currently available in the pool of
+    * connections maintained for the specified data source. This factory 
+    * doesn't maintain any pool so there are never any connections available.
+    * 
+    * @param strDataSourceName - name of the data source
+    * @return int - number of idle connections or 0 if the data source doesn't
+    *               exist or it doesn't maintain any pool 
+    */
+   public int getIdleConnectionCount(
+      String strDataSourceName
+   )
+   {
+      return 0;
+   }
+   
+   /**
+    * Get statistics of connections requested from the specified data source.
+    * 
+    * @param strDataSourceName - name of the data source
+    * @return DatabaseConnectionStatistics - statistics or null if the data 
+    *                                        source doesn't exist
+    */
+   public DatabaseConnectionStatistics getStatistics(
+      String strDataSourceName
+   )
+   {
+      return m_mpStatistics.get(strDataSourceName);
+   }
+   
+   /**
+    * Get how long were connections held by the code, which requested them. The 
+    * hold times are tracked only when the leak detection is enabled. The code 
+    * which requested the connection is determined only for connections held 
+    * longer than the leak threshold, hold times of all other connections are 
+    * tracked together under WITHIN_THRESHOLD_CALLERS.
+    * 
+    * @return Map - key is String, the code which requested the connections or
+    *               WITHIN_THRESHOLD_CALLERS and value is LatencyHistogram with 
+    *               the hold times
+    */
+   public Map<String, LatencyHistogram> getHoldTimes(
+   )
+   {
+      return Collections.unmodifiableMap(m_mpHoldTimes);
+   }
+
    /**
     * {@inheritDoc}
     */
@@ -897,6 +1665,9 @@ public class DatabaseConnectionFactoryImpl extends OSSObject
                                   strUrl, strUser, strPassword, 
                                   iTransactionIsolation);
        dataSource.setRealDriver(strRealDriverName);
+       addReplicas((DatabaseConnectionDefinition)dataSource, database, 
+                   setupReader.getStringParameterValue(
+                      DatabaseConnectionFactorySetupReader.DATABASE_REPLICAS));
        
        return dataSource;
    }
@@ -905,7 +1676,7 @@ public class DatabaseConnectionFactoryImpl extends OSSObject
     * {@inheritDoc}
     */
    @Override
-   public synchronized final DatabaseSourceDefinition addDataSource(
+   public final DatabaseSourceDefinition addDataSource(
       String   strDataSourceName,
       Database database,
       String   strDriverName,
@@ -915,50 +1686,80 @@ public class DatabaseConnectionFactoryImpl extends OSSObject
       int      iTransactionIsolation
    ) throws OSSException
    {
-      DatabaseConnectionDefinition dataSource;
-      
-      dataSource = m_mpDataSources.get(strDataSourceName); 
-      if (dataSource == null)
+      m_lock.lock();
+      try
       {
-         // Data source with this name doesn't exists yet
-         dataSource = createDataSource(strDataSourceName, database, 
-                                       strDriverName, strUrl, strUser, 
-                                       strPassword, iTransactionIsolation);      
-         m_mpDataSources.put(strDataSourceName, dataSource);
-         s_logger.log(Level.FINE, "Data source {0} registered.", strDataSourceName);
+         DatabaseConnectionDefinition dataSource;
+      
+         dataSource = m_mpDataSources.get(strDataSourceName); 
+         if (dataSource == null)
+         {
+            // Data source with this name doesn't exists yet
+            try
+            {
+               dataSource = createDataSource(strDataSourceName, database, 
+                                             strDriverName, strUrl, strUser, 
+                                             strPassword, iTransactionIsolation);
+            }
+            catch (OSSException | RuntimeException exc)
+            {
+               // The connection pool may have already created the statistics
+               destroyStatistics(strDataSourceName);
+               throw exc;
+            }
+            m_mpDataSources.put(strDataSourceName, dataSource);
+            s_logger.log(Level.FINE, "Data source {0} registered.", strDataSourceName);
+         }
+         else
+         {
+            s_logger.log(Level.WARNING,"Data source {0}" + " already exists"
+                             + " and it wasn''t added second time.", strDataSourceName);
+            throw new IllegalArgumentException("Data source " + strDataSourceName 
+                                               + " already exists.");
+         }
+      
+         return dataSource;
       }
-      else
+      finally
       {
-         s_logger.log(Level.WARNING,"Data source {0}" + " already exists"
-                          + " and it wasn''t added second time.", strDataSourceName);
-         throw new IllegalArgumentException("Data source " + strDataSourceName 
-                                            + " already exists.");
+         m_lock.unlock();
       }
-      
-      return dataSource;
    }
    
    /**
     * {@inheritDoc}
     */
    @Override
-   public synchronized final void removeDataSource(
+   public final void removeDataSource(
       String strDataSourceName
    ) throws OSSException
    {
-      DatabaseConnectionDefinition dataSource;
-      
-      dataSource = m_mpDataSources.remove(strDataSourceName);
-      if (dataSource == null)
+      m_lock.lock();
+      try
       {
-         throw new IllegalArgumentException("Data source " + strDataSourceName 
-                                            + " doesn't exist.");
+         DatabaseConnectionDefinition dataSource;
+      
+         dataSource = m_mpDataSources.remove(strDataSourceName);
+         if (dataSource == null)
+         {
+            throw new IllegalArgumentException("Data source " + strDataSourceName 
+                                               + " doesn't exist.");
+         }
+         else
+         {
+            for (DatabaseConnectionDefinition definition : m_mpDataSources.values())
+            {
+               definition.removeReplica(dataSource);
+            }
+            destroyDataSource(dataSource);
+            destroyStatistics(strDataSourceName);
+            s_logger.log(Level.FINE, "Data source {0} was unregistered.", 
+                         strDataSourceName);
+         }
       }
-      else
+      finally
       {
-         destroyDataSource(dataSource);
-         s_logger.log(Level.FINE, "Data source {0} was unregistered.", 
-                      strDataSourceName);
+         m_lock.unlock();
       }
    }
    
@@ -1059,15 +1860,28 @@ public class DatabaseConnectionFactoryImpl extends OSSObject
    // Helper methods ///////////////////////////////////////////////////////////
 
    /**
-    * Start the connection factory.
+    * Start the connection factory. The callers check the default data source
+    * without synchronization so this method checks it again once the lock is
+    * acquired to make sure the factory is started only once.
     * 
     * @throws OSSException - an error has occurred
     */
-   protected synchronized void start(
+   protected void start(
    ) throws OSSException
    {
-      addDataSource(DEFAULT_DATASOURCE_NAME);
-      setDefaultDataSource(DEFAULT_DATASOURCE_NAME);
+      m_lock.lock();
+      try
+      {
+         if (m_defaultDataSource == null)
+         {
+            addDataSource(DEFAULT_DATASOURCE_NAME);
+            setDefaultDataSource(DEFAULT_DATASOURCE_NAME);
+         }
+      }
+      finally
+      {
+         m_lock.unlock();
+      }
    }
     
    /**
@@ -1113,11 +1927,11 @@ public class DatabaseConnectionFactoryImpl extends OSSObject
       DatabaseConnectionDefinition dataSource
    ) throws OSSException
    {
-      String                                                        strName;
-      Iterator<Map.Entry<Connection, DatabaseConnectionDefinition>> entries;
-      Map.Entry<Connection, DatabaseConnectionDefinition>           entry;
-      DatabaseConnectionDefinition                                  currentDataSource;
-      Connection                                                    currentConnection;        
+      String                                              strName;
+      Iterator<Map.Entry<Connection, BorrowedConnection>> entries;
+      Map.Entry<Connection, BorrowedConnection>           entry;
+      DatabaseConnectionDefinition                        currentDataSource;
+      Connection                                          currentConnection;        
 
       strName = dataSource.getName();
       // Close all connections for this data source for which we still have 
@@ -1127,7 +1941,7 @@ public class DatabaseConnectionFactoryImpl extends OSSObject
       {
          entry = entries.next();
          
-         currentDataSource = (DatabaseConnectionDefinition)entry.getValue();
+         currentDataSource = entry.getValue().getDataSource();
          currentConnection = entry.getKey(); 
          if (currentDataSource.getName().equals(strName))
          {
@@ -1220,11 +2034,12 @@ public class DatabaseConnectionFactoryImpl extends OSSObject
     * @see #returnConnection
     * @throws OSSException - an error has occurred
     */
-   protected synchronized Connection requestNonTransactionalConnection(
+   protected Connection requestNonTransactionalConnection(
       boolean bAutoCommit
    ) throws OSSException
    {
-      Connection cntDBConnection;
+      DatabaseConnectionDefinition dataSource;
+      Connection                   cntDBConnection;
 
       // If somebody is requesting connection the normal behavior is that
       // he will get it. If he doesn't get it, thats an exception. Therefore
@@ -1235,15 +2050,19 @@ public class DatabaseConnectionFactoryImpl extends OSSObject
          start();
       }
 
-      if (m_defaultDataSource != null)
+      // Read the volatile member only once so that we use the same data source
+      // even if it is concurrently changed
+      dataSource = m_defaultDataSource;
+      if (dataSource != null)
       {
          // Instead of directly getting connection, delegate it to separate 
          // method so that we can implement different behaviors based on the 
          // type of the data source. This is not a method on a data source
          // so that whoever define new data connection factory doesn't have to
-         // override two classes, this and the data source
-         cntDBConnection = getConnection(m_defaultDataSource);
-         connectionHouseKeepingOnRequest(cntDBConnection, m_defaultDataSource, 
+         // override two classes, this and the data source. This may block 
+         // while waiting for the connection but no lock is held at this point
+         cntDBConnection = acquireConnection(dataSource, null, null);
+         connectionHouseKeepingOnRequest(cntDBConnection, dataSource, 
                                          bAutoCommit);
       }
       else
@@ -1279,13 +2098,14 @@ public class DatabaseConnectionFactoryImpl extends OSSObject
     * @see #returnConnection
     * @throws OSSException - an error has occurred
     */
-   protected synchronized Connection requestNonTransactionalConnection(
+   protected Connection requestNonTransactionalConnection(
       boolean bAutoCommit,
       String  strUser, 
       String  strPassword
    ) throws OSSException
    {
-      Connection cntDBConnection;
+      DatabaseConnectionDefinition dataSource;
+      Connection                   cntDBConnection;
 
       // If somebody is requesting connection the normal behavior is that
       // he will get it. If he doesn't get it, thats an exception. Therefore
@@ -1296,10 +2116,11 @@ public class DatabaseConnectionFactoryImpl extends OSSObject
          start();
       }
 
-      if (m_defaultDataSource != null)
+      dataSource = m_defaultDataSource;
+      if (dataSource != null)
       {
-         if ((m_defaultDataSource.getUser().equals(strUser))
-            && (m_defaultDataSource.getPassword().equals(strPassword)))
+         if ((dataSource.getUser().equals(strUser))
+            && (dataSource.getPassword().equals(strPassword)))
          {
             // The user name and password are the same as for regular data 
             // source so just use the regular method to get the connection
@@ -1312,9 +2133,9 @@ public class DatabaseConnectionFactoryImpl extends OSSObject
             // type of the data source. This is not a method on a data source
             // so that whoever define new data connection factory doesn't have 
             // to override two classes, this and the data source
-            cntDBConnection = getConnection(m_defaultDataSource,
-                                            strUser, strPassword);
-            connectionHouseKeepingOnRequest(cntDBConnection, m_defaultDataSource, 
+            cntDBConnection = acquireConnection(dataSource, strUser, 
+                                                strPassword);
+            connectionHouseKeepingOnRequest(cntDBConnection, dataSource, 
                                             bAutoCommit);
          }
       }
@@ -1349,7 +2170,7 @@ public class DatabaseConnectionFactoryImpl extends OSSObject
     * @see #returnConnection
     * @throws OSSException - an error has occurred
     */
-   protected synchronized Connection requestNonTransactionalConnection(
+   protected Connection requestNonTransactionalConnection(
       boolean bAutoCommit,
       String  strDataSourceName
    ) throws OSSException
@@ -1365,7 +2186,7 @@ public class DatabaseConnectionFactoryImpl extends OSSObject
       }
       else
       {
-         cntDBConnection = getConnection(dataSource);
+         cntDBConnection = acquireConnection(dataSource, null, null);
          connectionHouseKeepingOnRequest(cntDBConnection, dataSource, 
                                          bAutoCommit);
       }
@@ -1396,7 +2217,7 @@ public class DatabaseConnectionFactoryImpl extends OSSObject
     * @see #returnConnection
     * @throws OSSException - an error has occurred
     */
-   protected synchronized Connection requestNonTransactionalConnection(
+   protected Connection requestNonTransactionalConnection(
       boolean bAutoCommit,
       String  strDataSourceName, 
       String  strUser, 
@@ -1414,7 +2235,7 @@ public class DatabaseConnectionFactoryImpl extends OSSObject
       }
       else
       {
-         cntDBConnection = getConnection(dataSource, strUser, strPassword);
+         cntDBConnection = acquireConnection(dataSource, strUser, strPassword);
          connectionHouseKeepingOnRequest(cntDBConnection, dataSource, 
                                          bAutoCommit);
       }
@@ -1432,67 +2253,106 @@ public class DatabaseConnectionFactoryImpl extends OSSObject
     * 
     * @param cntDBConnection - connection to return, can be null
     */
-   public synchronized void returnNonTransactionalConnection(
+   public void returnNonTransactionalConnection(
       Connection cntDBConnection
    )
    {
       if (cntDBConnection != null)
       {
-         if (GlobalConstants.ERROR_CHECKING)
+         BorrowedConnection borrowed;
+         
+         // Figure out from what data source was the connection retrieved. Do 
+         // it first since if the connection was already forcibly returned as 
+         // leaked, it must not be returned again since it may be already used 
+         // by somebody else 
+         borrowed = m_mpConnectionDataSourceCrossRef.remove(cntDBConnection);
+         if ((borrowed == null) && (m_bReclaimLeakedConnections))
          {
-            try
+            s_logger.log(Level.FINE, "Returned connection is not known, most"
+                         + " likely it was already reclaimed as leaked.");
+         }
+         else
+         {
+            if (GlobalConstants.ERROR_CHECKING)
             {
-               if (cntDBConnection.isClosed())
+               try
+               {
+                  if (cntDBConnection.isClosed())
+                  {
+                     assert false : "Returning closed connection.";
+                  }
+               }
+               catch (SQLException sqleExc)
                {
-                  assert false : "Returning closed connection.";
+                  s_logger.log(Level.WARNING, 
+                               "Cannot check if database connection is closed", 
+                               sqleExc);
                }
             }
+   
+            /*
+            Disabled, because it is not probably necessary to do this and we let 
+            the driver deal with this
+            // Before we close the connection, let's rollback any changes we may 
+            // have made that are not committed
+            try
+            {
+               cntDBConnection.rollback();
+            }
             catch (SQLException sqleExc)
             {
-               s_logger.log(Level.WARNING, 
-                                   "Cannot check if database connection is closed", 
+               Log.getLogger().log(Level.WARNING, 
+                                   "Rollback before closing connection has failed.", 
                                    sqleExc);
             }
+            */
+   
+            connectionHouseKeepingOnReturn(borrowed);
+            returnConnection(cntDBConnection, 
+                             (borrowed != null) ? borrowed.getDataSource() : null);
          }
-
-         /*
-         Disabled, because it is not probably necessary to do this and we let the
-         driver deal with this
-         // Before we close the connection, let's rollback any changes we may have
-         // made that are not committed
-         try
-         {
-            cntDBConnection.rollback();
-         }
-         catch (SQLException sqleExc)
-         {
-            Log.getLogger().log(Level.WARNING, 
-                                "Rollback before closing connection has failed.", 
-                                sqleExc);
-         }
-         */
-
-         // Decrease total number of requested connections   
-         if (GlobalConstants.ERROR_CHECKING)
+      }
+   }
+   
+   /**
+    * Get connection from the specified data source and record how long it took
+    * in the statistics of the data source.
+    * 
+    * @param dataSource - data source, from which to get connection
+    * @param strUser - user name to connect to the database or null to use the
+    *                  user of the data source
+    * @param strPassword - password to the database
+    * @return Connection - database connection from the specified data source
+    * @throws OSSException - an error has occurred
+    */
+   protected Connection acquireConnection(
+      DatabaseConnectionDefinition dataSource,
+      String                       strUser,
+      String                       strPassword
+   ) throws OSSException
+   {
+      DatabaseConnectionStatistics statistics = dataSource.getStatistics();
+      Connection                   cntDBConnection = null;
+      long                         lStartTime;
+      
+      lStartTime = statistics.requestStarted();
+      try
+      {
+         if (strUser == null)
          {
-            assert m_iTotalRequestedConnectionCount > 0 
-                   : "Cannot return connection that wasn't requested.";
+            cntDBConnection = getConnection(dataSource);
          }
-         
-         m_iTotalRequestedConnectionCount--;
-         // Figure out from what data source was the connection retrieved and
-         // adjust the count
-         DatabaseConnectionDefinition dataSource;
-         
-         dataSource  = m_mpConnectionDataSourceCrossRef.remove(cntDBConnection);
-         if (dataSource != null)
+         else
          {
-            // Decrease number of connections for particular data source
-            dataSource.connectionReturned();
+            cntDBConnection = getConnection(dataSource, strUser, strPassword);
          }
-         
-         returnConnection(cntDBConnection, dataSource);
       }
+      finally
+      {
+         statistics.requestCompleted(lStartTime, cntDBConnection != null);
+      }
+      
+      return cntDBConnection;
    }
    
    /**
@@ -1578,6 +2438,7 @@ public class DatabaseConnectionFactoryImpl extends OSSObject
    )
    {
       // We cannot do anything special other than just close the connection
+      closeStatementCache(cntDBConnection);
       try
       {
          cntDBConnection.close();
@@ -1590,40 +2451,223 @@ public class DatabaseConnectionFactoryImpl extends OSSObject
    }
    
    /**
-    * Update internal state of this factory when connection was requesed for
-    * a specified data source
+    * Get the physical connection to the database underlying the specified 
+    * connection issued by this factory, which is used to prepare the cached 
+    * statements. The connections not taken from the pool are the physical 
+    * connections so the default implementation returns the specified 
+    * connection. Derived classes should override this method if the pool
+    * they use issues a different wrapper of the same physical connection 
+    * each time and it is possible to access the physical connection.
     * 
-    * @param cntDBConnection - newly requested connection
-    * @param dataSource - data source from which the connection was requested
-    * @param bAutoCommit - The desired autocommit state of the connection. If 
-    *                      this connection is invoked in global (JTA) transaction
-    *                      then the autocommit is false regardless of what
-    *                      value is specified here. Use true here if the client
-    *                      only reads the data and false if the client also 
-    *                      modifies the data. 
-    *                      Use DatabaseTransactionFactory.commitTransaction
-    *                      to commit the transaction.
-    * @throws OSSException - an error has occurred
+    * @param cntDBConnection - connection issued by this factory
+    * @return Connection - physical connection underlying the specified one
     */
-   protected synchronized void connectionHouseKeepingOnRequest(
-      Connection                   cntDBConnection,
-      DatabaseConnectionDefinition dataSource,
-      boolean                      bAutoCommit
-   ) throws OSSException
+   protected Connection getPhysicalConnection(
+      Connection cntDBConnection
+   )
    {
-      if (cntDBConnection == null)
-      {
-         throw new OSSDatabaseAccessException("Cannot get database connection" 
-                                              + " for an unknown reason");            
+      return cntDBConnection;
+   }
+   
+   /**
+    * Close cache of statements prepared using the specified physical 
+    * connection since the connection is going to be closed.
+    * 
+    * @param physicalConnection - physical connection which is going to be 
+    *                             closed
+    */
+   protected void closeStatementCache(
+      Connection physicalConnection
+   )
+   {
+      PreparedStatementCache cache;
+      
+      cache = m_mpStatementCaches.remove(physicalConnection);
+      if (cache != null)
+      {
+         cache.close();
+      }
+   }
+   
+   /**
+    * Close and forget caches of statements prepared using physical 
+    * connections, which were already closed. 
+    */
+   protected void removeClosedStatementCaches(
+   )
+   {
+      boolean bClosed;
+      
+      for (Map.Entry<Connection, PreparedStatementCache> entry 
+          : m_mpStatementCaches.entrySet())
+      {
+         try
+         {
+            bClosed = entry.getKey().isClosed();
+         }
+         catch (SQLException sqleExc)
+         {
+            bClosed = true;
+         }
+         if ((bClosed) 
+            && (m_mpStatementCaches.remove(entry.getKey(), entry.getValue())))
+         {
+            entry.getValue().close();
+         }
+      }
+   }
+   
+   /**
+    * Check if this factory can invalidate connections, which are still held by
+    * the code which requested them. Leaked connections are reclaimed only if 
+    * they can be invalidated since otherwise the code which leaked them would 
+    * share them with the next caller. The default implementation closes the 
+    * physical connection so it can invalidate them. 
+    * 
+    * @return boolean - true if invalidateConnection makes sure that the
+    *                   connection is not used by anybody else
+    */
+   protected boolean canInvalidateConnection(
+   )
+   {
+      return true;
+   }
+   
+   /**
+    * Invalidate connection, which is still held by the code which requested 
+    * it, e.g. when it was leaked. The connection must not be used by anybody 
+    * else afterwards. The default implementation closes the connection same as
+    * returnConnection does, which for connections not taken from the pool 
+    * closes the physical connection. Derived classes using connection pool 
+    * should override this method if closing the connection returns it to the 
+    * pool while the code holding it can still use it and they have to 
+    * override also canInvalidateConnection if they cannot do it.
+    * 
+    * @param cntDBConnection - connection to invalidate
+    * @param dataSource - data source from which the connection was requested
+    */
+   protected void invalidateConnection(
+      Connection                   cntDBConnection,
+      DatabaseConnectionDefinition dataSource
+   )
+   {
+      closeStatementCache(cntDBConnection);
+      try
+      {
+         cntDBConnection.close();
+      }
+      catch (SQLException sqleExc)
+      {
+         s_logger.log(Level.WARNING, "Closing of connection has failed.", 
+                      sqleExc);
+      }
+   }
+   
+   /**
+    * Get statistics for the specified data source and create them if they
+    * do not exist yet. The statistics are also registered with JMX when they 
+    * are created.
+    * 
+    * @param strDataSourceName - name of the data source
+    * @return DatabaseConnectionStatistics - statistics of the data source
+    */
+   protected DatabaseConnectionStatistics initializeStatistics(
+      String strDataSourceName
+   )
+   {
+      DatabaseConnectionStatistics statistics;
+      DatabaseConnectionStatistics existing;
+      
+      statistics = m_mpStatistics.get(strDataSourceName);
+      if (statistics == null)
+      {
+         statistics = new DatabaseConnectionStatistics(this, strDataSourceName);
+         existing = m_mpStatistics.putIfAbsent(strDataSourceName, statistics);
+         if (existing != null)
+         {
+            statistics = existing;
+         }
+         else
+         {
+            statistics.register();
+         }
+      }
+      
+      return statistics;
+   }
+   
+   /**
+    * Forget statistics for the specified data source and unregister them from 
+    * JMX.
+    * 
+    * @param strDataSourceName - name of the data source
+    */
+   protected void destroyStatistics(
+      String strDataSourceName
+   )
+   {
+      DatabaseConnectionStatistics statistics;
+      
+      statistics = m_mpStatistics.remove(strDataSourceName);
+      if (statistics != null)
+      {
+         statistics.unregister();
+      }
+   }
+   
+   /**
+    * Update internal state of this factory when connection was requesed for
+    * a specified data source. All the counters and maps updated here are 
+    * thread safe so this method doesn't need to synchronize on the factory.
+    * 
+    * @param cntDBConnection - newly requested connection
+    * @param dataSource - data source from which the connection was requested
+    * @param bAutoCommit - The desired autocommit state of the connection. If 
+    *                      this connection is invoked in global (JTA) transaction
+    *                      then the autocommit is false regardless of what
+    *                      value is specified here. Use true here if the client
+    *                      only reads the data and false if the client also 
+    *                      modifies the data. 
+    *                      Use DatabaseTransactionFactory.commitTransaction
+    *                      to commit the transaction.
+    * @throws OSSException - an error has occurred
+    */
+   protected void connectionHouseKeepingOnRequest(
+      Connection                   cntDBConnection,
+      DatabaseConnectionDefinition dataSource,
+      boolean                      bAutoCommit
+   ) throws OSSException
+   {
+      if (cntDBConnection == null)
+      {
+         throw new OSSDatabaseAccessException("Cannot get database connection" 
+                                              + " for an unknown reason");            
       }
 
       // Increase total number of requested connections   
-      m_iTotalRequestedConnectionCount++;
+      m_iTotalRequestedConnectionCount.incrementAndGet();
 
       // Increase number of connections for particular data source 
       // and associate them together so that when connection is returned
       // we can decrement count from correct data source
-      m_mpConnectionDataSourceCrossRef.put(cntDBConnection, dataSource);
+      BorrowedConnection borrowed;
+      
+      if (m_iLeakThreshold > 0)
+      {
+         if (m_leakDetector == null)
+         {
+            startLeakDetector();
+         }
+         // Creating throwable captures the stack cheaply, the stack trace is 
+         // resolved only if it is really needed
+         borrowed = new BorrowedConnection(dataSource, 
+                                           new Throwable("Connection requested"));
+      }
+      else
+      {
+         borrowed = dataSource.getUntrackedConnection();
+      }
+      m_mpConnectionDataSourceCrossRef.put(cntDBConnection, borrowed);
       dataSource.connectionRequested();
 
       try
@@ -1639,6 +2683,429 @@ public class DatabaseConnectionFactoryImpl extends OSSObject
       }
    }
    
+   /**
+    * Update internal state of this factory when connection is being returned.
+    * All the counters and maps updated here are thread safe so this method 
+    * doesn't need to synchronize on the factory.
+    * 
+    * @param borrowed - information about the returned connection, can be null 
+    *                   if the connection is not known
+    */
+   protected void connectionHouseKeepingOnReturn(
+      BorrowedConnection borrowed
+   )
+   {
+      // Decrease total number of requested connections   
+      int iTotalCount = m_iTotalRequestedConnectionCount.getAndDecrement();
+      
+      if (GlobalConstants.ERROR_CHECKING)
+      {
+         assert iTotalCount > 0 
+                : "Cannot return connection that wasn't requested.";
+      }
+      
+      if (borrowed != null)
+      {
+         // Decrease number of connections for particular data source
+         borrowed.getDataSource().connectionReturned();
+         if (borrowed.getBorrowSite() != null)
+         {
+            recordHoldTime(borrowed);
+         }
+      }
+   }
+   
+   /**
+    * Record how long was the connection held by the code, which requested it.
+    * The code which requested the connection is determined only if the 
+    * connection was held longer than the leak threshold, i.e. only the callers
+    * exceeding the threshold are tracked separately since resolving the stack
+    * of every borrow site is too expensive. Hold times of all other 
+    * connections are recorded together under WITHIN_THRESHOLD_CALLERS.
+    * 
+    * @param borrowed - information about the returned connection
+    */
+   protected void recordHoldTime(
+      BorrowedConnection borrowed
+   )
+   {
+      String           strCaller;
+      LatencyHistogram holdTimes;
+      LatencyHistogram existing;
+      
+      if ((borrowed.isReported())
+         || (borrowed.getHoldTime() > TimeUnit.MILLISECONDS.toNanos(m_iLeakThreshold)))
+      {
+         strCaller = borrowed.getCaller();
+      }
+      else
+      {
+         // Resolving the stack trace on every return is too expensive
+         strCaller = WITHIN_THRESHOLD_CALLERS;
+      }
+      
+      holdTimes = m_mpHoldTimes.get(strCaller);
+      if (holdTimes == null)
+      {
+         if (m_mpHoldTimes.size() >= HOLD_TIME_CALLER_LIMIT)
+         {
+            // Do not let the map grow without limits if there are too many
+            // places requesting connections
+            strCaller = OTHER_CALLERS;
+            holdTimes = m_mpHoldTimes.get(strCaller);
+         }
+         if (holdTimes == null)
+         {
+            holdTimes = new LatencyHistogram();
+            existing = m_mpHoldTimes.putIfAbsent(strCaller, holdTimes);
+            if (existing != null)
+            {
+               holdTimes = existing;
+            }
+         }
+      }
+      holdTimes.recordSince(borrowed.getBorrowTime());
+   }
+   
+   /**
+    * Start the executor periodically checking for leaked connections if it is
+    * not running yet.
+    */
+   protected void startLeakDetector(
+   )
+   {
+      m_lock.lock();
+      try
+      {
+         if (m_leakDetector == null)
+         {
+            ScheduledExecutorService leakDetector;
+         
+            leakDetector = Executors.newSingleThreadScheduledExecutor(
+               new ThreadFactory()
+               {
+                  @Override
+                  public Thread newThread(
+                     Runnable runnable
+                  )
+                  {
+                     Thread thread = new Thread(runnable, 
+                                        "DatabaseConnectionFactory leak detector");
+                  
+                     // Do not prevent the application from exiting
+                     thread.setDaemon(true);
+                  
+                     return thread;
+                  }
+               });
+            leakDetector.scheduleWithFixedDelay(
+               new Runnable()
+               {
+                  @Override
+                  public void run(
+                  )
+                  {
+                     try
+                     {
+                        checkLeakedConnections();
+                     }
+                     catch (Throwable thr)
+                     {
+                        // Catch throwable since otherwise the check would not be
+                        // scheduled again
+                        s_logger.log(Level.WARNING, 
+                                     "Unexpected error while checking for leaked" 
+                                     + " connections.", thr);
+                     }
+                  }
+               }, m_iLeakCheckPeriod, m_iLeakCheckPeriod, TimeUnit.MILLISECONDS);
+            m_leakDetector = leakDetector;
+            if ((m_bReclaimLeakedConnections) && (!canInvalidateConnection()))
+            {
+               // Returning the connection would let the next caller share it
+               // with the code which leaked it
+               s_logger.log(Level.WARNING, "Leaked connections will be only" 
+                            + " reported and not reclaimed as configured by " 
+                            + DATABASE_LEAK_RECLAIM + " since " 
+                            + getClass().getName() + " cannot invalidate"
+                            + " connections.");
+            }
+         }
+      }
+      finally
+      {
+         m_lock.unlock();
+      }
+   }
+   
+   /**
+    * Report connections, which are held longer than the leak threshold and if
+    * configured, forcibly return them.
+    */
+   protected void checkLeakedConnections(
+   )
+   {
+      long               lThreshold;
+      BorrowedConnection borrowed;
+      
+      lThreshold = TimeUnit.MILLISECONDS.toNanos(m_iLeakThreshold);
+      for (Map.Entry<Connection, BorrowedConnection> entry 
+          : m_mpConnectionDataSourceCrossRef.entrySet())
+      {
+         borrowed = entry.getValue();
+         if ((borrowed.getBorrowSite() != null) 
+            && (borrowed.getHoldTime() > lThreshold))
+         {
+            if (!borrowed.isReported())
+            {
+               borrowed.setReported();
+               borrowed.getDataSource().getStatistics().connectionLeaked();
+               s_logger.log(Level.WARNING, "Connection from data source " 
+                            + borrowed.getDataSource().getName() + " is held"
+                            + " for " + TimeUnit.NANOSECONDS.toMillis(
+                                           borrowed.getHoldTime()) 
+                            + " ms by " + borrowed.getCaller() 
+                            + ", it was most likely leaked. It was requested"
+                            + " at", borrowed.getBorrowSite());
+            }
+            if ((m_bReclaimLeakedConnections) && (canInvalidateConnection()))
+            {
+               reclaimConnection(entry.getKey(), borrowed);
+            }
+         }
+      }
+   }
+   
+   /**
+    * Forcibly return leaked connection. Any changes made using the connection
+    * which were not committed yet are rolled back. The connection is still
+    * held by the code which leaked it so it is invalidated rather than made
+    * available to other callers.
+    * 
+    * @param cntDBConnection - leaked connection
+    * @param borrowed - information about the leaked connection
+    */
+   protected void reclaimConnection(
+      Connection         cntDBConnection,
+      BorrowedConnection borrowed
+   )
+   {
+      // Remove the connection only if it wasn't returned in the meantime
+      if (m_mpConnectionDataSourceCrossRef.remove(cntDBConnection, borrowed))
+      {
+         try
+         {
+            if ((!cntDBConnection.isClosed()) 
+               && (!cntDBConnection.getAutoCommit()))
+            {
+               cntDBConnection.rollback();
+            }
+         }
+         catch (SQLException sqleExc)
+         {
+            s_logger.log(Level.WARNING, "Rollback of leaked connection has"
+                         + " failed.", sqleExc);
+         }
+         connectionHouseKeepingOnReturn(borrowed);
+         invalidateConnection(cntDBConnection, borrowed.getDataSource());
+         borrowed.getDataSource().getStatistics().connectionReclaimed();
+         s_logger.log(Level.WARNING, "Leaked connection from data source {0}"
+                      + " requested by {1} was reclaimed.", 
+                      new Object[] {borrowed.getDataSource().getName(), 
+                                    borrowed.getCaller(), });
+      }
+   }
+   
+   /**
+    * Create data sources replicating data of specified data source, which 
+    * weren't created yet, and register them as its replicas. 
+    * 
+    * @param dataSource - data source to add replicas to
+    * @param database - database for which the replicas are being created
+    * @param strReplicas - comma separated list of names of the replicas, can 
+    *                      be null or empty
+    * @throws OSSException - an error has occurred
+    */
+   protected void addReplicas(
+      DatabaseConnectionDefinition dataSource,
+      Database                     database,
+      String                       strReplicas
+   ) throws OSSException
+   {
+      m_lock.lock();
+      try
+      {
+         if ((strReplicas != null) && (strReplicas.trim().length() > 0))
+         {
+            DatabaseConnectionDefinition replica;
+         
+            for (String strReplica : strReplicas.split(","))
+            {
+               strReplica = strReplica.trim();
+               if ((strReplica.length() > 0) 
+                  && (!strReplica.equals(dataSource.getName())))
+               {
+                  replica = m_mpDataSources.get(strReplica);
+                  if (replica == null)
+                  {
+                     addDataSource(strReplica, database);
+                     replica = m_mpDataSources.get(strReplica);
+                  }
+                  dataSource.addReplica(replica);
+                  m_bReplicasDefined = true;
+                  s_logger.log(Level.FINE, "Data source {0} registered as replica"
+                               + " of data source {1}.", 
+                               new Object[] {strReplica, dataSource.getName()});
+               }
+            }
+         }
+      }
+      finally
+      {
+         m_lock.unlock();
+      }
+   }
+   
+   /**
+    * Select replica from which to read data instead of the specified data 
+    * source. The replica with the least connections currently in use is 
+    * selected unless a transaction is in progress or the current session 
+    * modified data within the read your writes window.  
+    * 
+    * @param dataSource - data source for which to select replica, can be null
+    * @return DatabaseConnectionDefinition - selected replica or null if the 
+    *                                        data has to be read from the data
+    *                                        source itself
+    * @throws OSSException - an error has occurred
+    */
+   protected DatabaseConnectionDefinition selectReplica(
+      DatabaseConnectionDefinition dataSource
+   ) throws OSSException
+   {
+      DatabaseConnectionDefinition selected = null;
+      
+      if ((dataSource != null) && (!dataSource.getReplicas().isEmpty())
+         && ((m_transactionFactory == null)
+            || (!m_transactionFactory.isTransactionInProgress()))
+         && (!isWriteRecent()))
+      {
+         int iSelectedCount = Integer.MAX_VALUE;
+         int iCount;
+         
+         for (DatabaseConnectionDefinition replica : dataSource.getReplicas())
+         {
+            iCount = replica.getRequestedConnectionCount();
+            if (iCount < iSelectedCount)
+            {
+               selected = replica;
+               iSelectedCount = iCount;
+            }
+         }
+      }
+      
+      return selected;
+   }
+   
+   /**
+    * Remember that the current session modified data so that it doesn't read 
+    * data from replicas, which may not contain the modifications yet. 
+    */
+   protected void recordWrite(
+   )
+   {
+      if ((m_bReplicasDefined) && (m_iReadYourWritesWindow > 0))
+      {
+         long lNow = System.currentTimeMillis();
+         
+         m_mpRecentWrites.put(getCurrentSession(), lNow);
+         if (m_mpRecentWrites.size() > RECENT_WRITES_LIMIT)
+         {
+            // Forget sessions which didn't modify data recently so that the 
+            // map doesn't grow indefinitely
+            Iterator<Long> itrTimes;
+            
+            for (itrTimes = m_mpRecentWrites.values().iterator(); 
+                 itrTimes.hasNext();)
+            {
+               if (lNow - itrTimes.next() > m_iReadYourWritesWindow)
+               {
+                  itrTimes.remove();
+               }
+            }
+         }
+      }
+   }
+   
+   /**
+    * Check if the current session modified data within the read your writes 
+    * window.
+    * 
+    * @return boolean - true if the session modified data recently
+    */
+   protected boolean isWriteRecent(
+   )
+   {
+      boolean bRecent = false;
+      
+      if (m_iReadYourWritesWindow > 0)
+      {
+         String strSession = getCurrentSession();
+         Long   lLastWrite = m_mpRecentWrites.get(strSession);
+         
+         if (lLastWrite != null)
+         {
+            bRecent = System.currentTimeMillis() - lLastWrite 
+                      <= m_iReadYourWritesWindow;
+            if (!bRecent)
+            {
+               m_mpRecentWrites.remove(strSession, lLastWrite);
+            }
+         }
+      }
+      
+      return bRecent;
+   }
+   
+   /**
+    * Get identification of the current session used to track modifications of
+    * data. If the session is not known, the current thread is used instead.
+    * 
+    * @return String - identification of the current session, never null
+    */
+   protected String getCurrentSession(
+   )
+   {
+      String strSession;
+      
+      strSession = CallContext.getInstance().getCurrentSession();
+      if (strSession == null)
+      {
+         strSession = THREAD_SESSION_PREFIX + Thread.currentThread().getId();
+      }
+      
+      return strSession;
+   }
+   
+   /**
+    * Check if the class is part of the JDK or of the code managing connections
+    * and transactions, which requests connections on behalf of its callers.
+    * 
+    * @param strClassName - name of the class to check
+    * @return boolean - true if the class only requests connections on behalf 
+    *                   of its callers
+    */
+   protected static boolean isConnectionInfrastructure(
+      String strClassName
+   )
+   {
+      return strClassName.startsWith("java.") 
+             || strClassName.startsWith("javax.")
+             || strClassName.startsWith("sun.")
+             || strClassName.contains("ConnectionFactory")
+             || strClassName.contains("TransactionFactory")
+             || strClassName.contains("TransactionalConnection");
+   }
+   
    /**
     * Check if to use a separate datasource name to obtain administration 
     * connection instead of just using the default data source with separate 
@@ -1651,22 +3118,11 @@ public class DatabaseConnectionFactoryImpl extends OSSObject
    public static boolean useAdminDataSource(
    )
    {
-      // TODO: Performance: Since we are reading it all the time this may impact
-      // performance
-      
-      // Read it here instead of in static block or constructor since if this 
-      // code is executed in different execution context, it might have 
-      // different configuration settings.
-      Properties prpSettings;
-      Boolean    bUseAdminDataSource;
-      
-      prpSettings = Config.getInstance().getProperties();
-      bUseAdminDataSource = PropertyUtils.getBooleanProperty(
-                               prpSettings, DATABASE_USE_ADMIN_DATAROURCE, 
-                               DATABASE_USE_ADMIN_DATAROURCE_DEFAULT, 
-                               "Use separate datasource for admin connections");
-      
-      return bUseAdminDataSource.booleanValue();
+      // Do not read it in static block or constructor since if this code is 
+      // executed in different execution context, it might have different 
+      // configuration settings. The cached settings are read again whenever 
+      // the configuration in effect changes.
+      return s_useAdminDataSource.getSettings().booleanValue();
    }
 }
 
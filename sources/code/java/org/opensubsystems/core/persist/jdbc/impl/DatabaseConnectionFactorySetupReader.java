@@ -117,6 +117,14 @@ public class DatabaseConnectionFactorySetupReader extends MultiSetupReader
     */
    public static final String DATABASE_TRANSACTION_ISOLATION = "transaction.isolation";         
    
+   /**
+    * Name of the property containing comma separated list of names of data 
+    * sources, which replicate data of this data source and which can be used
+    * to read data outside of transactions, e.g. "replica1,replica2". Each 
+    * replica is configured the same way as any other data source.
+    */
+   public static final String DATABASE_REPLICAS = "replicas";
+   
    // Configuration default values
    
    /**
@@ -162,6 +170,12 @@ public class DatabaseConnectionFactorySetupReader extends MultiSetupReader
     */
    public static final String DATABASE_TRANSACTION_ISOLATION_DEFAULT = "serializable";         
    
+   /**
+    * Default list of replicas is empty, all data are read from the data source
+    * itself.
+    */
+   public static final String DATABASE_REPLICAS_DEFAULT = "";
+   
    // Constants ////////////////////////////////////////////////////////////////
    
    /**
@@ -357,5 +371,10 @@ public class DatabaseConnectionFactorySetupReader extends MultiSetupReader
                         SetupReader.PARAMETER_TYPE_STRING_OBJ,
                         DATABASE_TRANSACTION_ISOLATION_DEFAULT,
                         "Default transaction isolation level");
+
+      registerParameter(DATABASE_REPLICAS,
+                        SetupReader.PARAMETER_TYPE_STRING_OBJ,
+                        DATABASE_REPLICAS_DEFAULT,
+                        "Data sources replicating data of this data source");
    }
 }
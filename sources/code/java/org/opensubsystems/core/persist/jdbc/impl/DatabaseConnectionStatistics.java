@@ -0,0 +1,931 @@
+/*
+ * Copyright (C) 2003 - 2016 OpenSubsystems.com/net/org and its owners. All rights reserved.
+ * 
+ * This file is part of OpenSubsystems.
+ *
+ * OpenSubsystems is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+
+package org.opensubsystems.core.persist.jdbc.impl;
+
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.opensubsystems.core.util.LatencyHistogram;
+import org.opensubsystems.core.util.Log;
+import org.opensubsystems.core.util.OSSObject;
+import org.opensubsystems.core.util.jdbc.PreparedStatementCache;
+
+/**
+ * Statistics of connections requested from a single data source. The connection
+ * factory records how long it takes to get connection and how many requests
+ * are pending or have failed. The connection pool, if there is one, records
+ * additional information about creation, validation and age of connections
+ * and about requests which timed out or found the pool exhausted. The caches
+ * of prepared statements record how many statements were found in them.
+ *
+ * All values are recorded without any locking so that collecting of the
+ * statistics doesn't slow down requests for connections. The statistics are
+ * available programmatically from DatabaseConnectionFactoryImpl.getStatistics
+ * and over JMX under name
+ * org.opensubsystems.core:type=DatabaseConnectionStatistics,name=[data source]
+ *
+ * @author bastafidli
+ */
+public class DatabaseConnectionStatistics extends    OSSObject
+                                          implements DatabaseConnectionStatisticsMBean
+{
+   // Constants ////////////////////////////////////////////////////////////////
+
+   /**
+    * Domain and type under which the statistics are registered with JMX. The
+    * name of the data source and unique id of the statistics follow.
+    */
+   public static final String JMX_NAME_PREFIX
+                                 = "org.opensubsystems.core:type=DatabaseConnectionStatistics,name=";
+
+   // Attributes ///////////////////////////////////////////////////////////////
+
+   /**
+    * Id which makes the JMX name of these statistics unique even if multiple 
+    * connection factories manage data sources with the same name.
+    */
+   protected int m_iStatisticsId;
+
+   /**
+    * Name under which these statistics are registered with JMX or null if they 
+    * are not registered.
+    */
+   protected ObjectName m_registeredName;
+
+   /**
+    * Connection factory which manages the data source.
+    */
+   protected DatabaseConnectionFactoryImpl m_connectionFactory;
+
+   /**
+    * Name of the data source.
+    */
+   protected String m_strDataSourceName;
+
+   /**
+    * Number of requests currently waiting for connection.
+    */
+   protected AtomicInteger m_iPendingRequestCount;
+
+   /**
+    * Number of connections currently open by the pool.
+    */
+   protected AtomicInteger m_iOpenConnectionCount;
+
+   /**
+    * Total number of requests for connection.
+    */
+   protected AtomicLong m_lRequestCount;
+
+   /**
+    * Number of requests for connection that have failed.
+    */
+   protected AtomicLong m_lFailedRequestCount;
+
+   /**
+    * Number of requests which have failed since no connection became available
+    * within the wait period.
+    */
+   protected AtomicLong m_lTimeoutCount;
+
+   /**
+    * Number of requests which found all connections in use.
+    */
+   protected AtomicLong m_lExhaustedCount;
+
+   /**
+    * Number of requests which were rejected without waiting for connection.
+    */
+   protected AtomicLong m_lRejectedCount;
+
+   /**
+    * Number of connections which were held longer than the leak threshold.
+    */
+   protected AtomicLong m_lLeakedConnectionCount;
+
+   /**
+    * Number of leaked connections which were forcibly returned.
+    */
+   protected AtomicLong m_lReclaimedConnectionCount;
+
+   /**
+    * Number of connections closed by the pool.
+    */
+   protected AtomicLong m_lDestroyedConnectionCount;
+
+   /**
+    * Number of connections which were found invalid.
+    */
+   protected AtomicLong m_lValidationFailureCount;
+
+   /**
+    * Number of prepared statements, which were found in statement cache.
+    */
+   protected AtomicLong m_lStatementCacheHitCount;
+
+   /**
+    * Number of prepared statements, which had to be prepared since they were
+    * not found in statement cache.
+    */
+   protected AtomicLong m_lStatementCacheMissCount;
+
+   /**
+    * Sum of creation timestamps of connections currently open by the pool
+    * used to compute their average age.
+    */
+   protected AtomicLong m_lOpenConnectionTimestamps;
+
+   /**
+    * Sum of times in milliseconds the connections were open before the pool
+    * closed them.
+    */
+   protected AtomicLong m_lConnectionLifetimes;
+
+   /**
+    * Time it takes to get connection.
+    */
+   protected LatencyHistogram m_waitTime;
+
+   /**
+    * Time it takes to create new connection.
+    */
+   protected LatencyHistogram m_creationTime;
+
+   /**
+    * Time it takes to validate connection.
+    */
+   protected LatencyHistogram m_validationTime;
+
+   // Cached values ////////////////////////////////////////////////////////////
+
+   /**
+    * Logger for this class
+    */
+   private static Logger s_logger = Log.getInstance(DatabaseConnectionStatistics.class);
+
+   /**
+    * Counter used to generate unique id of each instance of the statistics.
+    */
+   private static AtomicInteger s_iStatisticsCounter = new AtomicInteger(0);
+
+   // Constructors /////////////////////////////////////////////////////////////
+
+   /**
+    * Constructor.
+    *
+    * @param connectionFactory - connection factory which manages the data source
+    * @param strDataSourceName - name of the data source
+    */
+   public DatabaseConnectionStatistics(
+      DatabaseConnectionFactoryImpl connectionFactory,
+      String                        strDataSourceName
+   )
+   {
+      super();
+
+      m_iStatisticsId = s_iStatisticsCounter.incrementAndGet();
+      m_registeredName = null;
+      m_connectionFactory = connectionFactory;
+      m_strDataSourceName = strDataSourceName;
+      m_iPendingRequestCount = new AtomicInteger(0);
+      m_iOpenConnectionCount = new AtomicInteger(0);
+      m_lRequestCount = new AtomicLong(0);
+      m_lFailedRequestCount = new AtomicLong(0);
+      m_lTimeoutCount = new AtomicLong(0);
+      m_lExhaustedCount = new AtomicLong(0);
+      m_lRejectedCount = new AtomicLong(0);
+      m_lLeakedConnectionCount = new AtomicLong(0);
+      m_lReclaimedConnectionCount = new AtomicLong(0);
+      m_lDestroyedConnectionCount = new AtomicLong(0);
+      m_lValidationFailureCount = new AtomicLong(0);
+      m_lStatementCacheHitCount = new AtomicLong(0);
+      m_lStatementCacheMissCount = new AtomicLong(0);
+      m_lOpenConnectionTimestamps = new AtomicLong(0);
+      m_lConnectionLifetimes = new AtomicLong(0);
+      m_waitTime = new LatencyHistogram();
+      m_creationTime = new LatencyHistogram();
+      m_validationTime = new LatencyHistogram();
+   }
+
+   // Recording methods ////////////////////////////////////////////////////////
+
+   /**
+    * Record that request for connection has started.
+    *
+    * @return long - time in nanoseconds when the request has started, which
+    *                should be passed to requestCompleted
+    */
+   public long requestStarted(
+   )
+   {
+      m_iPendingRequestCount.incrementAndGet();
+
+      return System.nanoTime();
+   }
+
+   /**
+    * Record that request for connection has completed.
+    *
+    * @param lStartTime - time in nanoseconds when the request has started
+    * @param bSuccess - true if the connection was obtained, false otherwise
+    */
+   public void requestCompleted(
+      long    lStartTime,
+      boolean bSuccess
+   )
+   {
+      m_iPendingRequestCount.decrementAndGet();
+      m_lRequestCount.incrementAndGet();
+      if (bSuccess)
+      {
+         m_waitTime.recordSince(lStartTime);
+      }
+      else
+      {
+         m_lFailedRequestCount.incrementAndGet();
+      }
+   }
+
+   /**
+    * Record that request for connection has failed since no connection became
+    * available within the wait period.
+    */
+   public void requestTimedOut(
+   )
+   {
+      m_lTimeoutCount.incrementAndGet();
+   }
+
+   /**
+    * Record that request for connection found all connections in use.
+    */
+   public void poolExhausted(
+   )
+   {
+      m_lExhaustedCount.incrementAndGet();
+   }
+
+   /**
+    * Record that request for connection was rejected without waiting since
+    * too many requests were already waiting or its deadline has passed.
+    */
+   public void requestRejected(
+   )
+   {
+      m_lRejectedCount.incrementAndGet();
+   }
+
+   /**
+    * Record that connection was held longer than the leak threshold.
+    */
+   public void connectionLeaked(
+   )
+   {
+      m_lLeakedConnectionCount.incrementAndGet();
+   }
+
+   /**
+    * Record that leaked connection was forcibly returned.
+    */
+   public void connectionReclaimed(
+   )
+   {
+      m_lReclaimedConnectionCount.incrementAndGet();
+   }
+
+   /**
+    * Record that the pool has created new connection.
+    *
+    * @param lDuration - time in nanoseconds it took to create the connection
+    * @param lCreationTimestamp - time in milliseconds when the connection
+    *                             was created
+    */
+   public void connectionCreated(
+      long lDuration,
+      long lCreationTimestamp
+   )
+   {
+      m_creationTime.record(lDuration);
+      m_iOpenConnectionCount.incrementAndGet();
+      m_lOpenConnectionTimestamps.addAndGet(lCreationTimestamp);
+   }
+
+   /**
+    * Record that the pool has closed connection.
+    *
+    * @param lCreationTimestamp - time in milliseconds when the connection
+    *                             was created
+    */
+   public void connectionDestroyed(
+      long lCreationTimestamp
+   )
+   {
+      m_lDestroyedConnectionCount.incrementAndGet();
+      m_iOpenConnectionCount.decrementAndGet();
+      m_lOpenConnectionTimestamps.addAndGet(-lCreationTimestamp);
+      m_lConnectionLifetimes.addAndGet(System.currentTimeMillis()
+                                       - lCreationTimestamp);
+   }
+
+   /**
+    * Record that connection was validated.
+    *
+    * @param lDuration - time in nanoseconds it took to validate the connection
+    * @param bValid - true if the connection was found valid
+    */
+   public void connectionValidated(
+      long    lDuration,
+      boolean bValid
+   )
+   {
+      m_validationTime.record(lDuration);
+      if (!bValid)
+      {
+         m_lValidationFailureCount.incrementAndGet();
+      }
+   }
+
+   /**
+    * Record that statement was requested from statement cache.
+    *
+    * @param bCached - true if the statement was found in the cache, false if
+    *                  it had to be prepared
+    */
+   public void statementPrepared(
+      boolean bCached
+   )
+   {
+      if (bCached)
+      {
+         m_lStatementCacheHitCount.incrementAndGet();
+      }
+      else
+      {
+         m_lStatementCacheMissCount.incrementAndGet();
+      }
+   }
+
+   // Logic ////////////////////////////////////////////////////////////////////
+
+   /**
+    * Create cache of statements prepared using the specified connection, 
+    * which records in these statistics if the requested statements were 
+    * found in the cache.
+    *
+    * @param connection - connection used to prepare the statements
+    * @param ownerConnection - connection which will be reported by the
+    *                          statements as the one which created them
+    * @param iMaximalSize - maximal number of statements cached for the
+    *                       connection or PreparedStatementCache.UNLIMITED_SIZE
+    * @return PreparedStatementCache - new cache
+    */
+   public PreparedStatementCache createStatementCache(
+      Connection connection,
+      Connection ownerConnection,
+      int        iMaximalSize
+   )
+   {
+      return new PreparedStatementCache(connection, ownerConnection, 
+                                        iMaximalSize)
+      {
+         @Override
+         protected PreparedStatement checkoutStatement(
+            String strKey
+         )
+         {
+            PreparedStatement statement;
+            
+            statement = super.checkoutStatement(strKey);
+            statementPrepared(statement != null);
+            
+            return statement;
+         }
+      };
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public String getDataSourceName(
+   )
+   {
+      return m_strDataSourceName;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public int getActiveConnectionCount(
+   )
+   {
+      int iCount;
+      
+      try
+      {
+         iCount = m_connectionFactory.getRequestedConnectionCount(
+                                         m_strDataSourceName);
+      }
+      catch (IllegalArgumentException iaeExc)
+      {
+         // The data source is still being created or was already removed
+         iCount = 0;
+      }
+      
+      return iCount;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public int getIdleConnectionCount(
+   )
+   {
+      return m_connectionFactory.getIdleConnectionCount(m_strDataSourceName);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public int getPendingRequestCount(
+   )
+   {
+      return m_iPendingRequestCount.get();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public int getOpenConnectionCount(
+   )
+   {
+      return m_iOpenConnectionCount.get();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public long getRequestCount(
+   )
+   {
+      return m_lRequestCount.get();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public long getFailedRequestCount(
+   )
+   {
+      return m_lFailedRequestCount.get();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public long getTimeoutCount(
+   )
+   {
+      return m_lTimeoutCount.get();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public long getExhaustedCount(
+   )
+   {
+      return m_lExhaustedCount.get();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public long getRejectedCount(
+   )
+   {
+      return m_lRejectedCount.get();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public long getLeakedConnectionCount(
+   )
+   {
+      return m_lLeakedConnectionCount.get();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public long getReclaimedConnectionCount(
+   )
+   {
+      return m_lReclaimedConnectionCount.get();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public double getWaitTimeMean(
+   )
+   {
+      return m_waitTime.getMean();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public double getWaitTime50thPercentile(
+   )
+   {
+      return m_waitTime.getPercentile(50);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public double getWaitTime95thPercentile(
+   )
+   {
+      return m_waitTime.getPercentile(95);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public double getWaitTime99thPercentile(
+   )
+   {
+      return m_waitTime.getPercentile(99);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public double getWaitTimeMaximum(
+   )
+   {
+      return m_waitTime.getMaximum();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public long[] getWaitTimeHistogram(
+   )
+   {
+      return m_waitTime.getBucketCounts();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public long[] getHistogramBucketLimits(
+   )
+   {
+      return LatencyHistogram.getBucketLimits();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public long getCreatedConnectionCount(
+   )
+   {
+      return m_creationTime.getCount();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public long getDestroyedConnectionCount(
+   )
+   {
+      return m_lDestroyedConnectionCount.get();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public double getCreationTimeMean(
+   )
+   {
+      return m_creationTime.getMean();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public double getCreationTimeMaximum(
+   )
+   {
+      return m_creationTime.getMaximum();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public long getValidationCount(
+   )
+   {
+      return m_validationTime.getCount();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public long getValidationFailureCount(
+   )
+   {
+      return m_lValidationFailureCount.get();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public double getValidationTimeMean(
+   )
+   {
+      return m_validationTime.getMean();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public double getValidationTimeMaximum(
+   )
+   {
+      return m_validationTime.getMaximum();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public long getStatementCacheHitCount(
+   )
+   {
+      return m_lStatementCacheHitCount.get();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public long getStatementCacheMissCount(
+   )
+   {
+      return m_lStatementCacheMissCount.get();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public double getStatementCacheHitRatio(
+   )
+   {
+      long   lHitCount = m_lStatementCacheHitCount.get();
+      long   lTotal = lHitCount + m_lStatementCacheMissCount.get();
+      double dRatio = 0;
+
+      if (lTotal > 0)
+      {
+         dRatio = 100.0 * lHitCount / lTotal;
+      }
+
+      return dRatio;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public double getConnectionAgeMean(
+   )
+   {
+      int    iOpenCount = m_iOpenConnectionCount.get();
+      double dAge = 0;
+
+      if (iOpenCount > 0)
+      {
+         dAge = System.currentTimeMillis()
+                - ((double)m_lOpenConnectionTimestamps.get() / iOpenCount);
+      }
+
+      return dAge;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public double getConnectionLifetimeMean(
+   )
+   {
+      long   lDestroyedCount = m_lDestroyedConnectionCount.get();
+      double dLifetime = 0;
+
+      if (lDestroyedCount > 0)
+      {
+         dLifetime = (double)m_lConnectionLifetimes.get() / lDestroyedCount;
+      }
+
+      return dLifetime;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void reset(
+   )
+   {
+      // Do not reset the counts of currently open connections and pending
+      // requests and data needed to compute age of the open connections since
+      // they are not cumulative
+      m_lRequestCount.set(0);
+      m_lFailedRequestCount.set(0);
+      m_lTimeoutCount.set(0);
+      m_lExhaustedCount.set(0);
+      m_lRejectedCount.set(0);
+      m_lLeakedConnectionCount.set(0);
+      m_lReclaimedConnectionCount.set(0);
+      m_lDestroyedConnectionCount.set(0);
+      m_lValidationFailureCount.set(0);
+      m_lStatementCacheHitCount.set(0);
+      m_lStatementCacheMissCount.set(0);
+      m_lConnectionLifetimes.set(0);
+      m_waitTime.reset();
+      m_creationTime.reset();
+      m_validationTime.reset();
+   }
+
+   /**
+    * @return LatencyHistogram - histogram of times to get connection
+    */
+   public LatencyHistogram getWaitTime(
+   )
+   {
+      return m_waitTime;
+   }
+
+   /**
+    * Register these statistics with the platform MBean server so that they
+    * are accessible over JMX. The name of the statistics is unique so they
+    * never replace statistics registered by other connection factory.
+    */
+   public synchronized void register(
+   )
+   {
+      MBeanServer server;
+      ObjectName  name;
+
+      if (m_registeredName == null)
+      {
+         try
+         {
+            server = ManagementFactory.getPlatformMBeanServer();
+            name = getObjectName();
+            server.registerMBean(this, name);
+            m_registeredName = name;
+         }
+         catch (JMException | SecurityException exc)
+         {
+            // The statistics are still available programmatically
+            s_logger.log(Level.WARNING, "Cannot register statistics of data source "
+                         + m_strDataSourceName + " with JMX.", exc);
+         }
+      }
+   }
+
+   /**
+    * Unregister these statistics from the platform MBean server.
+    */
+   public synchronized void unregister(
+   )
+   {
+      MBeanServer server;
+
+      if (m_registeredName == null)
+      {
+         return;
+      }
+      try
+      {
+         server = ManagementFactory.getPlatformMBeanServer();
+         if (server.isRegistered(m_registeredName))
+         {
+            server.unregisterMBean(m_registeredName);
+         }
+         m_registeredName = null;
+      }
+      catch (JMException | SecurityException exc)
+      {
+         s_logger.log(Level.FINE, "Cannot unregister statistics of data source "
+                      + m_strDataSourceName + " from JMX.", exc);
+      }
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void toString(
+      StringBuilder sb,
+      int           ind
+   )
+   {
+      append(sb, ind + 0, "DatabaseConnectionStatistics[");
+      append(sb, ind + 1, "m_iStatisticsId = ", m_iStatisticsId);
+      append(sb, ind + 1, "m_registeredName = ", m_registeredName);
+      append(sb, ind + 1, "m_strDataSourceName = ", m_strDataSourceName);
+      append(sb, ind + 1, "m_iPendingRequestCount = ", m_iPendingRequestCount.get());
+      append(sb, ind + 1, "m_iOpenConnectionCount = ", m_iOpenConnectionCount.get());
+      append(sb, ind + 1, "m_lRequestCount = ", m_lRequestCount.get());
+      append(sb, ind + 1, "m_lFailedRequestCount = ", m_lFailedRequestCount.get());
+      append(sb, ind + 1, "m_lTimeoutCount = ", m_lTimeoutCount.get());
+      append(sb, ind + 1, "m_lExhaustedCount = ", m_lExhaustedCount.get());
+      append(sb, ind + 1, "m_lRejectedCount = ", m_lRejectedCount.get());
+      append(sb, ind + 1, "m_lLeakedConnectionCount = ", 
+             m_lLeakedConnectionCount.get());
+      append(sb, ind + 1, "m_lReclaimedConnectionCount = ", 
+             m_lReclaimedConnectionCount.get());
+      append(sb, ind + 1, "m_lStatementCacheHitCount = ", 
+             m_lStatementCacheHitCount.get());
+      append(sb, ind + 1, "m_lStatementCacheMissCount = ", 
+             m_lStatementCacheMissCount.get());
+      append(sb, ind + 1, "m_waitTime = ", m_waitTime);
+      append(sb, ind + 1, "m_creationTime = ", m_creationTime);
+      append(sb, ind + 1, "m_validationTime = ", m_validationTime);
+      append(sb, ind + 0, "]");
+   }
+
+   // Helper methods ///////////////////////////////////////////////////////////
+
+   /**
+    * @return ObjectName - name under which the statistics are registered with
+    *                      JMX
+    * @throws JMException - the name is not valid
+    */
+   protected ObjectName getObjectName(
+   ) throws JMException
+   {
+      return new ObjectName(JMX_NAME_PREFIX + ObjectName.quote(m_strDataSourceName)
+                            + ",id=" + m_iStatisticsId);
+   }
+}
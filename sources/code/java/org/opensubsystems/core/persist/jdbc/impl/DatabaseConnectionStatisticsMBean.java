@@ -0,0 +1,236 @@
+/*
+ * Copyright (C) 2003 - 2016 OpenSubsystems.com/net/org and its owners. All rights reserved.
+ * 
+ * This file is part of OpenSubsystems.
+ *
+ * OpenSubsystems is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+
+package org.opensubsystems.core.persist.jdbc.impl;
+
+/**
+ * Management interface exposing statistics of connections for a single data 
+ * source over JMX. All durations are in milliseconds.
+ * 
+ * @author bastafidli
+ */
+public interface DatabaseConnectionStatisticsMBean
+{
+   /**
+    * @return String - name of the data source
+    */
+   String getDataSourceName(
+   );
+
+   /**
+    * @return int - number of connections currently requested and not returned
+    */
+   int getActiveConnectionCount(
+   );
+
+   /**
+    * @return int - number of connections currently available in the pool
+    */
+   int getIdleConnectionCount(
+   );
+
+   /**
+    * @return int - number of requests currently waiting for connection
+    */
+   int getPendingRequestCount(
+   );
+
+   /**
+    * @return int - number of connections currently open by the pool
+    */
+   int getOpenConnectionCount(
+   );
+
+   /**
+    * @return long - total number of requests for connection
+    */
+   long getRequestCount(
+   );
+
+   /**
+    * @return long - number of requests for connection that have failed
+    */
+   long getFailedRequestCount(
+   );
+
+   /**
+    * @return long - number of requests which have failed since no connection 
+    *                became available within the wait period
+    */
+   long getTimeoutCount(
+   );
+
+   /**
+    * @return long - number of requests which found all connections in use and
+    *                had to wait or to grow the pool over its maximal size
+    */
+   long getExhaustedCount(
+   );
+
+   /**
+    * @return long - number of requests which were rejected without waiting 
+    *                since too many requests were already waiting for 
+    *                connection or their deadline has already passed
+    */
+   long getRejectedCount(
+   );
+
+   /**
+    * @return long - number of connections which were held longer than the leak
+    *                threshold
+    */
+   long getLeakedConnectionCount(
+   );
+
+   /**
+    * @return long - number of leaked connections which were forcibly returned
+    */
+   long getReclaimedConnectionCount(
+   );
+
+   /**
+    * @return double - average time to get connection 
+    */
+   double getWaitTimeMean(
+   );
+
+   /**
+    * @return double - median time to get connection
+    */
+   double getWaitTime50thPercentile(
+   );
+
+   /**
+    * @return double - 95th percentile of time to get connection
+    */
+   double getWaitTime95thPercentile(
+   );
+
+   /**
+    * @return double - 99th percentile of time to get connection
+    */
+   double getWaitTime99thPercentile(
+   );
+
+   /**
+    * @return double - longest time to get connection
+    */
+   double getWaitTimeMaximum(
+   );
+
+   /**
+    * @return long[] - histogram of times to get connection with buckets 
+    *                  defined by getHistogramBucketLimits
+    */
+   long[] getWaitTimeHistogram(
+   );
+
+   /**
+    * @return long[] - upper limits of the histogram buckets in microseconds
+    */
+   long[] getHistogramBucketLimits(
+   );
+
+   /**
+    * @return long - number of connections created by the pool
+    */
+   long getCreatedConnectionCount(
+   );
+
+   /**
+    * @return long - number of connections closed by the pool
+    */
+   long getDestroyedConnectionCount(
+   );
+
+   /**
+    * @return double - average time to create new connection
+    */
+   double getCreationTimeMean(
+   );
+
+   /**
+    * @return double - longest time to create new connection
+    */
+   double getCreationTimeMaximum(
+   );
+
+   /**
+    * @return long - number of connection validations
+    */
+   long getValidationCount(
+   );
+
+   /**
+    * @return long - number of connections which were found invalid
+    */
+   long getValidationFailureCount(
+   );
+
+   /**
+    * @return double - average time to validate connection
+    */
+   double getValidationTimeMean(
+   );
+
+   /**
+    * @return double - longest time to validate connection
+    */
+   double getValidationTimeMaximum(
+   );
+
+   /**
+    * @return long - number of prepared statements found in statement cache
+    */
+   long getStatementCacheHitCount(
+   );
+
+   /**
+    * @return long - number of prepared statements, which had to be prepared
+    *                since they were not found in statement cache
+    */
+   long getStatementCacheMissCount(
+   );
+
+   /**
+    * @return double - percentage of prepared statements found in statement 
+    *                  cache
+    */
+   double getStatementCacheHitRatio(
+   );
+
+   /**
+    * @return double - average age of connections currently open by the pool
+    */
+   double getConnectionAgeMean(
+   );
+
+   /**
+    * @return double - average time connections were open before the pool 
+    *                  closed them
+    */
+   double getConnectionLifetimeMean(
+   );
+
+   /**
+    * Forget all collected statistics except for the current counts.
+    */
+   void reset(
+   );
+}
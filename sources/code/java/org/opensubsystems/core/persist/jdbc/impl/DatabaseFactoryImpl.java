@@ -19,11 +19,18 @@
 
 package org.opensubsystems.core.persist.jdbc.impl;
 
+import java.util.Collection;
+
 import org.opensubsystems.core.data.DataDescriptor;
 import org.opensubsystems.core.data.DataDescriptorManager;
+import org.opensubsystems.core.data.ModifiableDataObject;
 import org.opensubsystems.core.error.OSSException;
+import org.opensubsystems.core.persist.ModifiableDataFactory;
 import org.opensubsystems.core.persist.jdbc.Database;
 import org.opensubsystems.core.persist.jdbc.DatabaseFactory;
+import org.opensubsystems.core.persist.jdbc.ModifiableDatabaseSchema;
+import org.opensubsystems.core.persist.jdbc.operation.DatabaseUpdateMultipleDataObjectsOperation;
+import org.opensubsystems.core.util.GlobalConstants;
 import org.opensubsystems.core.util.OSSObject;
 
 /**
@@ -117,4 +124,74 @@ public abstract class DatabaseFactoryImpl extends OSSObject
    {
       return m_dataDescriptor;
    }
+
+   /**
+    * Save collection of data objects. This is the implementation of method 
+    * ModifiableDataFactory.save(Collection) for all the factories derived from 
+    * this class, which saves the data objects one by one using method 
+    * ModifiableDataFactory.save(ModifiableDataObject). Factories, which can 
+    * update their data using single query, should override this method and 
+    * call saveMultiple to save the data in batches.
+    *
+    * @param colDataObject - collection of data objects that will be saved
+    * @return int - number of saved data items
+    * @throws OSSException - an error while saving data, e.g. when some of the
+    *                        data were meanwhile modified by somebody else
+    * @see ModifiableDataFactory#save(Collection)
+    */
+   public int save(
+      Collection<ModifiableDataObject> colDataObject
+   ) throws OSSException
+   {
+      if (GlobalConstants.ERROR_CHECKING)
+      {
+         assert this instanceof ModifiableDataFactory 
+                : "Only modifiable data factory can save data.";
+      }
+      
+      ModifiableDataFactory factory = (ModifiableDataFactory)this;
+      int                   iSavedCount = 0;
+      
+      for (ModifiableDataObject data : colDataObject)
+      {
+         factory.save(data);
+         iSavedCount++;
+      }
+      
+      return iSavedCount;
+   }
+   
+   // Helper methods ///////////////////////////////////////////////////////////
+
+   /**
+    * Save collection of data objects using JDBC batches. The data objects are
+    * checked if they were not meanwhile modified by somebody else and they are 
+    * updated with their new modification time.
+    * 
+    * @param strUpdateQuery - query to update single data object, which sets 
+    *                         the modification time to the current time and 
+    *                         updates the data only if they were not modified
+    * @param schema - schema to set the data to the statement
+    * @param colDataObject - collection of data objects that will be saved
+    * @return int - number of saved data items
+    * @throws OSSException - an error while saving data, e.g. when some of the
+    *                        data were meanwhile modified by somebody else
+    */
+   protected int saveMultiple(
+      String                           strUpdateQuery,
+      ModifiableDatabaseSchema         schema,
+      Collection<ModifiableDataObject> colDataObject
+   ) throws OSSException
+   {
+      if (!colDataObject.isEmpty())
+      {
+         DatabaseUpdateMultipleDataObjectsOperation<ModifiableDataObject> dbop;
+         
+         dbop = new DatabaseUpdateMultipleDataObjectsOperation<>(
+                       this, strUpdateQuery, schema, colDataObject, true);
+         dbop.executeUpdate();
+      }
+      
+      return colDataObject.size();
+   }
 }
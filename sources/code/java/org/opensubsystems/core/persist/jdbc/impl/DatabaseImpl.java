@@ -20,17 +20,26 @@
 package org.opensubsystems.core.persist.jdbc.impl;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Logger;
 import java.util.logging.Level;
 
+import org.opensubsystems.core.data.BasicDataObject;
+import org.opensubsystems.core.data.ModifiableDataObject;
+import org.opensubsystems.core.error.OSSDataCreateException;
+import org.opensubsystems.core.error.OSSDataSaveException;
 import org.opensubsystems.core.error.OSSDatabaseAccessException;
 import org.opensubsystems.core.error.OSSException;
+import org.opensubsystems.core.error.OSSInconsistentDataException;
 import org.opensubsystems.core.persist.jdbc.Database;
 import org.opensubsystems.core.persist.jdbc.DatabaseConnectionFactory;
 import org.opensubsystems.core.persist.jdbc.DatabaseSchema;
@@ -42,6 +51,7 @@ import org.opensubsystems.core.util.ClassFactory;
 import org.opensubsystems.core.util.GlobalConstants;
 import org.opensubsystems.core.util.Log;
 import org.opensubsystems.core.util.OSSObject;
+import org.opensubsystems.core.util.jdbc.DatabaseUtils;
 
 /**
  * Base class for all classes representing various database management systems.
@@ -78,7 +88,7 @@ public abstract class DatabaseImpl extends OSSObject
    /** 
     * Lock used in synchronization blocks. 
     */   
-   private static final String IMPL_LOCK = "IMPL_LOCK";
+   private static final Object IMPL_LOCK = new Object();
 
    // Cached values ////////////////////////////////////////////////////////////
 
@@ -90,7 +100,7 @@ public abstract class DatabaseImpl extends OSSObject
    /**
     * Reference to the default database.
     */
-   private static Database s_defaultInstance = null;
+   private static volatile Database s_defaultInstance = null;
    
    // Attributes ///////////////////////////////////////////////////////////////
    
@@ -168,6 +178,11 @@ public abstract class DatabaseImpl extends OSSObject
     */
    protected Integer m_iBatchSize;
    
+   /**
+    * Actual value for how many rows to fetch at once when streaming results
+    */
+   protected Integer m_iFetchSize;
+   
    /**
     * Actual value for flag specifying range support when selecting lists.
     */
@@ -258,6 +273,8 @@ public abstract class DatabaseImpl extends OSSObject
          DatabaseSetupReader.SELECT_LIST_RESULT_SET_CONCURRENCY);
       m_iBatchSize = setupReader.getIntegerParameterValue(
          DatabaseSetupReader.BATCH_SIZE);
+      m_iFetchSize = setupReader.getIntegerParameterValue(
+         DatabaseSetupReader.FETCH_SIZE);
       m_bRangeSupport = setupReader.getBooleanParameterValue(
          DatabaseSetupReader.RANGE_SUPPORT);
       m_bAbsolutePositioningSupport = setupReader.getBooleanParameterValue(
@@ -654,6 +671,15 @@ public abstract class DatabaseImpl extends OSSObject
       return m_iBatchSize.intValue();
    }
    
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public int getFetchSize()
+   {
+      return m_iFetchSize.intValue();
+   }
+   
    /**
     * {@inheritDoc}
     */
@@ -684,6 +710,232 @@ public abstract class DatabaseImpl extends OSSObject
       return m_bRangeSupport.booleanValue();
    }
 
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public boolean hasBatchGeneratedKeysSupport(
+   )
+   {
+      // Only databases, which are known to return the keys for all batched 
+      // inserts, should override this
+      return false;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void fetchGeneratedValues(
+      Connection                      dbConnection,
+      PreparedStatement               insertStatement,
+      String                          strTableName,
+      List<? extends BasicDataObject> lstData
+   ) throws SQLException,
+            OSSException
+   {
+      if (!lstData.isEmpty())
+      {
+         Map<Long, BasicDataObject> mpInsertedData = new HashMap<>(lstData.size());
+         boolean                    bModifiable;
+         ResultSet                  rsResults = null;
+         Statement                  selectStatement = null;
+         StringBuilder              sbQuery = new StringBuilder();
+         int                        iFetchedCount = 0;
+         
+         bModifiable = lstData.get(0) instanceof ModifiableDataObject;
+         try
+         {
+            // The keys are returned in the same order in which the data were
+            // added to the batch
+            try
+            {
+               rsResults = insertStatement.getGeneratedKeys();
+               for (BasicDataObject data : lstData)
+               {
+                  if (rsResults.next())
+                  {
+                     data.setId(rsResults.getLong(1));
+                     mpInsertedData.put(data.getIdAsObject(), data);
+                  }
+                  else
+                  {
+                     throw new OSSDataCreateException(
+                                  "Cannot read the generated ID from the database.");
+                  }
+               }
+            }
+            finally
+            {      
+               DatabaseUtils.close(rsResults);
+               rsResults = null;
+            }
+            
+            // Read the timestamps for all inserted data at once rather than 
+            // one by one
+            sbQuery.append("select ID, CREATION_DATE");
+            if (bModifiable)
+            {
+               sbQuery.append(", MODIFICATION_DATE");
+            }
+            sbQuery.append(" from ");
+            sbQuery.append(strTableName);
+            sbQuery.append(" where ID in (");
+            try
+            {
+               selectStatement = dbConnection.createStatement();
+               for (String strIds : getInListWithSafeLength(
+                                       mpInsertedData.keySet(), false))
+               {
+                  try
+                  {
+                     rsResults = selectStatement.executeQuery(sbQuery + strIds + ")");
+                     while (rsResults.next())
+                     {
+                        BasicDataObject data;
+                        
+                        data = mpInsertedData.get(rsResults.getLong(1));
+                        if (data != null)
+                        {
+                           data.setCreationTimestamp(rsResults.getTimestamp(2));
+                           if (bModifiable)
+                           {   
+                              ((ModifiableDataObject)data).setModificationTimestamp(
+                                                              rsResults.getTimestamp(3));
+                           }
+                           iFetchedCount++;
+                        }
+                     }
+                  }
+                  finally
+                  {      
+                     DatabaseUtils.close(rsResults);
+                     rsResults = null;
+                  }
+               }
+            }
+            finally
+            {
+               DatabaseUtils.close(selectStatement);
+            }
+            if (iFetchedCount != lstData.size())
+            {
+               throw new OSSDataCreateException(
+                            "Cannot read the generated creation and modification " +
+                            "time from the database.");
+            }
+         }
+         catch (SQLException eExc)
+         {
+            throw new OSSDataCreateException(
+                        "Cannot read the generated creation and modification time" +
+                        " from the database.", eExc);
+         }
+      }
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void checkAndFetchUpdatedValues(
+      String                               strDataName,
+      Connection                           dbConnection,
+      int[]                                arrUpdateCounts,
+      String                               strTableName,
+      List<? extends ModifiableDataObject> lstData
+   ) throws SQLException,
+            OSSException
+   {
+      if (GlobalConstants.ERROR_CHECKING)
+      {
+         assert arrUpdateCounts.length == lstData.size()
+                : "Number of update counts doesn't match number of data objects.";
+      }
+      
+      if (!lstData.isEmpty())
+      {
+         Map<Long, ModifiableDataObject> mpUpdatedData = new HashMap<>(lstData.size());
+         ModifiableDataObject            data;
+         ResultSet                       rsResults = null;
+         Statement                       selectStatement = null;
+         StringBuilder                   sbQuery = new StringBuilder();
+         int                             iFetchedCount = 0;
+         
+         for (int iIndex = 0; iIndex < arrUpdateCounts.length; iIndex++)
+         {
+            data = lstData.get(iIndex);
+            if (arrUpdateCounts[iIndex] == 0)
+            {
+               // Nothing was updated so find out why and report it the same
+               // way as if the data were updated one by one
+               m_vdsSchema.checkUpdateError(dbConnection, strDataName, 
+                                            strTableName, data.getId(), 
+                                            data.getModificationTimestamp());
+            }
+            else if (arrUpdateCounts[iIndex] > 1)
+            {
+               throw new OSSInconsistentDataException(
+                            "Inconsistent database contains multiple ("
+                            + arrUpdateCounts[iIndex] + ") records with the same ID"
+                            + " and modified at the same time");
+            }
+            mpUpdatedData.put(data.getIdAsObject(), data);
+         }
+         
+         // Read the timestamps for all updated data at once rather than one 
+         // by one
+         sbQuery.append("select ID, MODIFICATION_DATE from ");
+         sbQuery.append(strTableName);
+         sbQuery.append(" where ID in (");
+         try
+         {
+            try
+            {
+               selectStatement = dbConnection.createStatement();
+               for (String strIds : getInListWithSafeLength(
+                                       mpUpdatedData.keySet(), false))
+               {
+                  try
+                  {
+                     rsResults = selectStatement.executeQuery(sbQuery + strIds + ")");
+                     while (rsResults.next())
+                     {
+                        data = mpUpdatedData.get(rsResults.getLong(1));
+                        if (data != null)
+                        {
+                           data.setModificationTimestamp(rsResults.getTimestamp(2));
+                           iFetchedCount++;
+                        }
+                     }
+                  }
+                  finally
+                  {      
+                     DatabaseUtils.close(rsResults);
+                     rsResults = null;
+                  }
+               }
+            }
+            finally
+            {
+               DatabaseUtils.close(selectStatement);
+            }
+            if (iFetchedCount != mpUpdatedData.size())
+            {
+               throw new OSSDataSaveException(
+                            "Cannot read the generated modification time from" +
+                            " the database.");
+            }
+         }
+         catch (SQLException eExc)
+         {
+            throw new OSSDataSaveException(
+                        "Cannot read the generated modification time from the" +
+                        " database.", eExc);
+         }
+      }
+   }
+
    /**
     * {@inheritDoc}
     */
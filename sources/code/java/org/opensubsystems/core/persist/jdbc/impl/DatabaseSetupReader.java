@@ -107,6 +107,13 @@ public class DatabaseSetupReader extends SetupReader
     */   
    public static final String BATCH_SIZE = "batchsize";
 
+   /** 
+    * Setting specifying how many rows should be fetched from the database at 
+    * once when the results of a query are streamed rather than loaded all at 
+    * once.
+    */   
+   public static final String FETCH_SIZE = "fetchsize";
+
    // Constants ////////////////////////////////////////////////////////////////
    
    /**
@@ -115,6 +122,12 @@ public class DatabaseSetupReader extends SetupReader
     */
    public static final int BATCH_SIZE_DEFAULT = 500;
    
+   /**
+    * Default value specifying how many rows should be fetched from the 
+    * database at once when the results of a query are streamed.
+    */
+   public static final int FETCH_SIZE_DEFAULT = 100;
+   
    // Attributes ///////////////////////////////////////////////////////////////
    
    // Configuration default values
@@ -279,6 +292,12 @@ public class DatabaseSetupReader extends SetupReader
                            Integer.toString(BATCH_SIZE_DEFAULT),
                            "How many database operations to batch together");
 
+         registerParameter(FETCH_SIZE, 
+                           SetupReader.PARAMETER_TYPE_INTEGER_OBJ,
+                           Integer.toString(FETCH_SIZE_DEFAULT),
+                           "How many rows to fetch at once when streaming results"
+                           + " of a query");
+
       }
    }
 }
@@ -31,8 +31,8 @@ import org.opensubsystems.core.error.OSSException;
 import org.opensubsystems.core.persist.jdbc.DatabaseTransactionFactory;
 import org.opensubsystems.core.persist.jdbc.transaction.impl.SimpleLocalTransactionFactoryImpl;
 import org.opensubsystems.core.persist.jdbc.transaction.j2ee.J2EETransactionFactoryImpl;
+import org.opensubsystems.core.util.CachedSettings;
 import org.opensubsystems.core.util.ClassFactory;
-import org.opensubsystems.core.util.Config;
 import org.opensubsystems.core.util.GlobalConstants;
 import org.opensubsystems.core.util.Log;
 import org.opensubsystems.core.util.OSSObject;
@@ -71,7 +71,7 @@ public abstract class DatabaseTransactionFactoryImpl extends OSSObject
    /**
     * Lock used in synchronized sections.
     */
-   private static final String IMPL_LOCK = "IMPL_LOCK";
+   private static final Object IMPL_LOCK = new Object();
 
    /**
     * Default transaction timeout. Keep it longer so that if during debugging
@@ -96,7 +96,46 @@ public abstract class DatabaseTransactionFactoryImpl extends OSSObject
    /**
     * Reference to default instance.
     */
-   private static DatabaseTransactionFactory s_defaultInstance = null;
+   private static volatile DatabaseTransactionFactory s_defaultInstance = null;
+
+   /**
+    * Transaction timeout read from the configuration currently in effect.
+    */
+   private static final CachedSettings<Integer> s_transactionTimeout 
+      = new CachedSettings<Integer>()
+   {
+      @Override
+      protected Integer readSettings(
+         Properties prpSettings
+      )
+      {
+         return PropertyUtils.getIntPropertyInRange(
+                   prpSettings, TRANSACTION_TIMEOUT, 
+                   TRANSACTION_TIMEOUT_DEFAULT, 
+                   "Default transaction timout", 
+                   0, // 0 is allowed 
+                   Integer.MAX_VALUE);
+      }
+   };
+
+   /**
+    * Transaction monitor setting read from the configuration currently in 
+    * effect.
+    */
+   private static final CachedSettings<Boolean> s_transactionMonitor 
+      = new CachedSettings<Boolean>()
+   {
+      @Override
+      protected Boolean readSettings(
+         Properties prpSettings
+      )
+      {
+         return PropertyUtils.getBooleanProperty(
+                   prpSettings, TRANSACTION_MONITOR,
+                   TRANSACTION_MONITOR_DEFAULT,
+                   "Print transactions monitoring messages");
+      }
+   };
 
    // Factory methods //////////////////////////////////////////////////////////
 
@@ -323,21 +362,11 @@ public abstract class DatabaseTransactionFactoryImpl extends OSSObject
    public int getTransactionTimeout(
    )
    {
-      // Read it here instead of in static block or constructor since if this 
-      // code is executed in different execution context, it might have 
-      // different configuration settings.
-      Properties prpSettings;
-      int        iTransactionTimeout;
-
-      prpSettings = Config.getInstance().getProperties();
-      iTransactionTimeout = PropertyUtils.getIntPropertyInRange(
-                                 prpSettings, TRANSACTION_TIMEOUT, 
-                                 TRANSACTION_TIMEOUT_DEFAULT, 
-                                 "Default transaction timout", 
-                                 0, // 0 is allowed 
-                                 Integer.MAX_VALUE);
-      
-      return iTransactionTimeout;
+      // Do not read it in static block or constructor since if this code is 
+      // executed in different execution context, it might have different 
+      // configuration settings. The cached settings are read again whenever 
+      // the configuration in effect changes.
+      return s_transactionTimeout.getSettings().intValue();
    }
    
    /**
@@ -351,20 +380,11 @@ public abstract class DatabaseTransactionFactoryImpl extends OSSObject
     */
    public boolean isTransactionMonitored()
    {
-      // Read it here instead of in static block or constructor since if this 
-      // code is executed in different execution context, it might have 
-      // different configuration settings.
-      Properties prpSettings;
-      boolean    bTransactionMonitor;
-
-      prpSettings = Config.getInstance().getProperties();
-      bTransactionMonitor = PropertyUtils.getBooleanProperty(
-                               prpSettings, TRANSACTION_MONITOR,
-                               TRANSACTION_MONITOR_DEFAULT,
-                               "Print transactions monitoring messages"
-                            );
-      
-      return bTransactionMonitor;
+      // Do not read it in static block or constructor since if this code is 
+      // executed in different execution context, it might have different 
+      // configuration settings. The cached settings are read again whenever 
+      // the configuration in effect changes.
+      return s_transactionMonitor.getSettings().booleanValue();
    }
 
    // Helper methods ///////////////////////////////////////////////////////////
@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2003 - 2016 OpenSubsystems.com/net/org and its owners. All rights reserved.
+ * 
+ * This file is part of OpenSubsystems.
+ *
+ * OpenSubsystems is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+
+package org.opensubsystems.core.persist.jdbc.operation;
+
+import org.opensubsystems.core.data.DataObject;
+import org.opensubsystems.core.error.OSSException;
+
+/**
+ * Callback receiving data objects one by one as they are loaded from the 
+ * database so that results of a query can be processed without keeping all of 
+ * them in memory at once.
+ * 
+ * @see DatabaseReadStreamOperation
+ * @author bastafidli
+ */
+public interface DataObjectHandler
+{
+   /**
+    * Process single data object loaded from the database. 
+    * 
+    * @param data - data object loaded from the current row of the result set
+    * @return boolean - true if the next data object should be loaded, false if 
+    *                   the processing should stop and the remaining results 
+    *                   should be ignored
+    * @throws OSSException - an error has occurred and the processing will stop
+    */
+   boolean handle(
+      DataObject data
+   ) throws OSSException;
+}
@@ -22,8 +22,11 @@ package org.opensubsystems.core.persist.jdbc.operation;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 
 import org.opensubsystems.core.data.BasicDataObject;
 import org.opensubsystems.core.error.OSSException;
@@ -93,6 +96,32 @@ public class DatabaseCreateMultipleDataObjectsOperation<T> extends DatabaseUpdat
 
    // Helper methods ///////////////////////////////////////////////////////////
    
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   protected PreparedStatement prepareStatement(
+      Connection cntConnection
+   ) throws OSSException,
+            SQLException
+   {
+      PreparedStatement pstmQuery;
+      
+      if ((m_bFetchGeneratedValues) && (isBatchFetchingGeneratedValues()))
+      {
+         // The generated values will be fetched for the whole batch at once
+         // and to do that the database has to return the generated keys
+         pstmQuery = cntConnection.prepareStatement(m_strQuery, 
+                                                    Statement.RETURN_GENERATED_KEYS);
+      }
+      else
+      {
+         pstmQuery = super.prepareStatement(cntConnection);
+      }
+      
+      return pstmQuery;
+   }
+   
    /**
     * {@inheritDoc}
     */
@@ -143,6 +172,36 @@ public class DatabaseCreateMultipleDataObjectsOperation<T> extends DatabaseUpdat
          // so we do not have to create extra object
          setReturnData(new Integer(iTotalInsertedReturn));
       }
+      else if (isBatchFetchingGeneratedValues())
+      {
+         List<BasicDataObject> lstBatch = new ArrayList<>(iBatchSize);
+         String                strTableName;
+         
+         strTableName = getTableName();
+         size =  ((Collection<T>)m_data).size();
+         for (items = ((Collection<T>)m_data).iterator(); items.hasNext();)
+         {
+            data = (BasicDataObject)items.next();
+            // prepare data if necessary (update object values)
+            prepareData(data);
+            // set values for prepared statement
+            setValuesForInsert(pstmQuery, data, 1);
+            pstmQuery.addBatch();
+            lstBatch.add(data);
+            iBatchedCount++;
+   
+            // test if there is time to execute batch
+            if (((iBatchedCount % iBatchSize) == 0) 
+               || (iBatchedCount == size))
+            {
+               pstmQuery.executeBatch();
+               database.fetchGeneratedValues(cntConnection, pstmQuery, 
+                                             strTableName, lstBatch);
+               lstBatch.clear();
+            }
+         }
+         setReturnData(m_data);
+      }
       else
       {
          for (items = ((Collection<T>)m_data).iterator(); items.hasNext();)
@@ -155,12 +214,39 @@ public class DatabaseCreateMultipleDataObjectsOperation<T> extends DatabaseUpdat
                                                           pstmQuery, data, 1);
             database.insertAndFetchGeneratedValues(
                cntConnection, pstmQuery, 
-               m_dbschema.isInDomain(), 
-               ((ModifiableDatabaseSchema)m_dbschema).getModifiableTableNames().get(
-                  m_factory.getDataDescriptor().getDataTypeAsObject()).toString(), 
-               iIndex, data);
+               m_dbschema.isInDomain(), getTableName(), iIndex, data);
          }
          setReturnData(m_data);
       }      
    }
+   
+   /**
+    * Check if the generated values can be fetched for all data objects 
+    * inserted by single batch rather than inserting and fetching them one by
+    * one.
+    * 
+    * @return boolean - true if the data can be inserted using batch even if 
+    *                   the generated values have to be fetched
+    * @throws OSSException - an error has occurred
+    */
+   protected boolean isBatchFetchingGeneratedValues(
+   ) throws OSSException
+   {
+      Database database = m_factory.getDatabase();
+      
+      // Stored procedures return the generated values as their result and 
+      // such statements cannot be batched
+      return ((database.hasBatchGeneratedKeysSupport())
+             && (!database.isCallableStatement(m_strQuery)));
+   }
+   
+   /**
+    * @return String - name of the table where the data are inserted
+    */
+   protected String getTableName(
+   )
+   {
+      return ((ModifiableDatabaseSchema)m_dbschema).getModifiableTableNames().get(
+                m_factory.getDataDescriptor().getDataTypeAsObject()).toString();
+   }
 }
@@ -517,6 +517,52 @@ public abstract class DatabaseOperation extends OSSObject
       return lstData;
    }
 
+   /**
+    * Execute statement and pass the data objects loaded from the result set 
+    * one by one to the specified handler without collecting them in memory. 
+    * The prepared statement should be constructed as forward only and read 
+    * only with fetch size set so that the database driver can retrieve the 
+    * data in chunks, see DatabaseReadStreamOperation.
+    * 
+    * Note: Since the caller constructed the prepared statement, it is responsible
+    * for closing it.
+    * 
+    * @param factory - factory used to load data
+    * @param pstmQuery - query to execute
+    * @param handler - handler to process the loaded data objects
+    * @return int - number of data objects passed to the handler
+    * @throws SQLException - an error has occurred
+    * @throws OSSException - an error has occurred
+    */
+   protected int loadMultipleData(
+      DatabaseFactory   factory,
+      PreparedStatement pstmQuery,
+      DataObjectHandler handler
+   ) throws SQLException,
+            OSSException
+   {
+      ResultSet rsQueryResults = null;
+      int       iCount = 0;
+      
+      try
+      {
+         boolean bContinue = true;
+         
+         rsQueryResults = pstmQuery.executeQuery();
+         while ((bContinue) && (rsQueryResults.next()))
+         {
+            bContinue = handler.handle(factory.load(rsQueryResults, 1));
+            iCount++;
+         }
+      }
+      finally
+      {
+         DatabaseUtils.close(rsQueryResults);
+      }
+       
+      return iCount;
+   }
+
    /**
     * Execute statement and load multiple data objects from the result set. If 
     * there are no items null will be returned. The prepared statement should be
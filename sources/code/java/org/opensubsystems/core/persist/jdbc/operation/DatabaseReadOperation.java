@@ -123,10 +123,10 @@ public abstract class DatabaseReadOperation extends    DatabaseOperation
       
       try
       {
-         // Request autocommit true since we are just reading data from the 
-         // database
+         // Request connection for reading since we are just reading data from 
+         // the database so it can be read from a replica if there is any
          cntConnection = DatabaseConnectionFactoryImpl.getInstance()
-                            .requestConnection(true);
+                            .requestReadConnection();
          // Prepare the query if any query was specified
          pstmQuery = prepareQuery(m_factory, cntConnection, m_strQuery);
          // Execute the read hopefully defined in the derived class
@@ -160,7 +160,7 @@ public abstract class DatabaseReadOperation extends    DatabaseOperation
       }      
       finally
       {
-         DatabaseUtils.close(pstmQuery);
+         releaseQuery(m_factory, cntConnection, pstmQuery);
          DatabaseConnectionFactoryImpl.getInstance().returnConnection(
                                                         cntConnection);
       }  
@@ -202,6 +202,24 @@ public abstract class DatabaseReadOperation extends    DatabaseOperation
       return pstmQuery;
    }
    
+   /**
+    * Release the query prepared by prepareQuery before the connection is 
+    * returned. By default the statement is just closed.
+    * 
+    * @param dbfactory - database factory executing this operation
+    * @param cntConnection - connection used to perform the database operation, 
+    *                        might be null if it couldn't be acquired
+    * @param pstmQuery - statement returned by prepareQuery, might be null
+    */
+   protected void releaseQuery(
+      DatabaseFactory   dbfactory,
+      Connection        cntConnection,
+      PreparedStatement pstmQuery
+   )
+   {
+      DatabaseUtils.close(pstmQuery);
+   }
+   
    /**
     * Define content of this method to perform the database operation using the 
     * provided connection and optional prepared statement.
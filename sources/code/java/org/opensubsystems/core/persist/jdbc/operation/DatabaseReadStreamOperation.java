@@ -0,0 +1,250 @@
+/*
+ * Copyright (C) 2003 - 2016 OpenSubsystems.com/net/org and its owners. All rights reserved.
+ * 
+ * This file is part of OpenSubsystems.
+ *
+ * OpenSubsystems is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+
+package org.opensubsystems.core.persist.jdbc.operation;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.opensubsystems.core.error.OSSException;
+import org.opensubsystems.core.persist.jdbc.DatabaseFactory;
+import org.opensubsystems.core.persist.jdbc.DatabaseSchema;
+import org.opensubsystems.core.util.Log;
+import org.opensubsystems.core.util.jdbc.DatabaseUtils;
+
+/**
+ * Adapter to simplify writing of database reads which stream large number of 
+ * items to the caller rather than loading all of them in memory at once, 
+ * which takes care of requesting and returning connections, transaction 
+ * management, query preparation and exception handling. To use this adapter 
+ * you just need to define anonymous class and override method performOperation 
+ * to provide the actual database read. Optionally you may want to override one 
+ * of the handleXXX methods to provide custom error handling. 
+ * 
+ * The query is prepared as forward only and read only with the fetch size set 
+ * so that the database driver needs to keep in memory only the rows fetched 
+ * at once rather than the whole result set. The connection is returned once 
+ * all the data were passed to the handler or the handler decided to stop.
+ * 
+ * Some database drivers, e.g. PostgreSQL, use the fetch size only when the 
+ * query is executed within a transaction. If the connection is in autocommit
+ * mode, the autocommit is therefore disabled while the results are read and 
+ * restored before the connection is returned. Other drivers, e.g. MySQL, 
+ * require special fetch size or connection settings to stream the results, 
+ * which can be configured using oss.database.[dbms identifier].fetchsize 
+ * setting.
+ *
+ * Example of method in factory which exports data using query produced by its 
+ * schema 
+ *
+ * public int export(
+ *    final long              lDomainId,
+ *    final DataObjectHandler handler
+ * ) throws OSSException
+ * {
+ *    DatabaseReadOperation dbop = new DatabaseReadStreamOperation(
+ *       this, m_schema.getSelectAllMyData(MyDatabaseSchema.MYDATA_COLUMNS), 
+ *       m_schema)
+ *    {
+ *       protected Object performOperation(
+ *          DatabaseFactory   dbfactory,
+ *          Connection        cntConnection,
+ *          PreparedStatement pstmQuery
+ *       ) throws OSSException,
+ *                SQLException
+ *       {
+ *          pstmQuery.setLong(1, lDomainId);
+ *          return new Integer(loadMultipleData(dbfactory, pstmQuery, handler));
+ *       }         
+ *    };
+ *    
+ *    return ((Integer)dbop.executeRead()).intValue();
+ * }
+ *
+ * @author bastafidli
+ */
+public abstract class DatabaseReadStreamOperation extends DatabaseReadOperation 
+{
+   // Attributes ///////////////////////////////////////////////////////////////
+   
+   /**
+    * How many rows to fetch from the database at once. If 0 then the default
+    * fetch size configured for the database will be used.
+    */
+   protected int m_iFetchSize;
+   
+   /**
+    * Fetch size of the prepared statement before it was changed so that it 
+    * can be restored once the results were read.
+    */
+   protected int m_iOriginalFetchSize;
+   
+   /**
+    * Flag signaling that the autocommit of the connection was disabled to read 
+    * the results and it has to be enabled again once the results were read.
+    */
+   protected boolean m_bAutoCommitDisabled;
+   
+   // Cached values ////////////////////////////////////////////////////////////
+
+   /**
+    * Logger for this class
+    */
+   private static Logger s_logger = Log.getInstance(DatabaseReadStreamOperation.class);
+   
+   // Constructors /////////////////////////////////////////////////////////////
+   
+   /**
+    * Constructor to use when the results should be fetched using the default
+    * fetch size configured for the database.
+    * 
+    * @param factory - factory which is executing this operation
+    * @param strQueryToPrepare - query which should be used to construct 
+    *                            prepared statement which will be passed in to 
+    *                            performOperation
+    * @param schema - database schema used with this operation
+    */
+   public DatabaseReadStreamOperation(
+      DatabaseFactory factory,
+      String          strQueryToPrepare,
+      DatabaseSchema  schema
+   )
+   {
+      this(factory, strQueryToPrepare, schema, 0);
+   }   
+
+   /**
+    * Full constructor.
+    * 
+    * @param factory - factory which is executing this operation
+    * @param strQueryToPrepare - query which should be used to construct 
+    *                            prepared statement which will be passed in to 
+    *                            performOperation
+    * @param schema - database schema used with this operation
+    * @param iFetchSize - how many rows to fetch from the database at once, 
+    *                     if 0 the default fetch size configured for the 
+    *                     database will be used
+    */
+   public DatabaseReadStreamOperation(
+      DatabaseFactory factory,
+      String          strQueryToPrepare,
+      DatabaseSchema  schema,
+      int             iFetchSize
+   )
+   {
+      super(factory, strQueryToPrepare, schema);
+      
+      m_iFetchSize = iFetchSize;
+      m_iOriginalFetchSize = 0;
+      m_bAutoCommitDisabled = false;
+   }   
+
+   // Helper methods ///////////////////////////////////////////////////////////
+   
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   protected PreparedStatement prepareQuery(
+      DatabaseFactory dbfactory,
+      Connection      cntConnection,
+      String          strQuery
+   ) throws OSSException,
+            SQLException
+   {
+      // The results are read only once from the first to the last row so 
+      // there is no need for scrollable result set, which may force the 
+      // driver to load all the rows in memory
+      PreparedStatement pstmQuery = null;
+      
+      if ((strQuery != null) && (strQuery.length() > 0))
+      {
+         int iFetchSize = m_iFetchSize;
+         
+         if (iFetchSize == 0)
+         {
+            iFetchSize = dbfactory.getDatabase().getFetchSize();
+         }
+         
+         if (cntConnection.getAutoCommit())
+         {
+            // The connection is not part of any transaction so start one just
+            // for this read since otherwise some drivers ignore the fetch size
+            cntConnection.setAutoCommit(false);
+            m_bAutoCommitDisabled = true;
+         }
+         pstmQuery = cntConnection.prepareStatement(strQuery, 
+                        ResultSet.TYPE_FORWARD_ONLY, 
+                        ResultSet.CONCUR_READ_ONLY);
+         m_iOriginalFetchSize = pstmQuery.getFetchSize();
+         pstmQuery.setFetchSize(iFetchSize);
+      }
+      
+      return pstmQuery;
+   }
+   
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   protected void releaseQuery(
+      DatabaseFactory   dbfactory,
+      Connection        cntConnection,
+      PreparedStatement pstmQuery
+   )
+   {
+      try
+      {
+         if (pstmQuery != null)
+         {
+            pstmQuery.setFetchSize(m_iOriginalFetchSize);
+         }
+      }
+      catch (SQLException sqleExc)
+      {
+         s_logger.log(Level.WARNING, "Failed to restore fetch size of the"
+                      + " statement.", sqleExc);
+      }
+      finally
+      {
+         DatabaseUtils.close(pstmQuery);
+      }
+      
+      if (m_bAutoCommitDisabled)
+      {
+         m_bAutoCommitDisabled = false;
+         try
+         {
+            // The transaction was started only to read the data so there is
+            // nothing to commit and it just needs to be finished
+            cntConnection.rollback();
+            cntConnection.setAutoCommit(true);
+         }
+         catch (SQLException sqleExc)
+         {
+            s_logger.log(Level.WARNING, "Failed to restore autocommit of the"
+                         + " connection.", sqleExc);
+         }
+      }
+   }
+}
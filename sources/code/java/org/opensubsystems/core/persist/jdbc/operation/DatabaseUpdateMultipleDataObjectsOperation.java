@@ -22,10 +22,13 @@ package org.opensubsystems.core.persist.jdbc.operation;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 
 import org.opensubsystems.core.data.DataObject;
+import org.opensubsystems.core.data.ModifiableDataObject;
 import org.opensubsystems.core.error.OSSException;
 import org.opensubsystems.core.persist.jdbc.Database;
 import org.opensubsystems.core.persist.jdbc.DatabaseFactory;
@@ -58,6 +61,13 @@ import org.opensubsystems.core.persist.jdbc.ModifiableDatabaseSchema;
  */
 public class DatabaseUpdateMultipleDataObjectsOperation<T> extends DatabaseUpdateOperation
 {
+   // Attributes ///////////////////////////////////////////////////////////////
+
+   /**
+    * Flag signaling if there will be fetched generated values.
+    */
+   private boolean m_bFetchGeneratedValues;
+
    // Constructors /////////////////////////////////////////////////////////////
    
    /**
@@ -74,9 +84,37 @@ public class DatabaseUpdateMultipleDataObjectsOperation<T> extends DatabaseUpdat
       ModifiableDatabaseSchema schema,
       Collection<T>            colDataObject
    ) 
+   {
+      this(factory, query, schema, colDataObject, false);
+   }
+
+   /**
+    * Constructor
+    * 
+    * @param factory - factory which is executing this operation
+    * @param query - query to update data
+    * @param schema - schema to set the data to the statement
+    * @param colDataObject - collection of data objects that will be updated
+    * @param bFetchGeneratedValues - flag signaling if there have to be returned 
+    *                                generated values
+    *                                true = the updated data objects will be 
+    *                                checked for concurrent modifications and 
+    *                                returned with the generated values
+    *                                false = will be returned number of updated 
+    *                                records
+    */
+   public DatabaseUpdateMultipleDataObjectsOperation(
+      DatabaseFactory          factory,
+      String                   query,
+      ModifiableDatabaseSchema schema,
+      Collection<T>            colDataObject,
+      boolean                  bFetchGeneratedValues
+   ) 
    {
       super(factory, query, schema, DatabaseUpdateOperation.DBOP_UPDATE, 
             colDataObject);
+      
+      m_bFetchGeneratedValues = bFetchGeneratedValues;
    }
 
    // Helper methods ///////////////////////////////////////////////////////////
@@ -105,27 +143,111 @@ public class DatabaseUpdateMultipleDataObjectsOperation<T> extends DatabaseUpdat
       database = dbfactory.getDatabase();
       iBatchSize = database.getBatchSize();
       
-      size =  ((Collection<T>)m_data).size();
-      for (items = ((Collection<T>)m_data).iterator(); items.hasNext();)
+      if (!m_bFetchGeneratedValues)
       {
-         data = (DataObject)items.next();
-         // prepare data if necessary (update object values)
-         prepareData(data);
-         // set values for prepared statement
-         setValuesForUpdate(pstmQuery, data, 1);
-         pstmQuery.addBatch();
-         iBatchedCount++;
-
-         // test if there is time to execute batch
-         if (((iBatchedCount % iBatchSize) == 0) 
-            || (iBatchedCount == size))
+         size =  ((Collection<T>)m_data).size();
+         for (items = ((Collection<T>)m_data).iterator(); items.hasNext();)
          {
-            arrUpdatedReturn = pstmQuery.executeBatch();
-            iTotalUpdatedReturn += arrUpdatedReturn.length; 
+            data = (DataObject)items.next();
+            // prepare data if necessary (update object values)
+            prepareData(data);
+            // set values for prepared statement
+            setValuesForUpdate(pstmQuery, data, 1);
+            pstmQuery.addBatch();
+            iBatchedCount++;
+   
+            // test if there is time to execute batch
+            if (((iBatchedCount % iBatchSize) == 0) 
+               || (iBatchedCount == size))
+            {
+               arrUpdatedReturn = pstmQuery.executeBatch();
+               iTotalUpdatedReturn += arrUpdatedReturn.length; 
+            }
+         }
+         // TODO: Performance: Consider defining setReturnData(int)
+         // so we do not have to create extra object
+         setReturnData(new Integer(iTotalUpdatedReturn));
+      }
+      else if (isBatchFetchingGeneratedValues())
+      {
+         List<ModifiableDataObject> lstBatch = new ArrayList<>(iBatchSize);
+         String                     strDataName;
+         String                     strTableName;
+         
+         strDataName = m_factory.getDataDescriptor().getDisplayableViewName();
+         strTableName = getTableName();
+         size =  ((Collection<T>)m_data).size();
+         for (items = ((Collection<T>)m_data).iterator(); items.hasNext();)
+         {
+            data = (DataObject)items.next();
+            // prepare data if necessary (update object values)
+            prepareData(data);
+            // set values for prepared statement
+            setValuesForUpdate(pstmQuery, data, 1);
+            pstmQuery.addBatch();
+            lstBatch.add((ModifiableDataObject)data);
+            iBatchedCount++;
+   
+            // test if there is time to execute batch
+            if (((iBatchedCount % iBatchSize) == 0) 
+               || (iBatchedCount == size))
+            {
+               arrUpdatedReturn = pstmQuery.executeBatch();
+               database.checkAndFetchUpdatedValues(strDataName, cntConnection, 
+                                                   arrUpdatedReturn, 
+                                                   strTableName, lstBatch);
+               lstBatch.clear();
+            }
          }
+         setReturnData(m_data);
       }
-      // TODO: Performance: Consider defining setReturnData(int)
-      // so we do not have to create extra object
-      setReturnData(new Integer(iTotalUpdatedReturn));
+      else
+      {
+         String strDataName;
+         String strTableName;
+         int    iIndex;
+         
+         strDataName = m_factory.getDataDescriptor().getDisplayableViewName();
+         strTableName = getTableName();
+         for (items = ((Collection<T>)m_data).iterator(); items.hasNext();)
+         {
+            data = (DataObject)items.next();
+            // prepare data if necessary (update object values)
+            prepareData(data);
+            pstmQuery.clearParameters();
+            iIndex = setValuesForUpdate(pstmQuery, data, 1);
+            database.updatedAndFetchGeneratedValues(
+               strDataName, cntConnection, pstmQuery, m_dbschema.isInDomain(), 
+               strTableName, iIndex, (ModifiableDataObject)data);
+         }
+         setReturnData(m_data);
+      }
+   }
+   
+   /**
+    * Check if the data objects can be updated using single batch and their 
+    * generated values fetched for the whole batch rather than updating and 
+    * fetching them one by one.
+    * 
+    * @return boolean - true if the data can be updated using batch even if 
+    *                   the generated values have to be fetched
+    * @throws OSSException - an error has occurred
+    */
+   protected boolean isBatchFetchingGeneratedValues(
+   ) throws OSSException
+   {
+      // Stored procedures return the generated values as their result and 
+      // such statements cannot be batched
+      return !m_factory.getDatabase().isCallableStatement(m_strQuery);
+   }
+   
+   /**
+    * @return String - name of the table where the data are updated
+    */
+   protected String getTableName(
+   )
+   {
+      return ((ModifiableDatabaseSchema)m_dbschema).getModifiableTableNames().get(
+                m_factory.getDataDescriptor().getDataTypeAsObject()).toString();
    }
 }
@@ -193,16 +193,7 @@ public abstract class DatabaseUpdateOperation extends    DatabaseOperation
                             .requestConnection(false);
          if ((m_strQuery != null) && (m_strQuery.length() > 0))
          {
-            // Based on type of query we either execute just a normal query
-            // or invoke a stored procedure
-            if (m_factory.getDatabase().isCallableStatement(m_strQuery))
-            {
-               pstmQuery = cntConnection.prepareCall(m_strQuery);
-            }
-            else
-            {
-               pstmQuery = cntConnection.prepareStatement(m_strQuery);
-            }
+            pstmQuery = prepareStatement(cntConnection);
          }
 
          // Execute the update hopefully defined in the derived class
@@ -269,6 +260,38 @@ public abstract class DatabaseUpdateOperation extends    DatabaseOperation
 
    // Helper methods ///////////////////////////////////////////////////////////
    
+   /**
+    * Prepare statement for the query passed in as a parameter to the 
+    * constructor.
+    * 
+    * @param cntConnection - connection to use to prepare the statement
+    * @return PreparedStatement - prepared statement, this can be 
+    *                             CallableStatement if the query invokes stored
+    *                             procedure
+    * @throws OSSException - an error has occurred
+    * @throws SQLException - an error has occurred
+    */
+   protected PreparedStatement prepareStatement(
+      Connection cntConnection
+   ) throws OSSException,
+            SQLException
+   {
+      PreparedStatement pstmQuery;
+      
+      // Based on type of query we either execute just a normal query
+      // or invoke a stored procedure
+      if (m_factory.getDatabase().isCallableStatement(m_strQuery))
+      {
+         pstmQuery = cntConnection.prepareCall(m_strQuery);
+      }
+      else
+      {
+         pstmQuery = cntConnection.prepareStatement(m_strQuery);
+      }
+      
+      return pstmQuery;
+   }
+   
    /**
     * Define content of this method to perform the database operation using the 
     * provided connection and optional prepared statement.
@@ -40,12 +40,17 @@ import java.util.concurrent.Executor;
 
 import org.opensubsystems.core.persist.jdbc.impl.DatabaseConnectionFactoryImpl;
 import org.opensubsystems.core.util.GlobalConstants;
+import org.opensubsystems.core.util.jdbc.PreparedStatementCache;
 
 /**
  * Transactional connection is wrapper around real database connection to ensure
  * that the connection can be made part of global transaction spanning several
  * code components which do not know about each other.
  * 
+ * While the connection is issued, the prepared statements are cached so that
+ * the same SQL prepared repeatedly, e.g. by operations executed in the same
+ * transaction, is parsed by the database only once. 
+ * 
  * @author bastafidli
  */
 public class TransactionalConnection implements Connection
@@ -99,6 +104,12 @@ public class TransactionalConnection implements Connection
     */
    private DatabaseConnectionFactoryImpl m_connectionFactory;
    
+   /**
+    * Cache of statements prepared using this connection or null if the 
+    * statements are not cached.
+    */
+   private PreparedStatementCache m_statementCache;
+   
    // Constructors /////////////////////////////////////////////////////////////
    
    /**
@@ -133,6 +144,15 @@ public class TransactionalConnection implements Connection
       m_bUsed = false; // the connection wasn't used yet
       m_iActiveCount = 1; // the connection was just constructed so it has to be 
                           // active
+      if (connectionFactory != null)
+      {
+         m_statementCache = connectionFactory.getStatementCache(
+                                                 privateConnection, this);
+      }
+      else
+      {
+         m_statementCache = null;
+      }
    }   
    
    // Logic ////////////////////////////////////////////////////////////////////
@@ -280,6 +300,17 @@ public class TransactionalConnection implements Connection
       return m_connectionFactory;
    }
    
+   /**
+    * @return PreparedStatementCache - cache of statements prepared using the 
+    *                                  physical connection underlying this 
+    *                                  connection or null if the statements 
+    *                                  are not cached
+    */
+   public PreparedStatementCache getStatementCache()
+   {
+      return m_statementCache;
+   }
+   
    // java.sql.Connection delegating methods ///////////////////////////////////
    
    /**
@@ -552,8 +583,19 @@ public class TransactionalConnection implements Connection
       String sql
    ) throws SQLException
    {
+      PreparedStatement statement;
+      
       setUsed(true);
-      return m_privateConnection.prepareStatement(sql);
+      if (m_statementCache != null)
+      {
+         statement = m_statementCache.prepareStatement(sql);
+      }
+      else
+      {
+         statement = m_privateConnection.prepareStatement(sql);
+      }
+      
+      return statement;
    }
 
    /**
@@ -565,8 +607,19 @@ public class TransactionalConnection implements Connection
       int autoGeneratedKeys
    ) throws SQLException
    {
+      PreparedStatement statement;
+      
       setUsed(true);
-      return m_privateConnection.prepareStatement(sql, autoGeneratedKeys);
+      if (m_statementCache != null)
+      {
+         statement = m_statementCache.prepareStatement(sql, autoGeneratedKeys);
+      }
+      else
+      {
+         statement = m_privateConnection.prepareStatement(sql, autoGeneratedKeys);
+      }
+      
+      return statement;
    }
 
    /**
@@ -579,9 +632,21 @@ public class TransactionalConnection implements Connection
       int resultSetConcurrency
    ) throws SQLException
    {
+      PreparedStatement statement;
+      
       setUsed(true);
-      return m_privateConnection.prepareStatement(sql, resultSetType, 
-                                                  resultSetConcurrency);
+      if (m_statementCache != null)
+      {
+         statement = m_statementCache.prepareStatement(sql, resultSetType, 
+                                                       resultSetConcurrency);
+      }
+      else
+      {
+         statement = m_privateConnection.prepareStatement(sql, resultSetType, 
+                                                          resultSetConcurrency);
+      }
+      
+      return statement;
    }
 
    /**
@@ -595,10 +660,23 @@ public class TransactionalConnection implements Connection
       int resultSetHoldability
    ) throws SQLException
    {
+      PreparedStatement statement;
+      
       setUsed(true);
-      return m_privateConnection.prepareStatement(sql, resultSetType, 
-                                                  resultSetConcurrency,
-                                                  resultSetHoldability);
+      if (m_statementCache != null)
+      {
+         statement = m_statementCache.prepareStatement(sql, resultSetType, 
+                                                       resultSetConcurrency,
+                                                       resultSetHoldability);
+      }
+      else
+      {
+         statement = m_privateConnection.prepareStatement(sql, resultSetType, 
+                                                          resultSetConcurrency,
+                                                          resultSetHoldability);
+      }
+      
+      return statement;
    }
 
    /**
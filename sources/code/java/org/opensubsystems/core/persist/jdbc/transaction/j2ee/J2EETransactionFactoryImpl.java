@@ -36,6 +36,8 @@ import org.opensubsystems.core.persist.jdbc.impl.DatabaseTransactionFactoryImpl;
 import org.opensubsystems.core.persist.jdbc.transaction.impl.DelegatingUserTransaction;
 import org.opensubsystems.core.util.GlobalConstants;
 import org.opensubsystems.core.util.Log;
+import org.opensubsystems.core.util.jdbc.PreparedStatementCache;
+import org.opensubsystems.core.util.jdbc.StatementCachingConnection;
 import org.opensubsystems.core.util.jta.TransactionUtils;
 
 /**
@@ -402,9 +404,29 @@ public class J2EETransactionFactoryImpl extends DatabaseTransactionFactoryImpl
       // J2EE CF created connection is always already connected to J2EE TF 
       // therefore nothing needs to be done, just call the appropriate version 
       // of the method
-      return super.requestTransactionalConnection(bAutoCommit, strDataSourceName, 
-                                                  strUser, strPassword, 
-                                                  connectionFactory);
+      Connection             realConnection;
+      PreparedStatementCache statementCache;
+      
+      realConnection = super.requestTransactionalConnection(bAutoCommit, 
+                                                            strDataSourceName, 
+                                                            strUser, 
+                                                            strPassword, 
+                                                            connectionFactory);
+      // The connection cannot be wrapped in transactional connection but the 
+      // statements can still be cached for the physical connection 
+      statementCache = connectionFactory.getStatementCache(realConnection, 
+                                                           null);
+      if (statementCache != null)
+      {
+         StatementCachingConnection cachingConnection;
+         
+         cachingConnection = new StatementCachingConnection(realConnection, 
+                                                            statementCache);
+         statementCache.setOwnerConnection(cachingConnection);
+         realConnection = cachingConnection;
+      }
+      
+      return realConnection;
    }
 
    /**
@@ -426,7 +448,14 @@ public class J2EETransactionFactoryImpl extends DatabaseTransactionFactoryImpl
                 : "J2EE TM can manage only J2EE CF connections at this time.";
       }
 
+      Connection realConnection = cntDBConnection;
+      
+      if (cntDBConnection instanceof StatementCachingConnection)
+      {
+         realConnection = ((StatementCachingConnection)cntDBConnection)
+                             .getConnection();
+      }
       // Since J2EE TF and J2EE CD are already integrated just call the base class
-      super.returnTransactionalConnection(cntDBConnection, connectionFactory);
+      super.returnTransactionalConnection(realConnection, connectionFactory);
    }
 }
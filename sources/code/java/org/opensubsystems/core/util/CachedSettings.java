@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2003 - 2016 OpenSubsystems.com/net/org and its owners. All rights reserved.
+ * 
+ * This file is part of OpenSubsystems.
+ *
+ * OpenSubsystems is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+
+package org.opensubsystems.core.util;
+
+import java.util.Properties;
+
+/**
+ * Typed settings derived from the configuration, which are computed only once 
+ * for each version of the configuration instead of being read and parsed from
+ * the configuration properties every time they are needed. Derived class 
+ * implements method readSettings to construct the settings from the properties
+ * and the code which needs the settings calls getSettings.
+ * 
+ * The settings are cached separately for each thread since when MultiConfig is
+ * used, each thread can execute in different execution context and therefore 
+ * see different configuration settings. As soon as the configuration instance
+ * or its version changes, the settings are read again. The properties modified
+ * directly without using Config.setProperty do not change the version and so
+ * they are not observed.
+ * 
+ * @param <T> - type of the settings
+ * @author bastafidli
+ */
+public abstract class CachedSettings<T> extends OSSObject
+{
+   // Attributes ///////////////////////////////////////////////////////////////
+   
+   /**
+    * Settings cached by each thread together with the configuration and its 
+    * version from which they were read.
+    */
+   private ThreadLocal<ThreeElementStruct<Config, Long, T>> m_cachedSettings;
+   
+   // Constructors /////////////////////////////////////////////////////////////
+   
+   /**
+    * Default constructor.
+    */
+   public CachedSettings(
+   )
+   {
+      super();
+      
+      m_cachedSettings = new ThreadLocal<>();
+   }
+   
+   // Logic ////////////////////////////////////////////////////////////////////
+   
+   /**
+    * Get settings for the configuration currently in effect. 
+    * 
+    * @return T - settings read from the current configuration
+    */
+   public T getSettings(
+   )
+   {
+      ThreeElementStruct<Config, Long, T> cached = m_cachedSettings.get();
+      Config                              config = Config.getInstance();
+      long                                lVersion = config.getVersion();
+      
+      if ((cached == null) || (cached.getFirst() != config)
+         || (cached.getSecond().longValue() != lVersion))
+      {
+         cached = new ThreeElementStruct<>(config, lVersion, 
+                                           readSettings(config.getProperties()));
+         m_cachedSettings.set(cached);
+      }
+      
+      return cached.getThird();
+   }
+   
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void toString(
+      StringBuilder sb,
+      int           ind
+   )
+   {
+      ThreeElementStruct<Config, Long, T> cached = m_cachedSettings.get();
+      
+      append(sb, ind + 0, "CachedSettings[");
+      if (cached != null)
+      {
+         append(sb, ind + 1, "version = ", cached.getSecond());
+         append(sb, ind + 1, "settings = ", cached.getThird());
+      }
+      append(sb, ind + 0, "]");
+   }
+   
+   // Helper methods ///////////////////////////////////////////////////////////
+   
+   /**
+    * Read the settings from the configuration properties. 
+    * 
+    * @param prpSettings - configuration properties currently in effect
+    * @return T - settings read from the properties
+    */
+   protected abstract T readSettings(
+      Properties prpSettings
+   );
+}
@@ -41,17 +41,22 @@ public class CallContext extends OSSObject
 {
    // Constants ////////////////////////////////////////////////////////////////
 
+   /**
+    * Value of deadline meaning that the current call doesn't have any deadline.
+    */
+   public static final long NO_DEADLINE = 0;
+
    /**
     * Lock used in synchronized sections.
     */
-   private static final String IMPL_LOCK = "IMPL_LOCK";
+   private static final Object IMPL_LOCK = new Object();
 
    // Cached values ////////////////////////////////////////////////////////////
   
    /**
     * Reference to the instance actually in use.
     */
-   private static CallContext s_defaultInstance;
+   private static volatile CallContext s_defaultInstance;
 
    // Attributes ///////////////////////////////////////////////////////////////
    
@@ -89,6 +94,13 @@ public class CallContext extends OSSObject
     */
    private ThreadLocal<Map<String, Map>> m_cache; 
 
+   /**
+    * Each thread calling this class will store here time by which the current
+    * call should complete. Components which may need to wait for resources, 
+    * such as connection pools, do not wait beyond this time. 
+    */
+   private ThreadLocal<Long> m_deadline; 
+
    // Constructors /////////////////////////////////////////////////////////////
    
    /**
@@ -143,6 +155,7 @@ public class CallContext extends OSSObject
       // by child thread would be visible by parent
       m_messages = new ThreadLocal<>();
       m_cache = new ThreadLocal<>();
+      m_deadline = new ThreadLocal<>();
    }
    
    // Logic ////////////////////////////////////////////////////////////////////
@@ -401,6 +414,54 @@ public class CallContext extends OSSObject
       m_cache.set(null);
    }
 
+   /**
+    * Get time by which the current call should complete.
+    * 
+    * @return long - time in milliseconds as returned by 
+    *                System.currentTimeMillis or NO_DEADLINE if the current
+    *                call doesn't have any deadline 
+    */
+   public long getDeadline(
+   )
+   {
+      Long lDeadline;
+      
+      lDeadline = m_deadline.get();
+      
+      return (lDeadline != null) ? lDeadline.longValue() : NO_DEADLINE;
+   }
+
+   /**
+    * Set time by which the current call should complete. Components which may 
+    * need to wait for resources will fail instead of waiting beyond this time.
+    * 
+    * @param lDeadline - time in milliseconds as returned by 
+    *                    System.currentTimeMillis or NO_DEADLINE if the current
+    *                    call doesn't have any deadline 
+    */
+   public void setDeadline(
+      long lDeadline
+   )
+   {
+      if (lDeadline == NO_DEADLINE)
+      {
+         m_deadline.remove();
+      }
+      else
+      {
+         m_deadline.set(lDeadline);
+      }
+   }
+
+   /**
+    * Removes deadline for the current call.
+    */
+   public void resetDeadline(
+   )
+   {
+      m_deadline.remove();
+   }
+
    /**
     * Removes context (all information) for current call from stack and restore
     * the previous user session.
@@ -411,5 +472,6 @@ public class CallContext extends OSSObject
       resetCurrentUserAndSession();
       resetMessages();
       resetCache();
+      resetDeadline();
    }
 }
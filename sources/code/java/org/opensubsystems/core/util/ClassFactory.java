@@ -19,10 +19,15 @@
 
 package org.opensubsystems.core.util;
 
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.logging.Logger;
 import java.util.logging.Level;
 
@@ -43,8 +48,38 @@ import org.opensubsystems.core.error.OSSException;
  */
 public class ClassFactory<T> extends OSSObject
 {   
+   /**
+    * Result of resolution of list of class names to the class which should be
+    * instantiated.
+    */
+   protected static class ResolvedClass
+   {
+      /**
+       * Parameterless constructor of the resolved class or null if none of the
+       * classes can be instantiated.
+       */
+      protected final Constructor<?> m_constructor;
+      
+      /**
+       * @param constructor - parameterless constructor of the resolved class
+       *                      or null if none of the classes can be instantiated
+       */
+      public ResolvedClass(
+         Constructor<?> constructor
+      )
+      {
+         m_constructor = constructor;
+      }
+   }
+   
    // Constants ////////////////////////////////////////////////////////////////
    
+   /**
+    * Separator used to construct key under which the resolved classes are 
+    * cached.
+    */
+   protected static final char KEY_SEPARATOR = '|';
+   
    // Attributes ///////////////////////////////////////////////////////////////
    
    /**
@@ -61,6 +96,28 @@ public class ClassFactory<T> extends OSSObject
     */
    private static Logger s_logger = Log.getInstance(ClassFactory.class);
    
+   /**
+    * Classes resolved for the lists of class names considered by the factories.
+    * Key is the class of the factory, the type of instantiated objects and the
+    * list of considered class names and value is the resolved class. Since the 
+    * list of class names includes the names read from the configuration, the
+    * cache remains valid even if different execution context configures 
+    * different class. The negative results are cached as well so that the 
+    * classes, which do not exist, are not searched repeatedly.
+    */
+   private static ConcurrentMap<String, ResolvedClass> s_mpResolvedClasses 
+                     = new ConcurrentHashMap<>();
+   
+   /**
+    * Number of changes of the default configuration at the time when the 
+    * classes were resolved. When the configuration changes, the resolved 
+    * classes are discarded since the configuration can also specify which 
+    * classes are available.
+    * 
+    * @see Config#getChangeCount
+    */
+   private static volatile long s_lConfigChangeCount = Config.getChangeCount();
+   
    // Constructors /////////////////////////////////////////////////////////////
    
    /** 
@@ -192,6 +249,7 @@ public class ClassFactory<T> extends OSSObject
    ) throws OSSException
    {
       String       strModifier;
+      String       strIndexedClassName;
       T            objInstance = null;
       List<String> lstClassNames = new ArrayList<>();
       
@@ -222,7 +280,15 @@ public class ClassFactory<T> extends OSSObject
       {
          // Since no other class was configured for specified identifier, try 
          // to get default class for given identifier and if there is any
-         // try to instantiate it
+         // try to instantiate it. If the precomputed index knows the class,
+         // try it first so that the other default classes do not have to be
+         // probed. They are still tried in case the index is out of date.
+         strIndexedClassName = ImplementationIndex.getImplementation(
+                                  strClassIdentifier, strModifier);
+         if (strIndexedClassName != null)
+         {
+            lstClassNames.add(strIndexedClassName);
+         }
          createDefaultClassNames(strClassIdentifier, strModifier, lstClassNames);
          if (!lstClassNames.isEmpty())
          {
@@ -256,6 +322,9 @@ public class ClassFactory<T> extends OSSObject
 
    /**
     * Instantiate new instance using ordered list of class names to consider.
+    * The class which can be instantiated is resolved only once for the same 
+    * list of class names and after that the new instances are created using 
+    * the cached constructor of the resolved class.
     * 
     * @param lstClassNames - ordered list of classes to consider as a template
     *                        for new instance
@@ -268,41 +337,241 @@ public class ClassFactory<T> extends OSSObject
       List<String> lstClassNames,
       String       strClassIdentifier
    ) throws OSSException
+   {
+      T             instance = null;
+      ResolvedClass resolved;
+      StringBuilder sbKey = new StringBuilder();
+      long          lConfigChangeCount = Config.getChangeCount();
+      
+      if (lConfigChangeCount != s_lConfigChangeCount)
+      {
+         // The configuration has changed so resolve the classes again
+         s_mpResolvedClasses.clear();
+         s_lConfigChangeCount = lConfigChangeCount;
+      }
+      
+      sbKey.append(getClass().getName());
+      sbKey.append(KEY_SEPARATOR);
+      sbKey.append(m_type.getName());
+      for (String strClassName : lstClassNames)
+      {
+         sbKey.append(KEY_SEPARATOR);
+         sbKey.append(strClassName);
+      }
+      
+      resolved = s_mpResolvedClasses.get(sbKey.toString());
+      if (resolved == null)
+      {
+         List<T> lstInstance = new ArrayList<>(1);
+         
+         // Resolve the class by creating the first instance so that it can be
+         // verified
+         resolved = resolveClass(lstClassNames, strClassIdentifier, lstInstance);
+         if (resolved != null)
+         {
+            s_mpResolvedClasses.putIfAbsent(sbKey.toString(), resolved);
+         }
+         if (!lstInstance.isEmpty())
+         {
+            instance = lstInstance.get(0);
+         }
+      }
+      else if (resolved.m_constructor != null)
+      {
+         try
+         {
+            instance = verifyInstance(newInstance(resolved.m_constructor));
+         }
+         catch (OSSDynamicClassException dceExc)
+         {
+            s_logger.log(Level.FINEST, "Class instantiation for {0} failed for"
+                         + " class {1} with error {2}", 
+                         new Object[]{strClassIdentifier, 
+                                      resolved.m_constructor.getName(), 
+                                      dceExc.getCause()});
+         }
+      }
+      
+      return instance;
+   }
+   
+   /**
+    * Find the first class from the ordered list of class names, which can be 
+    * instantiated.
+    * 
+    * @param lstClassNames - ordered list of classes to consider as a template
+    *                        for new instance
+    * @param strClassIdentifier - identifier of the class for which new instance  
+    *                              should be created, used for reporting purposes
+    * @param lstInstance - container where the instance of the resolved class 
+    *                      created while resolving the class will be added
+    * @return ResolvedClass - resolved class or null if the result shouldn't 
+    *                         be cached since some class preceding the resolved
+    *                         one exists but couldn't be instantiated this time
+    * @throws OSSException - an error has occurred
+    */
+   protected ResolvedClass resolveClass(
+      List<String> lstClassNames,
+      String       strClassIdentifier,
+      List<T>      lstInstance
+   ) throws OSSException
    {
       T                instance = null;
-      Object           objInstance = null;
+      Constructor<?>   constructor = null;
+      boolean          bCacheable = true;
+      ResolvedClass    resolved = null;
       String           strClassName;
       Iterator<String> classNames; 
       
       for (classNames = lstClassNames.iterator(); 
-          (classNames.hasNext()) && (objInstance == null);)
+          (classNames.hasNext()) && (instance == null);)
       {
          strClassName = classNames.next();
+         constructor = null;
          try
          {
-            objInstance = ClassUtils.createNewInstance(strClassName);
-            instance = verifyInstance(objInstance); 
-            // Print success message so that we can see what class are we using
-            Log.s_logger.log(Level.FINER, "Speculative class instantiation for"
-                             + " {0} succeeded for class {1}", 
-                             new Object[]{strClassIdentifier, strClassName});
+            constructor = Class.forName(strClassName).getConstructor();
          }
-         catch (OSSDynamicClassException dceExc)
+         catch (ClassNotFoundException | NoSuchMethodException exc)
          {
             // Do not print exception here because it is looking like an error 
             // in the log while what we tried to do was speculatively find a 
-            // class
-            Throwable cause = dceExc.getCause();
-            
-            // Instead of stack trace print just the original message of the 
-            // cause since the class is just not present
+            // class. Instead of stack trace print just the message since the 
+            // class is just not present
+            s_logger.log(Level.FINEST, "Speculative class instantiation for {0}"
+                         + " failed for class {1} with error {2}", 
+                         new Object[]{strClassIdentifier, strClassName, exc});
+         }
+         catch (LinkageError leExc)
+         {
+            // The class exists but it or some class it depends on couldn't be 
+            // loaded or initialized, which may be caused by the current state 
+            // of the class loaders so do not remember it as missing
+            bCacheable = false;
             s_logger.log(Level.FINEST, "Speculative class instantiation for {0}"
                          + " failed for class {1} with error {2}", 
-                         new Object[]{strClassIdentifier, strClassName, cause});
+                         new Object[]{strClassIdentifier, strClassName, leExc});
+         }
+         if ((constructor != null) 
+            && (Modifier.isAbstract(constructor.getDeclaringClass().getModifiers())))
+         {
+            // The class can never be instantiated, e.g. it is an abstract base
+            // of the implementations, so skip it same as missing class
+            s_logger.log(Level.FINEST, "Speculative class instantiation for {0}"
+                         + " skipped abstract class {1}", 
+                         new Object[]{strClassIdentifier, strClassName});
+            constructor = null;
+         }
+         if (constructor != null)
+         {
+            Object objInstance = null;
+            
+            try
+            {
+               objInstance = newInstance(constructor); 
+            }
+            catch (OSSDynamicClassException dceExc)
+            {
+               if (!(dceExc.getCause() instanceof IllegalAccessException))
+               {
+                  // The constructor has failed now, which may not be the case 
+                  // next time. The class which is not accessible will never be
+                  // so it can be skipped same as missing class.
+                  bCacheable = false;
+               }
+               s_logger.log(Level.FINEST, "Speculative class instantiation for"
+                            + " {0} failed for class {1} with error {2}", 
+                            new Object[]{strClassIdentifier, strClassName, 
+                                         dceExc.getCause()});
+            }
+            if (objInstance != null)
+            {
+               try
+               {
+                  instance = verifyInstance(objInstance);
+                  // Print success message so that we can see what class are  
+                  // we using
+                  Log.s_logger.log(Level.FINER, "Speculative class"
+                                   + " instantiation for {0} succeeded for"
+                                   + " class {1}", 
+                                   new Object[]{strClassIdentifier, 
+                                                strClassName});
+               }
+               catch (OSSDynamicClassException dceExc)
+               {
+                  // The class is not of the expected type, which will not 
+                  // change so it can be skipped same as missing class
+                  s_logger.log(Level.FINEST, "Speculative class instantiation"
+                               + " for {0} failed for class {1} with error {2}", 
+                               new Object[]{strClassIdentifier, strClassName, 
+                                            dceExc});
+               }
+            }
          }
       }
       
-      return instance;
+      if (instance != null)
+      {
+         lstInstance.add(instance);
+      }
+      else
+      {
+         constructor = null;
+      }
+      if (bCacheable)
+      {
+         resolved = new ResolvedClass(constructor);
+      }
+      
+      return resolved;
+   }
+   
+   /**
+    * Create new instance using specified constructor. Same as Class.newInstance
+    * the unchecked exceptions and errors thrown by the constructor are 
+    * propagated to the caller as they are.
+    * 
+    * @param constructor - parameterless constructor to use
+    * @return Object - new instance
+    * @throws OSSException - an error has occurred
+    */
+   protected static Object newInstance(
+      Constructor<?> constructor
+   ) throws OSSException
+   {
+      Object objInstance;
+
+      try
+      {
+         objInstance = constructor.newInstance();
+      }
+      catch (InvocationTargetException iteExc)
+      {
+         Throwable cause = iteExc.getCause();
+         
+         if (cause instanceof RuntimeException)
+         {
+            throw (RuntimeException)cause;
+         }
+         else if (cause instanceof Error)
+         {
+            throw (Error)cause;
+         }
+         else if (cause instanceof OSSException)
+         {
+            throw (OSSException)cause;
+         }
+         else
+         {
+            throw new OSSDynamicClassException("Unexpected exception.", cause);
+         }
+      }
+      catch (IllegalAccessException | InstantiationException exc)
+      {
+         throw new OSSDynamicClassException("Unexpected exception.", exc);         
+      }
+      
+      return objInstance;      
    }
    
    /**
@@ -21,16 +21,28 @@ package org.opensubsystems.core.util;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Logger;
 import java.util.logging.Level;
 
@@ -57,6 +69,15 @@ public class Config extends OSSObject
     */   
    public static final String DEPENDENT_CONFIG_FILE_NAME 
                                  = "oss.config.dependent.file";
+
+   /**
+    * Boolean flag, which specifies if the configuration file of the default 
+    * configuration should be watched for changes. If it is, every time the file 
+    * is modified the configuration settings are reloaded and all registered 
+    * ConfigurationListener instances are notified so that the settings can be 
+    * changed without restarting the application. 
+    */
+   public static final String CONFIG_WATCH = "oss.config.watch";
    
    // Constants ////////////////////////////////////////////////////////////////
 
@@ -66,9 +87,30 @@ public class Config extends OSSObject
    public static final String DEFAULT_CONFIG_FILE_NAME = "oss.properties";
 
    /**
-    * Lock used in synchronized sections.
+    * Default value of flag specifying if the configuration file should be 
+    * watched for changes.
+    */
+   public static final Boolean CONFIG_WATCH_DEFAULT = Boolean.FALSE;
+
+   /**
+    * How long in milliseconds to wait after the configuration file was modified
+    * before it is reloaded. Files are often written in several steps and this 
+    * allows the file to be completely written before it is read.
     */
-   private static final String IMPL_LOCK = "IMPL_LOCK";
+   public static final long RELOAD_DELAY = 500;
+
+   /**
+    * Lock used in synchronized sections. It is reentrant since the properties
+    * are loaded while the lock is already held by the caller.
+    */
+   private static final ReentrantLock IMPL_LOCK = new ReentrantLock();
+
+   /**
+    * Source of versions of configuration settings. It is shared by all 
+    * instances so that each change of settings anywhere receives version 
+    * greater than any version issued before.
+    */
+   private static final AtomicLong VERSION_COUNTER = new AtomicLong(0);
 
    // Attributes ///////////////////////////////////////////////////////////////
 
@@ -77,7 +119,7 @@ public class Config extends OSSObject
     * not transient since it represents values which needs to be stored on a 
     * disk. The properties are cached the first time any of them is accessed.
     */
-   protected Properties m_prpProperties;
+   protected volatile Properties m_prpProperties;
    
    /**
     * Name of the property file containing application properties. It can be 
@@ -97,6 +139,19 @@ public class Config extends OSSObject
     */
    protected String m_strActualConfigFile;
    
+   /**
+    * Version of the properties of this configuration. It changes every time
+    * the properties are loaded or modified so that the values derived from 
+    * them can be cached until the version changes.
+    */
+   protected volatile long m_lVersion;
+
+   /**
+    * Service used to watch for changes of the configuration file or null if 
+    * the file is not watched.
+    */
+   protected WatchService m_watchService;
+
    // Cached values ////////////////////////////////////////////////////////////
 
    /**
@@ -107,7 +162,19 @@ public class Config extends OSSObject
    /**
     * Reference to the Config actually in use.
     */
-   private static Config s_defaultInstance;
+   private static volatile Config s_defaultInstance;
+   
+   /**
+    * Listeners to notify when the settings of the default configuration change.
+    */
+   private static final CopyOnWriteArrayList<ConfigurationListener> s_lstListeners 
+                           = new CopyOnWriteArrayList<>();
+
+   /**
+    * How many times the settings of the default configuration have changed 
+    * after they were loaded for the first time.
+    */
+   private static final AtomicLong s_lChangeCount = new AtomicLong(0);
    
    // Constructors /////////////////////////////////////////////////////////////
 
@@ -155,6 +222,7 @@ public class Config extends OSSObject
       String     strRequestedConfigFile
    )
    {
+      m_lVersion = nextVersion();
       m_prpProperties = predefinedProperties;
       m_strRequestedConfigFile = strRequestedConfigFile;
       m_urlDefaultConfigFile = null;
@@ -204,14 +272,19 @@ public class Config extends OSSObject
       {
          // Only if the default Config wasn't set by other means create a new one
          // Synchronize just for the creation
-         synchronized (IMPL_LOCK)
+         IMPL_LOCK.lock();
+         try
          {
             if (s_defaultInstance == null)
             {
                // Specify no name so that default name will be searched.
                setInstance(new Config());
             }
-         }   
+         }
+         finally
+         {
+            IMPL_LOCK.unlock();
+         }
       }
       
       return s_defaultInstance;
@@ -234,10 +307,82 @@ public class Config extends OSSObject
                 : "Default config instance cannot be null";
       }   
       
-      synchronized (IMPL_LOCK)
+      Config previousInstance;
+      
+      IMPL_LOCK.lock();
+      try
       {
+         previousInstance = s_defaultInstance;
          s_defaultInstance = defaultInstance;
+         if (previousInstance != defaultInstance)
+         {
+            if (previousInstance != null)
+            {
+               previousInstance.stopWatching();
+            }
+            if (PropertyUtils.getBooleanProperty(defaultInstance.getProperties(), 
+                                                 CONFIG_WATCH, 
+                                                 CONFIG_WATCH_DEFAULT,
+                                                 "Watch configuration file"
+                                                 + " for changes").booleanValue())
+            {
+               defaultInstance.startWatching();
+            }
+         }
+      }
+      finally
+      {
+         IMPL_LOCK.unlock();
+      }
+      if ((previousInstance != null) && (previousInstance != defaultInstance))
+      {
+         notifyListeners(defaultInstance);
+      }
+   }
+
+   /**
+    * Register listener, which will be notified when the settings of the default
+    * configuration change. The listener is registered only once even if this
+    * method is called repeatedly.
+    * 
+    * @param listener - listener to notify about changes
+    */
+   public static void addConfigurationListener(
+      ConfigurationListener listener
+   )
+   {
+      if (GlobalConstants.ERROR_CHECKING)
+      {         
+         assert listener != null : "Configuration listener cannot be null";
       }   
+      
+      s_lstListeners.addIfAbsent(listener);
+   }
+
+   /**
+    * Get how many times the settings of the default configuration have changed
+    * because the configuration was reloaded or replaced. This allows to detect 
+    * that the values read from the configuration before need to be read again 
+    * without registering a listener.
+    * 
+    * @return long - number of changes of the default configuration
+    */
+   public static long getChangeCount(
+   )
+   {
+      return s_lChangeCount.get();
+   }
+
+   /**
+    * Unregister listener previously registered using addConfigurationListener.
+    * 
+    * @param listener - listener, which should not be notified anymore
+    */
+   public static void removeConfigurationListener(
+      ConfigurationListener listener
+   )
+   {
+      s_lstListeners.remove(listener);
    }
 
    // Logic ////////////////////////////////////////////////////////////////////
@@ -277,7 +422,8 @@ public class Config extends OSSObject
       String strPropertyFileName
    )
    {
-      synchronized (IMPL_LOCK)
+      IMPL_LOCK.lock();
+      try
       {
          // Initialize the properties again by specifying new file name and
          // resetting the old properties and then reloading them
@@ -295,6 +441,10 @@ public class Config extends OSSObject
                    : "getPropertiesSafely must initialize m_prpProperties";
          }
       }
+      finally
+      {
+         IMPL_LOCK.unlock();
+      }
    }
    
    /**
@@ -302,6 +452,11 @@ public class Config extends OSSObject
     * the constructor or return the ones passed into the constructor. If no 
     * properties can be loaded, a new ones will be created and empty property 
     * object will be returned.
+    * 
+    * The returned properties should not be modified directly since such change 
+    * doesn't change the version of the configuration and therefore it is not
+    * observed by anybody who caches values derived from the settings, see 
+    * CachedSettings. Use setProperty instead.
     *
     * @return Properties - set of properties for this application.
     */
@@ -312,7 +467,8 @@ public class Config extends OSSObject
       {
          Properties prpSettings;
          
-         synchronized (IMPL_LOCK)
+         IMPL_LOCK.lock();
+         try
          {
             try
             {
@@ -336,6 +492,10 @@ public class Config extends OSSObject
                prpSettings = initializePropertiesAfterFileAccessFailure();
             }
          }
+         finally
+         {
+            IMPL_LOCK.unlock();
+         }
          
          return prpSettings;
       }
@@ -358,7 +518,8 @@ public class Config extends OSSObject
       // Allow only one save a time, it is save to synchronize on properties
       // since at this time they have to be initialized, if not, null pointer
       // exception will be thrown
-      synchronized (IMPL_LOCK)
+      IMPL_LOCK.lock();
+      try
       {
          // Open the file
          OutputStream osConfigFile = null;
@@ -431,6 +592,10 @@ public class Config extends OSSObject
             }
          }         
       }
+      finally
+      {
+         IMPL_LOCK.unlock();
+      }
    }
 
    /**
@@ -466,11 +631,248 @@ public class Config extends OSSObject
                                    currentProperty.getValue());
             }
          }
+         m_lVersion = nextVersion();
+      }
+   }
+   
+   /**
+    * Set value of the specified property and change the version of the 
+    * configuration so that the values cached for the previous settings are 
+    * not used anymore.
+    * 
+    * @param strName - name of the property to set
+    * @param strValue - new value of the property
+    */
+   public void setProperty(
+      String strName,
+      String strValue
+   )
+   {
+      getProperties().setProperty(strName, strValue);
+      m_lVersion = nextVersion();
+   }
+   
+   /**
+    * Reload the configuration settings from the configuration file. The new 
+    * settings replace the current ones at once only if they were successfully
+    * loaded and if this is the default configuration, the registered listeners
+    * are notified about the change. Configuration, which was not loaded from 
+    * a file, is not affected.
+    */
+   public void reload(
+   )
+   {
+      boolean bReloaded = false;
+      
+      IMPL_LOCK.lock();
+      try
+      {
+         if (m_strActualConfigFile != null)
+         {
+            try
+            {
+               loadPropertiesFromFile();
+               bReloaded = true;
+               s_logger.log(Level.INFO, "Configuration file {0} reloaded.", 
+                            m_strActualConfigFile);
+            }
+            catch (IOException ioeExc)
+            {
+               s_logger.log(Level.WARNING, "Cannot reload configuration file " 
+                            + m_strActualConfigFile + ", the previous settings"
+                            + " remain in use.", ioeExc);
+            }
+         }
+      }
+      finally
+      {
+         IMPL_LOCK.unlock();
+      }
+      if ((bReloaded) && (this == s_defaultInstance))
+      {
+         notifyListeners(this);
       }
    }
    
+   /**
+    * Start watching the configuration file for changes and reload the settings
+    * every time it is modified. The configuration can be watched only if it 
+    * was loaded from a file, which can be accessed in the file system. 
+    */
+   public void startWatching(
+   )
+   {
+      IMPL_LOCK.lock();
+      try
+      {
+         if (m_watchService == null)
+         {
+            Path pathConfigFile = getActualConfigPath();
+            
+            if (pathConfigFile != null)
+            {
+               try
+               {
+                  WatchService watchService;
+                  Thread       watcher;
+                  
+                  watchService = pathConfigFile.getFileSystem().newWatchService();
+                  pathConfigFile.getParent().register(
+                                    watchService, 
+                                    StandardWatchEventKinds.ENTRY_CREATE,
+                                    StandardWatchEventKinds.ENTRY_MODIFY);
+                  m_watchService = watchService;
+                  watcher = new Thread(new ConfigWatcher(
+                                              watchService, 
+                                              pathConfigFile.getFileName()), 
+                                       "ConfigWatcher");
+                  watcher.setDaemon(true);
+                  watcher.start();
+                  s_logger.log(Level.CONFIG, "Watching configuration file {0}"
+                               + " for changes.", pathConfigFile);
+               }
+               catch (IOException ioeExc)
+               {
+                  s_logger.log(Level.WARNING, "Cannot watch configuration file " 
+                               + pathConfigFile + " for changes.", ioeExc);
+               }
+            }
+            else
+            {
+               s_logger.log(Level.WARNING, "Configuration file {0} cannot be"
+                            + " watched for changes since it is not a file in"
+                            + " the file system.", m_strActualConfigFile);
+            }
+         }
+      }
+      finally
+      {
+         IMPL_LOCK.unlock();
+      }
+   }
+   
+   /**
+    * Stop watching the configuration file for changes if it was watched.
+    */
+   public void stopWatching(
+   )
+   {
+      IMPL_LOCK.lock();
+      try
+      {
+         if (m_watchService != null)
+         {
+            try
+            {
+               // This will also stop the thread waiting for the changes
+               m_watchService.close();
+            }
+            catch (IOException ioeExc)
+            {
+               s_logger.log(Level.WARNING, 
+                            "Failed to stop watching configuration file.", 
+                            ioeExc);
+            }
+            m_watchService = null;
+         }
+      }
+      finally
+      {
+         IMPL_LOCK.unlock();
+      }
+   }
+   
+   /**
+    * Get version of the configuration settings returned by getProperties. The
+    * version changes every time the settings change, therefore any value 
+    * derived from the settings can be safely reused as long as the version of
+    * the same configuration instance stays the same. 
+    * 
+    * @return long - version of the current configuration settings
+    */
+   public long getVersion(
+   )
+   {
+      return m_lVersion;
+   }
+   
    // Helper methods ///////////////////////////////////////////////////////////
    
+   /**
+    * Notify all registered listeners that the settings of the default 
+    * configuration have changed. 
+    * 
+    * @param config - the default configuration
+    */
+   protected static void notifyListeners(
+      Config config
+   )
+   {
+      s_lChangeCount.incrementAndGet();
+      for (ConfigurationListener listener : s_lstListeners)
+      {
+         try
+         {
+            listener.configurationChanged(config);
+         }
+         catch (RuntimeException rExc)
+         {
+            s_logger.log(Level.WARNING, "Configuration listener " + listener 
+                         + " failed to process change of configuration.", rExc);
+         }
+      }
+   }
+   
+   /**
+    * Get path to the configuration file actually used if it is a file in the 
+    * file system.
+    * 
+    * @return Path - path to the configuration file or null if the settings 
+    *                were not loaded from a file in the file system
+    */
+   protected Path getActualConfigPath(
+   )
+   {
+      Path pathConfigFile = null;
+      
+      if (m_strActualConfigFile != null)
+      {
+         File flConfigFile = new File(m_strActualConfigFile);
+         
+         if (flConfigFile.isFile())
+         {
+            pathConfigFile = flConfigFile.getAbsoluteFile().toPath();
+         }
+         else if ((m_urlDefaultConfigFile != null) 
+                 && ("file".equals(m_urlDefaultConfigFile.getProtocol())))
+         {
+            try
+            {
+               pathConfigFile = Paths.get(m_urlDefaultConfigFile.toURI());
+            }
+            catch (URISyntaxException | IllegalArgumentException exc)
+            {
+               s_logger.log(Level.FINE, "Cannot convert URL " 
+                            + m_urlDefaultConfigFile + " to path.", exc);
+            }
+         }
+      }
+      
+      return pathConfigFile;
+   }
+   
+   /**
+    * Get new version of configuration settings, which is greater than any 
+    * version returned before by any configuration.
+    * 
+    * @return long - new version
+    */
+   protected static long nextVersion(
+   )
+   {
+      return VERSION_COUNTER.incrementAndGet();
+   }
+   
    /**
     * Find and configuration file. The calling class is responsible for
     * closing the input stream
@@ -529,6 +931,10 @@ public class Config extends OSSObject
    ) throws IOException
    {
       InputStream isConfigFile = null;
+      // Load the properties into new object and replace the current ones only
+      // once they are completely loaded so that whoever reads them at the 
+      // same time never sees partially loaded properties
+      Properties  prpLoaded = null;
 
       try
       {
@@ -589,11 +995,11 @@ public class Config extends OSSObject
          
          // Load the properties
          s_logger.log(Level.CONFIG, "Using configuration file {0}", m_strActualConfigFile);
-         m_prpProperties = new Properties();
+         prpLoaded = new Properties();
          try
          {
             bisConfigFile = new BufferedInputStream(isConfigFile);
-            m_prpProperties.load(bisConfigFile);
+            prpLoaded.load(bisConfigFile);
          }
          finally
          {
@@ -636,12 +1042,12 @@ public class Config extends OSSObject
       // If we read any properties see if there was a dependent file
       // specified and if so then read its settings and replace them
       // with the ones redefined in this file
-      if (m_prpProperties != null)
+      if (prpLoaded != null)
       {
          String strDependentPropertyFile;
          
          strDependentPropertyFile = PropertyUtils.getStringProperty(
-                                       m_prpProperties, 
+                                       prpLoaded, 
                                        DEPENDENT_CONFIG_FILE_NAME,
                                        "",
                                        "Dependent property file", 
@@ -659,10 +1065,12 @@ public class Config extends OSSObject
                          + " dependent file {0} with properties from {1}", 
                          new Object[]{strDependentPropertyFile, m_strActualConfigFile});
             // Now replace the settings which were redefined in this file
-            prpSettings.putAll(m_prpProperties);
+            prpSettings.putAll(prpLoaded);
             // And the end result will be the current properties
-            m_prpProperties = prpSettings;
+            prpLoaded = prpSettings;
          }
+         m_prpProperties = prpLoaded;
+         m_lVersion = nextVersion();
       }
    }
    
@@ -682,9 +1090,11 @@ public class Config extends OSSObject
       
       // This will initialize it to defaults 
       prpSettings = new Properties();
-      synchronized (IMPL_LOCK)
+      IMPL_LOCK.lock();
+      try
       {
          m_prpProperties = prpSettings;
+         m_lVersion = nextVersion();
 
          // We cannot call setPropertyFileName since this would cause infinite 
          // loop. Instead just set the config file name here
@@ -706,7 +1116,91 @@ public class Config extends OSSObject
             m_strRequestedConfigFile = Config.DEFAULT_CONFIG_FILE_NAME;
          }
       }
+      finally
+      {
+         IMPL_LOCK.unlock();
+      }
       
       return prpSettings;
    }
+   
+   /**
+    * Task waiting for the changes of the configuration file and reloading the 
+    * configuration when the file changes. The task ends when the watch service
+    * is closed.
+    */
+   protected class ConfigWatcher implements Runnable
+   {
+      /**
+       * Service notifying about changes in the directory of the file.
+       */
+      protected WatchService m_watchService;
+      
+      /**
+       * Name of the watched file.
+       */
+      protected Path m_pathFileName;
+      
+      /**
+       * Constructor.
+       * 
+       * @param watchService - service notifying about changes in the directory
+       *                       of the file
+       * @param pathFileName - name of the watched file
+       */
+      public ConfigWatcher(
+         WatchService watchService,
+         Path         pathFileName
+      )
+      {
+         m_watchService = watchService;
+         m_pathFileName = pathFileName;
+      }
+      
+      /**
+       * {@inheritDoc}
+       */
+      @Override
+      public void run(
+      )
+      {
+         try
+         {
+            WatchKey key;
+            boolean  bChanged;
+            
+            while (true)
+            {
+               key = m_watchService.take();
+               bChanged = false;
+               for (WatchEvent<?> event : key.pollEvents())
+               {
+                  bChanged = bChanged || m_pathFileName.equals(event.context());
+               }
+               key.reset();
+               if (bChanged)
+               {
+                  // Wait until the file is completely written and ignore all
+                  // the changes made in the meantime
+                  Thread.sleep(RELOAD_DELAY);
+                  while ((key = m_watchService.poll()) != null)
+                  {
+                     key.pollEvents();
+                     key.reset();
+                  }
+                  reload();
+               }
+            }
+         }
+         catch (ClosedWatchServiceException cwseExc)
+         {
+            s_logger.log(Level.FINEST, "Stopped watching configuration file.");
+         }
+         catch (InterruptedException ieExc)
+         {
+            s_logger.log(Level.FINEST, "Stopped watching configuration file"
+                         + " since the watching thread was interrupted.");
+         }
+      }
+   }
 }
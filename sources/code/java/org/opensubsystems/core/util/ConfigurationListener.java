@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2003 - 2016 OpenSubsystems.com/net/org and its owners. All rights reserved.
+ * 
+ * This file is part of OpenSubsystems.
+ *
+ * OpenSubsystems is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+
+package org.opensubsystems.core.util;
+
+/**
+ * Interface implemented by classes, which need to know when the configuration
+ * settings in use change, e.g. because the configuration file was modified, so 
+ * that they can adjust to the new settings without restarting the application.
+ * 
+ * @author bastafidli
+ */
+public interface ConfigurationListener
+{
+   /**
+    * Configuration settings of the default configuration have changed. This 
+    * method is called by the thread, which detected the change, therefore it 
+    * should not block for long time.
+    * 
+    * @param config - configuration whose settings have changed and which is 
+    *                 now the default configuration
+    */
+   void configurationChanged(
+      Config config
+   );
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2003 - 2016 OpenSubsystems.com/net/org and its owners. All rights reserved.
+ * 
+ * This file is part of OpenSubsystems.
+ *
+ * OpenSubsystems is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+
+package org.opensubsystems.core.util;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Precomputed index of classes, which should be instantiated by the class 
+ * factories for given class identifiers. Without the index the class factories
+ * have to speculatively try to load several classes, whose names they derive
+ * from the class identifier, until they find one that exists. For application 
+ * consisting of many modules this can noticeably slow down the startup. 
+ * 
+ * The index is optional and it is built from two sources:
+ * 1. all files META-INF/opensubsystems/implementations.properties found on the
+ *    class path, which can be generated by the build
+ * 2. all ImplementationIndexProvider implementations registered with the 
+ *    java.util.ServiceLoader, which can be for example generated by an 
+ *    annotation processor
+ * The key in the index is the class identifier optionally followed by dot and 
+ * lower case modifier, e.g. database type, the same way as the class names 
+ * are configured in the configuration file. The value is name of the class to 
+ * instantiate. The class configured in the configuration file always takes 
+ * precedence over the class found in the index.  
+ * 
+ * @author bastafidli
+ */
+public final class ImplementationIndex
+{
+   // Constants ////////////////////////////////////////////////////////////////
+   
+   /**
+    * Name of the files on the class path containing the index.
+    */
+   public static final String INDEX_FILE_NAME 
+                                 = "META-INF/opensubsystems/implementations.properties";
+   
+   /**
+    * Lock used in synchronized sections.
+    */
+   private static final ReentrantLock IMPL_LOCK = new ReentrantLock();
+
+   // Cached values ////////////////////////////////////////////////////////////
+
+   /**
+    * Logger for this class
+    */
+   private static Logger s_logger = Log.getInstance(ImplementationIndex.class);
+   
+   /**
+    * The loaded index or null if it wasn't loaded yet. Key is the class 
+    * identifier optionally followed by dot and lower case modifier and value
+    * is the class name.
+    */
+   private static volatile Map<String, String> s_mpImplementations = null;
+   
+   // Constructors /////////////////////////////////////////////////////////////
+   
+   /** 
+    * Private constructor since this class cannot be instantiated
+    */
+   private ImplementationIndex(
+   )
+   {
+      // Do nothing
+   }
+   
+   // Logic ////////////////////////////////////////////////////////////////////
+   
+   /**
+    * Get name of the class, which should be instantiated for the specified 
+    * class identifier and modifier.
+    * 
+    * @param strClassIdentifier - identifier of the class for which new instance  
+    *                              should be created
+    * @param strModifier - modifier used together with identifier or null if 
+    *                      none is available
+    * @return String - name of the class to instantiate or null if the index 
+    *                  doesn't contain any
+    */
+   public static String getImplementation(
+      String strClassIdentifier,
+      String strModifier
+   )
+   {
+      Map<String, String> mpImplementations = getImplementations();
+      String              strClassName = null;
+      
+      if (!mpImplementations.isEmpty())
+      {
+         if (strModifier != null)
+         {
+            // Do not fall back to the class for the identifier without the 
+            // modifier since the class factory may find more specific class
+            // for the modifier
+            strClassName = mpImplementations.get(strClassIdentifier + "." 
+                                                 + strModifier.toLowerCase());
+         }
+         else
+         {
+            strClassName = mpImplementations.get(strClassIdentifier);
+         }
+      }
+      
+      return strClassName;
+   }
+   
+   // Helper methods ///////////////////////////////////////////////////////////
+
+   /**
+    * Get the index and load it if it wasn't loaded yet.
+    * 
+    * @return Map - the index, never null
+    */
+   private static Map<String, String> getImplementations(
+   )
+   {
+      if (s_mpImplementations == null)
+      {
+         IMPL_LOCK.lock();
+         try
+         {
+            if (s_mpImplementations == null)
+            {
+               s_mpImplementations = loadImplementations();
+            }
+         }
+         finally
+         {
+            IMPL_LOCK.unlock();
+         }
+      }
+      
+      return s_mpImplementations;
+   }
+   
+   /**
+    * Load the index from all available sources.
+    * 
+    * @return Map - the loaded index, never null
+    */
+   private static Map<String, String> loadImplementations(
+   )
+   {
+      Map<String, String> mpImplementations = new HashMap<>();
+      ClassLoader         classLoader = ImplementationIndex.class.getClassLoader();
+      
+      try
+      {
+         Enumeration<URL> indexFiles = classLoader.getResources(INDEX_FILE_NAME);
+         
+         while (indexFiles.hasMoreElements())
+         {
+            loadIndexFile(indexFiles.nextElement(), mpImplementations);
+         }
+      }
+      catch (IOException ioeExc)
+      {
+         s_logger.log(Level.WARNING, "Cannot find implementation index files.", 
+                      ioeExc);
+      }
+      
+      try
+      {
+         for (ImplementationIndexProvider provider 
+              : ServiceLoader.load(ImplementationIndexProvider.class, classLoader))
+         {
+            mpImplementations.putAll(provider.getImplementations());
+         }
+      }
+      catch (ServiceConfigurationError sceExc)
+      {
+         s_logger.log(Level.WARNING, "Cannot load implementation index provider.", 
+                      sceExc);
+      }
+      s_logger.log(Level.FINE, "Implementation index contains {0} classes.", 
+                   mpImplementations.size());
+      
+      return Collections.unmodifiableMap(mpImplementations);
+   }
+   
+   /**
+    * Load single file containing the index.
+    * 
+    * @param urlIndexFile - file to load
+    * @param mpImplementations - index where to add the loaded classes
+    */
+   private static void loadIndexFile(
+      URL                 urlIndexFile,
+      Map<String, String> mpImplementations
+   )
+   {
+      InputStream isIndexFile = null;
+      Properties  prpIndex = new Properties();
+      
+      try
+      {
+         isIndexFile = new BufferedInputStream(urlIndexFile.openStream());
+         prpIndex.load(isIndexFile);
+         for (String strKey : prpIndex.stringPropertyNames())
+         {
+            mpImplementations.put(strKey, prpIndex.getProperty(strKey).trim());
+         }
+      }
+      catch (IOException ioeExc)
+      {
+         s_logger.log(Level.WARNING, "Cannot load implementation index file " 
+                      + urlIndexFile, ioeExc);
+      }
+      finally
+      {
+         if (isIndexFile != null)
+         {
+            try
+            {
+               isIndexFile.close();
+            }
+            catch (IOException ioeExc)
+            {
+               // Ignore this
+               s_logger.log(Level.WARNING, 
+                            "Failed to close implementation index file.", 
+                            ioeExc);
+            }
+         }
+      }
+   }
+}
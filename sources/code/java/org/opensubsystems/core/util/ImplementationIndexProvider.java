@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2003 - 2016 OpenSubsystems.com/net/org and its owners. All rights reserved.
+ * 
+ * This file is part of OpenSubsystems.
+ *
+ * OpenSubsystems is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+
+package org.opensubsystems.core.util;
+
+import java.util.Map;
+
+/**
+ * Interface implemented by classes providing precomputed mapping of class
+ * identifiers to the classes, which should be instantiated for them by the 
+ * class factories. Such class can be for example generated during the build 
+ * and it is found using java.util.ServiceLoader, therefore it has to be listed
+ * in file META-INF/services/org.opensubsystems.core.util.ImplementationIndexProvider.
+ * 
+ * @author bastafidli
+ * @see ImplementationIndex
+ */
+public interface ImplementationIndexProvider
+{
+   /**
+    * Get the mapping of class identifiers to the implementation classes. 
+    * 
+    * @return Map - key is the class identifier optionally followed by dot and 
+    *               lower case modifier, e.g. database type, and value is name
+    *               of the class to instantiate
+    */
+   Map<String, String> getImplementations(
+   );
+}
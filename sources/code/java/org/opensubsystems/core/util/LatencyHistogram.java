@@ -0,0 +1,315 @@
+/*
+ * Copyright (C) 2003 - 2016 OpenSubsystems.com/net/org and its owners. All rights reserved.
+ * 
+ * This file is part of OpenSubsystems.
+ *
+ * OpenSubsystems is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+
+package org.opensubsystems.core.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of durations of some repeated activity, e.g. how long it takes to
+ * get a database connection. The durations are counted in buckets with
+ * exponentially growing limits so that the histogram has fixed small size
+ * regardless of how many values were recorded.
+ *
+ * Values can be recorded concurrently from many threads without any locking.
+ * The statistics computed from the histogram are not an atomic snapshot and
+ * may not include values being recorded at the same time.
+ *
+ * @author bastafidli
+ */
+public class LatencyHistogram extends OSSObject
+{
+   // Constants ////////////////////////////////////////////////////////////////
+
+   /**
+    * Upper limits of the buckets in microseconds. The last bucket which is not
+    * listed here collects all values larger than the last limit.
+    */
+   private static final long[] BUCKET_LIMITS = {50L, 100L, 250L, 500L,
+                                               1000L, 2500L, 5000L, 10000L,
+                                               25000L, 50000L, 100000L,
+                                               250000L, 500000L, 1000000L,
+                                               2500000L, 5000000L, 10000000L,
+                                               30000000L,
+                                              };
+
+   // Attributes ///////////////////////////////////////////////////////////////
+
+   /**
+    * How many values fell into each of the buckets.
+    */
+   protected AtomicLongArray m_arrBucketCounts;
+
+   /**
+    * How many values were recorded.
+    */
+   protected AtomicLong m_lCount;
+
+   /**
+    * Sum of all recorded values in nanoseconds.
+    */
+   protected AtomicLong m_lTotal;
+
+   /**
+    * Largest recorded value in nanoseconds.
+    */
+   protected AtomicLong m_lMaximum;
+
+   // Constructors /////////////////////////////////////////////////////////////
+
+   /**
+    * Default constructor.
+    */
+   public LatencyHistogram(
+   )
+   {
+      super();
+
+      m_arrBucketCounts = new AtomicLongArray(BUCKET_LIMITS.length + 1);
+      m_lCount = new AtomicLong(0);
+      m_lTotal = new AtomicLong(0);
+      m_lMaximum = new AtomicLong(0);
+   }
+
+   // Logic ////////////////////////////////////////////////////////////////////
+
+   /**
+    * Record single duration.
+    *
+    * @param lDuration - duration in nanoseconds
+    */
+   public void record(
+      long lDuration
+   )
+   {
+      long lMicros = TimeUnit.NANOSECONDS.toMicros(lDuration);
+      int  iBucket = 0;
+      long lMaximum;
+
+      while ((iBucket < BUCKET_LIMITS.length) && (lMicros > BUCKET_LIMITS[iBucket]))
+      {
+         iBucket++;
+      }
+      m_arrBucketCounts.incrementAndGet(iBucket);
+      m_lCount.incrementAndGet();
+      m_lTotal.addAndGet(lDuration);
+      do
+      {
+         lMaximum = m_lMaximum.get();
+      }
+      while ((lDuration > lMaximum)
+             && (!m_lMaximum.compareAndSet(lMaximum, lDuration)));
+   }
+
+   /**
+    * Record duration of activity, which started at the specified time.
+    *
+    * @param lStartTime - time in nanoseconds as returned by System.nanoTime
+    *                     when the activity started
+    * @return long - recorded duration in nanoseconds
+    */
+   public long recordSince(
+      long lStartTime
+   )
+   {
+      long lDuration = System.nanoTime() - lStartTime;
+
+      record(lDuration);
+
+      return lDuration;
+   }
+
+   /**
+    * @return long - how many values were recorded
+    */
+   public long getCount(
+   )
+   {
+      return m_lCount.get();
+   }
+
+   /**
+    * @return double - average of recorded values in milliseconds
+    */
+   public double getMean(
+   )
+   {
+      long   lCount = m_lCount.get();
+      double dMean = 0;
+
+      if (lCount > 0)
+      {
+         dMean = toMillis(m_lTotal.get()) / lCount;
+      }
+
+      return dMean;
+   }
+
+   /**
+    * @return double - largest recorded value in milliseconds
+    */
+   public double getMaximum(
+   )
+   {
+      return toMillis(m_lMaximum.get());
+   }
+
+   /**
+    * Estimate value, which is larger than the specified percentage of recorded
+    * values. Since the values are counted in buckets, the estimate is the upper
+    * limit of the bucket in which the percentile falls, but never more than the
+    * largest recorded value.
+    *
+    * @param dPercentile - percentile to estimate, e.g. 99 for 99th percentile
+    * @return double - estimated percentile in milliseconds
+    */
+   public double getPercentile(
+      double dPercentile
+   )
+   {
+      return getPercentile(getBucketCounts(), dPercentile);
+   }
+
+   /**
+    * Estimate percentile from bucket counts, e.g. obtained as difference of
+    * two calls of getBucketCounts so that the percentile represents only the
+    * values recorded between these two calls.
+    *
+    * @param arrBucketCounts - counts of values in each bucket
+    * @param dPercentile - percentile to estimate, e.g. 99 for 99th percentile
+    * @return double - estimated percentile in milliseconds
+    */
+   public double getPercentile(
+      long[] arrBucketCounts,
+      double dPercentile
+   )
+   {
+      long   lCount = 0;
+      long   lRank;
+      long   lSeen = 0;
+      double dResult = 0;
+
+      for (long lBucketCount : arrBucketCounts)
+      {
+         lCount += lBucketCount;
+      }
+      if (lCount > 0)
+      {
+         lRank = (long)Math.ceil(lCount * dPercentile / 100.0);
+         for (int iBucket = 0; iBucket < arrBucketCounts.length; iBucket++)
+         {
+            lSeen += arrBucketCounts[iBucket];
+            if (lSeen >= lRank)
+            {
+               dResult = getMaximum();
+               if (iBucket < BUCKET_LIMITS.length)
+               {
+                  dResult = Math.min(dResult, BUCKET_LIMITS[iBucket] / 1000.0);
+               }
+               break;
+            }
+         }
+      }
+
+      return dResult;
+   }
+
+   /**
+    * @return long[] - upper limits of the buckets in microseconds. The last 
+    *                  bucket which is not listed here collects all values 
+    *                  larger than the last limit. The returned array is a copy
+    *                  and can be modified by the caller.
+    */
+   public static long[] getBucketLimits(
+   )
+   {
+      return BUCKET_LIMITS.clone();
+   }
+
+   /**
+    * @return long[] - how many values fell into each of the buckets. Value at
+    *                  index i is count of values smaller or equal to
+    *                  getBucketLimits()[i] and larger than the previous limit. The
+    *                  last value is count of all values larger than the last
+    *                  limit.
+    */
+   public long[] getBucketCounts(
+   )
+   {
+      long[] arrCounts = new long[m_arrBucketCounts.length()];
+
+      for (int iIndex = 0; iIndex < arrCounts.length; iIndex++)
+      {
+         arrCounts[iIndex] = m_arrBucketCounts.get(iIndex);
+      }
+
+      return arrCounts;
+   }
+
+   /**
+    * Forget all recorded values.
+    */
+   public void reset(
+   )
+   {
+      for (int iIndex = 0; iIndex < m_arrBucketCounts.length(); iIndex++)
+      {
+         m_arrBucketCounts.set(iIndex, 0);
+      }
+      m_lCount.set(0);
+      m_lTotal.set(0);
+      m_lMaximum.set(0);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void toString(
+      StringBuilder sb,
+      int           ind
+   )
+   {
+      append(sb, ind + 0, "LatencyHistogram[");
+      append(sb, ind + 1, "count = ", getCount());
+      append(sb, ind + 1, "mean = ", getMean());
+      append(sb, ind + 1, "50% = ", getPercentile(50));
+      append(sb, ind + 1, "95% = ", getPercentile(95));
+      append(sb, ind + 1, "99% = ", getPercentile(99));
+      append(sb, ind + 1, "maximum = ", getMaximum());
+      append(sb, ind + 0, "]");
+   }
+
+   // Helper methods ///////////////////////////////////////////////////////////
+
+   /**
+    * Convert nanoseconds to fractional milliseconds.
+    *
+    * @param lNanos - value in nanoseconds
+    * @return double - value in milliseconds
+    */
+   protected static double toMillis(
+      long lNanos
+   )
+   {
+      return lNanos / 1000000.0;
+   }
+}
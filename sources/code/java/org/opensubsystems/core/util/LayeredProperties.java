@@ -0,0 +1,458 @@
+/*
+ * Copyright (C) 2003 - 2016 OpenSubsystems.com/net/org and its owners. All rights reserved.
+ * 
+ * This file is part of OpenSubsystems.
+ *
+ * OpenSubsystems is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+
+package org.opensubsystems.core.util;
+
+import java.io.IOException;
+import java.io.ObjectStreamException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Read view of several layers of properties, which looks up each requested 
+ * property in the layers from the top one to the bottom one without copying 
+ * the properties from all the layers into a single object. This makes the 
+ * lookup of a single property proportional only to the number of layers and 
+ * not to the number of properties in them.
+ * 
+ * Properties set using put or setProperty are stored in this object and take
+ * precedence over the ones in the layers, the layers themselves are never 
+ * modified. Operations, which need to see all the properties at once, such as 
+ * iteration, removal or storing of the properties, first copy the properties 
+ * from all the layers into this object and from that point on this object 
+ * behaves as regular properties. 
+ * 
+ * @author bastafidli
+ */
+public class LayeredProperties extends Properties
+{
+   // Constants ////////////////////////////////////////////////////////////////
+
+   /**
+    * Serial version id for this class.
+    */
+   private static final long serialVersionUID = -4183520950772431604L;
+
+   // Attributes ///////////////////////////////////////////////////////////////
+   
+   /**
+    * Layers of properties ordered from the top one, which takes precedence, 
+    * to the bottom one. It is null once the properties from the layers were 
+    * copied into this object.
+    */
+   private transient volatile Properties[] m_arrLayers;
+   
+   // Constructors /////////////////////////////////////////////////////////////
+   
+   /**
+    * Constructor.
+    * 
+    * @param lstLayers - layers of properties ordered from the bottom one to the
+    *                    top one, which takes precedence. The list is not 
+    *                    retained but the layers are therefore they should not
+    *                    be modified while this object is used. 
+    */
+   public LayeredProperties(
+      List<Properties> lstLayers
+   )
+   {
+      super();
+      
+      int iCount = lstLayers.size();
+      
+      m_arrLayers = new Properties[iCount];
+      for (int iIndex = 0; iIndex < iCount; iIndex++)
+      {
+         m_arrLayers[iCount - 1 - iIndex] = lstLayers.get(iIndex);
+      }
+   }
+   
+   // Logic ////////////////////////////////////////////////////////////////////
+   
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public String getProperty(
+      String strKey
+   )
+   {
+      // Read the layers first since if they were already copied into this 
+      // object, the value has to be found there
+      Properties[] arrLayers = m_arrLayers;
+      String       strValue = super.getProperty(strKey);
+      
+      if ((strValue == null) && (arrLayers != null))
+      {
+         for (int iIndex = 0; (iIndex < arrLayers.length) && (strValue == null); 
+              iIndex++)
+         {
+            strValue = arrLayers[iIndex].getProperty(strKey);
+         }
+      }
+      
+      return strValue;
+   }
+   
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public Object get(
+      Object key
+   )
+   {
+      flatten();
+      return super.get(key);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public boolean containsKey(
+      Object key
+   )
+   {
+      flatten();
+      return super.containsKey(key);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public boolean contains(
+      Object value
+   )
+   {
+      flatten();
+      return super.contains(value);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public boolean containsValue(
+      Object value
+   )
+   {
+      flatten();
+      return super.containsValue(value);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public Object remove(
+      Object key
+   )
+   {
+      flatten();
+      return super.remove(key);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public int size(
+   )
+   {
+      flatten();
+      return super.size();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public boolean isEmpty(
+   )
+   {
+      flatten();
+      return super.isEmpty();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public Enumeration<Object> keys(
+   )
+   {
+      flatten();
+      return super.keys();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public Enumeration<Object> elements(
+   )
+   {
+      flatten();
+      return super.elements();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public Set<Object> keySet(
+   )
+   {
+      flatten();
+      return super.keySet();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public Set<Map.Entry<Object, Object>> entrySet(
+   )
+   {
+      flatten();
+      return super.entrySet();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public Collection<Object> values(
+   )
+   {
+      flatten();
+      return super.values();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public Enumeration<?> propertyNames(
+   )
+   {
+      flatten();
+      return super.propertyNames();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public Set<String> stringPropertyNames(
+   )
+   {
+      flatten();
+      return super.stringPropertyNames();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void store(
+      OutputStream out,
+      String       comments
+   ) throws IOException
+   {
+      flatten();
+      super.store(out, comments);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void store(
+      Writer writer,
+      String comments
+   ) throws IOException
+   {
+      flatten();
+      super.store(writer, comments);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void storeToXML(
+      OutputStream os,
+      String       comment
+   ) throws IOException
+   {
+      flatten();
+      super.storeToXML(os, comment);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void storeToXML(
+      OutputStream os,
+      String       comment,
+      String       encoding
+   ) throws IOException
+   {
+      flatten();
+      super.storeToXML(os, comment, encoding);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void list(
+      PrintStream out
+   )
+   {
+      flatten();
+      super.list(out);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void list(
+      PrintWriter out
+   )
+   {
+      flatten();
+      super.list(out);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public Object clone(
+   )
+   {
+      flatten();
+      return super.clone();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public boolean equals(
+      Object obj
+   )
+   {
+      flatten();
+      return super.equals(obj);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public int hashCode(
+   )
+   {
+      flatten();
+      return super.hashCode();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public String toString(
+   )
+   {
+      flatten();
+      return super.toString();
+   }
+
+   // Helper methods ///////////////////////////////////////////////////////////
+   
+   /**
+    * Copy the properties from all the layers into this object unless it was 
+    * already done. The properties which were set directly in this object 
+    * keep their values. 
+    */
+   protected void flatten(
+   )
+   {
+      if (m_arrLayers != null)
+      {
+         synchronized (this)
+         {
+            Properties[] arrLayers = m_arrLayers;
+            
+            if (arrLayers != null)
+            {
+               Properties prpCollected = new Properties();
+               
+               for (int iIndex = arrLayers.length - 1; iIndex >= 0; iIndex--)
+               {
+                  for (String strKey : arrLayers[iIndex].stringPropertyNames())
+                  {
+                     prpCollected.put(strKey, 
+                                      arrLayers[iIndex].getProperty(strKey));
+                  }
+               }
+               for (Map.Entry<Object, Object> entry : super.entrySet())
+               {
+                  prpCollected.put(entry.getKey(), entry.getValue());
+               }
+               super.putAll(prpCollected);
+               m_arrLayers = null;
+            }
+         }
+      }
+   }
+   
+   /**
+    * Serialize the properties as regular properties containing the properties
+    * from all the layers.
+    * 
+    * @return Object - object to serialize instead of this one
+    * @throws ObjectStreamException - an error has occurred
+    */
+   protected Object writeReplace(
+   ) throws ObjectStreamException
+   {
+      Properties prpCopy = new Properties();
+      
+      flatten();
+      prpCopy.putAll(this);
+      
+      return prpCopy;
+   }
+}
@@ -22,6 +22,8 @@ package org.opensubsystems.core.util;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.opensubsystems.core.error.OSSException;
 import org.opensubsystems.core.error.OSSInvalidContextException;
@@ -53,6 +55,76 @@ import org.opensubsystems.core.error.OSSInvalidContextException;
  */
 public class MultiConfig extends Config
 {
+   // Inner classes ////////////////////////////////////////////////////////////
+  
+   /**
+    * Combination of property objects, which are equal only if they consist of
+    * the same property objects in the same order. The content of the property
+    * objects is not compared since it can be large and the current properties 
+    * are not expected to change once they are set.
+    */
+   protected static class Layers
+   {
+      /**
+       * Property objects in this combination.
+       */
+      private final Properties[] m_arrLayers;
+     
+      /**
+       * Constructor.
+       * 
+       * @param lstLayers - property objects in this combination
+       */
+      public Layers(
+         List<Properties> lstLayers
+      )
+      {
+         m_arrLayers = lstLayers.toArray(new Properties[lstLayers.size()]);
+      }
+     
+      /**
+       * {@inheritDoc}
+       */
+      @Override
+      public boolean equals(
+         Object obj
+      )
+      {
+         boolean bEquals = false;
+        
+         if (obj instanceof Layers)
+         {
+            Properties[] arrOther = ((Layers)obj).m_arrLayers;
+           
+            bEquals = (arrOther.length == m_arrLayers.length);
+            for (int iIndex = 0; (bEquals) && (iIndex < m_arrLayers.length); 
+                 iIndex++)
+            {
+               bEquals = (arrOther[iIndex] == m_arrLayers[iIndex]);
+            }
+         }
+        
+         return bEquals;
+      }
+     
+      /**
+       * {@inheritDoc}
+       */
+      @Override
+      public int hashCode(
+      )
+      {
+         int iHashCode = 1;
+        
+         for (Properties layer : m_arrLayers)
+         {
+            iHashCode = 31 * iHashCode + System.identityHashCode(layer);
+         }
+        
+         return iHashCode;
+      }
+   }
+
    // Attributes ///////////////////////////////////////////////////////////////
    
    /**
@@ -76,6 +148,24 @@ public class MultiConfig extends Config
     */
    private ThreadLocal<List<Properties>> m_currentConfig; 
 
+   /**
+    * Version of the configuration settings set for each thread by the last call
+    * to setCurrentProperties or resetCurrentProperties or null if the thread
+    * doesn't have any current properties. The child thread inherits the 
+    * version together with the copy of the parent's list since they contain 
+    * the same settings.
+    */
+   private ThreadLocal<Long> m_currentVersion; 
+
+   /**
+    * Versions issued for the combinations of current properties. Key is the 
+    * combination of the property objects set by setCurrentProperties and 
+    * value is the version. The same combination is set again for example for
+    * every request processed by the same servlet, so it gets the same version 
+    * and the values cached for the settings do not have to be read again.
+    */
+   private ConcurrentMap<Layers, Long> m_mpLayerVersions;
+
    // Constructors /////////////////////////////////////////////////////////////
    
    /**
@@ -182,6 +272,8 @@ public class MultiConfig extends Config
             return childList;
          }   
       };
+      m_currentVersion = new InheritableThreadLocal<>();
+      m_mpLayerVersions = new ConcurrentHashMap<>();
    }
    
    // Logic ////////////////////////////////////////////////////////////////////
@@ -226,6 +318,7 @@ public class MultiConfig extends Config
      // Add it just after the default properties (it will the the second element 
      // in the list)
      lstConfigs.add(1, currentProperties);
+     m_currentVersion.set(getLayerVersion(lstConfigs));
   }
   
   /** 
@@ -272,6 +365,7 @@ public class MultiConfig extends Config
            else
            {
               lstConfigs.remove(1);
+              m_currentVersion.set(getLayerVersion(lstConfigs));
            }
         }
         else
@@ -290,14 +384,19 @@ public class MultiConfig extends Config
 
   /**
    * {@inheritDoc}
+   * 
+   * The returned properties are a view, which looks up each property in all 
+   * the current layers of configuration settings in the order described 
+   * above without copying them together. Any properties set in the returned 
+   * object do not affect the configuration.
    */
   @Override
   public Properties getProperties(
   )
   {
-     Properties collectedProperties = new Properties();
-
+     Properties       collectedProperties = null;
      List<Properties> lstConfigs = m_currentConfig.get();
+     
      if ((lstConfigs == null) || (lstConfigs.isEmpty()))
      {
         if (m_prpDefaultProperties == null)
@@ -305,7 +404,7 @@ public class MultiConfig extends Config
            // There are no default properties so just directly return the 
            // properties from super class
            collectedProperties = super.getProperties();
-           // Set to null to skip the loop below
+           // Set to null to skip the view below
            lstConfigs = null;
         }
         else
@@ -316,17 +415,71 @@ public class MultiConfig extends Config
      
      if (lstConfigs != null)
      {
-        // Just collect all the objects and let the later ones overwrite the
-        // older ones. This way the default properties will be first, then the
-        // latest context, context before that and all the way through the 
-        // predefined properties or properties from external file
-        for (Properties props : lstConfigs)
+        List<Properties> lstLayers = new ArrayList<>(lstConfigs);
+        
+        // The list of the thread was created before and since then the 
+        // properties from the external file might have been reloaded and 
+        // replaced so always use the current ones. They are the last element 
+        // of the list
+        lstLayers.set(lstLayers.size() - 1, super.getProperties());
+        // The later ones in the list take precedence over the older ones. This 
+        // way the default properties will be last, then the latest context, 
+        // context before that and all the way through the predefined 
+        // properties or properties from external file
+        collectedProperties = new LayeredProperties(lstLayers);
+     }
+     
+     return collectedProperties;
+  }
+  
+  /**
+   * {@inheritDoc}
+   * 
+   * The properties returned by getProperties are just a view so the property
+   * is set in the predefined properties or in the properties from external 
+   * file, which take precedence over all the other layers.
+   */
+  @Override
+  public void setProperty(
+     String strName,
+     String strValue
+  )
+  {
+     super.getProperties().setProperty(strName, strValue);
+     m_lVersion = nextVersion();
+  }
+  
+  /**
+   * {@inheritDoc}
+   * 
+   * The version also reflects the current properties set by the current 
+   * thread. Each combination of current properties has its own version, 
+   * which is issued after the underlying properties changed for the last 
+   * time, therefore the version changes every time either of them changes
+   * but it doesn't change when the same current properties are set again.
+   */
+  @Override
+  public long getVersion(
+  )
+  {
+     long lVersion = super.getVersion();
+     Long lCurrentVersion = m_currentVersion.get();
+     
+     if (lCurrentVersion != null)
+     {
+        if (lCurrentVersion.longValue() < lVersion)
+        {
+           // The underlying properties changed since the version was issued
+           lCurrentVersion = getLayerVersion(m_currentConfig.get());
+           m_currentVersion.set(lCurrentVersion);
+        }
+        if (lCurrentVersion != null)
         {
-           collectedProperties.putAll(props);
+           lVersion = lCurrentVersion.longValue();
         }
      }
      
-     return collectedProperties;
+     return lVersion;
   }
   
   // Helper methods ////////////////////////////////////////////////////////////
@@ -350,4 +503,45 @@ public class MultiConfig extends Config
      
      return lstInitialConfigs;
   }
+  
+  /**
+   * Get version of the configuration settings consisting of the specified 
+   * list of properties. The same version is returned for the same current
+   * properties as long as the underlying properties do not change.
+   * 
+   * @param lstConfigs - list of configuration settings of the current thread,
+   *                     first will be the default properties followed by the 
+   *                     current properties and the properties from the super 
+   *                     class
+   * @return Long - version of the configuration settings or null if there are
+   *                no current properties and the version of the underlying 
+   *                properties should be used
+   */
+  protected Long getLayerVersion(
+     List<Properties> lstConfigs
+  )
+  {
+     Long lVersion = null;
+     
+     if ((lstConfigs != null) && (lstConfigs.size() > 2))
+     {
+        Layers layers;
+        long   lBaseVersion = super.getVersion();
+        
+        // The properties from the super class can be replaced when they are 
+        // reloaded so identify the combination only by the current properties
+        layers = new Layers(lstConfigs.subList(1, lstConfigs.size() - 1));
+        lVersion = m_mpLayerVersions.get(layers);
+        if ((lVersion == null) || (lVersion.longValue() < lBaseVersion))
+        {
+           // All versions are issued in increasing order so this one will be 
+           // different from version of the underlying properties and of any 
+           // other combination of current properties
+           lVersion = nextVersion();
+           m_mpLayerVersions.put(layers, lVersion);
+        }
+     }
+     
+     return lVersion;
+  }
 }
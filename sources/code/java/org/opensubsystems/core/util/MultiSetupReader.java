@@ -114,6 +114,7 @@ public abstract class MultiSetupReader extends SetupReader
       parameter = m_mpRegisteredParameters.get(strParameterName);
       if (parameter != null)
       {
+         discardChangedValues();
          // Try to get parameter value from cached values
          objRetval = m_mpRegisteredParametersValues.get(strParameterName);
          if (objRetval == null)
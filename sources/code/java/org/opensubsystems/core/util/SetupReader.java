@@ -170,6 +170,15 @@ public abstract class SetupReader extends OSSObject
     */
    protected Map<String, Object> m_mpRegisteredParametersValues;
 
+   /**
+    * Number of changes of the default configuration at the time when the values
+    * of the parameters were cached. When the configuration changes, the cached
+    * values are discarded and read again.
+    * 
+    * @see Config#getChangeCount
+    */
+   protected long m_lConfigChangeCount;
+
    // Constructors /////////////////////////////////////////////////////////////
    
    /**
@@ -216,6 +225,7 @@ public abstract class SetupReader extends OSSObject
       m_mpRegisteredParameters = mpRegisteredParameters;
       // Here will be cached configuration values for current reader
       m_mpRegisteredParametersValues = new HashMap<>();
+      m_lConfigChangeCount = Config.getChangeCount();
 
       if (mpRegisteredParameters.isEmpty())
       {
@@ -248,6 +258,7 @@ public abstract class SetupReader extends OSSObject
       parameter = m_mpRegisteredParameters.get(strParameterName);
       if (parameter != null)
       {
+         discardChangedValues();
          // Try to get parameter value from cached values
          objRetval = m_mpRegisteredParametersValues.get(strParameterName);
          if (objRetval == null)
@@ -386,6 +397,22 @@ public abstract class SetupReader extends OSSObject
 
    // Helper methods ///////////////////////////////////////////////////////////
 
+   /**
+    * Discard the cached values of the parameters if the default configuration 
+    * has changed since they were cached so that they are read again. 
+    */
+   protected void discardChangedValues(
+   )
+   {
+      long lConfigChangeCount = Config.getChangeCount();
+      
+      if (lConfigChangeCount != m_lConfigChangeCount)
+      {
+         m_mpRegisteredParametersValues = new HashMap<>();
+         m_lConfigChangeCount = lConfigChangeCount;
+      }
+   }
+
    /**
     * Register parameters which will be read from the property file with this
     * reader. This method will try to read from the property file value common
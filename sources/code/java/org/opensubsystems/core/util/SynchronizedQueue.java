@@ -21,11 +21,16 @@ package org.opensubsystems.core.util;
 
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Class that represents unlimited queue, that is synchronized. It means that
  * the consumer of the objects from the queue waits/is blocked in the get 
  * method until there is an object available.
+ * 
+ * The queue is guarded by java.util.concurrent lock instead of the monitor of 
+ * this object so that the waiting consumers do not occupy monitors.
  *
  * @author bastafidli
  */
@@ -38,6 +43,16 @@ public class SynchronizedQueue<T> extends OSSObject
     */
    protected List<T> m_lstObjects;
 
+   /**
+    * Lock guarding access to the queue.
+    */
+   protected final ReentrantLock m_lock;
+   
+   /**
+    * Condition signaled when new object is put into the queue.
+    */
+   protected final Condition m_notEmpty;
+   
    // Constructors /////////////////////////////////////////////////////////////
    
    /**
@@ -49,6 +64,8 @@ public class SynchronizedQueue<T> extends OSSObject
       super();
 
       m_lstObjects = new LinkedList<>();
+      m_lock = new ReentrantLock();
+      m_notEmpty = m_lock.newCondition();
    }
 
    // Logic ////////////////////////////////////////////////////////////////////
@@ -63,35 +80,30 @@ public class SynchronizedQueue<T> extends OSSObject
     *                                   function and you call interrupt method,
     *                                   an InterruptedException will be thrown.
     */
-   public synchronized T get(
+   public T get(
    ) throws InterruptedException
    {
       T objReturn;
 
-      if (m_lstObjects.isEmpty())
+      m_lock.lock();
+      try
       {
-         // There is no object in the queue, go to sleep
-         try
-         {
-            wait();
-         }
-         catch (InterruptedException ieException)
+         while (m_lstObjects.isEmpty())
          {
-            // Somebody woke us up, that means all threads waiting on this
-            // object competed for the lock and this one won and the object is
-            // locked again
-            // The thread can be woken up in two conditions, producer put new
-            // object into the queue or somebody called interrupt - to interrupt
-            // the wait - in this case rethrow an exception
-            if (m_lstObjects.isEmpty())
-            {
-               throw ieException;
-            }
+            // There is no object in the queue, go to sleep. The thread can be 
+            // woken up when producer put new object into the queue, but 
+            // another consumer may have taken it already so check again. If 
+            // somebody called interrupt the exception is propagated.
+            m_notEmpty.await();
          }
-      }
 
-      // Remove the first object in the queue
-      objReturn = m_lstObjects.remove(0);
+         // Remove the first object in the queue
+         objReturn = m_lstObjects.remove(0);
+      }
+      finally
+      {
+         m_lock.unlock();
+      }
 
       return objReturn;
    }
@@ -101,13 +113,21 @@ public class SynchronizedQueue<T> extends OSSObject
     *
     * @param objNew - new object, can be null
     */
-   public synchronized void put(
+   public void put(
       T objNew
    )
    {
-      m_lstObjects.add(objNew);
-      // New object in the queue, notify others
-      notifyAll();
+      m_lock.lock();
+      try
+      {
+         m_lstObjects.add(objNew);
+         // New object in the queue, notify others
+         m_notEmpty.signalAll();
+      }
+      finally
+      {
+         m_lock.unlock();
+      }
    }
 
    /**
@@ -115,9 +135,17 @@ public class SynchronizedQueue<T> extends OSSObject
     *
     * @return boolean - true if the queue is empty
     */
-   public synchronized boolean isEmpty(
+   public boolean isEmpty(
    )
    {
-      return m_lstObjects.isEmpty();
+      m_lock.lock();
+      try
+      {
+         return m_lstObjects.isEmpty();
+      }
+      finally
+      {
+         m_lock.unlock();
+      }
    }
 }
@@ -0,0 +1,1527 @@
+/*
+ * Copyright (C) 2003 - 2016 OpenSubsystems.com/net/org and its owners. All rights reserved.
+ * 
+ * This file is part of OpenSubsystems.
+ *
+ * OpenSubsystems is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+
+package org.opensubsystems.core.util.jdbc;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.net.URL;
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.NClob;
+import java.sql.ParameterMetaData;
+import java.sql.PreparedStatement;
+import java.sql.Ref;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.RowId;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.sql.SQLXML;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Calendar;
+
+/**
+ * Prepared statement handed out by PreparedStatementCache. All calls are 
+ * delegated to the underlying prepared statement except for closing of the 
+ * statement, which returns the underlying statement back to the cache so that
+ * it can be reused next time the same SQL is prepared.
+ * 
+ * The settings of the underlying statement changed by the caller are 
+ * remembered so that they can be restored before the statement is reused. 
+ * If the caller changes setting, which cannot be restored, the statement is
+ * not reused.
+ *
+ * @author bastafidli
+ */
+public class PooledPreparedStatement implements PreparedStatement
+{
+   // Attributes ///////////////////////////////////////////////////////////////
+   
+   /**
+    * Underlying prepared statement to which all method calls are delegated.
+    */
+   private PreparedStatement m_statement;
+
+   /**
+    * Key identifying the statement in the cache.
+    */
+   private String m_strKey;
+
+   /**
+    * Cache, which handed out this statement and to which it will be returned
+    * when it is closed.
+    */
+   private PreparedStatementCache m_cache;
+
+   /**
+    * Connection, which will be reported as the one which created this 
+    * statement or null if it is the connection of the underlying statement. 
+    */
+   private Connection m_ownerConnection;
+
+   /**
+    * Flag signaling that the statement was closed by the caller and returned
+    * to the cache.
+    */
+   private boolean m_bClosed;
+
+   /**
+    * Flag signaling that the caller didn't change any setting of the statement
+    * which cannot be restored so the statement can be reused.
+    */
+   private boolean m_bReusable;
+
+   /**
+    * Fetch size of the underlying statement before the caller changed it or
+    * null if it wasn't changed.
+    */
+   private Integer m_iOriginalFetchSize;
+
+   /**
+    * Fetch direction of the underlying statement before the caller changed it 
+    * or null if it wasn't changed.
+    */
+   private Integer m_iOriginalFetchDirection;
+
+   /**
+    * Maximal number of rows of the underlying statement before the caller 
+    * changed it or null if it wasn't changed.
+    */
+   private Integer m_iOriginalMaxRows;
+
+   /**
+    * Maximal field size of the underlying statement before the caller changed
+    * it or null if it wasn't changed.
+    */
+   private Integer m_iOriginalMaxFieldSize;
+
+   /**
+    * Query timeout of the underlying statement before the caller changed it 
+    * or null if it wasn't changed.
+    */
+   private Integer m_iOriginalQueryTimeout;
+
+   // Constructors /////////////////////////////////////////////////////////////
+   
+   /**
+    * Protected constructor so that only classes from this package can create it.
+    * 
+    * @param statement - underlying prepared statement
+    * @param strKey - key identifying the statement in the cache
+    * @param cache - cache, which handed out this statement
+    */
+   protected PooledPreparedStatement(
+      PreparedStatement      statement,
+      String                 strKey,
+      PreparedStatementCache cache
+   )
+   {
+      super();
+
+      m_statement = statement;
+      m_strKey = strKey;
+      m_cache = cache;
+      m_ownerConnection = cache.getOwnerConnection();
+      m_bClosed = false;
+      m_bReusable = true;
+      m_iOriginalFetchSize = null;
+      m_iOriginalFetchDirection = null;
+      m_iOriginalMaxRows = null;
+      m_iOriginalMaxFieldSize = null;
+      m_iOriginalQueryTimeout = null;
+   }
+
+   // Logic ////////////////////////////////////////////////////////////////////
+
+   /**
+    * This method is not public so that it can be used only in this package.
+    * 
+    * @return PreparedStatement - underlying prepared statement
+    */
+   PreparedStatement getDelegate(
+   )
+   {
+      return m_statement;
+   }
+
+   /**
+    * This method is not public so that it can be used only in this package.
+    * 
+    * @return String - key identifying the statement in the cache
+    */
+   String getKey(
+   )
+   {
+      return m_strKey;
+   }
+
+   /**
+    * This method is not public so that it can be used only in this package.
+    * 
+    * @return boolean - true if the caller didn't change any setting of the 
+    *                   statement which cannot be restored
+    */
+   boolean isReusable(
+   )
+   {
+      return m_bReusable;
+   }
+
+   /**
+    * Restore settings of the underlying statement changed by the caller. This 
+    * method is not public so that it can be used only in this package.
+    * 
+    * @throws SQLException - an error has occurred
+    */
+   void restoreSettings(
+   ) throws SQLException
+   {
+      if (m_iOriginalFetchSize != null)
+      {
+         m_statement.setFetchSize(m_iOriginalFetchSize.intValue());
+         m_iOriginalFetchSize = null;
+      }
+      if (m_iOriginalFetchDirection != null)
+      {
+         m_statement.setFetchDirection(m_iOriginalFetchDirection.intValue());
+         m_iOriginalFetchDirection = null;
+      }
+      if (m_iOriginalMaxRows != null)
+      {
+         m_statement.setMaxRows(m_iOriginalMaxRows.intValue());
+         m_iOriginalMaxRows = null;
+      }
+      if (m_iOriginalMaxFieldSize != null)
+      {
+         m_statement.setMaxFieldSize(m_iOriginalMaxFieldSize.intValue());
+         m_iOriginalMaxFieldSize = null;
+      }
+      if (m_iOriginalQueryTimeout != null)
+      {
+         m_statement.setQueryTimeout(m_iOriginalQueryTimeout.intValue());
+         m_iOriginalQueryTimeout = null;
+      }
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void close(
+   ) throws SQLException
+   {
+      if (!m_bClosed)
+      {
+         m_bClosed = true;
+         // Do not close the statement, just return it to the cache so that it
+         // can be reused
+         m_cache.returnStatement(this);
+      }
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public boolean isClosed(
+   ) throws SQLException
+   {
+      return m_bClosed || m_statement.isClosed();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public Connection getConnection(
+   ) throws SQLException
+   {
+      Connection connection;
+
+      checkOpen();
+      connection = m_ownerConnection;
+      if (connection == null)
+      {
+         connection = m_statement.getConnection();
+      }
+
+      return connection;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public String toString()
+   {
+      return m_statement.toString();
+   }
+
+   // java.sql.PreparedStatement delegating methods ////////////////////////////
+   
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void addBatch(
+   ) throws SQLException
+   {
+      checkOpen();
+      m_statement.addBatch();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void addBatch(
+      String sql
+   ) throws SQLException
+   {
+      checkOpen();
+      m_statement.addBatch(sql);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void cancel(
+   ) throws SQLException
+   {
+      checkOpen();
+      m_statement.cancel();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void clearBatch(
+   ) throws SQLException
+   {
+      checkOpen();
+      m_statement.clearBatch();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void clearParameters(
+   ) throws SQLException
+   {
+      checkOpen();
+      m_statement.clearParameters();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void clearWarnings(
+   ) throws SQLException
+   {
+      checkOpen();
+      m_statement.clearWarnings();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void closeOnCompletion(
+   ) throws SQLException
+   {
+      checkOpen();
+      m_bReusable = false;
+      m_statement.closeOnCompletion();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public boolean execute(
+   ) throws SQLException
+   {
+      checkOpen();
+      return m_statement.execute();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public boolean execute(
+      String sql
+   ) throws SQLException
+   {
+      checkOpen();
+      return m_statement.execute(sql);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public boolean execute(
+      String sql,
+      int    autoGeneratedKeys
+   ) throws SQLException
+   {
+      checkOpen();
+      return m_statement.execute(sql, autoGeneratedKeys);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public boolean execute(
+      String sql,
+      int[]  columnIndexes
+   ) throws SQLException
+   {
+      checkOpen();
+      return m_statement.execute(sql, columnIndexes);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public boolean execute(
+      String   sql,
+      String[] columnNames
+   ) throws SQLException
+   {
+      checkOpen();
+      return m_statement.execute(sql, columnNames);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public int[] executeBatch(
+   ) throws SQLException
+   {
+      checkOpen();
+      return m_statement.executeBatch();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public ResultSet executeQuery(
+   ) throws SQLException
+   {
+      checkOpen();
+      return m_statement.executeQuery();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public ResultSet executeQuery(
+      String sql
+   ) throws SQLException
+   {
+      checkOpen();
+      return m_statement.executeQuery(sql);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public int executeUpdate(
+   ) throws SQLException
+   {
+      checkOpen();
+      return m_statement.executeUpdate();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public int executeUpdate(
+      String sql
+   ) throws SQLException
+   {
+      checkOpen();
+      return m_statement.executeUpdate(sql);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public int executeUpdate(
+      String sql,
+      int    autoGeneratedKeys
+   ) throws SQLException
+   {
+      checkOpen();
+      return m_statement.executeUpdate(sql, autoGeneratedKeys);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public int executeUpdate(
+      String sql,
+      int[]  columnIndexes
+   ) throws SQLException
+   {
+      checkOpen();
+      return m_statement.executeUpdate(sql, columnIndexes);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public int executeUpdate(
+      String   sql,
+      String[] columnNames
+   ) throws SQLException
+   {
+      checkOpen();
+      return m_statement.executeUpdate(sql, columnNames);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public int getFetchDirection(
+   ) throws SQLException
+   {
+      checkOpen();
+      return m_statement.getFetchDirection();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public int getFetchSize(
+   ) throws SQLException
+   {
+      checkOpen();
+      return m_statement.getFetchSize();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public ResultSet getGeneratedKeys(
+   ) throws SQLException
+   {
+      checkOpen();
+      return m_statement.getGeneratedKeys();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public int getMaxFieldSize(
+   ) throws SQLException
+   {
+      checkOpen();
+      return m_statement.getMaxFieldSize();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public int getMaxRows(
+   ) throws SQLException
+   {
+      checkOpen();
+      return m_statement.getMaxRows();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public ResultSetMetaData getMetaData(
+   ) throws SQLException
+   {
+      checkOpen();
+      return m_statement.getMetaData();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public boolean getMoreResults(
+   ) throws SQLException
+   {
+      checkOpen();
+      return m_statement.getMoreResults();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public boolean getMoreResults(
+      int current
+   ) throws SQLException
+   {
+      checkOpen();
+      return m_statement.getMoreResults(current);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public ParameterMetaData getParameterMetaData(
+   ) throws SQLException
+   {
+      checkOpen();
+      return m_statement.getParameterMetaData();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public int getQueryTimeout(
+   ) throws SQLException
+   {
+      checkOpen();
+      return m_statement.getQueryTimeout();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public ResultSet getResultSet(
+   ) throws SQLException
+   {
+      checkOpen();
+      return m_statement.getResultSet();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public int getResultSetConcurrency(
+   ) throws SQLException
+   {
+      checkOpen();
+      return m_statement.getResultSetConcurrency();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public int getResultSetHoldability(
+   ) throws SQLException
+   {
+      checkOpen();
+      return m_statement.getResultSetHoldability();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public int getResultSetType(
+   ) throws SQLException
+   {
+      checkOpen();
+      return m_statement.getResultSetType();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public int getUpdateCount(
+   ) throws SQLException
+   {
+      checkOpen();
+      return m_statement.getUpdateCount();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public SQLWarning getWarnings(
+   ) throws SQLException
+   {
+      checkOpen();
+      return m_statement.getWarnings();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public boolean isCloseOnCompletion(
+   ) throws SQLException
+   {
+      checkOpen();
+      return m_statement.isCloseOnCompletion();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public boolean isPoolable(
+   ) throws SQLException
+   {
+      checkOpen();
+      return m_statement.isPoolable();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public boolean isWrapperFor(
+      Class<?> iface
+   ) throws SQLException
+   {
+      checkOpen();
+      return m_statement.isWrapperFor(iface);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setArray(
+      int   parameterIndex,
+      Array x
+   ) throws SQLException
+   {
+      checkOpen();
+      m_statement.setArray(parameterIndex, x);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setAsciiStream(
+      int         parameterIndex,
+      InputStream x,
+      int         length
+   ) throws SQLException
+   {
+      checkOpen();
+      m_statement.setAsciiStream(parameterIndex, x, length);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setAsciiStream(
+      int         parameterIndex,
+      InputStream x,
+      long        length
+   ) throws SQLException
+   {
+      checkOpen();
+      m_statement.setAsciiStream(parameterIndex, x, length);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setAsciiStream(
+      int         parameterIndex,
+      InputStream x
+   ) throws SQLException
+   {
+      checkOpen();
+      m_statement.setAsciiStream(parameterIndex, x);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setBigDecimal(
+      int        parameterIndex,
+      BigDecimal x
+   ) throws SQLException
+   {
+      checkOpen();
+      m_statement.setBigDecimal(parameterIndex, x);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setBinaryStream(
+      int         parameterIndex,
+      InputStream x,
+      int         length
+   ) throws SQLException
+   {
+      checkOpen();
+      m_statement.setBinaryStream(parameterIndex, x, length);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setBinaryStream(
+      int         parameterIndex,
+      InputStream x,
+      long        length
+   ) throws SQLException
+   {
+      checkOpen();
+      m_statement.setBinaryStream(parameterIndex, x, length);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setBinaryStream(
+      int         parameterIndex,
+      InputStream x
+   ) throws SQLException
+   {
+      checkOpen();
+      m_statement.setBinaryStream(parameterIndex, x);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setBlob(
+      int  parameterIndex,
+      Blob x
+   ) throws SQLException
+   {
+      checkOpen();
+      m_statement.setBlob(parameterIndex, x);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setBlob(
+      int         parameterIndex,
+      InputStream inputStream,
+      long        length
+   ) throws SQLException
+   {
+      checkOpen();
+      m_statement.setBlob(parameterIndex, inputStream, length);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setBlob(
+      int         parameterIndex,
+      InputStream inputStream
+   ) throws SQLException
+   {
+      checkOpen();
+      m_statement.setBlob(parameterIndex, inputStream);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setBoolean(
+      int     parameterIndex,
+      boolean x
+   ) throws SQLException
+   {
+      checkOpen();
+      m_statement.setBoolean(parameterIndex, x);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setByte(
+      int  parameterIndex,
+      byte x
+   ) throws SQLException
+   {
+      checkOpen();
+      m_statement.setByte(parameterIndex, x);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setBytes(
+      int    parameterIndex,
+      byte[] x
+   ) throws SQLException
+   {
+      checkOpen();
+      m_statement.setBytes(parameterIndex, x);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setCharacterStream(
+      int    parameterIndex,
+      Reader reader,
+      int    length
+   ) throws SQLException
+   {
+      checkOpen();
+      m_statement.setCharacterStream(parameterIndex, reader, length);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setCharacterStream(
+      int    parameterIndex,
+      Reader reader,
+      long   length
+   ) throws SQLException
+   {
+      checkOpen();
+      m_statement.setCharacterStream(parameterIndex, reader, length);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setCharacterStream(
+      int    parameterIndex,
+      Reader reader
+   ) throws SQLException
+   {
+      checkOpen();
+      m_statement.setCharacterStream(parameterIndex, reader);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setClob(
+      int  parameterIndex,
+      Clob x
+   ) throws SQLException
+   {
+      checkOpen();
+      m_statement.setClob(parameterIndex, x);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setClob(
+      int    parameterIndex,
+      Reader reader,
+      long   length
+   ) throws SQLException
+   {
+      checkOpen();
+      m_statement.setClob(parameterIndex, reader, length);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setClob(
+      int    parameterIndex,
+      Reader reader
+   ) throws SQLException
+   {
+      checkOpen();
+      m_statement.setClob(parameterIndex, reader);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setCursorName(
+      String name
+   ) throws SQLException
+   {
+      checkOpen();
+      m_bReusable = false;
+      m_statement.setCursorName(name);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setDate(
+      int  parameterIndex,
+      Date x
+   ) throws SQLException
+   {
+      checkOpen();
+      m_statement.setDate(parameterIndex, x);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setDate(
+      int      parameterIndex,
+      Date     x,
+      Calendar cal
+   ) throws SQLException
+   {
+      checkOpen();
+      m_statement.setDate(parameterIndex, x, cal);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setDouble(
+      int    parameterIndex,
+      double x
+   ) throws SQLException
+   {
+      checkOpen();
+      m_statement.setDouble(parameterIndex, x);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setEscapeProcessing(
+      boolean enable
+   ) throws SQLException
+   {
+      checkOpen();
+      // The original value cannot be read
+      m_bReusable = false;
+      m_statement.setEscapeProcessing(enable);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setFetchDirection(
+      int direction
+   ) throws SQLException
+   {
+      checkOpen();
+      if (m_iOriginalFetchDirection == null)
+      {
+         m_iOriginalFetchDirection = m_statement.getFetchDirection();
+      }
+      m_statement.setFetchDirection(direction);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setFetchSize(
+      int rows
+   ) throws SQLException
+   {
+      checkOpen();
+      if (m_iOriginalFetchSize == null)
+      {
+         m_iOriginalFetchSize = m_statement.getFetchSize();
+      }
+      m_statement.setFetchSize(rows);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setFloat(
+      int   parameterIndex,
+      float x
+   ) throws SQLException
+   {
+      checkOpen();
+      m_statement.setFloat(parameterIndex, x);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setInt(
+      int parameterIndex,
+      int x
+   ) throws SQLException
+   {
+      checkOpen();
+      m_statement.setInt(parameterIndex, x);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setLong(
+      int  parameterIndex,
+      long x
+   ) throws SQLException
+   {
+      checkOpen();
+      m_statement.setLong(parameterIndex, x);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setMaxFieldSize(
+      int max
+   ) throws SQLException
+   {
+      checkOpen();
+      if (m_iOriginalMaxFieldSize == null)
+      {
+         m_iOriginalMaxFieldSize = m_statement.getMaxFieldSize();
+      }
+      m_statement.setMaxFieldSize(max);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setMaxRows(
+      int max
+   ) throws SQLException
+   {
+      checkOpen();
+      if (m_iOriginalMaxRows == null)
+      {
+         m_iOriginalMaxRows = m_statement.getMaxRows();
+      }
+      m_statement.setMaxRows(max);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setNCharacterStream(
+      int    parameterIndex,
+      Reader value,
+      long   length
+   ) throws SQLException
+   {
+      checkOpen();
+      m_statement.setNCharacterStream(parameterIndex, value, length);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setNCharacterStream(
+      int    parameterIndex,
+      Reader value
+   ) throws SQLException
+   {
+      checkOpen();
+      m_statement.setNCharacterStream(parameterIndex, value);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setNClob(
+      int   parameterIndex,
+      NClob value
+   ) throws SQLException
+   {
+      checkOpen();
+      m_statement.setNClob(parameterIndex, value);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setNClob(
+      int    parameterIndex,
+      Reader reader,
+      long   length
+   ) throws SQLException
+   {
+      checkOpen();
+      m_statement.setNClob(parameterIndex, reader, length);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setNClob(
+      int    parameterIndex,
+      Reader reader
+   ) throws SQLException
+   {
+      checkOpen();
+      m_statement.setNClob(parameterIndex, reader);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setNString(
+      int    parameterIndex,
+      String value
+   ) throws SQLException
+   {
+      checkOpen();
+      m_statement.setNString(parameterIndex, value);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setNull(
+      int parameterIndex,
+      int sqlType
+   ) throws SQLException
+   {
+      checkOpen();
+      m_statement.setNull(parameterIndex, sqlType);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setNull(
+      int    parameterIndex,
+      int    sqlType,
+      String typeName
+   ) throws SQLException
+   {
+      checkOpen();
+      m_statement.setNull(parameterIndex, sqlType, typeName);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setObject(
+      int    parameterIndex,
+      Object x,
+      int    targetSqlType
+   ) throws SQLException
+   {
+      checkOpen();
+      m_statement.setObject(parameterIndex, x, targetSqlType);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setObject(
+      int    parameterIndex,
+      Object x
+   ) throws SQLException
+   {
+      checkOpen();
+      m_statement.setObject(parameterIndex, x);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setObject(
+      int    parameterIndex,
+      Object x,
+      int    targetSqlType,
+      int    scaleOrLength
+   ) throws SQLException
+   {
+      checkOpen();
+      m_statement.setObject(parameterIndex, x, targetSqlType, scaleOrLength);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setPoolable(
+      boolean poolable
+   ) throws SQLException
+   {
+      checkOpen();
+      if (!poolable)
+      {
+         m_bReusable = false;
+      }
+      m_statement.setPoolable(poolable);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setQueryTimeout(
+      int seconds
+   ) throws SQLException
+   {
+      checkOpen();
+      if (m_iOriginalQueryTimeout == null)
+      {
+         m_iOriginalQueryTimeout = m_statement.getQueryTimeout();
+      }
+      m_statement.setQueryTimeout(seconds);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setRef(
+      int parameterIndex,
+      Ref x
+   ) throws SQLException
+   {
+      checkOpen();
+      m_statement.setRef(parameterIndex, x);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setRowId(
+      int   parameterIndex,
+      RowId x
+   ) throws SQLException
+   {
+      checkOpen();
+      m_statement.setRowId(parameterIndex, x);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setSQLXML(
+      int    parameterIndex,
+      SQLXML xmlObject
+   ) throws SQLException
+   {
+      checkOpen();
+      m_statement.setSQLXML(parameterIndex, xmlObject);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setShort(
+      int   parameterIndex,
+      short x
+   ) throws SQLException
+   {
+      checkOpen();
+      m_statement.setShort(parameterIndex, x);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setString(
+      int    parameterIndex,
+      String x
+   ) throws SQLException
+   {
+      checkOpen();
+      m_statement.setString(parameterIndex, x);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setTime(
+      int  parameterIndex,
+      Time x
+   ) throws SQLException
+   {
+      checkOpen();
+      m_statement.setTime(parameterIndex, x);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setTime(
+      int      parameterIndex,
+      Time     x,
+      Calendar cal
+   ) throws SQLException
+   {
+      checkOpen();
+      m_statement.setTime(parameterIndex, x, cal);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setTimestamp(
+      int       parameterIndex,
+      Timestamp x
+   ) throws SQLException
+   {
+      checkOpen();
+      m_statement.setTimestamp(parameterIndex, x);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setTimestamp(
+      int       parameterIndex,
+      Timestamp x,
+      Calendar  cal
+   ) throws SQLException
+   {
+      checkOpen();
+      m_statement.setTimestamp(parameterIndex, x, cal);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setURL(
+      int parameterIndex,
+      URL x
+   ) throws SQLException
+   {
+      checkOpen();
+      m_statement.setURL(parameterIndex, x);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   @SuppressWarnings("deprecation") // The interface requires it, just delegate
+   public void setUnicodeStream(
+      int         parameterIndex,
+      InputStream x,
+      int         length
+   ) throws SQLException
+   {
+      checkOpen();
+      m_statement.setUnicodeStream(parameterIndex, x, length);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public <T> T unwrap(
+      Class<T> iface
+   ) throws SQLException
+   {
+      checkOpen();
+      return m_statement.unwrap(iface);
+   }
+
+   // Helper methods ///////////////////////////////////////////////////////////
+
+   /**
+    * Make sure that the statement wasn't closed yet.
+    * 
+    * @throws SQLException - the statement was already closed and returned to 
+    *                        the cache
+    */
+   protected void checkOpen(
+   ) throws SQLException
+   {
+      if (m_bClosed)
+      {
+         throw new SQLException("This statement was already closed and shouldn't" 
+                                + " be used anymore.");
+      }
+   }
+}
@@ -0,0 +1,487 @@
+/*
+ * Copyright (C) 2003 - 2016 OpenSubsystems.com/net/org and its owners. All rights reserved.
+ * 
+ * This file is part of OpenSubsystems.
+ *
+ * OpenSubsystems is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+
+package org.opensubsystems.core.util.jdbc;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.opensubsystems.core.util.GlobalConstants;
+import org.opensubsystems.core.util.Log;
+import org.opensubsystems.core.util.OSSObject;
+
+/**
+ * Cache of prepared statements created for a single database connection. When
+ * the same SQL statement is prepared repeatedly using the same connection, the
+ * already prepared statement is reused instead of asking the database to parse
+ * and plan the statement again.
+ *
+ * The statements handed out by the cache are wrapped in PooledPreparedStatement
+ * and closing them returns the underlying statement back to the cache. The
+ * statement is removed from the cache while it is in use so that the same SQL
+ * can be prepared several times at once and each caller gets its own statement.
+ *
+ * The cache doesn't depend on any connection pool so it can be used by any 
+ * wrapper of database connection, e.g. by pooled connection or by connection 
+ * factory for the whole life of the real connection.
+ *
+ * The cache is not synchronized since the database connection should be used
+ * only by one thread at a time.
+ *
+ * @author bastafidli
+ */
+public class PreparedStatementCache extends OSSObject
+{
+   // Constants ////////////////////////////////////////////////////////////////
+
+   /**
+    * Maximal size of the cache meaning that the cache is not limited.
+    */
+   public static final int UNLIMITED_SIZE = 0;
+
+   /**
+    * Separator used to construct cache key from the SQL and the parameters
+    * used to prepare the statement.
+    */
+   protected static final char KEY_SEPARATOR = '\u0000';
+
+   // Attributes ///////////////////////////////////////////////////////////////
+
+   /**
+    * Connection used to prepare the statements.
+    */
+   protected Connection m_connection;
+
+   /**
+    * Connection, which will be reported by the statements as the one which
+    * created them. This is usually the wrapper handed out to the callers so
+    * that they cannot get hold of the underlying connection. The cache lives
+    * as long as the underlying connection so it changes whenever the 
+    * connection is handed out using different wrapper.
+    */
+   protected Connection m_ownerConnection;
+
+   /**
+    * Maximal number of statements cached for the connection or UNLIMITED_SIZE.
+    */
+   protected int m_iMaximalSize;
+
+   /**
+    * Statements which are currently not in use. Key is the SQL and parameters
+    * used to prepare the statement and the value is the statement itself. The
+    * map is in access order so that the least recently used statement is
+    * closed when the cache grows over its limit.
+    */
+   protected Map<String, PreparedStatement> m_mpStatements;
+
+   /**
+    * How many times was the statement found in the cache.
+    */
+   protected long m_lHitCount;
+
+   /**
+    * How many times the statement had to be prepared since it wasn't in the
+    * cache.
+    */
+   protected long m_lMissCount;
+
+   /**
+    * Flag signaling that the cache was closed and the statements returned to 
+    * it should be closed.
+    */
+   protected boolean m_bClosed;
+
+   // Cached values ////////////////////////////////////////////////////////////
+
+   /**
+    * Logger for this class
+    */
+   private static Logger s_logger = Log.getInstance(PreparedStatementCache.class);
+
+   // Constructors /////////////////////////////////////////////////////////////
+
+   /**
+    * Constructor.
+    *
+    * @param connection - connection used to prepare the statements
+    * @param ownerConnection - connection which will be reported by the
+    *                          statements as the one which created them
+    * @param iMaximalSize - maximal number of statements cached for the
+    *                       connection or UNLIMITED_SIZE
+    */
+   public PreparedStatementCache(
+      Connection connection,
+      Connection ownerConnection,
+      int        iMaximalSize
+   )
+   {
+      super();
+
+      if (GlobalConstants.ERROR_CHECKING)
+      {
+         assert connection != null : "Connection cannot be null";
+         assert iMaximalSize >= UNLIMITED_SIZE
+                : "Maximal size of statement cache cannot be negative";
+      }
+
+      m_connection = connection;
+      m_ownerConnection = ownerConnection;
+      m_iMaximalSize = iMaximalSize;
+      m_lHitCount = 0;
+      m_lMissCount = 0;
+      m_bClosed = false;
+      m_mpStatements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f,
+                                                                    true)
+      {
+         /**
+          * Serial version id for this class.
+          */
+         private static final long serialVersionUID = 3170536423914213587L;
+
+         @Override
+         protected boolean removeEldestEntry(
+            Map.Entry<String, PreparedStatement> eldest
+         )
+         {
+            boolean bRemove;
+
+            bRemove = (m_iMaximalSize != UNLIMITED_SIZE)
+                      && (size() > m_iMaximalSize);
+            if (bRemove)
+            {
+               DatabaseUtils.close(eldest.getValue());
+            }
+
+            return bRemove;
+         }
+      };
+   }
+
+   // Logic ////////////////////////////////////////////////////////////////////
+
+   /**
+    * Get prepared statement for the specified SQL.
+    *
+    * @param sql - SQL statement to prepare
+    * @return PreparedStatement - prepared statement, never null
+    * @throws SQLException - an error has occurred
+    * @see java.sql.Connection#prepareStatement(String)
+    */
+   public PreparedStatement prepareStatement(
+      String sql
+   ) throws SQLException
+   {
+      String            strKey = sql;
+      PreparedStatement statement;
+
+      statement = checkoutStatement(strKey);
+      if (statement == null)
+      {
+         statement = m_connection.prepareStatement(sql);
+      }
+
+      return new PooledPreparedStatement(statement, strKey, this);
+   }
+
+   /**
+    * Get prepared statement for the specified SQL, which will be able to return
+    * generated keys.
+    *
+    * @param sql - SQL statement to prepare
+    * @param autoGeneratedKeys - flag indicating whether auto-generated keys
+    *                            should be returned
+    * @return PreparedStatement - prepared statement, never null
+    * @throws SQLException - an error has occurred
+    * @see java.sql.Connection#prepareStatement(String, int)
+    */
+   public PreparedStatement prepareStatement(
+      String sql,
+      int    autoGeneratedKeys
+   ) throws SQLException
+   {
+      String            strKey = sql + KEY_SEPARATOR + autoGeneratedKeys;
+      PreparedStatement statement;
+
+      statement = checkoutStatement(strKey);
+      if (statement == null)
+      {
+         statement = m_connection.prepareStatement(sql, autoGeneratedKeys);
+      }
+
+      return new PooledPreparedStatement(statement, strKey, this);
+   }
+
+   /**
+    * Get prepared statement for the specified SQL, which will produce result
+    * sets of given type and concurrency.
+    *
+    * @param sql - SQL statement to prepare
+    * @param resultSetType - result set type
+    * @param resultSetConcurrency - result set concurrency
+    * @return PreparedStatement - prepared statement, never null
+    * @throws SQLException - an error has occurred
+    * @see java.sql.Connection#prepareStatement(String, int, int)
+    */
+   public PreparedStatement prepareStatement(
+      String sql,
+      int    resultSetType,
+      int    resultSetConcurrency
+   ) throws SQLException
+   {
+      String            strKey = sql + KEY_SEPARATOR + resultSetType
+                                 + KEY_SEPARATOR + resultSetConcurrency;
+      PreparedStatement statement;
+
+      statement = checkoutStatement(strKey);
+      if (statement == null)
+      {
+         statement = m_connection.prepareStatement(sql, resultSetType,
+                                                   resultSetConcurrency);
+      }
+
+      return new PooledPreparedStatement(statement, strKey, this);
+   }
+
+   /**
+    * Get prepared statement for the specified SQL, which will produce result
+    * sets of given type, concurrency and holdability.
+    *
+    * @param sql - SQL statement to prepare
+    * @param resultSetType - result set type
+    * @param resultSetConcurrency - result set concurrency
+    * @param resultSetHoldability - result set holdability
+    * @return PreparedStatement - prepared statement, never null
+    * @throws SQLException - an error has occurred
+    * @see java.sql.Connection#prepareStatement(String, int, int, int)
+    */
+   public PreparedStatement prepareStatement(
+      String sql,
+      int    resultSetType,
+      int    resultSetConcurrency,
+      int    resultSetHoldability
+   ) throws SQLException
+   {
+      String            strKey = sql + KEY_SEPARATOR + resultSetType
+                                 + KEY_SEPARATOR + resultSetConcurrency
+                                 + KEY_SEPARATOR + resultSetHoldability;
+      PreparedStatement statement;
+
+      statement = checkoutStatement(strKey);
+      if (statement == null)
+      {
+         statement = m_connection.prepareStatement(sql, resultSetType,
+                                                   resultSetConcurrency,
+                                                   resultSetHoldability);
+      }
+
+      return new PooledPreparedStatement(statement, strKey, this);
+   }
+
+   /**
+    * Close all statements which are currently cached. The statements, which
+    * are currently in use, will be closed when they are returned.
+    */
+   public void close(
+   )
+   {
+      List<PreparedStatement> lstStatements;
+
+      m_bClosed = true;
+      lstStatements = new ArrayList<>(m_mpStatements.values());
+      m_mpStatements.clear();
+      for (PreparedStatement statement : lstStatements)
+      {
+         DatabaseUtils.close(statement);
+      }
+   }
+
+   /**
+    * @return Connection - connection which will be reported by the statements
+    *                      as the one which created them
+    */
+   public Connection getOwnerConnection(
+   )
+   {
+      return m_ownerConnection;
+   }
+
+   /**
+    * Set connection, which will be reported by the statements prepared from 
+    * now on as the one which created them.
+    * 
+    * @param ownerConnection - connection which will be reported by the 
+    *                          statements as the one which created them
+    */
+   public void setOwnerConnection(
+      Connection ownerConnection
+   )
+   {
+      m_ownerConnection = ownerConnection;
+   }
+
+   /**
+    * @return boolean - true if the cache was closed and doesn't hold any 
+    *                   statements anymore
+    */
+   public boolean isClosed(
+   )
+   {
+      return m_bClosed;
+   }
+
+   /**
+    * @return int - number of statements currently cached and not in use
+    */
+   public int getSize(
+   )
+   {
+      return m_mpStatements.size();
+   }
+
+   /**
+    * @return long - how many times was the statement found in the cache
+    */
+   public long getHitCount(
+   )
+   {
+      return m_lHitCount;
+   }
+
+   /**
+    * @return long - how many times the statement had to be prepared since it
+    *                wasn't in the cache
+    */
+   public long getMissCount(
+   )
+   {
+      return m_lMissCount;
+   }
+
+   /**
+    * @return double - percentage of requests for statements which were found
+    *                  in the cache
+    */
+   public double getHitRatio(
+   )
+   {
+      long   lTotal = m_lHitCount + m_lMissCount;
+      double dRatio = 0;
+
+      if (lTotal > 0)
+      {
+         dRatio = 100.0 * m_lHitCount / lTotal;
+      }
+
+      return dRatio;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void toString(
+      StringBuilder sb,
+      int           ind
+   )
+   {
+      append(sb, ind + 0, "PreparedStatementCache[");
+      append(sb, ind + 1, "m_iMaximalSize = ", m_iMaximalSize);
+      append(sb, ind + 1, "m_lHitCount = ", m_lHitCount);
+      append(sb, ind + 1, "m_lMissCount = ", m_lMissCount);
+      append(sb, ind + 1, "m_bClosed = ", m_bClosed);
+      append(sb, ind + 1, "size = ", m_mpStatements.size());
+      append(sb, ind + 0, "]");
+   }
+
+   // Helper methods ///////////////////////////////////////////////////////////
+
+   /**
+    * Remove statement from the cache so that it can be used.
+    *
+    * @param strKey - key identifying the statement
+    * @return PreparedStatement - cached statement or null if there is no such
+    *                             statement in the cache
+    */
+   protected PreparedStatement checkoutStatement(
+      String strKey
+   )
+   {
+      PreparedStatement statement;
+
+      statement = m_mpStatements.remove(strKey);
+      if (statement != null)
+      {
+         m_lHitCount++;
+      }
+      else
+      {
+         m_lMissCount++;
+      }
+
+      return statement;
+   }
+
+   /**
+    * Return statement, which is no longer used, back to the cache. This method
+    * is not public so that it can be used only in this package.
+    *
+    * @param pooledStatement - statement that was closed by the caller
+    */
+   void returnStatement(
+      PooledPreparedStatement pooledStatement
+   )
+   {
+      PreparedStatement statement = pooledStatement.getDelegate();
+      String            strKey = pooledStatement.getKey();
+
+      if ((m_bClosed) || (m_mpStatements.containsKey(strKey))
+         || (!pooledStatement.isReusable()))
+      {
+         // The cache doesn't hold any statements anymore, the same statement 
+         // was prepared more than once at the same time and we keep only one 
+         // of them or the caller changed the statement so it cannot be reused
+         DatabaseUtils.close(statement);
+      }
+      else
+      {
+         try
+         {
+            // Make sure nothing set by the caller is visible to the next one
+            statement.clearParameters();
+            statement.clearBatch();
+            statement.clearWarnings();
+            pooledStatement.restoreSettings();
+            m_mpStatements.put(strKey, statement);
+         }
+         catch (SQLException sqleExc)
+         {
+            s_logger.log(Level.FINE, "Cannot reset cached statement, closing it.",
+                         sqleExc);
+            DatabaseUtils.close(statement);
+         }
+      }
+   }
+}
@@ -0,0 +1,769 @@
+/*
+ * Copyright (C) 2003 - 2012 OpenSubsystems.com/net/org and its owners. All rights reserved.
+ * 
+ * This file is part of OpenSubsystems.
+ *
+ * OpenSubsystems is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+
+package org.opensubsystems.core.util.jdbc;
+
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.CallableStatement;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.NClob;
+import java.sql.PreparedStatement;
+import java.sql.SQLClientInfoException;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.sql.SQLXML;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.sql.Struct;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executor;
+
+import org.opensubsystems.core.util.GlobalConstants;
+
+/**
+ * Wrapper around database connection, which prepares the statements using 
+ * cache of statements so that the same SQL prepared repeatedly is parsed by
+ * the database only once. All other calls are delegated to the underlying 
+ * connection. 
+ * 
+ * This wrapper is useful when the connection is issued by a connection pool,
+ * which is integrated with transaction manager, and therefore the connection 
+ * cannot be wrapped by any other wrapper such as transactional connection. 
+ * The cache is usually not owned by the wrapper but it lives as long as the 
+ * physical connection underlying the wrapped connection. 
+ * 
+ * @author bastafidli
+ */
+public class StatementCachingConnection implements Connection
+{
+   // Attributes ///////////////////////////////////////////////////////////////
+   
+   /**
+    * Underlying database connection to which all method calls are delegated.
+    */
+   private Connection m_connection;
+
+   /**
+    * Cache used to prepare the statements.
+    */
+   private PreparedStatementCache m_statementCache;
+   
+   // Constructors /////////////////////////////////////////////////////////////
+   
+   /**
+    * Constructor.
+    * 
+    * @param connection - underlying database connection to which all method 
+    *                     calls are delegated 
+    * @param statementCache - cache used to prepare the statements
+    */
+   public StatementCachingConnection(
+      Connection             connection,
+      PreparedStatementCache statementCache
+   )
+   {
+      super();
+      
+      if (GlobalConstants.ERROR_CHECKING)
+      {
+         assert connection != null : "Connection cannot be null";
+         assert statementCache != null : "Statement cache cannot be null";
+      }
+      
+      m_connection = connection;
+      m_statementCache = statementCache;
+   }
+   
+   // Logic ////////////////////////////////////////////////////////////////////
+   
+   /**
+    * @return Connection - underlying database connection to which all method
+    *                      calls are delegated
+    */
+   public Connection getConnection(
+   )
+   {
+      return m_connection;
+   }
+   
+   /**
+    * @return PreparedStatementCache - cache used to prepare the statements
+    */
+   public PreparedStatementCache getStatementCache(
+   )
+   {
+      return m_statementCache;
+   }
+   
+   // java.sql.Connection delegating methods ///////////////////////////////////
+   
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void clearWarnings(
+   ) throws SQLException
+   {
+      m_connection.clearWarnings();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void close(
+   ) throws SQLException
+   {
+      m_connection.close();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void commit(
+   ) throws SQLException
+   {
+      m_connection.commit();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public Statement createStatement(
+   ) throws SQLException
+   {
+      return m_connection.createStatement();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public Statement createStatement(
+      int resultSetType, 
+      int resultSetConcurrency
+   ) throws SQLException
+   {
+      return m_connection.createStatement(resultSetType, 
+                                          resultSetConcurrency);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public Statement createStatement(
+      int resultSetType,
+      int resultSetConcurrency,
+      int resultSetHoldability
+   ) throws SQLException
+   {
+      return m_connection.createStatement(resultSetType, 
+                                          resultSetConcurrency,
+                                          resultSetHoldability);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   @SuppressWarnings("EqualsWhichDoesntCheckParameterClass")
+   public boolean equals(
+      Object obj
+   )
+   {
+      return m_connection.equals(obj);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public boolean getAutoCommit(
+   ) throws SQLException
+   {
+      return m_connection.getAutoCommit();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public String getCatalog(
+   ) throws SQLException
+   {
+      return m_connection.getCatalog();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public int getHoldability(
+   ) throws SQLException
+   {
+      return m_connection.getHoldability();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public DatabaseMetaData getMetaData(
+   ) throws SQLException
+   {
+      return m_connection.getMetaData();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public int getTransactionIsolation(
+   ) throws SQLException
+   {
+      return m_connection.getTransactionIsolation();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public Map<String,Class<?>> getTypeMap(
+   ) throws SQLException
+   {
+      return m_connection.getTypeMap();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public SQLWarning getWarnings(
+   ) throws SQLException
+   {
+      return m_connection.getWarnings();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public int hashCode()
+   {
+      return m_connection.hashCode();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public boolean isClosed(
+   ) throws SQLException
+   {
+      return m_connection.isClosed();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public boolean isReadOnly(
+   ) throws SQLException
+   {
+      return m_connection.isReadOnly();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public String nativeSQL(
+      String sql
+   ) throws SQLException
+   {
+      return m_connection.nativeSQL(sql);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public CallableStatement prepareCall(
+      String sql
+   ) throws SQLException
+   {
+      return m_connection.prepareCall(sql);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public CallableStatement prepareCall(
+      String sql, 
+      int resultSetType, 
+      int resultSetConcurrency
+   ) throws SQLException
+   {
+      return m_connection.prepareCall(sql, resultSetType, 
+                                      resultSetConcurrency);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public CallableStatement prepareCall(
+      String sql,
+      int resultSetType,
+      int resultSetConcurrency,
+      int resultSetHoldability
+   ) throws SQLException
+   {
+      return m_connection.prepareCall(sql, resultSetType, 
+                                      resultSetConcurrency,
+                                      resultSetHoldability);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public PreparedStatement prepareStatement(
+      String sql
+   ) throws SQLException
+   {
+      PreparedStatement statement;
+      
+      statement = m_statementCache.prepareStatement(sql);
+      
+      return statement;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public PreparedStatement prepareStatement(
+      String sql, 
+      int autoGeneratedKeys
+   ) throws SQLException
+   {
+      PreparedStatement statement;
+      
+      statement = m_statementCache.prepareStatement(sql, autoGeneratedKeys);
+      
+      return statement;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public PreparedStatement prepareStatement(
+      String sql, 
+      int resultSetType, 
+      int resultSetConcurrency
+   ) throws SQLException
+   {
+      PreparedStatement statement;
+      
+      statement = m_statementCache.prepareStatement(sql, resultSetType, 
+                                                    resultSetConcurrency);
+      
+      return statement;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public PreparedStatement prepareStatement(
+      String sql,
+      int resultSetType,
+      int resultSetConcurrency,
+      int resultSetHoldability
+   ) throws SQLException
+   {
+      PreparedStatement statement;
+      
+      statement = m_statementCache.prepareStatement(sql, resultSetType, 
+                                                    resultSetConcurrency,
+                                                    resultSetHoldability);
+      
+      return statement;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public PreparedStatement prepareStatement(
+      String sql, 
+      int[] columnIndexes
+   ) throws SQLException
+   {
+      return m_connection.prepareStatement(sql, columnIndexes);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public PreparedStatement prepareStatement(
+      String sql, String[] columnNames
+   ) throws SQLException
+   {
+      return m_connection.prepareStatement(sql, columnNames);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void releaseSavepoint(
+      Savepoint savepoint
+   ) throws SQLException
+   {
+      m_connection.releaseSavepoint(savepoint);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void rollback(
+   ) throws SQLException
+   {
+      m_connection.rollback();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void rollback(
+      Savepoint savepoint
+   ) throws SQLException
+   {
+      m_connection.rollback(savepoint);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setAutoCommit(
+      boolean autoCommit
+   ) throws SQLException
+   {
+      m_connection.setAutoCommit(autoCommit);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setCatalog(
+      String catalog
+   ) throws SQLException
+   {
+      m_connection.setCatalog(catalog);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setHoldability(
+      int holdability
+   ) throws SQLException
+   {
+      m_connection.setHoldability(holdability);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setReadOnly(
+      boolean readOnly
+   ) throws SQLException
+   {
+      m_connection.setReadOnly(readOnly);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public Savepoint setSavepoint(
+   ) throws SQLException
+   {
+      return m_connection.setSavepoint();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public Savepoint setSavepoint(
+      String name
+   ) throws SQLException
+   {
+      return m_connection.setSavepoint(name);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setTransactionIsolation(
+      int level
+   ) throws SQLException
+   {
+      m_connection.setTransactionIsolation(level);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setTypeMap(
+      Map<String, Class<?>> map
+   ) throws SQLException
+   {
+      m_connection.setTypeMap(map);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public String toString()
+   {
+      return m_connection.toString();
+   }
+
+   // These methods were added in Java 1.6 /////////////////////////////////////
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public Array createArrayOf(
+      String   typeName, 
+      Object[] elements
+   ) throws SQLException
+   {
+      return m_connection.createArrayOf(typeName, elements);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public Blob createBlob(
+   ) throws SQLException
+   {
+      return m_connection.createBlob();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public Clob createClob(
+   ) throws SQLException
+   {
+      return m_connection.createClob();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public NClob createNClob(
+   ) throws SQLException
+   {
+      return m_connection.createNClob();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public SQLXML createSQLXML(
+   ) throws SQLException
+   {
+      return m_connection.createSQLXML();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public Struct createStruct(
+      String   typeName, 
+      Object[] attributes
+   ) throws SQLException
+   {
+      return m_connection.createStruct(typeName, attributes);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public Properties getClientInfo(
+   ) throws SQLException
+   {
+      return m_connection.getClientInfo();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public String getClientInfo(
+      String name
+   ) throws SQLException
+   {
+      return m_connection.getClientInfo(name);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public boolean isValid(
+      int timeout
+   ) throws SQLException
+   {
+      return m_connection.isValid(timeout);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setClientInfo(
+      Properties properties
+   ) throws SQLClientInfoException
+   {
+      m_connection.setClientInfo(properties);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setClientInfo(
+      String name, 
+      String value
+   ) throws SQLClientInfoException
+   {
+      m_connection.setClientInfo(name, value);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public boolean isWrapperFor(
+      Class<?> iface
+   ) throws SQLException
+   {
+      return m_connection.isWrapperFor(iface);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public <T> T unwrap(
+      Class<T> iface
+   ) throws SQLException 
+   {
+      return m_connection.unwrap(iface);
+   }
+
+   // These methods were added in Java 1.7 /////////////////////////////////////
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setSchema(
+      String schema
+   ) throws SQLException 
+   {
+      m_connection.setSchema(schema);
+   }
+	
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public String getSchema(
+   ) throws SQLException 
+   {
+      return m_connection.getSchema();
+   }
+	
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void abort(
+      Executor executor
+   ) throws SQLException 
+   {
+      m_connection.abort(executor);
+   }
+	
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setNetworkTimeout(
+      Executor executor, 
+      int      milliseconds
+   ) throws SQLException 
+   {
+      m_connection.setNetworkTimeout(executor, milliseconds);
+   }
+	
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public int getNetworkTimeout(
+   ) throws SQLException 
+   {
+      return m_connection.getNetworkTimeout();
+   }
+}
@@ -42,6 +42,7 @@ import javax.servlet.http.HttpServletResponse;
 import org.apache.commons.fileupload.FileItem;
 import org.apache.commons.fileupload.servlet.ServletFileUpload;
 import org.opensubsystems.core.error.OSSInvalidDataException;
+import org.opensubsystems.core.util.CachedSettings;
 import org.opensubsystems.core.util.Config;
 import org.opensubsystems.core.util.Log;
 import org.opensubsystems.core.util.MimeTypeConstants;
@@ -106,6 +107,30 @@ public final class WebUtils extends OSSObject
     */
    private static int s_iWebPortSecure;
 
+   /**
+    * Size of a buffer to serve files read from the configuration currently in 
+    * effect.
+    */
+   private static final CachedSettings<Integer> s_webFileBufferSize 
+      = new CachedSettings<Integer>()
+   {
+      @Override
+      protected Integer readSettings(
+         Properties prpSettings
+      )
+      {
+         return PropertyUtils.getIntPropertyInRange(
+                   prpSettings, WEBUTILS_WEBFILE_BUFFER_SIZE,
+                   WEBFILE_BUFFER_DEFAULT_SIZE,
+                   "Size of a buffer to serve files ",
+                   // Use some reasonable lower limit
+                   4096,
+                   // This should be really limited 
+                   // by size of available memory
+                   100000000);
+      }
+   };
+
    // Constructors /////////////////////////////////////////////////////////////
    
    /** 
@@ -224,21 +249,10 @@ public final class WebUtils extends OSSObject
       // TODO: Improve: Figure out, how we don't have to serve the file, 
       // but the webserver will!!! (cos.jar has a method for it, but the license
       // is to prohibitive to use it. Maybe Jetty has one too) 
-      Properties prpSettings;
-      int        iWebFileBufferSize;
+      int iWebFileBufferSize;
       
-      prpSettings = Config.getInstance().getProperties();
-
       // Load default size of buffer to serve files 
-      iWebFileBufferSize = PropertyUtils.getIntPropertyInRange(
-                                prpSettings, WEBUTILS_WEBFILE_BUFFER_SIZE,
-                                WEBFILE_BUFFER_DEFAULT_SIZE,
-                                "Size of a buffer to serve files ",
-                                // Use some reasonable lower limit
-                                4096,
-                                // This should be really limited 
-                                // by size of available memory
-                                100000000);
+      iWebFileBufferSize = s_webFileBufferSize.getSettings().intValue();
             
       ServletOutputStream sosOut      = hsrpResponse.getOutputStream();
       byte[]              arBuffer    = new byte[iWebFileBufferSize];
@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2003 - 2016 OpenSubsystems.com/net/org and its owners. All rights reserved.
+ * 
+ * This file is part of OpenSubsystems.
+ *
+ * OpenSubsystems is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+
+package org.opensubsystems.core.persist.jdbc.connectionpool.impl;
+
+import java.util.concurrent.TimeUnit;
+
+import org.opensubsystems.core.persist.jdbc.impl.DatabaseConnectionStatistics;
+import org.opensubsystems.core.util.test.OSSTestCase;
+
+/**
+ * Tests for AdaptivePoolSizer.
+ * 
+ * @author bastafidli
+ */
+public class AdaptivePoolSizerTest extends OSSTestCase
+{
+   // Constructors /////////////////////////////////////////////////////////////
+   
+   /**
+    * Constructor for AdaptivePoolSizerTest.
+    * 
+    * @param strName - name of the test
+    */
+   public AdaptivePoolSizerTest(
+      String strName
+   )
+   {
+      super(strName);
+   }
+   
+   // Tests ////////////////////////////////////////////////////////////////////
+
+   /**
+    * Test that the size grows when the callers wait too long while all 
+    * connections are used.
+    * 
+    * @throws Exception - an error has occurred
+    */
+   public void testGrowWhenCallersWait(
+   ) throws Exception
+   {
+      DatabaseConnectionStatistics statistics;
+      AdaptivePoolSizer            sizer;
+      
+      statistics = new DatabaseConnectionStatistics(null, "sizergrow");
+      sizer = new AdaptivePoolSizer("sizergrow", 1, 100, 10, 10, statistics);
+      recordWaits(statistics, 100, 100);
+      samplePeriod(sizer, 10);
+      assertTrue("Pool should grow", sizer.getSize() > 10);
+   }
+
+   /**
+    * Test that the reset of the statistics is not mistaken for a period 
+    * without any waits.
+    * 
+    * @throws Exception - an error has occurred
+    */
+   public void testStatisticsReset(
+   ) throws Exception
+   {
+      DatabaseConnectionStatistics statistics;
+      AdaptivePoolSizer            sizer;
+      int                          iSize;
+      
+      statistics = new DatabaseConnectionStatistics(null, "sizerreset");
+      sizer = new AdaptivePoolSizer("sizerreset", 1, 100, 10, 10, statistics);
+      recordWaits(statistics, 100, 100);
+      samplePeriod(sizer, 10);
+      iSize = sizer.getSize();
+      
+      // After the reset there are fewer waits than before but they are still
+      // too long
+      statistics.reset();
+      recordWaits(statistics, 5, 100);
+      samplePeriod(sizer, iSize);
+      assertTrue("Pool should grow after the statistics were reset", 
+                 sizer.getSize() > iSize);
+      
+      // The waits recorded after the reset shouldn't be counted again
+      iSize = sizer.getSize();
+      for (int iPeriod = 0; iPeriod < AdaptivePoolSizer.SHRINK_PERIOD_COUNT; 
+           iPeriod++)
+      {
+         samplePeriod(sizer, 0);
+      }
+      assertTrue("Pool should shrink when it is not used", 
+                 sizer.getSize() < iSize);
+   }
+   
+   /**
+    * Test that the size follows the changed limits.
+    * 
+    * @throws Exception - an error has occurred
+    */
+   public void testSetLimits(
+   ) throws Exception
+   {
+      DatabaseConnectionStatistics statistics;
+      AdaptivePoolSizer            sizer;
+      
+      statistics = new DatabaseConnectionStatistics(null, "sizerlimits");
+      sizer = new AdaptivePoolSizer("sizerlimits", 1, 100, 10, 10, statistics);
+      sizer.setLimits(1, 5);
+      assertEquals("Size should be lowered to the new maximal size", 
+                   5, sizer.getSize());
+      recordWaits(statistics, 100, 100);
+      samplePeriod(sizer, 5);
+      assertEquals("Size shouldn't grow over the new maximal size", 
+                   5, sizer.getSize());
+      
+      sizer.setLimits(20, 100);
+      assertEquals("Size should be raised to the new minimal size", 
+                   20, sizer.getSize());
+   }
+   
+   // Helper methods ///////////////////////////////////////////////////////////
+   
+   /**
+    * Record waits for connections.
+    * 
+    * @param statistics - statistics to record the waits to
+    * @param iCount - how many waits to record
+    * @param lWait - how long each wait took in milliseconds
+    */
+   protected void recordWaits(
+      DatabaseConnectionStatistics statistics,
+      int                          iCount,
+      long                         lWait
+   )
+   {
+      for (int iIndex = 0; iIndex < iCount; iIndex++)
+      {
+         statistics.getWaitTime().record(TimeUnit.MILLISECONDS.toNanos(lWait));
+      }
+   }
+   
+   /**
+    * Collect samples for the whole period so that the size is evaluated.
+    * 
+    * @param sizer - sizer to collect the samples for
+    * @param iInUse - how many connections are in use
+    */
+   protected void samplePeriod(
+      AdaptivePoolSizer sizer,
+      int               iInUse
+   )
+   {
+      for (int iIndex = 0; iIndex < AdaptivePoolSizer.SAMPLES_PER_PERIOD; iIndex++)
+      {
+         sizer.sample(iInUse);
+      }
+   }
+}
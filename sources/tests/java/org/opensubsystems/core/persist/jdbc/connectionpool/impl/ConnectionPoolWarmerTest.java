@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2003 - 2016 OpenSubsystems.com/net/org and its owners. All rights reserved.
+ * 
+ * This file is part of OpenSubsystems.
+ *
+ * OpenSubsystems is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+
+package org.opensubsystems.core.persist.jdbc.connectionpool.impl;
+
+import java.util.Properties;
+
+import org.opensubsystems.core.util.Config;
+import org.opensubsystems.core.util.test.OSSTestCase;
+
+/**
+ * Tests for ConnectionPoolWarmer.
+ * 
+ * @author bastafidli
+ */
+public class ConnectionPoolWarmerTest extends OSSTestCase
+{
+   // Constructors /////////////////////////////////////////////////////////////
+   
+   /**
+    * Constructor for ConnectionPoolWarmerTest.
+    * 
+    * @param strName - name of the test
+    */
+   public ConnectionPoolWarmerTest(
+      String strName
+   )
+   {
+      super(strName);
+   }
+   
+   // Tests ////////////////////////////////////////////////////////////////////
+
+   /**
+    * Test that the statements are prepared only if the pool caches them.
+    * 
+    * @throws Exception - an error has occurred
+    */
+   public void testStatementsPreparedOnlyWhenCached(
+   ) throws Exception
+   {
+      ConnectionPoolWarmer warmer;
+      
+      warmer = new ConnectionPoolWarmer("nocache", createSetupReader("nocache", -1));
+      assertTrue("Statements shouldn't be prepared without cache", 
+                 warmer.getStatements().isEmpty());
+      
+      warmer = new ConnectionPoolWarmer("cache", createSetupReader("cache", 10));
+      assertEquals("Statements should be prepared with cache", 
+                   2, warmer.getStatements().size());
+   }
+   
+   // Helper methods ///////////////////////////////////////////////////////////
+   
+   /**
+    * Create reader of settings of pool, which prepares two statements. 
+    * 
+    * @param strName - name of the pool
+    * @param iCacheSize - size of the prepared statement cache of the pool
+    * @return PooledDatabaseConnectionFactorySetupReader - reader of the 
+    *                                                      settings
+    */
+   protected PooledDatabaseConnectionFactorySetupReader createSetupReader(
+      String strName,
+      int    iCacheSize
+   )
+   {
+      Properties prpSettings = Config.getInstance().getProperties();
+      String     strPrefix;
+      
+      strPrefix = PooledDatabaseConnectionFactorySetupReader.DATABASE_POOL_BASE_PATH 
+                  + "." + getName() + strName + ".";
+      prpSettings.setProperty(strPrefix 
+         + PooledDatabaseConnectionFactorySetupReader.DBPOOL_WARMUP_STATEMENTS, 
+         "select 1 from dual; select 2 from dual");
+      prpSettings.setProperty(strPrefix 
+         + PooledDatabaseConnectionFactorySetupReader.DBPOOL_PREPSTATEMENT_CACHE_SIZE, 
+         Integer.toString(iCacheSize));
+      
+      return new PooledDatabaseConnectionFactorySetupReader(getName() + strName, 
+                                                            "hsqldb");
+   }
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright (C) 2003 - 2016 OpenSubsystems.com/net/org and its owners. All rights reserved.
+ * 
+ * This file is part of OpenSubsystems.
+ *
+ * OpenSubsystems is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+
+package org.opensubsystems.core.persist.jdbc.connectionpool.impl;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+
+import org.opensubsystems.core.error.OSSException;
+import org.opensubsystems.core.persist.jdbc.connectionpool.oss.OSSDatabaseConnectionFactoryImpl;
+import org.opensubsystems.core.persist.jdbc.database.hsqldb.HsqlDBDatabaseImpl;
+import org.opensubsystems.core.util.test.OSSTestCase;
+
+/**
+ * Tests for PooledDatabaseConnectionFactoryImpl.
+ * 
+ * @author bastafidli
+ */
+public class PooledDatabaseConnectionFactoryImplTest extends OSSTestCase
+{
+   // Constants ////////////////////////////////////////////////////////////////
+   
+   /**
+    * URL of the in memory database used by the tests.
+    */
+   public static final String TEST_URL = "jdbc:hsqldb:mem:pooledfactorytest";
+   
+   /**
+    * User for which separate pool is maintained.
+    */
+   public static final String TEST_USER = "POOLTESTUSER";
+   
+   // Attributes ///////////////////////////////////////////////////////////////
+   
+   /**
+    * Factory tested by the current test.
+    */
+   protected PooledDatabaseConnectionFactoryImpl m_factory;
+   
+   // Constructors /////////////////////////////////////////////////////////////
+   
+   /**
+    * Constructor for PooledDatabaseConnectionFactoryImplTest.
+    * 
+    * @param strName - name of the test
+    */
+   public PooledDatabaseConnectionFactoryImplTest(
+      String strName
+   )
+   {
+      super(strName);
+   }
+   
+   // Helper methods ///////////////////////////////////////////////////////////
+   
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   protected void setUp(
+   ) throws Exception
+   {
+      super.setUp();
+      
+      Class.forName("org.hsqldb.jdbcDriver");
+      executeAsAdministrator("create user " + TEST_USER + " password 'first'");
+      
+      m_factory = new OSSDatabaseConnectionFactoryImpl();
+      m_factory.addDataSource(getName(), new HsqlDBDatabaseImpl(), 
+                              "org.hsqldb.jdbcDriver", TEST_URL, "sa", "", 
+                              Connection.TRANSACTION_READ_COMMITTED);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   protected void tearDown(
+   ) throws Exception
+   {
+      try
+      {
+         m_factory.stop();
+         executeAsAdministrator("drop user " + TEST_USER);
+      }
+      finally
+      {
+         super.tearDown();
+      }
+   }
+   
+   /**
+    * Execute statement using connection of the database administrator.
+    * 
+    * @param strSQL - statement to execute
+    * @throws Exception - an error has occurred
+    */
+   protected void executeAsAdministrator(
+      String strSQL
+   ) throws Exception
+   {
+      Connection connection;
+      Statement  statement;
+      
+      connection = DriverManager.getConnection(TEST_URL, "sa", "");
+      try
+      {
+         statement = connection.createStatement();
+         try
+         {
+            statement.execute(strSQL);
+         }
+         finally
+         {
+            statement.close();
+         }
+      }
+      finally
+      {
+         connection.close();
+      }
+   }
+
+   /**
+    * @return PooledDatabaseConnectionFactoryImpl.ConnectionPoolDefinition - 
+    *            pool maintained for the test user or null if there is none
+    * @throws OSSException - an error has occurred
+    */
+   protected PooledDatabaseConnectionFactoryImpl.ConnectionPoolDefinition getUserPool(
+   ) throws OSSException
+   {
+      PooledDatabaseConnectionFactoryImpl.ConnectionPoolDefinition pool;
+      
+      pool = (PooledDatabaseConnectionFactoryImpl.ConnectionPoolDefinition)
+                m_factory.getDataSource(getName());
+      
+      return pool.m_mpUserConnectionPools.get(TEST_USER);
+   }
+
+   // Tests ////////////////////////////////////////////////////////////////////
+
+   /**
+    * Test that the connections for user, whose password has changed, are 
+    * still pooled and that the old password cannot be used anymore.
+    * 
+    * @throws Exception - an error has occurred
+    */
+   public void testUserPoolAfterPasswordChange(
+   ) throws Exception
+   {
+      Connection connection;
+      
+      connection = m_factory.requestConnection(true, getName(), 
+                                               TEST_USER, "first");
+      m_factory.returnConnection(connection);
+      assertNotNull("Pool should be created for the user", getUserPool());
+      assertEquals("Pool should use the first password", 
+                   "first", getUserPool().getPassword());
+      
+      executeAsAdministrator("alter user " + TEST_USER + " set password 'second'");
+      connection = m_factory.requestConnection(true, getName(), 
+                                               TEST_USER, "second");
+      m_factory.returnConnection(connection);
+      assertNotNull("Pool should be created for the new password", getUserPool());
+      assertEquals("Pool should use the new password", 
+                   "second", getUserPool().getPassword());
+      assertEquals("Connection should be returned to the pool", 1, 
+                   m_factory.getIdleConnectionCount(getUserPool()));
+      
+      try
+      {
+         connection = m_factory.requestConnection(true, getName(), 
+                                                  TEST_USER, "first");
+         m_factory.returnConnection(connection);
+         fail("Connection shouldn't be available for the old password");
+      }
+      catch (OSSException ossExc)
+      {
+         // This is expected
+         assertEquals("Pool for the new password should be kept", 
+                      "second", getUserPool().getPassword());
+         assertEquals("Pooled connection should be kept", 1, 
+                      m_factory.getIdleConnectionCount(getUserPool()));
+      }
+   }
+
+   /**
+    * Test that the request with invalid password doesn't affect the pool 
+    * maintained for the user.
+    * 
+    * @throws Exception - an error has occurred
+    */
+   public void testUserPoolAfterInvalidPassword(
+   ) throws Exception
+   {
+      PooledDatabaseConnectionFactoryImpl.ConnectionPoolDefinition pool;
+      Connection                                                   connection;
+      
+      connection = m_factory.requestConnection(true, getName(), 
+                                               TEST_USER, "first");
+      m_factory.returnConnection(connection);
+      pool = getUserPool();
+      assertNotNull("Pool should be created for the user", pool);
+      
+      try
+      {
+         connection = m_factory.requestConnection(true, getName(), 
+                                                  TEST_USER, "invalid");
+         m_factory.returnConnection(connection);
+         fail("Connection shouldn't be available for invalid password");
+      }
+      catch (OSSException ossExc)
+      {
+         // This is expected
+         assertSame("Pool of the user shouldn't be replaced", pool, 
+                    getUserPool());
+         assertEquals("Pooled connection should be kept", 1, 
+                      m_factory.getIdleConnectionCount(pool));
+      }
+      
+      connection = m_factory.requestConnection(true, getName(), 
+                                               TEST_USER, "first");
+      m_factory.returnConnection(connection);
+      assertSame("Pool of the user should be still used", pool, 
+                 getUserPool());
+   }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2003 - 2016 OpenSubsystems.com/net/org and its owners. All rights reserved.
+ * 
+ * This file is part of OpenSubsystems.
+ *
+ * OpenSubsystems is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+
+package org.opensubsystems.core.persist.jdbc.connectionpool.impl;
+
+import org.opensubsystems.core.util.Config;
+import org.opensubsystems.core.util.test.OSSTestCase;
+
+/**
+ * Tests for PooledDatabaseConnectionFactorySetupReader.
+ * 
+ * @author bastafidli
+ */
+public class PooledDatabaseConnectionFactorySetupReaderTest extends OSSTestCase
+{
+   // Constructors /////////////////////////////////////////////////////////////
+   
+   /**
+    * Constructor for PooledDatabaseConnectionFactorySetupReaderTest.
+    * 
+    * @param strName - name of the test
+    */
+   public PooledDatabaseConnectionFactorySetupReaderTest(
+      String strName
+   )
+   {
+      super(strName);
+   }
+   
+   // Tests ////////////////////////////////////////////////////////////////////
+
+   /**
+    * Test that the values of check level are validated and values used by 
+    * previous versions are mapped to the current ones.
+    * 
+    * @throws Exception - an error has occurred
+    */
+   public void testGetCheckLevel(
+   ) throws Exception
+   {
+      assertEquals("Statement check level should be kept", 
+                   PooledDatabaseConnectionFactorySetupReader.DBPOOL_CHECK_LEVEL_STATEMENT,
+                   getCheckLevel("0"));
+      assertEquals("Closed check level should be kept", 
+                   PooledDatabaseConnectionFactorySetupReader.DBPOOL_CHECK_LEVEL_CLOSED,
+                   getCheckLevel("1"));
+      assertEquals("Driver check level should be kept", 
+                   PooledDatabaseConnectionFactorySetupReader.DBPOOL_CHECK_LEVEL_DRIVER,
+                   getCheckLevel("2"));
+      assertEquals("Legacy check of all connections should be mapped", 
+                   PooledDatabaseConnectionFactorySetupReader.DBPOOL_CHECK_LEVEL_CLOSED,
+                   getCheckLevel("3"));
+      assertEquals("Legacy test of all connections should be mapped", 
+                   PooledDatabaseConnectionFactorySetupReader.DBPOOL_CHECK_LEVEL_DRIVER,
+                   getCheckLevel("4"));
+      assertEquals("Invalid check level should be replaced by default", 
+                   PooledDatabaseConnectionFactorySetupReader.DBPOOL_CHECK_LEVEL_DEFAULT,
+                   getCheckLevel("5"));
+      assertEquals("Invalid check level should be replaced by default", 
+                   PooledDatabaseConnectionFactorySetupReader.DBPOOL_CHECK_LEVEL_DEFAULT,
+                   getCheckLevel("-1"));
+   }
+   
+   // Helper methods ///////////////////////////////////////////////////////////
+   
+   /**
+    * Get check level read by the reader when the property has specified value.
+    * 
+    * @param strValue - value of the check level property
+    * @return int - check level read by the reader
+    */
+   protected int getCheckLevel(
+      String strValue
+   )
+   {
+      String strReaderName = getName() + strValue;
+      
+      Config.getInstance().setProperty(
+         PooledDatabaseConnectionFactorySetupReader.DATABASE_POOL_BASE_PATH 
+         + "." + strReaderName + "." 
+         + PooledDatabaseConnectionFactorySetupReader.DBPOOL_CHECK_LEVEL, strValue);
+      
+      return new PooledDatabaseConnectionFactorySetupReader(strReaderName, 
+                                                            "hsqldb").getCheckLevel();
+   }
+}
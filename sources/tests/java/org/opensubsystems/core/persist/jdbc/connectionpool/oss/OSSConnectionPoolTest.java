@@ -0,0 +1,669 @@
+/*
+ * Copyright (C) 2003 - 2016 OpenSubsystems.com/net/org and its owners. All rights reserved.
+ * 
+ * This file is part of OpenSubsystems.
+ *
+ * OpenSubsystems is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+
+package org.opensubsystems.core.persist.jdbc.connectionpool.oss;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLClientInfoException;
+import java.sql.Statement;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.opensubsystems.core.persist.jdbc.connectionpool.impl.PooledDatabaseConnectionFactorySetupReader;
+import org.opensubsystems.core.persist.jdbc.impl.DatabaseConnectionStatistics;
+import org.opensubsystems.core.util.Config;
+import org.opensubsystems.core.util.test.OSSTestCase;
+
+/**
+ * Tests for OSSConnectionPool and the connections it hands out.
+ * 
+ * @author bastafidli
+ */
+public class OSSConnectionPoolTest extends OSSTestCase
+{
+   // Constants ////////////////////////////////////////////////////////////////
+   
+   /**
+    * URL of the in memory database used by the tests.
+    */
+   public static final String TEST_URL = "jdbc:hsqldb:mem:ossconnectionpooltest";
+   
+   // Attributes ///////////////////////////////////////////////////////////////
+   
+   /**
+    * Pool tested by the current test.
+    */
+   protected OSSConnectionPool m_pool;
+   
+   /**
+    * Transaction isolation of new connections to the test database.
+    */
+   protected int m_iDefaultTransactionIsolation;
+   
+   // Constructors /////////////////////////////////////////////////////////////
+   
+   /**
+    * Constructor for OSSConnectionPoolTest.
+    * 
+    * @param strName - name of the test
+    */
+   public OSSConnectionPoolTest(
+      String strName
+   )
+   {
+      super(strName);
+   }
+   
+   // Helper methods ///////////////////////////////////////////////////////////
+   
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   protected void setUp(
+   ) throws Exception
+   {
+      super.setUp();
+      
+      Connection connection;
+      
+      Class.forName("org.hsqldb.jdbcDriver");
+      connection = DriverManager.getConnection(TEST_URL, "sa", "");
+      try
+      {
+         m_iDefaultTransactionIsolation = connection.getTransactionIsolation();
+      }
+      finally
+      {
+         connection.close();
+      }
+      m_pool = null;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   protected void tearDown(
+   ) throws Exception
+   {
+      if (m_pool != null)
+      {
+         m_pool.close();
+      }
+      
+      super.tearDown();
+   }
+   
+   /**
+    * Create and start pool, which can have at most one connection and which 
+    * cannot grow.
+    * 
+    * @param lWaitPeriod - how long to wait for connection in milliseconds
+    * @return OSSConnectionPool - started pool
+    * @throws Exception - an error has occurred
+    */
+   protected OSSConnectionPool createPool(
+      long lWaitPeriod
+   ) throws Exception
+   {
+      return createPool(lWaitPeriod, false);
+   }
+   
+   /**
+    * Create and start pool, which can have at most one connection.
+    * 
+    * @param lWaitPeriod - how long to wait for connection in milliseconds
+    * @param bCanGrow - can the pool grow over its maximal size if no 
+    *                   connection becomes available within the wait period
+    * @return OSSConnectionPool - started pool
+    * @throws Exception - an error has occurred
+    */
+   protected OSSConnectionPool createPool(
+      long    lWaitPeriod,
+      boolean bCanGrow
+   ) throws Exception
+   {
+      String     strName = getName();
+      Properties prpSettings = Config.getInstance().getProperties();
+      String     strPrefix;
+      
+      strPrefix = PooledDatabaseConnectionFactorySetupReader.DATABASE_POOL_BASE_PATH 
+                  + "." + strName + ".";
+      prpSettings.setProperty(
+         strPrefix + PooledDatabaseConnectionFactorySetupReader.DBPOOL_MAX_SIZE, "1");
+      prpSettings.setProperty(
+         strPrefix + PooledDatabaseConnectionFactorySetupReader.DBPOOL_CAN_GROW, 
+         Boolean.toString(bCanGrow));
+      prpSettings.setProperty(
+         strPrefix + PooledDatabaseConnectionFactorySetupReader.DBPOOL_WAIT_PERIOD, 
+         Long.toString(lWaitPeriod));
+      
+      m_pool = new OSSConnectionPool(strName, TEST_URL, "sa", "", 
+                  m_iDefaultTransactionIsolation, null, 
+                  new PooledDatabaseConnectionFactorySetupReader(strName, "hsqldb"),
+                  new DatabaseConnectionStatistics(null, strName));
+      m_pool.start();
+      
+      return m_pool;
+   }
+
+   /**
+    * Request connection from the pool in another thread and wait until the
+    * thread starts to wait for connection.
+    * 
+    * @param pool - pool to request the connection from, it cannot have any 
+    *               connection available
+    * @param executor - executor to run the thread
+    * @return Future<Connection> - connection eventually borrowed by the thread
+    * @throws Exception - an error has occurred
+    */
+   protected Future<Connection> requestConnectionLater(
+      final OSSConnectionPool pool,
+      ExecutorService         executor
+   ) throws Exception
+   {
+      Future<Connection> waiting;
+      long               lStartTime;
+      
+      waiting = executor.submit(new Callable<Connection>()
+      {
+         @Override
+         public Connection call(
+         ) throws Exception
+         {
+            return pool.requestConnection();
+         }
+      });
+      lStartTime = System.currentTimeMillis();
+      while ((pool.getWaitingCount() == 0) 
+            && (System.currentTimeMillis() - lStartTime < 5000))
+      {
+         Thread.sleep(1);
+      }
+      assertEquals("Thread should wait for connection", 
+                   1, pool.getWaitingCount());
+      
+      return waiting;
+   }
+   
+   // Tests ////////////////////////////////////////////////////////////////////
+
+   /**
+    * Test that closing connection again after it was borrowed by somebody else
+    * doesn't return it to the pool.
+    * 
+    * @throws Exception - an error has occurred
+    */
+   public void testCloseAfterConnectionWasBorrowedAgain(
+   ) throws Exception
+   {
+      OSSConnectionPool pool = createPool(100);
+      Connection        connection1;
+      Connection        connection2;
+      Statement         statement;
+      
+      connection1 = pool.requestConnection();
+      connection1.close();
+      connection2 = pool.requestConnection();
+      assertSame("The only connection of the pool should be borrowed again", 
+                 ((OSSConnectionHandle)connection1).getPooledConnection(),
+                 ((OSSConnectionHandle)connection2).getPooledConnection());
+      
+      // The first borrower closes the connection again by mistake
+      connection1.close();
+      assertTrue("Connection should be closed for the first borrower", 
+                 connection1.isClosed());
+      assertFalse("Connection should stay open for the second borrower", 
+                  connection2.isClosed());
+      assertEquals("Connection shouldn't be returned to the pool", 
+                   0, pool.getIdleConnectionCount());
+      try
+      {
+         connection1.createStatement();
+         fail("Closed connection shouldn't be usable");
+      }
+      catch (java.sql.SQLException sqleExc)
+      {
+         // Expected
+      }
+      statement = connection2.createStatement();
+      statement.close();
+      connection2.close();
+      assertEquals("Connection should be returned to the pool", 
+                   1, pool.getIdleConnectionCount());
+   }
+
+   /**
+    * Test that discarded connection, e.g. since it was leaked, is not reused 
+    * when it is returned to the pool.
+    * 
+    * @throws Exception - an error has occurred
+    */
+   public void testDiscardedConnectionIsNotReused(
+   ) throws Exception
+   {
+      OSSConnectionPool   pool = createPool(100);
+      Connection          connection;
+      OSSPooledConnection pooled;
+      
+      connection = pool.requestConnection();
+      pooled = ((OSSConnectionHandle)connection).getPooledConnection();
+      pooled.discard();
+      connection.close();
+      assertTrue("Real connection should be closed", 
+                 pooled.getDelegate().isClosed());
+      
+      connection = pool.requestConnection();
+      try
+      {
+         assertNotSame("Discarded connection shouldn't be reused", pooled, 
+                       ((OSSConnectionHandle)connection).getPooledConnection());
+      }
+      finally
+      {
+         connection.close();
+      }
+   }
+
+   /**
+    * Test that the cached statements report as their connection the handle 
+    * through which they were prepared and not the pooled connection.
+    * 
+    * @throws Exception - an error has occurred
+    */
+   public void testCachedStatementReturnsConnectionHandle(
+   ) throws Exception
+   {
+      OSSConnectionPool pool;
+      Connection        connection;
+      PreparedStatement statement;
+      
+      Config.getInstance().setProperty(
+         PooledDatabaseConnectionFactorySetupReader.DATABASE_POOL_BASE_PATH 
+         + "." + getName() + "." 
+         + PooledDatabaseConnectionFactorySetupReader.DBPOOL_PREPSTATEMENT_CACHE_SIZE, 
+         "10");
+      pool = createPool(100);
+      for (int iIndex = 0; iIndex < 2; iIndex++)
+      {
+         connection = pool.requestConnection();
+         try
+         {
+            statement = connection.prepareStatement("values (1)");
+            try
+            {
+               assertSame("Statement should return the connection handle", 
+                          connection, statement.getConnection());
+            }
+            finally
+            {
+               statement.close();
+            }
+         }
+         finally
+         {
+            connection.close();
+         }
+      }
+      assertEquals("Statement should be reused by the second borrower", 
+                   1, pool.getStatistics().getStatementCacheHitCount());
+   }
+
+   /**
+    * Test that the client info cannot be changed using connection, which was 
+    * already returned to the pool.
+    * 
+    * @throws Exception - an error has occurred
+    */
+   public void testClientInfoCannotBeSetAfterReturn(
+   ) throws Exception
+   {
+      OSSConnectionPool   pool = createPool(100);
+      Connection          connection;
+      OSSPooledConnection pooled;
+      
+      connection = pool.requestConnection();
+      pooled = ((OSSConnectionHandle)connection).getPooledConnection();
+      connection.close();
+      try
+      {
+         pooled.setClientInfo("ApplicationName", "test");
+         fail("Client info shouldn't be set after connection was returned");
+      }
+      catch (SQLClientInfoException sqlcieExc)
+      {
+         // Expected
+      }
+      try
+      {
+         pooled.setClientInfo(new Properties());
+         fail("Client info shouldn't be set after connection was returned");
+      }
+      catch (SQLClientInfoException sqlcieExc)
+      {
+         // Expected
+      }
+   }
+
+   /**
+    * Test that the validation is recorded only once when the JDBC driver 
+    * doesn't support Connection.isValid and the pool has to fall back to 
+    * the test statement.
+    * 
+    * @throws Exception - an error has occurred
+    */
+   public void testValidationRecordedOnceAfterDriverFallback(
+   ) throws Exception
+   {
+      OSSConnectionPool   pool = createPool(100);
+      final Connection    realConnection;
+      Connection          oldDriverConnection;
+      OSSPooledConnection pooled;
+      long                lValidationCount;
+      
+      realConnection = DriverManager.getConnection(TEST_URL, "sa", "");
+      try
+      {
+         // Simulate driver written before JDBC 4
+         oldDriverConnection = (Connection)Proxy.newProxyInstance(
+            Connection.class.getClassLoader(), 
+            new Class<?>[] {Connection.class}, 
+            new InvocationHandler()
+            {
+               @Override
+               public Object invoke(
+                  Object   proxy, 
+                  Method   method, 
+                  Object[] args
+               ) throws Throwable
+               {
+                  if ("isValid".equals(method.getName()))
+                  {
+                     throw new AbstractMethodError(method.getName());
+                  }
+                  try
+                  {
+                     return method.invoke(realConnection, args);
+                  }
+                  catch (InvocationTargetException iteExc)
+                  {
+                     throw iteExc.getCause();
+                  }
+               }
+            });
+         pooled = new OSSPooledConnection(oldDriverConnection, pool, 
+                                          OSSPooledConnection.STATE_NOT_IN_USE,
+                                          -1);
+         pool.m_iCheckLevel 
+            = PooledDatabaseConnectionFactorySetupReader.DBPOOL_CHECK_LEVEL_DRIVER;
+         lValidationCount = pool.getStatistics().getValidationCount();
+         
+         assertTrue("Connection should be valid", pool.isValid(pooled));
+         assertEquals("Pool should fall back to the test statement", 
+                      PooledDatabaseConnectionFactorySetupReader.DBPOOL_CHECK_LEVEL_STATEMENT,
+                      pool.m_iCheckLevel);
+         assertEquals("Validation should be recorded only once", 
+                      lValidationCount + 1, 
+                      pool.getStatistics().getValidationCount());
+      }
+      finally
+      {
+         realConnection.close();
+      }
+   }
+
+   /**
+    * Test that the settings changed by the borrower are not visible to the 
+    * next borrower of the same connection.
+    * 
+    * @throws Exception - an error has occurred
+    */
+   public void testSettingsRestoredWhenConnectionIsReturned(
+   ) throws Exception
+   {
+      OSSConnectionPool pool = createPool(100);
+      Connection        connection;
+      int               iChangedIsolation;
+      
+      if (m_iDefaultTransactionIsolation == Connection.TRANSACTION_SERIALIZABLE)
+      {
+         iChangedIsolation = Connection.TRANSACTION_READ_COMMITTED;
+      }
+      else
+      {
+         iChangedIsolation = Connection.TRANSACTION_SERIALIZABLE;
+      }
+      
+      connection = pool.requestConnection();
+      connection.setAutoCommit(false);
+      connection.setReadOnly(true);
+      connection.setTransactionIsolation(iChangedIsolation);
+      connection.close();
+      
+      connection = pool.requestConnection();
+      try
+      {
+         assertFalse("Read only should be restored", connection.isReadOnly());
+         assertEquals("Transaction isolation should be restored", 
+                      m_iDefaultTransactionIsolation, 
+                      connection.getTransactionIsolation());
+         // The autocommit is left to the next borrower to set
+         assertFalse("Autocommit shouldn't be changed", 
+                     connection.getAutoCommit());
+         assertFalse("Autocommit of the real connection shouldn't be changed", 
+                     ((OSSConnectionHandle)connection).getPooledConnection()
+                        .getDelegate().getAutoCommit());
+      }
+      finally
+      {
+         connection.close();
+      }
+   }
+
+   /**
+    * Test that the changes not committed by the borrower are rolled back when
+    * the connection is returned to the pool.
+    * 
+    * @throws Exception - an error has occurred
+    */
+   public void testUncommittedChangesRolledBackWhenConnectionIsReturned(
+   ) throws Exception
+   {
+      OSSConnectionPool pool = createPool(100);
+      Connection        connection;
+      Statement         statement;
+      ResultSet         results;
+      
+      connection = pool.requestConnection();
+      statement = connection.createStatement();
+      try
+      {
+         statement.execute("create table ROLLBACK_TEST (VALUE integer)");
+         connection.setAutoCommit(false);
+         statement.execute("insert into ROLLBACK_TEST (VALUE) values (1)");
+      }
+      finally
+      {
+         statement.close();
+         connection.close();
+      }
+      
+      connection = pool.requestConnection();
+      statement = connection.createStatement();
+      try
+      {
+         results = statement.executeQuery("select count(*) from ROLLBACK_TEST");
+         assertTrue("Count should be returned", results.next());
+         assertEquals("Uncommitted changes should be rolled back", 
+                      0, results.getInt(1));
+         statement.execute("drop table ROLLBACK_TEST");
+      }
+      finally
+      {
+         statement.close();
+         connection.close();
+      }
+   }
+
+   /**
+    * Test that the connection returned to the pool is handed off to the 
+    * thread waiting for it.
+    * 
+    * @throws Exception - an error has occurred
+    */
+   public void testReturnedConnectionIsHandedOffToWaitingThread(
+   ) throws Exception
+   {
+      final OSSConnectionPool pool = createPool(10000);
+      ExecutorService         executor = Executors.newSingleThreadExecutor();
+      Connection              connection;
+      Future<Connection>      waiting;
+      long                    lStartTime;
+      
+      try
+      {
+         connection = pool.requestConnection();
+         waiting = executor.submit(new Callable<Connection>()
+         {
+            @Override
+            public Connection call(
+            ) throws Exception
+            {
+               return pool.requestConnection();
+            }
+         });
+         lStartTime = System.currentTimeMillis();
+         while ((pool.getWaitingCount() == 0) 
+               && (System.currentTimeMillis() - lStartTime < 5000))
+         {
+            Thread.sleep(1);
+         }
+         assertEquals("Thread should wait for connection", 
+                      1, pool.getWaitingCount());
+         
+         lStartTime = System.currentTimeMillis();
+         connection.close();
+         connection = waiting.get(5, TimeUnit.SECONDS);
+         assertTrue("Waiting thread should get the connection immediately", 
+                    System.currentTimeMillis() - lStartTime < 1000);
+         assertFalse("Handed off connection should be usable", 
+                     connection.isClosed());
+         assertEquals("No thread should wait anymore", 0, pool.getWaitingCount());
+         connection.close();
+         assertEquals("Connection should be returned to the pool", 
+                      1, pool.getIdleConnectionCount());
+      }
+      finally
+      {
+         executor.shutdownNow();
+      }
+   }
+
+   /**
+    * Test that the thread waiting for connection gets new connection as soon
+    * as connection in use is removed from the full pool instead of waiting 
+    * for the whole wait period.
+    * 
+    * @throws Exception - an error has occurred
+    */
+   public void testWaitingThreadCreatesConnectionWhenConnectionIsRemoved(
+   ) throws Exception
+   {
+      OSSConnectionPool   pool = createPool(60000);
+      ExecutorService     executor = Executors.newSingleThreadExecutor();
+      Connection          connection;
+      OSSPooledConnection pooled;
+      Future<Connection>  waiting;
+      
+      try
+      {
+         connection = pool.requestConnection();
+         pooled = ((OSSConnectionHandle)connection).getPooledConnection();
+         waiting = requestConnectionLater(pool, executor);
+         
+         // The discarded connection is removed from the pool when it is closed
+         pooled.discard();
+         connection.close();
+         connection = waiting.get(5, TimeUnit.SECONDS);
+         assertNotSame("Waiting thread should get new connection", pooled, 
+                       ((OSSConnectionHandle)connection).getPooledConnection());
+         assertFalse("New connection should be usable", connection.isClosed());
+         connection.close();
+      }
+      finally
+      {
+         executor.shutdownNow();
+      }
+   }
+
+   /**
+    * Test that the thread waiting for connection fails when the pool is closed
+    * even if the pool could grow rather than creating new connection.
+    * 
+    * @throws Exception - an error has occurred
+    */
+   public void testWaitingThreadFailsWhenPoolIsClosed(
+   ) throws Exception
+   {
+      OSSConnectionPool  pool = createPool(60000, true);
+      ExecutorService    executor = Executors.newSingleThreadExecutor();
+      Connection         connection;
+      Future<Connection> waiting;
+      
+      try
+      {
+         connection = pool.requestConnection();
+         waiting = requestConnectionLater(pool, executor);
+         
+         pool.close();
+         try
+         {
+            waiting.get(5, TimeUnit.SECONDS).close();
+            fail("Closed pool shouldn't create new connection");
+         }
+         catch (ExecutionException eeExc)
+         {
+            assertTrue("Waiting thread should fail since the pool was closed",
+                       eeExc.getCause().getMessage().contains("closed"));
+         }
+         assertEquals("Closed pool shouldn't create new connection", 
+                      1, pool.getConnectionCount());
+         connection.close();
+         assertEquals("Returned connection should be closed", 
+                      0, pool.getConnectionCount());
+      }
+      finally
+      {
+         executor.shutdownNow();
+      }
+   }
+}
@@ -28,6 +28,8 @@ import java.util.Map;
 import java.util.logging.Logger;
 import java.util.logging.Level;
 
+import org.opensubsystems.core.data.DataDescriptorManager;
+import org.opensubsystems.core.data.TestModifiableDataObject.TestModifiableDataObjectDataDescriptor;
 import org.opensubsystems.core.error.OSSDatabaseAccessException;
 import org.opensubsystems.core.error.OSSException;
 import org.opensubsystems.core.persist.jdbc.DatabaseConnectionFactory;
@@ -239,7 +241,15 @@ public abstract class DatabaseTestSchema extends ModifiableDatabaseSchemaImpl
    public DatabaseTestSchema(
    ) throws OSSException
    {
-      super(null, DBTEST_SCHEMA_NAME, DBTEST_SCHEMA_VERSION, true, TABLE_NAMES);
+      super(null, DBTEST_SCHEMA_NAME, DBTEST_SCHEMA_VERSION, true, 
+            new HashMap<Integer, String>(TABLE_NAMES));
+      
+      // The data type of the test data object is known only once its data 
+      // descriptor is created
+      m_mpModifiableTableNames.put(
+         DataDescriptorManager.getInstance(
+            TestModifiableDataObjectDataDescriptor.class).getDataTypeAsObject(),
+         "MULTIPLE_TEST");
    }   
 
    // Lifecycle events /////////////////////////////////////////////////////////
@@ -755,6 +765,38 @@ public abstract class DatabaseTestSchema extends ModifiableDatabaseSchemaImpl
              "(select 1 from QUERY_TEST AS QT1 where QT1.VALUE_2 = QT.VALUE_1)";
    }
 
+   /**
+    * Returns query to insert test modifiable data object.
+    * 
+    * @return String - SQL query to insert test modifiable data object
+    * @throws OSSException - an error has occurred
+    */
+   public String getInsertMultipleTest(
+   ) throws OSSException
+   {
+      String strTimestamp;
+      
+      strTimestamp = DatabaseImpl.getInstance().getSQLCurrentTimestampFunctionCall();
+      return "insert into MULTIPLE_TEST (DOMAIN_ID, TEST_VALUE, CREATION_DATE," 
+             + " MODIFICATION_DATE) values (?, ?, " + strTimestamp + ", " 
+             + strTimestamp + ")";
+   }
+
+   /**
+    * Returns query to update test modifiable data object only if it wasn't
+    * meanwhile modified by somebody else.
+    * 
+    * @return String - SQL query to update test modifiable data object
+    * @throws OSSException - an error has occurred
+    */
+   public String getUpdateMultipleTest(
+   ) throws OSSException
+   {
+      return "update MULTIPLE_TEST set TEST_VALUE = ?, MODIFICATION_DATE = " 
+             + DatabaseImpl.getInstance().getSQLCurrentTimestampFunctionCall()
+             + " where ID = ? and DOMAIN_ID = ? and MODIFICATION_DATE = ?";
+   }
+
    /**
     * Query to insert to table with generated keys is database specific.
     * 
@@ -30,6 +30,7 @@ import org.opensubsystems.core.persist.jdbc.database.DBProcReturnInsertedRowsCou
 import org.opensubsystems.core.persist.jdbc.database.DateTest.DateTestInternal;
 import org.opensubsystems.core.persist.jdbc.database.DeleteWithSubqueryTest.DeleteWithSubqueryTestInternal;
 import org.opensubsystems.core.persist.jdbc.database.GeneratedKeyTest.GeneratedKeyTestInternal;
+import org.opensubsystems.core.persist.jdbc.database.MultipleDataObjectsTest.MultipleDataObjectsTestInternal;
 import org.opensubsystems.core.persist.jdbc.database.PreparedStatementTest.PreparedStatementTestInternal;
 import org.opensubsystems.core.persist.jdbc.database.QueryTest.QueryTestInternal;
 import org.opensubsystems.core.persist.jdbc.database.SameColumnTest.SameColumnTestInternal;
@@ -106,6 +107,7 @@ public final class DatabaseTests extends Tests
       suite.addTestSuite(DBProcReturnInsertedRowsCountTestInternal.class);
       suite.addTestSuite(DeleteWithSubqueryTestInternal.class);
       suite.addTestSuite(GeneratedKeyTestInternal.class);
+      suite.addTestSuite(MultipleDataObjectsTestInternal.class);
       suite.addTestSuite(PreparedStatementTestInternal.class);
       suite.addTestSuite(QueryTestInternal.class);
       suite.addTestSuite(SameColumnTestInternal.class);
@@ -0,0 +1,795 @@
+/*
+ * Copyright (C) 2003 - 2016 OpenSubsystems.com/net/org and its owners. All rights reserved.
+ * 
+ * This file is part of OpenSubsystems.
+ *
+ * OpenSubsystems is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+
+package org.opensubsystems.core.persist.jdbc.database;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import junit.extensions.TestSetup;
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import org.opensubsystems.core.data.DataDescriptor;
+import org.opensubsystems.core.data.DataObject;
+import org.opensubsystems.core.data.ModifiableDataObject;
+import org.opensubsystems.core.data.TestModifiableDataObject;
+import org.opensubsystems.core.data.TestModifiableDataObject.TestModifiableDataObjectDataDescriptor;
+import org.opensubsystems.core.error.OSSConcurentModifyException;
+import org.opensubsystems.core.error.OSSDatabaseAccessException;
+import org.opensubsystems.core.error.OSSException;
+import org.opensubsystems.core.persist.ModifiableDataFactory;
+import org.opensubsystems.core.persist.jdbc.Database;
+import org.opensubsystems.core.persist.jdbc.DatabaseFactory;
+import org.opensubsystems.core.persist.jdbc.DatabaseSchemaManager;
+import org.opensubsystems.core.persist.jdbc.ModifiableDatabaseFactory;
+import org.opensubsystems.core.persist.jdbc.impl.DatabaseFactoryImpl;
+import org.opensubsystems.core.persist.jdbc.impl.DatabaseImpl;
+import org.opensubsystems.core.persist.jdbc.operation.DataObjectHandler;
+import org.opensubsystems.core.persist.jdbc.operation.DatabaseCreateMultipleDataObjectsOperation;
+import org.opensubsystems.core.persist.jdbc.operation.DatabaseCreateSingleDataObjectOperation;
+import org.opensubsystems.core.persist.jdbc.operation.DatabaseDeleteSingleDataObjectOperation;
+import org.opensubsystems.core.persist.jdbc.operation.DatabaseReadSingleDataObjectOperation;
+import org.opensubsystems.core.persist.jdbc.operation.DatabaseReadStreamOperation;
+import org.opensubsystems.core.persist.jdbc.operation.DatabaseUpdateSingleDataObjectOperation;
+import org.opensubsystems.core.persist.jdbc.test.DatabaseTest;
+import org.opensubsystems.core.persist.jdbc.test.DatabaseTestSetup;
+import org.opensubsystems.core.persist.jdbc.test.DatabaseTestSuite;
+import org.opensubsystems.core.util.jdbc.DatabaseUtils;
+import org.opensubsystems.core.util.test.Tests;
+
+/**
+ * All tests related to creating and saving multiple data objects at once 
+ * using database factories.
+ * 
+ * @author bastafidli
+ */
+public final class MultipleDataObjectsTest extends Tests
+{
+   // Inner classes ////////////////////////////////////////////////////////////
+   
+   /**
+    * Database factory for test modifiable data objects, which saves multiple
+    * data objects one by one using the default implementation.
+    */
+   public static class TestModifiableDatabaseFactory extends    DatabaseFactoryImpl
+                                                     implements ModifiableDataFactory,
+                                                                ModifiableDatabaseFactory
+   {
+      // Attributes ////////////////////////////////////////////////////////////
+      
+      /**
+       * Schema used by this factory.
+       */
+      protected DatabaseTestSchema m_schema;
+      
+      // Constructors //////////////////////////////////////////////////////////
+      
+      /**
+       * Default constructor.
+       * 
+       * @throws OSSException - an error has occurred
+       */
+      @SuppressWarnings("unchecked")
+      public TestModifiableDatabaseFactory(
+      ) throws OSSException
+      {
+         super(DatabaseImpl.getInstance(), 
+               (Class<DataDescriptor>)(Class<?>)TestModifiableDataObjectDataDescriptor.class);
+         
+         m_schema = (DatabaseTestSchema)DatabaseSchemaManager.getInstance(
+                                           DatabaseTestSchema.class);
+      }
+      
+      // Logic /////////////////////////////////////////////////////////////////
+      
+      /**
+       * {@inheritDoc}
+       */
+      @Override
+      public DataObject get(
+         long lId,
+         long lDomainId
+      ) throws OSSException
+      {
+         DatabaseReadSingleDataObjectOperation dbop;
+         
+         dbop = new DatabaseReadSingleDataObjectOperation(
+                       this, "select ID, DOMAIN_ID, TEST_VALUE, CREATION_DATE,"
+                             + " MODIFICATION_DATE from MULTIPLE_TEST"
+                             + " where ID = ? and DOMAIN_ID = ?", 
+                       m_schema, lId, lDomainId);
+         return (DataObject)dbop.executeRead();
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      @Override
+      public DataObject load(
+         ResultSet rsQueryResults,
+         int       initialIndex
+      ) throws OSSException
+      {
+         try
+         {
+            return new TestModifiableDataObject(
+                          rsQueryResults.getLong(initialIndex),
+                          rsQueryResults.getLong(initialIndex + 1),
+                          rsQueryResults.getTimestamp(initialIndex + 3),
+                          rsQueryResults.getTimestamp(initialIndex + 4),
+                          rsQueryResults.getString(initialIndex + 2), "", "");
+         }
+         catch (SQLException sqleExc)
+         {
+            throw new OSSDatabaseAccessException("Failed to load test data object.", 
+                                                 sqleExc);
+         }
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      @Override
+      public DataObject create(
+         DataObject data
+      ) throws OSSException
+      {
+         DatabaseCreateSingleDataObjectOperation dbop;
+         
+         dbop = new DatabaseCreateSingleDataObjectOperation(
+                       this, m_schema.getInsertMultipleTest(), m_schema, data);
+         dbop.executeUpdate();
+         
+         return (DataObject)dbop.getReturnData();
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      @Override
+      public int create(
+         Collection<DataObject> colDataObject
+      ) throws OSSException
+      {
+         DatabaseCreateMultipleDataObjectsOperation<DataObject> dbop;
+         
+         dbop = new DatabaseCreateMultipleDataObjectsOperation<>(
+                       this, m_schema.getInsertMultipleTest(), m_schema, 
+                       colDataObject, true);
+         dbop.executeUpdate();
+         
+         return colDataObject.size();
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      @Override
+      public ModifiableDataObject save(
+         ModifiableDataObject data
+      ) throws OSSException
+      {
+         DatabaseUpdateSingleDataObjectOperation dbop;
+         
+         dbop = new DatabaseUpdateSingleDataObjectOperation(
+                       this, m_schema.getUpdateMultipleTest(), m_schema, data);
+         dbop.executeUpdate();
+         
+         return (ModifiableDataObject)dbop.getReturnData();
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      @Override
+      public void delete(
+         long lId,
+         long lDomainId
+      ) throws OSSException
+      {
+         DatabaseDeleteSingleDataObjectOperation dbop;
+         
+         dbop = new DatabaseDeleteSingleDataObjectOperation(
+                       this, "delete from MULTIPLE_TEST where ID = ? and DOMAIN_ID = ?", 
+                       m_schema, lId, lDomainId);
+         dbop.executeUpdate();
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      @Override
+      public int setValuesForInsert(
+         PreparedStatement insertStatement,
+         DataObject        data,
+         int               initialIndex
+      ) throws OSSException, 
+               SQLException
+      {
+         TestModifiableDataObject testData = (TestModifiableDataObject)data;
+         int                      iIndex = initialIndex;
+         
+         insertStatement.setLong(iIndex++, testData.getDomainId());
+         insertStatement.setString(iIndex++, testData.getField1());
+         
+         return iIndex;
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      @Override
+      public int setValuesForUpdate(
+         PreparedStatement updateStatement,
+         DataObject        data,
+         int               initialIndex
+      ) throws OSSException, 
+               SQLException
+      {
+         TestModifiableDataObject testData = (TestModifiableDataObject)data;
+         int                      iIndex = initialIndex;
+         
+         updateStatement.setString(iIndex++, testData.getField1());
+         updateStatement.setLong(iIndex++, testData.getId());
+         updateStatement.setLong(iIndex++, testData.getDomainId());
+         updateStatement.setTimestamp(iIndex++, testData.getModificationTimestamp());
+         
+         return iIndex;
+      }
+   }
+   
+   /**
+    * Database factory for test modifiable data objects, which saves multiple
+    * data objects using batches.
+    */
+   public static class TestBatchModifiableDatabaseFactory 
+      extends TestModifiableDatabaseFactory
+   {
+      // Constructors //////////////////////////////////////////////////////////
+      
+      /**
+       * Default constructor.
+       * 
+       * @throws OSSException - an error has occurred
+       */
+      public TestBatchModifiableDatabaseFactory(
+      ) throws OSSException
+      {
+         super();
+      }
+      
+      // Logic /////////////////////////////////////////////////////////////////
+      
+      /**
+       * {@inheritDoc}
+       */
+      @Override
+      public int save(
+         Collection<ModifiableDataObject> colDataObject
+      ) throws OSSException
+      {
+         return saveMultiple(m_schema.getUpdateMultipleTest(), m_schema, 
+                             colDataObject);
+      }
+   }
+   
+   // Constructors /////////////////////////////////////////////////////////////
+   
+   /** 
+    * Private constructor since this class cannot be instantiated
+    */
+   private MultipleDataObjectsTest(
+   )
+   {
+      // Do nothing
+   }
+   
+   // Logic ////////////////////////////////////////////////////////////////////
+   
+   /**
+    * Create the suite for this test since this is the only way how to create
+    * test setup which can initialize and shutdown the database for us
+    * 
+    * @return Test - suite of tests to run for this database
+    */
+   public static Test suite(
+   )
+   {
+      TestSuite suite = new DatabaseTestSuite("MultipleDataObjectsTest");
+      suite.addTestSuite(MultipleDataObjectsTestInternal.class);
+      // Here we are using DatabaseTestSetup instead of ApplicationTestSetup
+      // since we are just directly testing  database functionality without
+      // accessing any business logic functionality packaged into application 
+      // modules
+      TestSetup wrapper = new DatabaseTestSetup(suite);
+
+      return wrapper;
+   }
+
+   /**
+    * Internal class which can be included in other test suites directly without
+    * including the above suite. This allows us to group multiple tests 
+    * together and the execute the DatabaseTestSetup only once 
+    */
+   public static class MultipleDataObjectsTestInternal extends DatabaseTest
+   {
+      // Constants /////////////////////////////////////////////////////////////
+      
+      /**
+       * Domain of the test data objects.
+       */
+      public static final long TEST_DOMAIN_ID = 1;
+      
+      /**
+       * How many test data objects are created by each test.
+       */
+      public static final int TEST_DATA_COUNT = 5;
+      
+      /**
+       * Static initializer
+       */
+      static
+      {
+         // This test use special database schema so make the database aware of it
+         Database dbDatabase;
+   
+         try
+         {
+            dbDatabase = DatabaseImpl.getInstance();
+            // Add schema database tests needs to the database
+            dbDatabase.add(DatabaseTestSchema.class);
+         }
+         catch (OSSException bfeExc)
+         {
+            throw new RuntimeException("Unexpected exception.", bfeExc);
+         }
+      }
+      
+      /**
+       * Create new test.
+       * 
+       * @param strTestName - name of the test
+       */
+      public MultipleDataObjectsTestInternal(
+         String strTestName
+      )
+      {
+         super(strTestName);
+      }
+      
+      /**
+       * Test that multiple data objects created at once receive their 
+       * generated values.
+       * 
+       * @throws Exception - an error has occurred
+       */
+      public void testCreateMultiple(
+      ) throws Exception
+      {
+         TestModifiableDatabaseFactory  factory;
+         List<ModifiableDataObject>     lstData;
+         
+         factory = new TestModifiableDatabaseFactory();
+         try
+         {
+            lstData = createTestData(factory, "create");
+            for (ModifiableDataObject data : lstData)
+            {
+               assertTrue("ID should be generated", 
+                          data.getId() != DataObject.NEW_ID);
+               assertNotNull("Creation timestamp should be fetched", 
+                             data.getCreationTimestamp());
+               assertNotNull("Modification timestamp should be fetched", 
+                             data.getModificationTimestamp());
+               assertSaved(factory, data);
+            }
+         }
+         finally
+         {
+            deleteTestData();
+         }
+      }
+      
+      /**
+       * Test that the generated values of data objects inserted using single 
+       * batch are fetched for all of them at once. The database driver used 
+       * for tests may not return the keys generated by the batch so they are
+       * selected from the database instead.
+       * 
+       * @throws Exception - an error has occurred
+       */
+      public void testFetchGeneratedValues(
+      ) throws Exception
+      {
+         final PreparedStatement       selectKeys;
+         TestModifiableDatabaseFactory factory;
+         List<ModifiableDataObject>    lstData = new ArrayList<>(TEST_DATA_COUNT);
+         PreparedStatement             insertStatement = null;
+         PreparedStatement             batchStatement;
+         TestModifiableDataObject      data;
+         
+         factory = new TestModifiableDatabaseFactory();
+         selectKeys = m_connection.prepareStatement(
+                         "select ID from MULTIPLE_TEST where DOMAIN_ID = ? order by ID");
+         try
+         {
+            batchStatement = (PreparedStatement)Proxy.newProxyInstance(
+               PreparedStatement.class.getClassLoader(), 
+               new Class<?>[] {PreparedStatement.class}, 
+               new InvocationHandler()
+               {
+                  @Override
+                  public Object invoke(
+                     Object   proxy, 
+                     Method   method, 
+                     Object[] args
+                  ) throws Throwable
+                  {
+                     if ("getGeneratedKeys".equals(method.getName()))
+                     {
+                        selectKeys.setLong(1, TEST_DOMAIN_ID);
+                        return selectKeys.executeQuery();
+                     }
+                     throw new UnsupportedOperationException(method.getName());
+                  }
+               });
+            
+            m_transaction.begin();
+            try
+            {
+               insertStatement = m_connection.prepareStatement(
+                                    factory.m_schema.getInsertMultipleTest());
+               for (int iIndex = 0; iIndex < TEST_DATA_COUNT; iIndex++)
+               {
+                  data = new TestModifiableDataObject(
+                                DataObject.NEW_ID, TEST_DOMAIN_ID, null, null, 
+                                "fetch" + iIndex, "", "");
+                  factory.setValuesForInsert(insertStatement, data, 1);
+                  insertStatement.executeUpdate();
+                  lstData.add(data);
+               }
+               DatabaseImpl.getInstance().fetchGeneratedValues(
+                  m_connection, batchStatement, "MULTIPLE_TEST", lstData);
+               m_transaction.commit();
+            }
+            catch (Exception exc)
+            {
+               m_transaction.rollback();
+               throw exc;
+            }
+            finally
+            {
+               DatabaseUtils.close(insertStatement);
+            }
+            
+            for (ModifiableDataObject fetched : lstData)
+            {
+               assertTrue("ID should be fetched", 
+                          fetched.getId() != DataObject.NEW_ID);
+               assertSaved(factory, fetched);
+            }
+         }
+         finally
+         {
+            DatabaseUtils.close(selectKeys);
+            deleteTestData();
+         }
+      }
+      
+      /**
+       * Test that the default implementation saves multiple data objects one 
+       * by one and fetches their modification timestamps.
+       * 
+       * @throws Exception - an error has occurred
+       */
+      public void testSaveMultipleOneByOne(
+      ) throws Exception
+      {
+         saveMultiple(new TestModifiableDatabaseFactory());
+      }
+      
+      /**
+       * Test that multiple data objects saved using batches are checked for 
+       * concurrent modifications and receive their modification timestamps.
+       * 
+       * @throws Exception - an error has occurred
+       */
+      public void testSaveMultipleInBatch(
+      ) throws Exception
+      {
+         saveMultiple(new TestBatchModifiableDatabaseFactory());
+      }
+      
+      /**
+       * Test that saving of multiple data objects using batches detects data 
+       * modified meanwhile by somebody else.
+       * 
+       * @throws Exception - an error has occurred
+       */
+      public void testSaveMultipleConcurrentModification(
+      ) throws Exception
+      {
+         TestModifiableDatabaseFactory  factory;
+         List<ModifiableDataObject>     lstData;
+         List<ModifiableDataObject>     lstModified;
+         ModifiableDataObject           stale;
+         
+         factory = new TestBatchModifiableDatabaseFactory();
+         try
+         {
+            lstData = createTestData(factory, "concurrent");
+            lstModified = modifyTestData(lstData, "modified");
+            stale = lstModified.get(TEST_DATA_COUNT / 2);
+            stale.setModificationTimestamp(new Timestamp(
+               stale.getModificationTimestamp().getTime() - 1000));
+            try
+            {
+               factory.save(lstModified);
+               fail("Saving of data modified by somebody else should fail");
+            }
+            catch (OSSConcurentModifyException ocmeExc)
+            {
+               // Expected
+            }
+            
+            // None of the data should be saved
+            for (ModifiableDataObject data : lstData)
+            {
+               assertSaved(factory, data);
+            }
+         }
+         finally
+         {
+            deleteTestData();
+         }
+      }
+      
+      /**
+       * Test that multiple data objects can be streamed to a handler and that
+       * the streaming read doesn't change the settings of the connection.
+       * 
+       * @throws Exception - an error has occurred
+       */
+      public void testStreamMultiple(
+      ) throws Exception
+      {
+         final TestModifiableDatabaseFactory factory;
+         final List<DataObject>              lstStreamed = new ArrayList<>();
+         final boolean[]                     arrAutoCommit = new boolean[2];
+         DatabaseReadStreamOperation         dbop;
+         
+         factory = new TestModifiableDatabaseFactory();
+         try
+         {
+            createTestData(factory, "stream");
+            dbop = new DatabaseReadStreamOperation(
+                          factory, "select ID, DOMAIN_ID, TEST_VALUE, CREATION_DATE," 
+                                   + " MODIFICATION_DATE from MULTIPLE_TEST"
+                                   + " where DOMAIN_ID = ? order by ID", 
+                          factory.m_schema, 2)
+            {
+               @Override
+               protected Object performOperation(
+                  DatabaseFactory   dbfactory,
+                  Connection        cntConnection,
+                  PreparedStatement pstmQuery
+               ) throws OSSException,
+                        SQLException
+               {
+                  arrAutoCommit[0] = cntConnection.getAutoCommit();
+                  pstmQuery.setLong(1, TEST_DOMAIN_ID);
+                  return new Integer(loadMultipleData(dbfactory, pstmQuery, 
+                     new DataObjectHandler()
+                     {
+                        @Override
+                        public boolean handle(
+                           DataObject data
+                        ) throws OSSException
+                        {
+                           lstStreamed.add(data);
+                           return true;
+                        }
+                     }));
+               }
+               
+               @Override
+               protected void releaseQuery(
+                  DatabaseFactory   dbfactory,
+                  Connection        cntConnection,
+                  PreparedStatement pstmQuery
+               )
+               {
+                  super.releaseQuery(dbfactory, cntConnection, pstmQuery);
+                  try
+                  {
+                     arrAutoCommit[1] = cntConnection.getAutoCommit();
+                  }
+                  catch (SQLException sqleExc)
+                  {
+                     throw new RuntimeException(sqleExc);
+                  }
+               }
+            };
+            
+            assertEquals("All data should be streamed", 
+                         TEST_DATA_COUNT, ((Integer)dbop.executeRead()).intValue());
+            assertEquals("All data should be passed to the handler", 
+                         TEST_DATA_COUNT, lstStreamed.size());
+            assertFalse("Data should be streamed within transaction", 
+                        arrAutoCommit[0]);
+            assertTrue("Autocommit should be restored", arrAutoCommit[1]);
+         }
+         finally
+         {
+            deleteTestData();
+         }
+      }
+      
+      // Helper methods ////////////////////////////////////////////////////////
+      
+      /**
+       * Save multiple data objects using specified factory and verify they 
+       * were saved.
+       * 
+       * @param factory - factory to use to save the data
+       * @throws Exception - an error has occurred
+       */
+      protected void saveMultiple(
+         TestModifiableDatabaseFactory factory
+      ) throws Exception
+      {
+         List<ModifiableDataObject> lstData;
+         
+         try
+         {
+            lstData = modifyTestData(createTestData(factory, "save"), "saved");
+            assertEquals("All data should be saved", 
+                         TEST_DATA_COUNT, factory.save(lstData));
+            for (ModifiableDataObject data : lstData)
+            {
+               assertSaved(factory, data);
+            }
+         }
+         finally
+         {
+            deleteTestData();
+         }
+      }
+      
+      /**
+       * Create test data objects in the database.
+       * 
+       * @param factory - factory to use to create the data
+       * @param strValue - value to store in the data
+       * @return List<ModifiableDataObject> - created data objects
+       * @throws Exception - an error has occurred
+       */
+      protected List<ModifiableDataObject> createTestData(
+         TestModifiableDatabaseFactory factory,
+         String                        strValue
+      ) throws Exception
+      {
+         List<DataObject>           lstCreate = new ArrayList<>(TEST_DATA_COUNT);
+         List<ModifiableDataObject> lstData = new ArrayList<>(TEST_DATA_COUNT);
+         TestModifiableDataObject   data;
+         
+         for (int iIndex = 0; iIndex < TEST_DATA_COUNT; iIndex++)
+         {
+            data = new TestModifiableDataObject(
+                          DataObject.NEW_ID, TEST_DOMAIN_ID, null, null, 
+                          strValue + iIndex, "", "");
+            lstCreate.add(data);
+            lstData.add(data);
+         }
+         assertEquals("All data should be created", 
+                      TEST_DATA_COUNT, factory.create(lstCreate));
+         
+         return lstData;
+      }
+      
+      /**
+       * Create modified copies of the test data objects.
+       * 
+       * @param lstData - data objects to modify
+       * @param strValue - new value to store in the data
+       * @return List<ModifiableDataObject> - modified data objects
+       * @throws Exception - an error has occurred
+       */
+      protected List<ModifiableDataObject> modifyTestData(
+         List<ModifiableDataObject> lstData,
+         String                     strValue
+      ) throws Exception
+      {
+         List<ModifiableDataObject> lstModified = new ArrayList<>(lstData.size());
+         int                        iIndex = 0;
+         
+         for (ModifiableDataObject data : lstData)
+         {
+            lstModified.add(new TestModifiableDataObject(
+                               data.getId(), data.getDomainId(), 
+                               data.getCreationTimestamp(), 
+                               data.getModificationTimestamp(), 
+                               strValue + iIndex++, "", ""));
+         }
+         
+         return lstModified;
+      }
+      
+      /**
+       * Verify that the data object is stored in the database the same way as
+       * it is in memory.
+       * 
+       * @param factory - factory to use to read the data
+       * @param data - data object to verify
+       * @throws Exception - an error has occurred
+       */
+      protected void assertSaved(
+         TestModifiableDatabaseFactory factory,
+         ModifiableDataObject          data
+      ) throws Exception
+      {
+         TestModifiableDataObject stored;
+         
+         stored = (TestModifiableDataObject)factory.get(data.getId(), 
+                                                        data.getDomainId());
+         assertNotNull("Data should be stored in the database", stored);
+         assertEquals("Stored value doesn't match", 
+                      ((TestModifiableDataObject)data).getField1(), 
+                      stored.getField1());
+         assertEquals("Creation timestamp doesn't match", 
+                      data.getCreationTimestamp(), 
+                      stored.getCreationTimestamp());
+         assertEquals("Modification timestamp doesn't match", 
+                      data.getModificationTimestamp(), 
+                      stored.getModificationTimestamp());
+      }
+      
+      /**
+       * Delete all test data objects from the database.
+       * 
+       * @throws Exception - an error has occurred
+       */
+      protected void deleteTestData(
+      ) throws Exception
+      {
+         m_transaction.begin();
+         try
+         {
+            DatabaseUtils.executeUpdateAndClose(m_connection.prepareStatement(
+                                                   "delete from MULTIPLE_TEST"));
+            m_transaction.commit();
+         }
+         catch (Exception exc)
+         {
+            m_transaction.rollback();
+            throw exc;
+         }
+      }
+   }
+}
@@ -52,6 +52,15 @@ public class HsqlDBDatabaseTestSchema extends DatabaseTestSchema
          TEST_KEY   INTEGER IDENTITY,
          TEST_VALUE VARCHAR(50) NOT NULL
       )
+      
+      CREATE TABLE MULTIPLE_TEST 
+      (
+         ID                INTEGER IDENTITY,
+         DOMAIN_ID         INTEGER NOT NULL,
+         TEST_VALUE        VARCHAR(50) NOT NULL,
+         CREATION_DATE     TIMESTAMP NOT NULL,
+         MODIFICATION_DATE TIMESTAMP NOT NULL
+      )
    */
    
    // Cached values ////////////////////////////////////////////////////////////
@@ -115,6 +124,22 @@ public class HsqlDBDatabaseTestSchema extends DatabaseTestSchema
                              "Access for table GENERATEDKEY_TEST set for user " 
                              + strUserName);
          */                             
+
+         ///////////////////////////////////////////////////////////////////////
+
+         if (stmQuery.execute("CREATE TABLE MULTIPLE_TEST" + NL +
+                              "(" + NL +
+                              "   ID                INTEGER IDENTITY," + NL + 
+                              "   DOMAIN_ID         INTEGER NOT NULL," + NL + 
+                              "   TEST_VALUE        VARCHAR(50) NOT NULL," + NL + 
+                              "   CREATION_DATE     TIMESTAMP NOT NULL," + NL + 
+                              "   MODIFICATION_DATE TIMESTAMP NOT NULL" + NL +
+                              ")"))
+         {
+            // Close any results
+            stmQuery.getMoreResults(Statement.CLOSE_ALL_RESULTS);
+         }
+         s_logger.log(Level.FINEST, "Table MULTIPLE_TEST created.");
       }
       catch (SQLException sqleExc)
       {
@@ -0,0 +1,364 @@
+/*
+ * Copyright (C) 2003 - 2016 OpenSubsystems.com/net/org and its owners. All rights reserved.
+ *
+ * This file is part of OpenSubsystems.
+ *
+ * OpenSubsystems is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opensubsystems.core.persist.jdbc.impl;
+
+import java.sql.Connection;
+
+import org.opensubsystems.core.persist.jdbc.database.hsqldb.HsqlDBDatabaseImpl;
+import org.opensubsystems.core.persist.jdbc.transaction.impl.SimpleLocalTransactionFactoryImpl;
+import org.opensubsystems.core.util.test.OSSTestCase;
+
+/**
+ * Tests for routing of read connections to replicas of the data source in
+ * DatabaseConnectionFactoryImpl.
+ *
+ * @author bastafidli
+ */
+public class DatabaseConnectionFactoryImplTest extends OSSTestCase
+{
+   // Constants ////////////////////////////////////////////////////////////////
+
+   /**
+    * URL of the in memory database used as the data source.
+    */
+   public static final String PRIMARY_URL = "jdbc:hsqldb:mem:replicatestprimary";
+
+   /**
+    * URL of the in memory database used as the first replica.
+    */
+   public static final String REPLICA1_URL = "jdbc:hsqldb:mem:replicatestreplica1";
+
+   /**
+    * URL of the in memory database used as the second replica.
+    */
+   public static final String REPLICA2_URL = "jdbc:hsqldb:mem:replicatestreplica2";
+
+   /**
+    * URL for which no driver exists, used for unavailable replica.
+    */
+   public static final String INVALID_URL = "jdbc:replicatestinvalid:replica";
+
+   /**
+    * Name of the data source replicas are defined for.
+    */
+   public static final String PRIMARY_NAME = "replicatestprimary";
+
+   // Attributes ///////////////////////////////////////////////////////////////
+
+   /**
+    * Factory tested by the current test.
+    */
+   protected DatabaseConnectionFactoryImpl m_factory;
+
+   // Constructors /////////////////////////////////////////////////////////////
+
+   /**
+    * Constructor for DatabaseConnectionFactoryImplTest.
+    *
+    * @param strName - name of the test
+    */
+   public DatabaseConnectionFactoryImplTest(
+      String strName
+   )
+   {
+      super(strName);
+   }
+
+   // Helper methods ///////////////////////////////////////////////////////////
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   protected void setUp(
+   ) throws Exception
+   {
+      super.setUp();
+
+      Class.forName("org.hsqldb.jdbcDriver");
+      m_factory = null;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   protected void tearDown(
+   ) throws Exception
+   {
+      try
+      {
+         if (m_factory != null)
+         {
+            m_factory.stop();
+         }
+      }
+      finally
+      {
+         super.tearDown();
+      }
+   }
+
+   /**
+    * Create factory with data source and its replicas.
+    *
+    * @param transactionFactory - transaction factory to use, can be null
+    * @param arrReplicaUrls - urls of the replicas of the data source
+    * @return DatabaseConnectionFactoryImpl - factory with the data source set
+    *                                         as default data source
+    * @throws Exception - an error has occurred
+    */
+   protected DatabaseConnectionFactoryImpl createFactory(
+      DatabaseTransactionFactoryImpl transactionFactory,
+      String...                      arrReplicaUrls
+   ) throws Exception
+   {
+      DatabaseConnectionFactoryImpl                              factory;
+      DatabaseConnectionFactoryImpl.DatabaseConnectionDefinition primary;
+      DatabaseConnectionFactoryImpl.DatabaseConnectionDefinition replica;
+
+      factory = new DatabaseConnectionFactoryImpl(transactionFactory);
+      primary = (DatabaseConnectionFactoryImpl.DatabaseConnectionDefinition)
+                   factory.addDataSource(PRIMARY_NAME, new HsqlDBDatabaseImpl(),
+                                         "org.hsqldb.jdbcDriver", PRIMARY_URL,
+                                         "sa", "",
+                                         Connection.TRANSACTION_READ_COMMITTED);
+      factory.setDefaultDataSource(PRIMARY_NAME);
+      for (int iIndex = 0; iIndex < arrReplicaUrls.length; iIndex++)
+      {
+         replica = (DatabaseConnectionFactoryImpl.DatabaseConnectionDefinition)
+                      factory.addDataSource(PRIMARY_NAME + "replica" + iIndex,
+                                            new HsqlDBDatabaseImpl(),
+                                            "org.hsqldb.jdbcDriver",
+                                            arrReplicaUrls[iIndex], "sa", "",
+                                            Connection.TRANSACTION_READ_COMMITTED);
+         primary.addReplica(replica);
+      }
+      factory.m_bReplicasDefined = true;
+
+      return factory;
+   }
+
+   /**
+    * Get url of the database the connection is connected to.
+    *
+    * @param connection - connection to check
+    * @return String - url of the database
+    * @throws Exception - an error has occurred
+    */
+   protected String getUrl(
+      Connection connection
+   ) throws Exception
+   {
+      return connection.getMetaData().getURL();
+   }
+
+   // Tests ////////////////////////////////////////////////////////////////////
+
+   /**
+    * Test that the read connection is requested from the least used replica.
+    *
+    * @throws Exception - an error has occurred
+    */
+   public void testLeastUsedReplica(
+   ) throws Exception
+   {
+      Connection first;
+      Connection second;
+
+      m_factory = createFactory(null, REPLICA1_URL, REPLICA2_URL);
+      first = m_factory.requestReadConnection();
+      try
+      {
+         assertEquals("Read connection should be requested from the first replica",
+                      REPLICA1_URL, getUrl(first));
+         second = m_factory.requestReadConnection();
+         try
+         {
+            assertEquals("Read connection should be requested from the replica"
+                         + " which is used less", REPLICA2_URL, getUrl(second));
+         }
+         finally
+         {
+            m_factory.returnConnection(second);
+         }
+      }
+      finally
+      {
+         m_factory.returnConnection(first);
+      }
+   }
+
+   /**
+    * Test that the read connection is not requested from replica while the
+    * transaction is in progress.
+    *
+    * @throws Exception - an error has occurred
+    */
+   public void testNoReplicaInTransaction(
+   ) throws Exception
+   {
+      SimpleLocalTransactionFactoryImpl transactionFactory;
+      Connection                        connection;
+
+      transactionFactory = new SimpleLocalTransactionFactoryImpl();
+      m_factory = createFactory(transactionFactory, REPLICA1_URL);
+
+      transactionFactory.begin();
+      try
+      {
+         assertNull("Replica shouldn't be selected in transaction",
+                    m_factory.selectReplica(m_factory.m_defaultDataSource));
+         connection = m_factory.requestReadConnection();
+         try
+         {
+            assertEquals("Read connection in transaction should be requested"
+                         + " from the data source", PRIMARY_URL, getUrl(connection));
+         }
+         finally
+         {
+            m_factory.returnConnection(connection);
+         }
+      }
+      finally
+      {
+         transactionFactory.rollback();
+      }
+      assertTrue("Connection used in transaction should be recorded as write",
+                 m_factory.isWriteRecent());
+
+      // Forget the write so that only the transaction state affects the routing
+      m_factory.m_mpRecentWrites.clear();
+      connection = m_factory.requestReadConnection();
+      try
+      {
+         assertEquals("Read connection after transaction should be requested"
+                      + " from the replica", REPLICA1_URL, getUrl(connection));
+      }
+      finally
+      {
+         m_factory.returnConnection(connection);
+      }
+   }
+
+   /**
+    * Test that the read connection is requested from the data source if the
+    * replica is not available.
+    *
+    * @throws Exception - an error has occurred
+    */
+   public void testFallbackToDataSource(
+   ) throws Exception
+   {
+      Connection connection;
+
+      m_factory = createFactory(null, INVALID_URL);
+      connection = m_factory.requestReadConnection();
+      try
+      {
+         assertEquals("Read connection should be requested from the data source"
+                      + " if replica is not available",
+                      PRIMARY_URL, getUrl(connection));
+      }
+      finally
+      {
+         m_factory.returnConnection(connection);
+      }
+   }
+
+   /**
+    * Test that the session, which modified data recently, reads from the data
+    * source until the read your writes window expires.
+    *
+    * @throws Exception - an error has occurred
+    */
+   public void testReadYourWrites(
+   ) throws Exception
+   {
+      Connection connection;
+      String     strSession;
+
+      m_factory = createFactory(null, REPLICA1_URL);
+      strSession = m_factory.getCurrentSession();
+      connection = m_factory.requestConnection(false);
+      m_factory.returnConnection(connection);
+      assertTrue("Write should be recorded for the session",
+                 m_factory.m_mpRecentWrites.containsKey(strSession));
+      assertTrue("Write should be recent", m_factory.isWriteRecent());
+
+      connection = m_factory.requestReadConnection();
+      try
+      {
+         assertEquals("Read connection after write should be requested from"
+                      + " the data source", PRIMARY_URL, getUrl(connection));
+      }
+      finally
+      {
+         m_factory.returnConnection(connection);
+      }
+
+      // Pretend the write happened before the window started
+      m_factory.m_mpRecentWrites.put(strSession, System.currentTimeMillis()
+                                     - m_factory.m_iReadYourWritesWindow - 1);
+      connection = m_factory.requestReadConnection();
+      try
+      {
+         assertEquals("Read connection after the window expired should be"
+                      + " requested from the replica",
+                      REPLICA1_URL, getUrl(connection));
+      }
+      finally
+      {
+         m_factory.returnConnection(connection);
+      }
+      assertFalse("Expired write should be forgotten",
+                  m_factory.m_mpRecentWrites.containsKey(strSession));
+   }
+
+   /**
+    * Test that sessions, which didn't modify data recently, are forgotten
+    * once there are too many of them.
+    *
+    * @throws Exception - an error has occurred
+    */
+   public void testPruneRecentWrites(
+   ) throws Exception
+   {
+      long lExpired;
+
+      m_factory = createFactory(null, REPLICA1_URL);
+      lExpired = System.currentTimeMillis() - m_factory.m_iReadYourWritesWindow - 1;
+      for (int iIndex = 0;
+           iIndex < DatabaseConnectionFactoryImpl.RECENT_WRITES_LIMIT; iIndex++)
+      {
+         m_factory.m_mpRecentWrites.put("expired" + iIndex, lExpired);
+      }
+      m_factory.m_mpRecentWrites.put("recent", System.currentTimeMillis());
+
+      m_factory.recordWrite();
+      assertEquals("Only recent writes should be remembered", 2,
+                   m_factory.m_mpRecentWrites.size());
+      assertTrue("Recent write should be remembered",
+                 m_factory.m_mpRecentWrites.containsKey("recent"));
+      assertTrue("Current write should be remembered",
+                 m_factory.m_mpRecentWrites.containsKey(
+                    m_factory.getCurrentSession()));
+   }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2003 - 2016 OpenSubsystems.com/net/org and its owners. All rights reserved.
+ * 
+ * This file is part of OpenSubsystems.
+ *
+ * OpenSubsystems is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+
+package org.opensubsystems.core.persist.jdbc.impl;
+
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.sql.DriverManager;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.opensubsystems.core.util.jdbc.PreparedStatementCache;
+import org.opensubsystems.core.util.test.OSSTestCase;
+
+/**
+ * Tests for DatabaseConnectionStatistics.
+ * 
+ * @author bastafidli
+ */
+public class DatabaseConnectionStatisticsTest extends OSSTestCase
+{
+   // Constructors /////////////////////////////////////////////////////////////
+   
+   /**
+    * Constructor for DatabaseConnectionStatisticsTest.
+    * 
+    * @param strName - name of the test
+    */
+   public DatabaseConnectionStatisticsTest(
+      String strName
+   )
+   {
+      super(strName);
+   }
+   
+   // Tests ////////////////////////////////////////////////////////////////////
+
+   /**
+    * Test that statistics of data sources with the same name managed by 
+    * different connection factories do not replace each other in JMX.
+    * 
+    * @throws Exception - an error has occurred
+    */
+   public void testRegisterDataSourcesWithSameName(
+   ) throws Exception
+   {
+      MBeanServer                  server = ManagementFactory.getPlatformMBeanServer();
+      DatabaseConnectionStatistics statistics1;
+      DatabaseConnectionStatistics statistics2;
+      ObjectName                   name1;
+      ObjectName                   name2;
+      
+      statistics1 = new DatabaseConnectionStatistics(null, "sametestname");
+      statistics2 = new DatabaseConnectionStatistics(null, "sametestname");
+      try
+      {
+         statistics1.register();
+         statistics2.register();
+         name1 = statistics1.getObjectName();
+         name2 = statistics2.getObjectName();
+         assertFalse("Statistics should be registered under different names", 
+                     name1.equals(name2));
+         assertTrue("First statistics should stay registered", 
+                    server.isRegistered(name1));
+         assertTrue("Second statistics should be registered", 
+                    server.isRegistered(name2));
+         
+         statistics2.unregister();
+         assertTrue("First statistics should stay registered", 
+                    server.isRegistered(name1));
+         assertFalse("Second statistics should be unregistered", 
+                     server.isRegistered(name2));
+      }
+      finally
+      {
+         statistics1.unregister();
+         statistics2.unregister();
+      }
+   }
+
+   /**
+    * Test that the reset forgets all cumulative counts.
+    * 
+    * @throws Exception - an error has occurred
+    */
+   public void testReset(
+   ) throws Exception
+   {
+      DatabaseConnectionStatistics statistics;
+      
+      statistics = new DatabaseConnectionStatistics(null, "reset");
+      statistics.requestCompleted(statistics.requestStarted(), true);
+      statistics.requestTimedOut();
+      statistics.poolExhausted();
+      statistics.requestRejected();
+      statistics.connectionLeaked();
+      statistics.connectionReclaimed();
+      statistics.statementPrepared(true);
+      statistics.statementPrepared(false);
+      statistics.reset();
+      
+      assertEquals("Request count should be reset", 
+                   0, statistics.getRequestCount());
+      assertEquals("Timeout count should be reset", 
+                   0, statistics.getTimeoutCount());
+      assertEquals("Exhausted count should be reset", 
+                   0, statistics.getExhaustedCount());
+      assertEquals("Rejected count should be reset", 
+                   0, statistics.getRejectedCount());
+      assertEquals("Leaked connection count should be reset", 
+                   0, statistics.getLeakedConnectionCount());
+      assertEquals("Reclaimed connection count should be reset", 
+                   0, statistics.getReclaimedConnectionCount());
+      assertEquals("Statement cache hit count should be reset", 
+                   0, statistics.getStatementCacheHitCount());
+      assertEquals("Statement cache miss count should be reset", 
+                   0, statistics.getStatementCacheMissCount());
+   }
+
+   /**
+    * Test that the hits and misses of statement cache created by the 
+    * statistics are recorded by the statistics.
+    * 
+    * @throws Exception - an error has occurred
+    */
+   public void testStatementCacheHitsRecorded(
+   ) throws Exception
+   {
+      DatabaseConnectionStatistics statistics;
+      PreparedStatementCache       cache;
+      Connection                   connection;
+      
+      Class.forName("org.hsqldb.jdbcDriver");
+      connection = DriverManager.getConnection("jdbc:hsqldb:mem:statisticstest", 
+                                               "sa", "");
+      try
+      {
+         statistics = new DatabaseConnectionStatistics(null, "statementcache");
+         cache = statistics.createStatementCache(
+                               connection, connection, 
+                               PreparedStatementCache.UNLIMITED_SIZE);
+         cache.prepareStatement("values (1)").close();
+         cache.prepareStatement("values (1)").close();
+         cache.prepareStatement("values (1)").close();
+         cache.close();
+         
+         assertEquals("Statement cache hit count is incorrect", 
+                      2, statistics.getStatementCacheHitCount());
+         assertEquals("Statement cache miss count is incorrect", 
+                      1, statistics.getStatementCacheMissCount());
+         assertEquals("Statement cache hit ratio is incorrect", 
+                      200.0 / 3, statistics.getStatementCacheHitRatio(), 0.001);
+      }
+      finally
+      {
+         connection.close();
+      }
+   }
+
+   /**
+    * Test that the bucket limits of histograms cannot be modified by the caller.
+    * 
+    * @throws Exception - an error has occurred
+    */
+   public void testHistogramBucketLimitsCannotBeModified(
+   ) throws Exception
+   {
+      DatabaseConnectionStatistics statistics;
+      long[]                       arrLimits;
+      long                         lFirstLimit;
+      
+      statistics = new DatabaseConnectionStatistics(null, "bucketlimits");
+      arrLimits = statistics.getHistogramBucketLimits();
+      lFirstLimit = arrLimits[0];
+      arrLimits[0] = -1;
+      assertEquals("Bucket limits shouldn't change", 
+                   lFirstLimit, statistics.getHistogramBucketLimits()[0]);
+   }
+}
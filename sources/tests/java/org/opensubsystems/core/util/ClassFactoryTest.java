@@ -0,0 +1,299 @@
+/*
+ * Copyright (C) 2003 - 2016 OpenSubsystems.com/net/org and its owners. All rights reserved.
+ * 
+ * This file is part of OpenSubsystems.
+ *
+ * OpenSubsystems is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+
+package org.opensubsystems.core.util;
+
+import java.util.List;
+
+import org.opensubsystems.core.error.OSSException;
+import org.opensubsystems.core.util.test.OSSTestCase;
+
+/**
+ * Tests for ClassFactory.
+ * 
+ * @author bastafidli
+ */
+public class ClassFactoryTest extends OSSTestCase
+{
+   // Constants ////////////////////////////////////////////////////////////////
+   
+   /**
+    * Name of class, which doesn't exist.
+    */
+   public static final String MISSING_CLASS_NAME 
+                                 = "org.opensubsystems.core.util.MissingClass";
+   
+   // Inner classes ////////////////////////////////////////////////////////////
+   
+   /**
+    * Class which can be instantiated.
+    */
+   public static class InstantiableClass
+   {
+      /**
+       * Constructor.
+       */
+      public InstantiableClass(
+      )
+      {
+         // Nothing to do
+      }
+   }
+   
+   /**
+    * Class which cannot be instantiated since it is abstract.
+    */
+   public abstract static class AbstractClass
+   {
+      /**
+       * Constructor.
+       */
+      public AbstractClass(
+      )
+      {
+         // Nothing to do
+      }
+   }
+   
+   /**
+    * Class which constructor always fails.
+    */
+   public static class FailingConstructorClass
+   {
+      /**
+       * Constructor.
+       */
+      public FailingConstructorClass(
+      )
+      {
+         throw new IllegalStateException("Constructor failed");
+      }
+   }
+   
+   /**
+    * Class which initialization always fails.
+    */
+   public static class FailingInitializationClass
+   {
+      /**
+       * Value which cannot be initialized.
+       */
+      public static final String VALUE = failInitialization();
+      
+      /**
+       * Constructor.
+       */
+      public FailingInitializationClass(
+      )
+      {
+         // Nothing to do
+      }
+      
+      /**
+       * @return String - never returns since it always fails
+       */
+      private static String failInitialization(
+      )
+      {
+         throw new IllegalStateException("Initialization failed");
+      }
+   }
+   
+   /**
+    * Factory which considers the specified class names and counts how many 
+    * times it had to resolve the class. 
+    */
+   public static class CountingClassFactory extends ClassFactory<Object>
+   {
+      /**
+       * Class names to consider.
+       */
+      protected String[] m_arrClassNames;
+      
+      /**
+       * How many times the class was resolved.
+       */
+      protected int m_iResolveCount;
+      
+      /**
+       * Constructor.
+       * 
+       * @param arrClassNames - class names to consider
+       */
+      public CountingClassFactory(
+         String... arrClassNames
+      )
+      {
+         super(Object.class);
+         
+         m_arrClassNames = arrClassNames;
+      }
+      
+      /**
+       * @return int - how many times the class was resolved
+       */
+      public int getResolveCount(
+      )
+      {
+         return m_iResolveCount;
+      }
+      
+      /**
+       * {@inheritDoc}
+       */
+      @Override
+      protected ResolvedClass resolveClass(
+         List<String> lstClassNames,
+         String       strClassIdentifier,
+         List<Object> lstInstance
+      ) throws OSSException
+      {
+         m_iResolveCount++;
+         return super.resolveClass(lstClassNames, strClassIdentifier, 
+                                   lstInstance);
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      @Override
+      protected void createDefaultClassNames(
+         String       strClassIdentifier,
+         String       strModifier,
+         List<String> lstClassNames
+      ) throws OSSException
+      {
+         for (String strClassName : m_arrClassNames)
+         {
+            lstClassNames.add(strClassName);
+         }
+      }
+   }
+   
+   // Constructors /////////////////////////////////////////////////////////////
+   
+   /**
+    * Constructor for ClassFactoryTest.
+    * 
+    * @param strName - name of the test
+    */
+   public ClassFactoryTest(
+      String strName
+   )
+   {
+      super(strName);
+   }
+   
+   // Tests ////////////////////////////////////////////////////////////////////
+
+   /**
+    * Test that the exception thrown by the constructor of the class is 
+    * propagated to the caller and the next class is not tried instead.
+    * 
+    * @throws Exception - an error has occurred
+    */
+   public void testConstructorExceptionPropagated(
+   ) throws Exception
+   {
+      CountingClassFactory factory;
+      
+      factory = new CountingClassFactory(
+                       FailingConstructorClass.class.getName(),
+                       InstantiableClass.class.getName());
+      try
+      {
+         factory.createInstance("testConstructorExceptionPropagated");
+         fail("Exception thrown by the constructor should be propagated");
+      }
+      catch (IllegalStateException iseExc)
+      {
+         assertEquals("Unexpected exception propagated", 
+                      "Constructor failed", iseExc.getMessage());
+      }
+   }
+
+   /**
+    * Test that the class, which was resolved, is not resolved again.
+    * 
+    * @throws Exception - an error has occurred
+    */
+   public void testResolvedClassCached(
+   ) throws Exception
+   {
+      CountingClassFactory factory;
+      
+      factory = new CountingClassFactory(MISSING_CLASS_NAME, 
+                                         InstantiableClass.class.getName());
+      assertTrue("Class should be instantiated", 
+                 factory.createInstance("testResolvedClassCached") 
+                 instanceof InstantiableClass);
+      assertTrue("Class should be instantiated", 
+                 factory.createInstance("testResolvedClassCached") 
+                 instanceof InstantiableClass);
+      assertEquals("Class should be resolved only once", 
+                   1, factory.getResolveCount());
+   }
+
+   /**
+    * Test that the class resolved after an abstract class, which can never be
+    * instantiated, is not resolved again.
+    * 
+    * @throws Exception - an error has occurred
+    */
+   public void testResolvedClassAfterAbstractClassCached(
+   ) throws Exception
+   {
+      CountingClassFactory factory;
+      
+      factory = new CountingClassFactory(AbstractClass.class.getName(), 
+                                         InstantiableClass.class.getName());
+      assertTrue("Next class should be instantiated", 
+                 factory.createInstance("testResolvedClassAfterAbstractClassCached") 
+                 instanceof InstantiableClass);
+      assertTrue("Next class should be instantiated", 
+                 factory.createInstance("testResolvedClassAfterAbstractClassCached") 
+                 instanceof InstantiableClass);
+      assertEquals("Class should be resolved only once", 
+                   1, factory.getResolveCount());
+   }
+
+   /**
+    * Test that the class, which couldn't be loaded or initialized, is not 
+    * remembered as missing.
+    * 
+    * @throws Exception - an error has occurred
+    */
+   public void testLinkageErrorNotCached(
+   ) throws Exception
+   {
+      CountingClassFactory factory;
+      
+      factory = new CountingClassFactory(
+                       FailingInitializationClass.class.getName(), 
+                       InstantiableClass.class.getName());
+      assertTrue("Next class should be instantiated", 
+                 factory.createInstance("testLinkageErrorNotCached") 
+                 instanceof InstantiableClass);
+      assertTrue("Next class should be instantiated", 
+                 factory.createInstance("testLinkageErrorNotCached") 
+                 instanceof InstantiableClass);
+      assertEquals("Class should be resolved every time", 
+                   2, factory.getResolveCount());
+   }
+}
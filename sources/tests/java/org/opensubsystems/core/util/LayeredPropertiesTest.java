@@ -0,0 +1,251 @@
+/*
+ * Copyright (C) 2003 - 2016 OpenSubsystems.com/net/org and its owners. All rights reserved.
+ *
+ * This file is part of OpenSubsystems.
+ *
+ * OpenSubsystems is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opensubsystems.core.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.opensubsystems.core.util.test.OSSTestCase;
+
+/**
+ * Tests for LayeredProperties.
+ *
+ * @author bastafidli
+ */
+public class LayeredPropertiesTest extends OSSTestCase
+{
+   // Attributes ///////////////////////////////////////////////////////////////
+
+   /**
+    * Bottom layer with the default properties.
+    */
+   protected Properties m_prpDefault;
+
+   /**
+    * Middle layer with the properties of the current context.
+    */
+   protected Properties m_prpContext;
+
+   /**
+    * Top layer with the properties from the external file.
+    */
+   protected Properties m_prpFile;
+
+   // Constructors /////////////////////////////////////////////////////////////
+
+   /**
+    * Constructor for LayeredPropertiesTest.
+    *
+    * @param strName - name of the test
+    */
+   public LayeredPropertiesTest(
+      String strName
+   )
+   {
+      super(strName);
+   }
+
+   // Helper methods ///////////////////////////////////////////////////////////
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   protected void setUp(
+   ) throws Exception
+   {
+      super.setUp();
+
+      m_prpDefault = new Properties();
+      m_prpDefault.setProperty("all", "default");
+      m_prpDefault.setProperty("defaultcontext", "default");
+      m_prpDefault.setProperty("defaultonly", "default");
+
+      m_prpContext = new Properties();
+      m_prpContext.setProperty("all", "context");
+      m_prpContext.setProperty("defaultcontext", "context");
+      m_prpContext.setProperty("contextonly", "context");
+
+      m_prpFile = new Properties();
+      m_prpFile.setProperty("all", "file");
+      m_prpFile.setProperty("fileonly", "file");
+   }
+
+   /**
+    * Create properties with the default, context and file layers in the order
+    * used by MultiConfig.
+    *
+    * @return LayeredProperties - view of the layers
+    */
+   protected LayeredProperties createProperties(
+   )
+   {
+      List<Properties> lstLayers = new ArrayList<>();
+
+      lstLayers.add(m_prpDefault);
+      lstLayers.add(m_prpContext);
+      lstLayers.add(m_prpFile);
+
+      return new LayeredProperties(lstLayers);
+   }
+
+   // Tests ////////////////////////////////////////////////////////////////////
+
+   /**
+    * Test that the properties are looked up in the layers from the top one to
+    * the bottom one and that the properties set in the view take precedence
+    * over all the layers without modifying them.
+    *
+    * @throws Exception - an error has occurred
+    */
+   public void testLayerPrecedence(
+   ) throws Exception
+   {
+      LayeredProperties prpLayered = createProperties();
+
+      assertEquals("File layer should take precedence over all the others",
+                   "file", prpLayered.getProperty("all"));
+      assertEquals("Context layer should take precedence over the default one",
+                   "context", prpLayered.getProperty("defaultcontext"));
+      assertEquals("Property only in default layer should be found",
+                   "default", prpLayered.getProperty("defaultonly"));
+      assertEquals("Property only in context layer should be found",
+                   "context", prpLayered.getProperty("contextonly"));
+      assertEquals("Property only in file layer should be found",
+                   "file", prpLayered.getProperty("fileonly"));
+      assertNull("Unknown property shouldn't be found",
+                 prpLayered.getProperty("unknown"));
+      assertEquals("Default value should be used for unknown property",
+                   "value", prpLayered.getProperty("unknown", "value"));
+
+      prpLayered.setProperty("all", "view");
+      assertEquals("Property set in the view should take precedence",
+                   "view", prpLayered.getProperty("all"));
+      assertEquals("File layer shouldn't be modified",
+                   "file", m_prpFile.getProperty("all"));
+      assertEquals("Context layer shouldn't be modified",
+                   "context", m_prpContext.getProperty("all"));
+      assertEquals("Default layer shouldn't be modified",
+                   "default", m_prpDefault.getProperty("all"));
+   }
+
+   /**
+    * Test that once the layers are copied into the view, the iteration sees
+    * the properties from all the layers and that the properties set in the
+    * view before keep their values.
+    *
+    * @throws Exception - an error has occurred
+    */
+   public void testIterationAfterFlatten(
+   ) throws Exception
+   {
+      LayeredProperties   prpLayered = createProperties();
+      Map<String, String> mpExpected = new HashMap<>();
+      Map<String, String> mpActual = new HashMap<>();
+
+      prpLayered.setProperty("defaultcontext", "view");
+      prpLayered.setProperty("viewonly", "view");
+
+      mpExpected.put("all", "file");
+      mpExpected.put("defaultcontext", "view");
+      mpExpected.put("defaultonly", "default");
+      mpExpected.put("contextonly", "context");
+      mpExpected.put("fileonly", "file");
+      mpExpected.put("viewonly", "view");
+
+      for (Map.Entry<Object, Object> entry : prpLayered.entrySet())
+      {
+         mpActual.put((String)entry.getKey(), (String)entry.getValue());
+      }
+      assertEquals("Iteration should see properties from all the layers",
+                   mpExpected, mpActual);
+      assertEquals("Size should include properties from all the layers",
+                   mpExpected.size(), prpLayered.size());
+      assertEquals("Names should include properties from all the layers",
+                   mpExpected.keySet(), prpLayered.stringPropertyNames());
+      assertEquals("Property set in the view should keep its value",
+                   "view", prpLayered.getProperty("defaultcontext"));
+      assertEquals("Property from the layers should be found after flatten",
+                   "file", prpLayered.get("all"));
+      assertEquals("Layers shouldn't be modified by flatten",
+                   3, m_prpDefault.size());
+
+      m_prpFile.setProperty("fileonly", "changed");
+      assertEquals("Layers shouldn't be read once they were copied",
+                   "file", prpLayered.getProperty("fileonly"));
+   }
+
+   /**
+    * Test that the view is serialized as regular properties containing the
+    * properties from all the layers.
+    *
+    * @throws Exception - an error has occurred
+    */
+   public void testSerialization(
+   ) throws Exception
+   {
+      LayeredProperties     prpLayered = createProperties();
+      ByteArrayOutputStream bos = new ByteArrayOutputStream();
+      ObjectOutputStream    oos;
+      ObjectInputStream     ois;
+      Object                objRead;
+      Properties            prpRead;
+
+      prpLayered.setProperty("viewonly", "view");
+      oos = new ObjectOutputStream(bos);
+      try
+      {
+         oos.writeObject(prpLayered);
+      }
+      finally
+      {
+         oos.close();
+      }
+      ois = new ObjectInputStream(new ByteArrayInputStream(bos.toByteArray()));
+      try
+      {
+         objRead = ois.readObject();
+      }
+      finally
+      {
+         ois.close();
+      }
+
+      assertEquals("View should be serialized as regular properties",
+                   Properties.class, objRead.getClass());
+      prpRead = (Properties)objRead;
+      assertEquals("Serialized properties should contain all the layers",
+                   6, prpRead.size());
+      assertEquals("File layer should take precedence in serialized properties",
+                   "file", prpRead.getProperty("all"));
+      assertEquals("Context layer should take precedence over the default one"
+                   + " in serialized properties",
+                   "context", prpRead.getProperty("defaultcontext"));
+      assertEquals("Property set in the view should be serialized",
+                   "view", prpRead.getProperty("viewonly"));
+   }
+}
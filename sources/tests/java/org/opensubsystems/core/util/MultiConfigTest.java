@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2003 - 2016 OpenSubsystems.com/net/org and its owners. All rights reserved.
+ * 
+ * This file is part of OpenSubsystems.
+ *
+ * OpenSubsystems is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+
+package org.opensubsystems.core.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+import org.opensubsystems.core.util.test.OSSTestCase;
+
+/**
+ * Tests for MultiConfig.
+ * 
+ * @author bastafidli
+ */
+public class MultiConfigTest extends OSSTestCase
+{
+   // Constants ////////////////////////////////////////////////////////////////
+   
+   /**
+    * Name of the property used by the tests.
+    */
+   public static final String TEST_PROPERTY = "oss.test.multiconfig";
+   
+   // Constructors /////////////////////////////////////////////////////////////
+   
+   /**
+    * Constructor for MultiConfigTest.
+    * 
+    * @param strName - name of the test
+    */
+   public MultiConfigTest(
+      String strName
+   )
+   {
+      super(strName);
+   }
+   
+   // Tests ////////////////////////////////////////////////////////////////////
+
+   /**
+    * Test that the thread which has set its current properties sees the 
+    * settings reloaded from the configuration file.
+    * 
+    * @throws Exception - an error has occurred
+    */
+   public void testReloadWithCurrentProperties(
+   ) throws Exception
+   {
+      File        fileConfig;
+      MultiConfig config;
+      Properties  prpCurrent = new Properties();
+      
+      fileConfig = File.createTempFile("multiconfig", ".properties");
+      try
+      {
+         writeProperty(fileConfig, "original");
+         config = new MultiConfig(fileConfig.getAbsolutePath(), new Properties());
+         config.setCurrentProperties(prpCurrent);
+         try
+         {
+            assertEquals("Property should be read from the file", "original", 
+                         config.getProperties().getProperty(TEST_PROPERTY));
+            
+            writeProperty(fileConfig, "reloaded");
+            config.reload();
+            assertEquals("Property should be read from the reloaded file", 
+                         "reloaded", 
+                         config.getProperties().getProperty(TEST_PROPERTY));
+         }
+         finally
+         {
+            config.resetCurrentProperties(prpCurrent);
+         }
+      }
+      finally
+      {
+         fileConfig.delete();
+      }
+   }
+   
+   /**
+    * Test that the property set in the configuration is visible in the 
+    * properties returned by the configuration while default and current 
+    * properties are in effect.
+    * 
+    * @throws Exception - an error has occurred
+    */
+   public void testSetPropertyWithCurrentProperties(
+   ) throws Exception
+   {
+      MultiConfig config;
+      Properties  prpDefault = new Properties();
+      Properties  prpCurrent = new Properties();
+      long        lVersion;
+      
+      prpDefault.setProperty(TEST_PROPERTY, "default");
+      prpCurrent.setProperty(TEST_PROPERTY, "current");
+      config = new MultiConfig(new Properties(), prpDefault);
+      config.setCurrentProperties(prpCurrent);
+      try
+      {
+         lVersion = config.getVersion();
+         config.setProperty(TEST_PROPERTY, "set");
+         assertEquals("Property set in the configuration should be visible", 
+                      "set", config.getProperties().getProperty(TEST_PROPERTY));
+         assertTrue("Version should change when property is set", 
+                    lVersion != config.getVersion());
+      }
+      finally
+      {
+         config.resetCurrentProperties(prpCurrent);
+      }
+      assertEquals("Property set in the configuration should stay visible", 
+                   "set", config.getProperties().getProperty(TEST_PROPERTY));
+   }
+   
+   /**
+    * Test that the version of the configuration doesn't change when the same
+    * current properties are set again but it changes when different current
+    * properties are set or when the configuration changes.
+    * 
+    * @throws Exception - an error has occurred
+    */
+   public void testVersionOfSameCurrentProperties(
+   ) throws Exception
+   {
+      MultiConfig config;
+      Properties  prpCurrent = new Properties();
+      Properties  prpOther = new Properties();
+      long        lBaseVersion;
+      long        lCurrentVersion;
+      
+      config = new MultiConfig(new Properties(), new Properties());
+      lBaseVersion = config.getVersion();
+      config.setCurrentProperties(prpCurrent);
+      lCurrentVersion = config.getVersion();
+      assertTrue("Version should change when current properties are set", 
+                 lBaseVersion != lCurrentVersion);
+      config.resetCurrentProperties(prpCurrent);
+      assertEquals("Version should be restored when current properties are reset",
+                   lBaseVersion, config.getVersion());
+      
+      config.setCurrentProperties(prpCurrent);
+      assertEquals("Version shouldn't change when the same properties are set", 
+                   lCurrentVersion, config.getVersion());
+      config.resetCurrentProperties(prpCurrent);
+      
+      config.setCurrentProperties(prpOther);
+      assertTrue("Version should change when other properties are set", 
+                 (lBaseVersion != config.getVersion())
+                 && (lCurrentVersion != config.getVersion()));
+      config.resetCurrentProperties(prpOther);
+      
+      config.setCurrentProperties(prpCurrent);
+      try
+      {
+         config.setProperty(TEST_PROPERTY, "set");
+         assertTrue("Version should change when the configuration changes", 
+                    lCurrentVersion != config.getVersion());
+      }
+      finally
+      {
+         config.resetCurrentProperties(prpCurrent);
+      }
+   }
+   
+   // Helper methods ///////////////////////////////////////////////////////////
+   
+   /**
+    * Write the test property into the configuration file.
+    * 
+    * @param fileConfig - configuration file to write
+    * @param strValue - value of the test property
+    * @throws Exception - an error has occurred
+    */
+   protected void writeProperty(
+      File   fileConfig,
+      String strValue
+   ) throws Exception
+   {
+      Properties   prpFile = new Properties();
+      OutputStream osConfig;
+      
+      prpFile.setProperty(TEST_PROPERTY, strValue);
+      osConfig = new FileOutputStream(fileConfig);
+      try
+      {
+         prpFile.store(osConfig, null);
+      }
+      finally
+      {
+         osConfig.close();
+      }
+   }
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2003 - 2016 OpenSubsystems.com/net/org and its owners. All rights reserved.
+ * 
+ * This file is part of OpenSubsystems.
+ *
+ * OpenSubsystems is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+
+package org.opensubsystems.core.util.jdbc;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+
+import org.opensubsystems.core.util.test.OSSTestCase;
+
+/**
+ * Tests for PreparedStatementCache.
+ * 
+ * @author bastafidli
+ */
+public class PreparedStatementCacheTest extends OSSTestCase
+{
+   // Constants ////////////////////////////////////////////////////////////////
+   
+   /**
+    * URL of the in memory database used by the tests.
+    */
+   public static final String TEST_URL = "jdbc:hsqldb:mem:statementcachetest";
+   
+   /**
+    * Statement inserting data into the test table.
+    */
+   public static final String INSERT_SQL = "insert into CACHE_TEST (VALUE) values (?)";
+   
+   /**
+    * Statement selecting data from the test table.
+    */
+   public static final String SELECT_SQL = "select VALUE from CACHE_TEST";
+   
+   // Attributes ///////////////////////////////////////////////////////////////
+   
+   /**
+    * Connection used to prepare the statements.
+    */
+   protected Connection m_connection;
+   
+   /**
+    * Cache tested by the current test.
+    */
+   protected PreparedStatementCache m_cache;
+   
+   // Constructors /////////////////////////////////////////////////////////////
+   
+   /**
+    * Constructor for PreparedStatementCacheTest.
+    * 
+    * @param strName - name of the test
+    */
+   public PreparedStatementCacheTest(
+      String strName
+   )
+   {
+      super(strName);
+   }
+   
+   // Helper methods ///////////////////////////////////////////////////////////
+   
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   protected void setUp(
+   ) throws Exception
+   {
+      super.setUp();
+      
+      Statement statement;
+      
+      Class.forName("org.hsqldb.jdbcDriver");
+      m_connection = DriverManager.getConnection(TEST_URL, "sa", "");
+      statement = m_connection.createStatement();
+      try
+      {
+         statement.execute("create table CACHE_TEST (VALUE integer)");
+      }
+      finally
+      {
+         statement.close();
+      }
+      m_cache = new PreparedStatementCache(m_connection, m_connection, 
+                                           PreparedStatementCache.UNLIMITED_SIZE);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   protected void tearDown(
+   ) throws Exception
+   {
+      Statement statement;
+      
+      try
+      {
+         m_cache.close();
+         statement = m_connection.createStatement();
+         try
+         {
+            statement.execute("drop table CACHE_TEST");
+         }
+         finally
+         {
+            statement.close();
+         }
+         m_connection.close();
+      }
+      finally
+      {
+         super.tearDown();
+      }
+   }
+
+   // Tests ////////////////////////////////////////////////////////////////////
+
+   /**
+    * Test that the settings changed by the caller are restored before the 
+    * statement is reused.
+    * 
+    * @throws Exception - an error has occurred
+    */
+   public void testSettingsRestored(
+   ) throws Exception
+   {
+      PreparedStatement statement;
+      int               iFetchSize;
+      int               iMaxRows;
+      
+      statement = m_cache.prepareStatement(SELECT_SQL);
+      iFetchSize = statement.getFetchSize();
+      iMaxRows = statement.getMaxRows();
+      statement.setFetchSize(iFetchSize + 10);
+      statement.setMaxRows(iMaxRows + 10);
+      statement.close();
+      
+      statement = m_cache.prepareStatement(SELECT_SQL);
+      try
+      {
+         assertEquals("Statement should be reused", 1, m_cache.getHitCount());
+         assertEquals("Fetch size should be restored", 
+                      iFetchSize, statement.getFetchSize());
+         assertEquals("Maximal number of rows should be restored", 
+                      iMaxRows, statement.getMaxRows());
+      }
+      finally
+      {
+         statement.close();
+      }
+   }
+
+   /**
+    * Test that the batch which wasn't executed by the caller is not executed
+    * by the next caller.
+    * 
+    * @throws Exception - an error has occurred
+    */
+   public void testBatchCleared(
+   ) throws Exception
+   {
+      PreparedStatement statement;
+      
+      statement = m_cache.prepareStatement(INSERT_SQL);
+      statement.setInt(1, 1);
+      statement.addBatch();
+      statement.close();
+      
+      statement = m_cache.prepareStatement(INSERT_SQL);
+      try
+      {
+         assertEquals("Statement should be reused", 1, m_cache.getHitCount());
+         statement.setInt(1, 2);
+         statement.addBatch();
+         assertEquals("Only the batch of the second caller should be executed", 
+                      1, statement.executeBatch().length);
+      }
+      finally
+      {
+         statement.close();
+      }
+   }
+
+   /**
+    * Test that the statement is not reused if the caller changed setting,
+    * which cannot be restored.
+    * 
+    * @throws Exception - an error has occurred
+    */
+   public void testStatementNotReusedWhenSettingCannotBeRestored(
+   ) throws Exception
+   {
+      PreparedStatement statement;
+      
+      statement = m_cache.prepareStatement(SELECT_SQL);
+      statement.setEscapeProcessing(false);
+      statement.close();
+      
+      statement = m_cache.prepareStatement(SELECT_SQL);
+      statement.close();
+      assertEquals("Statement shouldn't be reused", 0, m_cache.getHitCount());
+      assertEquals("Statement should be prepared again", 2, m_cache.getMissCount());
+   }
+}